@@ -0,0 +1,499 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.jobs;
+
+import com.axelor.app.AppSettings;
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.inject.Beans;
+import com.google.inject.persist.UnitOfWork;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.InterruptableJob;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A restartable {@link org.quartz.Job} reading, processing and writing items by chunks.
+ *
+ * <p>Each chunk is committed in its own transaction together with a {@link BatchCheckpoint} of its
+ * partition. When a job is killed, interrupted or fails, the next run resumes every unfinished
+ * partition after its last committed chunk. An interrupted run and its unfinished partitions are
+ * recorded as {@code STOPPED}. The items are split in the {@code partitions} job parameter,
+ * processed in parallel by at most {@code quartz.thread-count} threads. On a clustered scheduler,
+ * the partitions are instead dispatched as separate jobs, spread over the nodes.
+ *
+ * <p>Every run is recorded as a {@link BatchRun} with its metrics. The job parameters are:
+ *
+ * <ul>
+ *   <li>{@code chunkSize}: number of items per transaction, 100 by default
+ *   <li>{@code partitions}: number of partitions, 1 by default
+ *   <li>{@code skipLimit}: number of failing items skipped per partition before failing the job, 0
+ *       by default
+ * </ul>
+ */
+@DisallowConcurrentExecution
+public abstract class ChunkJob<I, O> implements InterruptableJob {
+
+  public static final String PARAM_CHUNK_SIZE = "chunkSize";
+
+  public static final String PARAM_PARTITIONS = "partitions";
+
+  public static final String PARAM_SKIP_LIMIT = "skipLimit";
+
+  /** The partition to run, set on the partition jobs dispatched on a clustered scheduler. */
+  public static final String PARAM_PARTITION = "partition";
+
+  /** The name of the dispatching job, set on the partition jobs. */
+  public static final String PARAM_BATCH = "batch";
+
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private volatile boolean interrupted;
+
+  protected abstract ItemReader<I> reader(JobDataMap data);
+
+  protected abstract ItemProcessor<I, O> processor(JobDataMap data);
+
+  protected abstract ItemWriter<O> writer(JobDataMap data);
+
+  @Override
+  public void interrupt() {
+    interrupted = true;
+  }
+
+  @Override
+  public void execute(JobExecutionContext context) throws JobExecutionException {
+    final JobDataMap data = context.getMergedJobDataMap();
+    if (data.containsKey(PARAM_PARTITION)) {
+      runPartition(data.getString(PARAM_BATCH), getInt(data, PARAM_PARTITION, 0), data);
+      return;
+    }
+    final String name = context.getJobDetail().getKey().getName();
+    if (getInt(data, PARAM_PARTITIONS, 1) > 1 && isClustered(context)) {
+      dispatch(context, name, data);
+      return;
+    }
+    run(name, data);
+  }
+
+  /**
+   * Run the job, resuming the previous run if it didn't complete.
+   *
+   * @param name the job name, identifying its checkpoints
+   * @param data the job parameters
+   */
+  public void run(String name, JobDataMap data) throws JobExecutionException {
+    final int partitions = Math.max(1, getInt(data, PARAM_PARTITIONS, 1));
+    final int threads =
+        Math.max(1, Math.min(partitions, AppSettings.get().getInt("quartz.thread-count", 3)));
+    final boolean resumed = inTransaction(() -> prepareCheckpoints(name, partitions));
+    process(
+        name,
+        null,
+        partitions,
+        resumed,
+        threads,
+        IntStream.range(0, partitions).boxed().collect(Collectors.toList()),
+        data);
+  }
+
+  /** Run a single partition, dispatched by a clustered run of the job. */
+  private void runPartition(String name, int partition, JobDataMap data)
+      throws JobExecutionException {
+    final BatchCheckpoint checkpoint = inTransaction(() -> findCheckpoint(name, partition));
+    if (checkpoint == null || checkpoint.getStatus() == BatchStatus.DONE) {
+      return;
+    }
+    process(
+        name,
+        partition,
+        checkpoint.getPartitionCount(),
+        value(checkpoint.getLastKey()) > 0,
+        1,
+        Collections.singletonList(partition),
+        data);
+  }
+
+  /**
+   * On a clustered scheduler, schedule every unfinished partition as a separate one-shot job, so
+   * they are spread over the nodes of the cluster. A node failing while running a partition is
+   * recovered by another node from the partition checkpoint.
+   */
+  private void dispatch(JobExecutionContext context, String name, JobDataMap data)
+      throws JobExecutionException {
+    final int partitions = getInt(data, PARAM_PARTITIONS, 1);
+    inTransaction(() -> prepareCheckpoints(name, partitions));
+
+    final Scheduler scheduler = context.getScheduler();
+    final String group = context.getJobDetail().getKey().getGroup();
+    int dispatched = 0;
+    try {
+      for (BatchCheckpoint checkpoint : inTransaction(() -> checkpoints(name))) {
+        if (checkpoint.getStatus() == BatchStatus.DONE) {
+          continue;
+        }
+        final JobKey key = JobKey.jobKey(name + "#" + checkpoint.getPartitionIndex(), group);
+        if (scheduler.checkExists(key)) {
+          // still running since a previous fire
+          continue;
+        }
+        final JobDetail detail =
+            JobBuilder.newJob(getClass())
+                .withIdentity(key)
+                .usingJobData(new JobDataMap(data))
+                .usingJobData(PARAM_BATCH, name)
+                .usingJobData(PARAM_PARTITION, String.valueOf(checkpoint.getPartitionIndex()))
+                .requestRecovery()
+                .build();
+        try {
+          scheduler.scheduleJob(detail, TriggerBuilder.newTrigger().startNow().build());
+          dispatched++;
+        } catch (ObjectAlreadyExistsException e) {
+          // dispatched concurrently by another node
+        }
+      }
+    } catch (SchedulerException e) {
+      throw new JobExecutionException(e);
+    }
+
+    log.info("Batch {}: {} partitions dispatched to the cluster", name, dispatched);
+  }
+
+  private boolean isClustered(JobExecutionContext context) {
+    try {
+      return context.getScheduler().getMetaData().isJobStoreClustered();
+    } catch (SchedulerException e) {
+      return false;
+    }
+  }
+
+  private void process(
+      String name,
+      Integer partitionIndex,
+      int partitions,
+      boolean resumed,
+      int threads,
+      List<Integer> indexes,
+      JobDataMap data)
+      throws JobExecutionException {
+    final int chunkSize = Math.max(1, getInt(data, PARAM_CHUNK_SIZE, 100));
+    final int skipLimit = Math.max(0, getInt(data, PARAM_SKIP_LIMIT, 0));
+
+    final Long runId =
+        inTransaction(() -> startRun(name, partitionIndex, partitions, resumed)).getId();
+    final Metrics metrics = new Metrics();
+    final long start = System.nanoTime();
+
+    log.info(
+        "Batch {} started: {} partitions, {} threads, resumed: {}",
+        name,
+        indexes.size(),
+        threads,
+        resumed);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (Integer index : indexes) {
+      futures.add(
+          executor.submit(
+              () -> {
+                try {
+                  processPartition(name, index, partitions, chunkSize, skipLimit, data, metrics);
+                } finally {
+                  Beans.get(UnitOfWork.class).end();
+                }
+                return null;
+              }));
+    }
+    executor.shutdown();
+
+    Throwable error = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        error = error == null ? e.getCause() : error;
+      } catch (InterruptedException e) {
+        interrupted = true;
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    final Throwable failure = error;
+    final long elapsed = System.nanoTime() - start;
+    final BatchStatus status =
+        failure != null
+            ? BatchStatus.FAILED
+            : interrupted ? BatchStatus.STOPPED : BatchStatus.DONE;
+    if (status == BatchStatus.STOPPED) {
+      inTransaction(() -> stopCheckpoints(name, indexes));
+    }
+    inTransaction(() -> endRun(runId, status, metrics, elapsed, failure));
+
+    log.info(
+        "Batch {} {}: {} items, {} failures in {} ms",
+        name,
+        status,
+        metrics.items.sum(),
+        metrics.failures.sum(),
+        elapsed / 1_000_000);
+
+    if (failure != null) {
+      throw new JobExecutionException(failure);
+    }
+  }
+
+  private void processPartition(
+      String name,
+      int partition,
+      int partitions,
+      int chunkSize,
+      int skipLimit,
+      JobDataMap data,
+      Metrics metrics) {
+    final ItemReader<I> reader = reader(data);
+    final ItemProcessor<I, O> processor = processor(data);
+    final ItemWriter<O> writer = writer(data);
+
+    while (!interrupted) {
+      final long chunkStart = System.nanoTime();
+      final long[] counts = new long[2];
+      final boolean more;
+      try {
+        more =
+            inTransaction(
+                () -> {
+                  final BatchCheckpoint checkpoint = findCheckpoint(name, partition);
+                  if (checkpoint.getStatus() == BatchStatus.DONE) {
+                    return false;
+                  }
+                  final List<I> items =
+                      reader.read(value(checkpoint.getLastKey()), partition, partitions, chunkSize);
+                  if (items.isEmpty()) {
+                    checkpoint.setStatus(BatchStatus.DONE);
+                    return false;
+                  }
+                  final List<O> processed = new ArrayList<>(items.size());
+                  long failures = value(checkpoint.getFailures());
+                  for (I item : items) {
+                    try {
+                      final O result = processor.process(item);
+                      if (result != null) {
+                        processed.add(result);
+                      }
+                    } catch (Exception e) {
+                      if (++failures > skipLimit) {
+                        throw new IllegalStateException(
+                            String.format("Batch %s: too many failures, item: %s", name, item), e);
+                      }
+                      counts[1]++;
+                      log.warn("Batch {}: item skipped: {}", name, item, e);
+                    }
+                  }
+                  try {
+                    writer.write(processed);
+                  } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                  }
+                  counts[0] = items.size();
+                  checkpoint.setLastKey(reader.keyOf(items.get(items.size() - 1)));
+                  checkpoint.setItems(value(checkpoint.getItems()) + items.size());
+                  checkpoint.setFailures(failures);
+                  return true;
+                });
+      } catch (RuntimeException e) {
+        inTransaction(
+            () -> {
+              findCheckpoint(name, partition).setStatus(BatchStatus.FAILED);
+              return null;
+            });
+        throw e;
+      }
+
+      // keep the session small, the processed items are no longer needed
+      JPA.em().clear();
+
+      if (!more) {
+        return;
+      }
+      metrics.chunk(counts[0], counts[1], System.nanoTime() - chunkStart);
+    }
+  }
+
+  /**
+   * Create the checkpoints of a fresh run, or keep those of an unfinished one.
+   *
+   * @return whether the previous run is resumed
+   */
+  private boolean prepareCheckpoints(String name, int partitions) {
+    final List<BatchCheckpoint> checkpoints = checkpoints(name);
+    final boolean resume =
+        checkpoints.size() == partitions
+            && checkpoints.stream().allMatch(it -> it.getPartitionCount() == partitions)
+            && checkpoints.stream().anyMatch(it -> it.getStatus() != BatchStatus.DONE);
+
+    if (resume) {
+      checkpoints.stream()
+          .filter(it -> it.getStatus() != BatchStatus.DONE)
+          .forEach(it -> it.setStatus(BatchStatus.RUNNING));
+      return true;
+    }
+
+    checkpoints.forEach(JPA::remove);
+    JPA.em().flush();
+    for (int partition = 0; partition < partitions; partition++) {
+      final BatchCheckpoint checkpoint = new BatchCheckpoint();
+      checkpoint.setJobName(name);
+      checkpoint.setPartitionIndex(partition);
+      checkpoint.setPartitionCount(partitions);
+      checkpoint.setLastKey(0L);
+      checkpoint.setItems(0L);
+      checkpoint.setFailures(0L);
+      checkpoint.setStatus(BatchStatus.RUNNING);
+      JPA.save(checkpoint);
+    }
+    return false;
+  }
+
+  /** Mark the unfinished partitions of an interrupted run, resumed by the next one. */
+  private Void stopCheckpoints(String name, List<Integer> indexes) {
+    for (Integer index : indexes) {
+      final BatchCheckpoint checkpoint = findCheckpoint(name, index);
+      if (checkpoint.getStatus() == BatchStatus.RUNNING) {
+        checkpoint.setStatus(BatchStatus.STOPPED);
+      }
+    }
+    return null;
+  }
+
+  private List<BatchCheckpoint> checkpoints(String name) {
+    return Query.of(BatchCheckpoint.class)
+        .filter("self.jobName = :name")
+        .bind("name", name)
+        .order("partitionIndex")
+        .fetch();
+  }
+
+  private BatchCheckpoint findCheckpoint(String name, int partition) {
+    return Query.of(BatchCheckpoint.class)
+        .filter("self.jobName = :name AND self.partitionIndex = :partition")
+        .bind("name", name)
+        .bind("partition", partition)
+        .fetchOne();
+  }
+
+  private BatchRun startRun(
+      String name, Integer partitionIndex, int partitions, boolean resumed) {
+    final BatchRun run = new BatchRun();
+    run.setJobName(name);
+    run.setPartitionIndex(partitionIndex);
+    run.setStartedOn(LocalDateTime.now());
+    run.setStatus(BatchStatus.RUNNING);
+    run.setResumed(resumed);
+    run.setPartitionCount(partitions);
+    return JPA.save(run);
+  }
+
+  private Void endRun(
+      Long runId, BatchStatus status, Metrics metrics, long elapsedNanos, Throwable failure) {
+    final BatchRun run = JPA.em().find(BatchRun.class, runId);
+    final long items = metrics.items.sum();
+    final long chunks = metrics.chunks.sum();
+    run.setEndedOn(LocalDateTime.now());
+    run.setStatus(status);
+    run.setItems(items);
+    run.setFailures(metrics.failures.sum());
+    run.setChunks(chunks);
+    run.setItemsPerSecond(
+        elapsedNanos == 0
+            ? BigDecimal.ZERO
+            : BigDecimal.valueOf(items * 1_000_000_000.0 / elapsedNanos)
+                .setScale(2, RoundingMode.HALF_UP));
+    run.setAvgChunkMillis(chunks == 0 ? 0L : metrics.chunkNanos.sum() / chunks / 1_000_000);
+    run.setMaxChunkMillis(metrics.maxChunkNanos.get() / 1_000_000);
+    if (failure != null) {
+      run.setMessage(failure.toString());
+    }
+    return null;
+  }
+
+  private static <T> T inTransaction(Supplier<T> task) {
+    final List<T> result = new ArrayList<>(1);
+    JPA.runInTransaction(() -> result.add(task.get()));
+    return result.get(0);
+  }
+
+  private static long value(Long value) {
+    return value == null ? 0L : value;
+  }
+
+  private static int getInt(JobDataMap data, String key, int defaultValue) {
+    final Object value = data.get(key);
+    return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+  }
+
+  private static final class Metrics {
+
+    private final LongAdder items = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder chunks = new LongAdder();
+
+    private final LongAdder chunkNanos = new LongAdder();
+
+    private final AtomicLong maxChunkNanos = new AtomicLong();
+
+    void chunk(long count, long failed, long nanos) {
+      items.add(count);
+      failures.add(failed);
+      chunks.increment();
+      chunkNanos.add(nanos);
+      maxChunkNanos.accumulateAndGet(nanos, Math::max);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.jobs;
+
+import com.axelor.common.StringUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.TypedQuery;
+
+/** Reads the records of an entity in id order, partitioned on the id modulo. */
+public class EntityItemReader<T extends Model> implements ItemReader<T> {
+
+  private final Class<T> type;
+
+  private final String filter;
+
+  private final Map<String, Object> params;
+
+  public EntityItemReader(Class<T> type) {
+    this(type, null, null);
+  }
+
+  /**
+   * @param type the entity class
+   * @param filter a JPQL condition on {@code self} with named parameters, may be null
+   * @param params the filter parameters, may be null
+   */
+  public EntityItemReader(Class<T> type, String filter, Map<String, Object> params) {
+    this.type = type;
+    this.filter = filter;
+    this.params = params == null ? Collections.emptyMap() : params;
+  }
+
+  @Override
+  public List<T> read(long lastKey, int partition, int partitions, int limit) {
+    final StringBuilder jpql =
+        new StringBuilder("SELECT self FROM ")
+            .append(type.getName())
+            .append(" self WHERE self.id > :_lastKey");
+    if (StringUtils.notBlank(filter)) {
+      jpql.append(" AND (").append(filter).append(")");
+    }
+    if (partitions > 1) {
+      jpql.append(" AND MOD(self.id, :_partitions) = :_partition");
+    }
+    jpql.append(" ORDER BY self.id");
+
+    final TypedQuery<T> query =
+        JPA.em()
+            .createQuery(jpql.toString(), type)
+            .setParameter("_lastKey", lastKey)
+            .setMaxResults(limit);
+    if (partitions > 1) {
+      query.setParameter("_partitions", (long) partitions);
+      query.setParameter("_partition", (long) partition);
+    }
+    params.forEach(query::setParameter);
+    return query.getResultList();
+  }
+
+  @Override
+  public long keyOf(T item) {
+    return item.getId();
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.jobs;
+
+/** Processes the items of a {@link ChunkJob} one by one. */
+@FunctionalInterface
+public interface ItemProcessor<I, O> {
+
+  /**
+   * Process an item.
+   *
+   * <p>A failing item is counted and skipped, up to the {@code skipLimit} job parameter.
+   *
+   * @return the item to write, or null to filter it out
+   */
+  O process(I item) throws Exception;
+}
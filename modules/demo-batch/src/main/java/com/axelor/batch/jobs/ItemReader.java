@@ -0,0 +1,44 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.jobs;
+
+import java.util.List;
+
+/**
+ * Reads the items of a {@link ChunkJob}, one chunk at a time.
+ *
+ * <p>Items are read in ascending key order. The key of the last item of a chunk is checkpointed, so
+ * a resumed job continues after it.
+ */
+public interface ItemReader<I> {
+
+  /**
+   * Read the next chunk of items of a partition.
+   *
+   * @param lastKey the key of the last item already processed, 0 to start
+   * @param partition the partition index, from 0 to {@code partitions - 1}
+   * @param partitions the number of partitions
+   * @param limit the maximum number of items to read
+   * @return the items, empty once the partition is exhausted
+   */
+  List<I> read(long lastKey, int partition, int partitions, int limit);
+
+  /** The key of an item, as used by {@link #read(long, int, int, int)}. */
+  long keyOf(I item);
+}
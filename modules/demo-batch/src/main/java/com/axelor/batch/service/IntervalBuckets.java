@@ -0,0 +1,269 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.service;
+
+import com.axelor.common.StringUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.rpc.Request;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bucketed index of date intervals, stored as one indexed number per record.
+ *
+ * <p>An interval of {@code n} days is stored at the level {@code L} such that {@code n <= 2^L},
+ * under the number of the {@code 2^L} days bucket its start falls in. It can then only overlap the
+ * bucket it starts in and the next one, so the intervals overlapping a date window are found with
+ * one key range per level, each one a plain B-tree range scan, instead of the two open ended
+ * {@code start <= :to AND end >= :from} conditions.
+ *
+ * <p>The key holds the level in its high bits, so all the ranges are on a single column.
+ */
+public final class IntervalBuckets {
+
+  public static final int LEVELS = 24;
+
+  private static final int LEVEL_SHIFT = 40;
+
+  private static final long BUCKET_OFFSET = 1L << 39;
+
+  private static final int BACKFILL_CHUNK = 1000;
+
+  private static final Logger log = LoggerFactory.getLogger(IntervalBuckets.class);
+
+  private IntervalBuckets() {}
+
+  /**
+   * Compute the key of an interval.
+   *
+   * @param start the start date or date-time, null if unknown
+   * @param end the end date or date-time, null for an interval of one day
+   * @return the key, null without start
+   */
+  public static Long key(Temporal start, Temporal end) {
+    final LocalDate startDate = toDate(start);
+    if (startDate == null) {
+      return null;
+    }
+    final LocalDate endDate = toDate(end);
+    final long first = startDate.toEpochDay();
+    final long length = endDate == null ? 0 : Math.max(0, endDate.toEpochDay() - first);
+    int level = 0;
+    while (level < LEVELS - 1 && (1L << level) < length) {
+      level++;
+    }
+    return key(level, Math.floorDiv(first, 1L << level));
+  }
+
+  private static long key(int level, long bucket) {
+    return ((long) level << LEVEL_SHIFT) | (bucket + BUCKET_OFFSET);
+  }
+
+  /**
+   * Compute the key ranges of the intervals that may overlap a window, one per level.
+   *
+   * @param from the first day of the window
+   * @param to the last day of the window
+   * @return the inclusive {@code [min, max]} key ranges
+   */
+  public static long[][] ranges(LocalDate from, LocalDate to) {
+    final long[][] ranges = new long[LEVELS][];
+    for (int level = 0; level < LEVELS; level++) {
+      final long size = 1L << level;
+      ranges[level] =
+          new long[] {
+            key(level, Math.floorDiv(from.toEpochDay(), size) - 1),
+            key(level, Math.floorDiv(to.toEpochDay(), size))
+          };
+    }
+    return ranges;
+  }
+
+  /**
+   * Build the JPQL condition selecting the intervals that may overlap a window. The exact overlap
+   * must still be checked on the interval fields.
+   *
+   * @param field the key field, like {@code self.timeBucket}
+   * @see #ranges(LocalDate, LocalDate)
+   */
+  public static String condition(String field, LocalDate from, LocalDate to) {
+    final List<String> conditions = new ArrayList<>();
+    for (long[] range : ranges(from, to)) {
+      conditions.add(String.format("%s BETWEEN %d AND %d", field, range[0], range[1]));
+    }
+    return "(" + String.join(" OR ", conditions) + ")";
+  }
+
+  /**
+   * Restrict a search request on a date window, as sent by the calendar views, with the key
+   * ranges of the window.
+   *
+   * <p>The window is read from the top level criteria: {@code startField <= to} and either {@code
+   * endField >= from} or {@code startField >= from}, possibly in a nested {@code or} group.
+   *
+   * @return whether the request was restricted
+   */
+  public static boolean restrict(
+      Request request, String startField, String endField, String keyField) {
+    final Map<String, Object> data = request.getData();
+    if (data == null || "or".equals(data.get("operator"))) {
+      return false;
+    }
+    LocalDate from = null;
+    LocalDate to = null;
+    for (Map<String, Object> criterion : criteria(data.get("criteria"))) {
+      final String field = (String) criterion.get("fieldName");
+      final String operator = (String) criterion.get("operator");
+      if (field == null && "or".equals(operator)) {
+        final LocalDate lower = lowerBound(criterion, startField, endField);
+        if (lower != null) {
+          from = from == null || lower.isAfter(from) ? lower : from;
+        }
+      } else if (startField.equals(field) && ("<=".equals(operator) || "<".equals(operator))) {
+        final LocalDate upper = toDate(criterion.get("value"));
+        if (upper != null) {
+          to = to == null || upper.isBefore(to) ? upper : to;
+        }
+      } else if ((startField.equals(field) || endField.equals(field))
+          && (">=".equals(operator) || ">".equals(operator))) {
+        final LocalDate lower = toDate(criterion.get("value"));
+        if (lower != null) {
+          from = from == null || lower.isAfter(from) ? lower : from;
+        }
+      }
+    }
+    if (from == null || to == null) {
+      return false;
+    }
+
+    // one day of margin for the time zone of the client
+    final String condition = condition("self." + keyField, from.minusDays(1), to.plusDays(1));
+    final String domain = (String) data.get("_domain");
+    data.put(
+        "_domain",
+        StringUtils.isBlank(domain) ? condition : "(" + domain + ") AND " + condition);
+    return true;
+  }
+
+  /** The lowest bound of an {@code or} group made of lower bounds only. */
+  private static LocalDate lowerBound(
+      Map<String, Object> group, String startField, String endField) {
+    LocalDate lower = null;
+    final List<Map<String, Object>> criteria = criteria(group.get("criteria"));
+    for (Map<String, Object> criterion : criteria) {
+      final Object field = criterion.get("fieldName");
+      final Object operator = criterion.get("operator");
+      final LocalDate value = toDate(criterion.get("value"));
+      if (!(startField.equals(field) || endField.equals(field))
+          || !(">=".equals(operator) || ">".equals(operator))
+          || value == null) {
+        return null;
+      }
+      lower = lower == null || value.isBefore(lower) ? value : lower;
+    }
+    return lower;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> criteria(Object value) {
+    final List<Map<String, Object>> criteria = new ArrayList<>();
+    if (value instanceof Collection) {
+      for (Object item : (Collection<Object>) value) {
+        if (item instanceof Map) {
+          criteria.add((Map<String, Object>) item);
+        }
+      }
+    }
+    return criteria;
+  }
+
+  private static LocalDate toDate(Object value) {
+    if (value instanceof LocalDate) {
+      return (LocalDate) value;
+    }
+    if (value instanceof LocalDateTime) {
+      return ((LocalDateTime) value).toLocalDate();
+    }
+    if (value instanceof String && ((String) value).length() >= 10) {
+      try {
+        return LocalDate.parse(((String) value).substring(0, 10));
+      } catch (Exception e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compute the missing keys of the records of an entity, in chunks.
+   *
+   * @return the number of updated records
+   */
+  public static long backfill(
+      Class<? extends Model> entity, String startField, String endField, String keyField) {
+    final String name = entity.getSimpleName();
+    final String select =
+        String.format(
+            "SELECT self.id, self.%s, self.%s FROM %s self "
+                + "WHERE self.%s IS NULL AND self.%s IS NOT NULL AND self.id > :lastId "
+                + "ORDER BY self.id",
+            startField, endField, name, keyField, startField);
+    final String update =
+        String.format("UPDATE %s self SET self.%s = :key WHERE self.id = :id", name, keyField);
+
+    long updated = 0;
+    long lastId = 0;
+    while (true) {
+      final List<Object[]> rows =
+          JPA.em()
+              .createQuery(select, Object[].class)
+              .setParameter("lastId", lastId)
+              .setMaxResults(BACKFILL_CHUNK)
+              .getResultList();
+      if (rows.isEmpty()) {
+        break;
+      }
+      JPA.runInTransaction(
+          () -> {
+            for (Object[] row : rows) {
+              JPA.em()
+                  .createQuery(update)
+                  .setParameter("key", key((Temporal) row[1], (Temporal) row[2]))
+                  .setParameter("id", row[0])
+                  .executeUpdate();
+            }
+          });
+      lastId = (Long) rows.get(rows.size() - 1)[0];
+      updated += rows.size();
+    }
+    if (updated > 0) {
+      JPA.em().getEntityManagerFactory().getCache().evict(entity);
+      log.info("Interval keys of {} {} records computed", updated, name);
+    }
+    return updated;
+  }
+}
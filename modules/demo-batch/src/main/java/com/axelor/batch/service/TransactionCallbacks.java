@@ -0,0 +1,98 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch.service;
+
+import com.axelor.db.JPA;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+/**
+ * Runs changes of in-memory state once the current transaction completes, so that a rollback
+ * doesn't leave the state out of sync with the database, or writes which must commit with the
+ * current transaction.
+ */
+public final class TransactionCallbacks {
+
+  private TransactionCallbacks() {}
+
+  /** Run a change after the current transaction commits, or now without a transaction. */
+  public static void afterCommit(Runnable change) {
+    afterCompletion(change, null);
+  }
+
+  /**
+   * Run a change after the current transaction is rolled back, such as dropping state changed
+   * ahead of the commit. Nothing is run without a transaction.
+   */
+  public static void afterRollback(Runnable change) {
+    afterCompletion(() -> {}, change);
+  }
+
+  /**
+   * Run a change in the current transaction, just before it commits, or now without a transaction.
+   * The change is dropped if the transaction is rolled back.
+   */
+  public static void beforeCommit(Runnable change) {
+    final Transaction transaction = JPA.em().unwrap(Session.class).getTransaction();
+    if (transaction == null || !transaction.isActive()) {
+      change.run();
+      return;
+    }
+    transaction.registerSynchronization(
+        new Synchronization() {
+          @Override
+          public void beforeCompletion() {
+            change.run();
+          }
+
+          @Override
+          public void afterCompletion(int status) {}
+        });
+  }
+
+  /**
+   * Run a change after the current transaction commits, or now without a transaction.
+   *
+   * @param onCommit the change to run once committed
+   * @param onRollback run instead if the transaction is rolled back, may be null
+   */
+  public static void afterCompletion(Runnable onCommit, Runnable onRollback) {
+    final Transaction transaction = JPA.em().unwrap(Session.class).getTransaction();
+    if (transaction == null || !transaction.isActive()) {
+      onCommit.run();
+      return;
+    }
+    transaction.registerSynchronization(
+        new Synchronization() {
+          @Override
+          public void beforeCompletion() {}
+
+          @Override
+          public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+              onCommit.run();
+            } else if (onRollback != null) {
+              onRollback.run();
+            }
+          }
+        });
+  }
+}
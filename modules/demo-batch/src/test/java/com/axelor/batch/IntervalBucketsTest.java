@@ -0,0 +1,92 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.batch.service.IntervalBuckets;
+import com.axelor.rpc.Request;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class IntervalBucketsTest {
+
+  @Test
+  public void testOverlaps() {
+    final Random random = new Random(37);
+    final LocalDate origin = LocalDate.of(2021, 1, 1);
+    for (int i = 0; i < 100_000; i++) {
+      final LocalDate start = origin.plusDays(random.nextInt(4000) - 2000);
+      final LocalDate end = start.plusDays(random.nextInt(10) == 0 ? random.nextInt(1000) : 3);
+      final LocalDate from = origin.plusDays(random.nextInt(4000) - 2000);
+      final LocalDate to = from.plusDays(random.nextInt(60));
+
+      final long key = IntervalBuckets.key(start, end);
+      final boolean candidate =
+          Arrays.stream(IntervalBuckets.ranges(from, to))
+              .anyMatch(range -> range[0] <= key && key <= range[1]);
+      if (!start.isAfter(to) && !end.isBefore(from)) {
+        assertTrue(candidate, start + ".." + end + " overlaps " + from + ".." + to);
+      }
+    }
+  }
+
+  @Test
+  public void testRestrict() {
+    final Map<String, Object> data = new HashMap<>();
+    data.put("_domain", "self.project.id = 1");
+    data.put(
+        "criteria",
+        Arrays.asList(
+            criterion("startDate", "<=", "2021-02-07T23:00:00.000Z"),
+            group(
+                criterion("endDate", ">=", "2021-01-31T23:00:00.000Z"),
+                criterion("startDate", ">=", "2021-01-31T23:00:00.000Z"))));
+    final Request request = new Request();
+    request.setData(data);
+
+    assertTrue(IntervalBuckets.restrict(request, "startDate", "endDate", "timeBucket"));
+    assertEquals(
+        "(self.project.id = 1) AND "
+            + IntervalBuckets.condition(
+                "self.timeBucket", LocalDate.of(2021, 1, 30), LocalDate.of(2021, 2, 8)),
+        data.get("_domain"));
+  }
+
+  private static Map<String, Object> criterion(String field, String operator, Object value) {
+    final Map<String, Object> criterion = new HashMap<>();
+    criterion.put("fieldName", field);
+    criterion.put("operator", operator);
+    criterion.put("value", value);
+    return criterion;
+  }
+
+  @SafeVarargs
+  private static Map<String, Object> group(Map<String, Object>... criteria) {
+    final Map<String, Object> group = new HashMap<>();
+    group.put("operator", "or");
+    group.put("criteria", Arrays.asList(criteria));
+    return group;
+  }
+}
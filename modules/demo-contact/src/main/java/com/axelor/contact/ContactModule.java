@@ -19,15 +19,21 @@
 package com.axelor.contact;
 
 import com.axelor.app.AxelorModule;
+import com.axelor.contact.jobs.ClusterScheduler;
 import com.axelor.contact.service.AccessContactQuickMenu;
+import com.axelor.contact.service.CircleMembershipIndex;
 import com.axelor.contact.service.HelloService;
 import com.axelor.contact.service.HelloServiceImpl;
+import com.axelor.contact.service.ReferenceDataObserver;
 
 public class ContactModule extends AxelorModule {
 
   @Override
   protected void configure() {
     bind(HelloService.class).to(HelloServiceImpl.class);
+    bind(CircleMembershipIndex.class);
+    bind(ReferenceDataObserver.class);
+    bind(ClusterScheduler.class);
 
     addQuickMenu(AccessContactQuickMenu.class);
   }
@@ -18,12 +18,52 @@
  */
 package com.axelor.contact.db.repo;
 
+import com.axelor.batch.service.TransactionCallbacks;
 import com.axelor.common.ObjectUtils;
+import com.axelor.contact.db.Circle;
 import com.axelor.contact.db.Contact;
+import com.axelor.contact.service.CircleMembershipIndex;
+import com.axelor.db.JPA;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
 
 public class ContactRepository extends AbstractContactRepository {
 
+  @Inject private CircleMembershipIndex circleIndex;
+
+  @Override
+  public Contact save(Contact entity) {
+    final Contact contact = super.save(entity);
+    final Long id = contact.getId();
+    final Set<Long> circleIds =
+        contact.getCircles() == null
+            ? Collections.emptySet()
+            : contact.getCircles().stream().map(Circle::getId).collect(Collectors.toSet());
+    TransactionCallbacks.afterCommit(() -> circleIndex.update(id, circleIds));
+    return contact;
+  }
+
+  @Override
+  public void remove(Contact entity) {
+    final Long id = entity.getId();
+    if (id != null) {
+      // the candidate duplicates of the contact
+      JPA.em()
+          .createQuery(
+              "DELETE FROM ContactDuplicatePair self "
+                  + "WHERE self.first.id = :id OR self.second.id = :id")
+          .setParameter("id", id)
+          .executeUpdate();
+    }
+    super.remove(entity);
+    if (id != null) {
+      TransactionCallbacks.afterCommit(() -> circleIndex.remove(id));
+    }
+  }
+
   @Override
   public Map<String, Object> populate(Map<String, Object> json, Map<String, Object> context) {
     if (!context.containsKey("json-enhance")) {
@@ -0,0 +1,394 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.jobs;
+
+import com.axelor.app.AppSettings;
+import com.axelor.common.StringUtils;
+import com.axelor.db.Query;
+import com.axelor.event.Observes;
+import com.axelor.events.PostRequest;
+import com.axelor.events.RequestEvent;
+import com.axelor.events.ShutdownEvent;
+import com.axelor.events.StartupEvent;
+import com.axelor.inject.Beans;
+import com.axelor.meta.db.MetaSchedule;
+import com.axelor.meta.db.MetaScheduleParam;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.spi.JobFactory;
+import org.quartz.spi.TriggerFiredBundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Quartz scheduler shared by several application nodes.
+ *
+ * <p>When {@code quartz.cluster.enable} is set, every node starts a scheduler on a JDBC job store
+ * in the application database, and the active {@link MetaSchedule}s are scheduled in it. Each
+ * trigger fires on a single node; the nodes check in regularly and the jobs of a failed node are
+ * recovered by the others. The stock {@code quartz.enable} scheduler should stay disabled, it would
+ * fire every job on every node. The jobs are scheduled again whenever a {@link MetaSchedule} is
+ * saved or removed.
+ *
+ * <p>The scheduler doesn't share the in-memory state of the nodes: the circle and project
+ * membership indexes, the task dependency order and the resource load are built by each node from
+ * the database, and only follow the changes saved on that node. The resource load catches up with
+ * the other nodes when it is read, see {@code ResourceLoadService.sync()}, the other ones when they
+ * are reloaded.
+ */
+@Singleton
+public class ClusterScheduler {
+
+  public static final String GROUP = "cluster";
+
+  private static final String CLUSTER_NAME = "AxelorClusterScheduler";
+
+  private static final String SCRIPTS = "org/quartz/impl/jdbcjobstore/";
+
+  private static final long CREATE_TABLES_TIMEOUT = 30_000;
+
+  private static final Logger log = LoggerFactory.getLogger(ClusterScheduler.class);
+
+  private Scheduler scheduler;
+
+  public void onStartup(@Observes StartupEvent event) {
+    final AppSettings settings = AppSettings.get();
+    if (!settings.getBoolean("quartz.cluster.enable", false)) {
+      return;
+    }
+    try {
+      scheduler = create(settings.get("quartz.cluster.instance-id", null));
+      schedule(scheduler);
+      scheduler.start();
+    } catch (SchedulerException e) {
+      log.error("Unable to start the cluster scheduler", e);
+    }
+  }
+
+  public void onShutdown(@Observes ShutdownEvent event) {
+    if (scheduler != null) {
+      try {
+        // running jobs are recovered by the other nodes
+        scheduler.shutdown(false);
+      } catch (SchedulerException e) {
+        log.error("Unable to stop the cluster scheduler", e);
+      }
+    }
+  }
+
+  public void onSave(@Observes @Named(RequestEvent.SAVE) PostRequest event) {
+    reschedule(event);
+  }
+
+  public void onRemove(@Observes @Named(RequestEvent.REMOVE) PostRequest event) {
+    reschedule(event);
+  }
+
+  /** Apply the changes of the schedules to the job store, shared by all the nodes. */
+  private void reschedule(PostRequest event) {
+    if (scheduler == null || !MetaSchedule.class.equals(event.getRequest().getBeanClass())) {
+      return;
+    }
+    try {
+      schedule(scheduler);
+    } catch (SchedulerException e) {
+      log.error("Unable to schedule the cluster jobs", e);
+    }
+  }
+
+  public Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Create a node of the cluster, the Quartz tables are created first if missing.
+   *
+   * @param instanceId the unique id of the node, generated if null
+   * @return the scheduler, not started
+   */
+  public static Scheduler create(String instanceId) throws SchedulerException {
+    final AppSettings settings = AppSettings.get();
+    final String id = StringUtils.isBlank(instanceId) ? UUID.randomUUID().toString() : instanceId;
+    final String dataSource = settings.get("quartz.cluster.datasource", "default");
+    final String url = settings.get("db." + dataSource + ".url");
+    final String user = settings.get("db." + dataSource + ".user");
+    final String password = settings.get("db." + dataSource + ".password");
+    final String prefix = settings.get("quartz.cluster.table-prefix", "QRTZ_");
+    final int threads = settings.getInt("quartz.thread-count", 3);
+    final Dialect dialect = Dialect.of(url);
+
+    createTables(url, user, password, prefix, dialect);
+
+    final String ds = "cluster_" + id;
+    final Properties props = new Properties();
+    props.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, CLUSTER_NAME);
+    props.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_ID, id);
+    props.setProperty(
+        StdSchedulerFactory.PROP_SCHED_IDLE_WAIT_TIME,
+        settings.get("quartz.cluster.idle-wait", "30000"));
+    props.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threads));
+    props.setProperty("org.quartz.jobStore.class", "org.quartz.impl.jdbcjobstore.JobStoreTX");
+    props.setProperty("org.quartz.jobStore.driverDelegateClass", dialect.delegate);
+    props.setProperty("org.quartz.jobStore.dataSource", ds);
+    props.setProperty("org.quartz.jobStore.tablePrefix", prefix);
+    props.setProperty("org.quartz.jobStore.isClustered", "true");
+    props.setProperty(
+        "org.quartz.jobStore.clusterCheckinInterval",
+        settings.get("quartz.cluster.checkin-interval", "15000"));
+    props.setProperty(
+        "org.quartz.jobStore.misfireThreshold",
+        settings.get("quartz.cluster.misfire-threshold", "60000"));
+    props.setProperty("org.quartz.dataSource." + ds + ".provider", "hikaricp");
+    props.setProperty(
+        "org.quartz.dataSource." + ds + ".driver", settings.get("db." + dataSource + ".driver"));
+    props.setProperty("org.quartz.dataSource." + ds + ".URL", url);
+    props.setProperty("org.quartz.dataSource." + ds + ".user", nonNull(user));
+    props.setProperty("org.quartz.dataSource." + ds + ".password", nonNull(password));
+    // the job threads, plus the misfire handler and the cluster manager
+    props.setProperty(
+        "org.quartz.dataSource." + ds + ".maxConnections", String.valueOf(threads + 2));
+
+    final Scheduler created = new StdSchedulerFactory(props).getScheduler();
+    created.setJobFactory(new GuiceJobFactory());
+
+    log.info("Cluster scheduler node created: {}", id);
+    return created;
+  }
+
+  /**
+   * Schedule the active {@link MetaSchedule}s, replacing the jobs already stored and removing the
+   * jobs no longer scheduled.
+   */
+  public static void schedule(Scheduler scheduler) throws SchedulerException {
+    final List<MetaSchedule> schedules =
+        Query.of(MetaSchedule.class).filter("self.active = true").fetch();
+    final Set<JobKey> keys = new HashSet<>();
+
+    for (MetaSchedule schedule : schedules) {
+      final Class<? extends Job> jobClass;
+      try {
+        jobClass = Class.forName(schedule.getJob()).asSubclass(Job.class);
+      } catch (ClassNotFoundException | ClassCastException e) {
+        log.error("Invalid job class for schedule {}: {}", schedule.getName(), schedule.getJob());
+        continue;
+      }
+
+      final JobDataMap data = new JobDataMap();
+      if (schedule.getParams() != null) {
+        for (MetaScheduleParam param : schedule.getParams()) {
+          data.put(param.getName(), param.getValue());
+        }
+      }
+
+      final JobKey key = JobKey.jobKey(schedule.getName(), GROUP);
+      final JobDetail detail =
+          JobBuilder.newJob(jobClass)
+              .withIdentity(key)
+              .withDescription(schedule.getDescription())
+              .usingJobData(data)
+              .requestRecovery()
+              .build();
+      final Trigger trigger =
+          TriggerBuilder.newTrigger()
+              .withIdentity(schedule.getName(), GROUP)
+              .withSchedule(
+                  CronScheduleBuilder.cronSchedule(schedule.getCron())
+                      .withMisfireHandlingInstructionFireAndProceed())
+              .build();
+
+      scheduler.scheduleJob(detail, Set.of(trigger), true);
+      keys.add(key);
+    }
+
+    for (JobKey key : scheduler.getJobKeys(GroupMatcher.jobGroupEquals(GROUP))) {
+      // the dispatched partitions (name#index) are not durable, they go away once run
+      if (!keys.contains(key) && !key.getName().contains("#")) {
+        scheduler.deleteJob(key);
+      }
+    }
+
+    log.info("Cluster scheduler: {} jobs scheduled", keys.size());
+  }
+
+  /**
+   * Create the Quartz tables if missing. Several nodes may start at once on an empty database: when
+   * the creation fails, it is a success if another node created the tables meanwhile.
+   */
+  private static void createTables(
+      String url, String user, String password, String prefix, Dialect dialect)
+      throws SchedulerException {
+    try (Connection connection = DriverManager.getConnection(url, user, password)) {
+      if (tablesExist(connection, prefix)) {
+        return;
+      }
+
+      final String script;
+      try (InputStream in =
+          ClusterScheduler.class.getClassLoader().getResourceAsStream(SCRIPTS + dialect.script)) {
+        if (in == null) {
+          throw new SchedulerException("Quartz tables script not found: " + dialect.script);
+        }
+        script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      }
+
+      connection.setAutoCommit(false);
+      try (Statement stmt = connection.createStatement()) {
+        for (String sql : statements(script)) {
+          stmt.execute(sql.replace("QRTZ_", prefix).replace("qrtz_", prefix.toLowerCase()));
+        }
+        connection.commit();
+        log.info("Quartz tables created");
+      } catch (SQLException e) {
+        connection.rollback();
+        connection.setAutoCommit(true);
+        if (!awaitTables(connection, prefix)) {
+          throw e;
+        }
+        log.info("Quartz tables created by another node");
+      }
+    } catch (SQLException | IOException e) {
+      throw new SchedulerException("Unable to create the Quartz tables", e);
+    }
+  }
+
+  private static boolean tablesExist(Connection connection, String prefix) throws SQLException {
+    final DatabaseMetaData meta = connection.getMetaData();
+    for (String table : new String[] {prefix + "LOCKS", (prefix + "LOCKS").toLowerCase()}) {
+      try (ResultSet tables = meta.getTables(null, null, table, null)) {
+        if (tables.next()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Wait for the tables created by another node, which may still be running its script when the
+   * database has no transactional DDL.
+   */
+  private static boolean awaitTables(Connection connection, String prefix) throws SQLException {
+    final long deadline = System.currentTimeMillis() + CREATE_TABLES_TIMEOUT;
+    while (!tablesExist(connection, prefix)) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** The create statements of a Quartz tables script. */
+  private static List<String> statements(String script) {
+    final StringBuilder sql = new StringBuilder();
+    for (String line : script.split("\\R")) {
+      final String trimmed = line.trim();
+      if (!trimmed.startsWith("--") && !trimmed.startsWith("#")) {
+        sql.append(line).append('\n');
+      }
+    }
+    final List<String> statements = new ArrayList<>();
+    for (String statement : sql.toString().split(";")) {
+      final String trimmed = statement.trim();
+      final String upper = trimmed.toUpperCase();
+      // the scripts drop existing tables first, the tables were found missing
+      if (!trimmed.isEmpty()
+          && !upper.startsWith("DROP")
+          && !upper.startsWith("DELETE")
+          && !upper.startsWith("COMMIT")) {
+        statements.add(trimmed);
+      }
+    }
+    return statements;
+  }
+
+  private static String nonNull(String value) {
+    return value == null ? "" : value;
+  }
+
+  private enum Dialect {
+    POSTGRESQL("jdbc:postgresql:", "PostgreSQLDelegate", "tables_postgres.sql"),
+    HSQLDB("jdbc:hsqldb:", "HSQLDBDelegate", "tables_hsqldb.sql"),
+    MYSQL("jdbc:mysql:", "StdJDBCDelegate", "tables_mysql_innodb.sql"),
+    ORACLE("jdbc:oracle:", "oracle.OracleDelegate", "tables_oracle.sql");
+
+    private final String prefix;
+
+    private final String delegate;
+
+    private final String script;
+
+    Dialect(String prefix, String delegate, String script) {
+      this.prefix = prefix;
+      this.delegate = "org.quartz.impl.jdbcjobstore." + delegate;
+      this.script = script;
+    }
+
+    static Dialect of(String url) throws SchedulerException {
+      for (Dialect dialect : values()) {
+        if (url != null && url.startsWith(dialect.prefix)) {
+          return dialect;
+        }
+      }
+      throw new SchedulerException("Unsupported database for the cluster scheduler: " + url);
+    }
+  }
+
+  /** Creates the job instances with Guice, so they can be injected. */
+  private static final class GuiceJobFactory implements JobFactory {
+
+    @Override
+    public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler)
+        throws SchedulerException {
+      return Beans.get(bundle.getJobDetail().getJobClass());
+    }
+  }
+}
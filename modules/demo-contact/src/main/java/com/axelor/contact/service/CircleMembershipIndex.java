@@ -0,0 +1,230 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.db.JPA;
+import com.axelor.event.Observes;
+import com.axelor.events.StartupEvent;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the {@code Contact.circles} memberships, one {@link IdBitmap} of contact ids
+ * per circle.
+ *
+ * <p>The index is loaded at startup and kept up to date by the contact repository, once the changes
+ * are committed. Records written outside of the repository (data import, bulk updates) are only
+ * seen after {@link #load()}.
+ *
+ * <p>The index lives in the memory of each node: on a cluster, a node only sees the memberships
+ * saved on the other nodes after {@link #load()}, the circle filters may miss or keep them until
+ * then.
+ */
+@Singleton
+public class CircleMembershipIndex {
+
+  private static final int PAGE_SIZE = 50_000;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Map<Long, IdBitmap> circles = new HashMap<>();
+
+  private IdBitmap contacts = new IdBitmap();
+
+  public void onStartup(@Observes StartupEvent event) {
+    load();
+  }
+
+  /** (Re)load the whole index from the database. */
+  public void load() {
+    final long start = System.currentTimeMillis();
+    final Map<Long, IdBitmap> loadedCircles = new HashMap<>();
+    final IdBitmap loadedContacts = new IdBitmap();
+
+    final Long maxId =
+        JPA.em().createQuery("SELECT MAX(self.id) FROM Contact self", Long.class).getSingleResult();
+
+    for (long from = 0; maxId != null && from < maxId; from += PAGE_SIZE) {
+      final List<Object[]> rows =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, circle.id FROM Contact self LEFT JOIN self.circles circle "
+                      + "WHERE self.id > :from AND self.id <= :to",
+                  Object[].class)
+              .setParameter("from", from)
+              .setParameter("to", from + PAGE_SIZE)
+              .getResultList();
+      for (Object[] row : rows) {
+        final long contactId = (Long) row[0];
+        loadedContacts.add(contactId);
+        if (row[1] != null) {
+          loadedCircles.computeIfAbsent((Long) row[1], k -> new IdBitmap()).add(contactId);
+        }
+      }
+    }
+
+    lock.writeLock().lock();
+    try {
+      circles = loadedCircles;
+      contacts = loadedContacts;
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    log.info(
+        "Circle membership index loaded: {} contacts, {} circles in {} ms",
+        loadedContacts.cardinality(),
+        loadedCircles.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Record the circles of a contact.
+   *
+   * @param contactId the contact id
+   * @param circleIds the ids of all the circles the contact belongs to
+   */
+  public void update(Long contactId, Collection<Long> circleIds) {
+    lock.writeLock().lock();
+    try {
+      contacts.add(contactId);
+      for (Map.Entry<Long, IdBitmap> entry : circles.entrySet()) {
+        if (!circleIds.contains(entry.getKey())) {
+          entry.getValue().remove(contactId);
+        }
+      }
+      for (Long circleId : circleIds) {
+        circles.computeIfAbsent(circleId, k -> new IdBitmap()).add(contactId);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(Long contactId) {
+    lock.writeLock().lock();
+    try {
+      contacts.remove(contactId);
+      circles.values().forEach(bitmap -> bitmap.remove(contactId));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Count the contacts of a segment.
+   *
+   * @param all the circles the contacts must all belong to
+   * @param any the circles the contacts must belong to at least one of, ignored if empty
+   * @param none the circles the contacts must not belong to
+   * @return the number of matching contacts
+   */
+  public long count(Collection<Long> all, Collection<Long> any, Collection<Long> none) {
+    return segment(all, any, none).cardinality();
+  }
+
+  /**
+   * Get a page of the contact ids of a segment, in ascending order.
+   *
+   * @see #count(Collection, Collection, Collection)
+   */
+  public long[] page(
+      Collection<Long> all, Collection<Long> any, Collection<Long> none, long offset, int limit) {
+    return segment(all, any, none).page(offset, limit);
+  }
+
+  /**
+   * Get the contact ids of a segment, restricted to the contacts allowed by record rules.
+   *
+   * <p>The index doesn't know the rules: the ids of the allowed contacts are read from the database
+   * on every call, page by page, and intersected with the segment.
+   *
+   * @param rules the record rules of the user, null if no rule restricts the contacts
+   * @see #count(Collection, Collection, Collection)
+   */
+  public IdBitmap segment(
+      Collection<Long> all, Collection<Long> any, Collection<Long> none, RecordRules rules) {
+    final IdBitmap result = segment(all, any, none);
+    if (rules == null) {
+      return result;
+    }
+    final IdBitmap allowed = new IdBitmap();
+    final Long maxId =
+        JPA.em().createQuery("SELECT MAX(self.id) FROM Contact self", Long.class).getSingleResult();
+    for (long from = 0; maxId != null && from < maxId; from += PAGE_SIZE) {
+      rules
+          .bind(
+              JPA.em()
+                  .createQuery(
+                      "SELECT self.id FROM Contact self "
+                          + "WHERE self.id > :from AND self.id <= :to AND "
+                          + rules.getCondition(),
+                      Long.class))
+          .setParameter("from", from)
+          .setParameter("to", from + PAGE_SIZE)
+          .getResultList()
+          .forEach(allowed::add);
+    }
+    return result.and(allowed);
+  }
+
+  private IdBitmap segment(Collection<Long> all, Collection<Long> any, Collection<Long> none) {
+    lock.readLock().lock();
+    try {
+      IdBitmap result = null;
+      for (Long circleId : nonNull(all)) {
+        final IdBitmap members = circles.getOrDefault(circleId, new IdBitmap());
+        result = result == null ? members.copy() : result.and(members);
+      }
+      if (!nonNull(any).isEmpty()) {
+        IdBitmap union = new IdBitmap();
+        for (Long circleId : any) {
+          union = union.or(circles.getOrDefault(circleId, new IdBitmap()));
+        }
+        result = result == null ? union : result.and(union);
+      }
+      if (result == null) {
+        result = contacts.copy();
+      }
+      for (Long circleId : nonNull(none)) {
+        final IdBitmap members = circles.get(circleId);
+        if (members != null) {
+          result = result.andNot(members);
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static Collection<Long> nonNull(Collection<Long> ids) {
+    return ids == null ? Collections.emptyList() : ids;
+  }
+}
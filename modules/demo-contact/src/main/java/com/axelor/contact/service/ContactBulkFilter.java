@@ -0,0 +1,191 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.contact.db.Contact;
+import com.axelor.db.Model;
+import com.axelor.db.mapper.Adapter;
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
+import com.axelor.db.mapper.PropertyType;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The contacts matched by a bulk update.
+ *
+ * <p>It is built from a list of contact ids or from criteria on the stored fields of the contact,
+ * never from a JPQL string: the condition is generated here and every value is bound as a
+ * parameter. A criterion is a map with a {@code fieldName}, an {@code operator} and a {@code
+ * value}; a many-to-one field is compared by id. The criteria are combined with {@code AND}, no
+ * criteria matches all the contacts.
+ *
+ * <p>A list of ids is kept aside, sorted, rather than bound as one {@code IN} parameter: the update
+ * splits it in chunks, which keeps the number of bind parameters of each query bounded.
+ */
+public final class ContactBulkFilter {
+
+  private static final Map<String, String> OPERATORS =
+      ImmutableMap.<String, String>builder()
+          .put("=", "=")
+          .put("!=", "<>")
+          .put("<", "<")
+          .put("<=", "<=")
+          .put(">", ">")
+          .put(">=", ">=")
+          .put("like", "LIKE")
+          .put("in", "IN")
+          .put("isNull", "IS NULL")
+          .put("notNull", "IS NOT NULL")
+          .build();
+
+  private final List<String> clauses = new ArrayList<>();
+
+  private final Map<String, Object> params = new HashMap<>();
+
+  private List<Long> ids;
+
+  private ContactBulkFilter() {}
+
+  /** Match all the contacts. */
+  public static ContactBulkFilter all() {
+    return new ContactBulkFilter();
+  }
+
+  /** Match the contacts with the given ids. */
+  public static ContactBulkFilter ids(Collection<Long> ids) {
+    final ContactBulkFilter filter = new ContactBulkFilter();
+    filter.ids =
+        Collections.unmodifiableList(
+            ids.stream().filter(Objects::nonNull).distinct().sorted().collect(Collectors.toList()));
+    return filter;
+  }
+
+  /**
+   * Match the contacts satisfying all the criteria.
+   *
+   * @param criteria the criteria, maps with a {@code fieldName}, an {@code operator} and a {@code
+   *     value}
+   * @throws IllegalArgumentException if a field or an operator is not supported
+   */
+  public static ContactBulkFilter parse(List<Map<String, Object>> criteria) {
+    final ContactBulkFilter filter = new ContactBulkFilter();
+    if (criteria != null) {
+      for (Map<String, Object> criterion : criteria) {
+        filter.add(
+            (String) criterion.get("fieldName"),
+            (String) criterion.get("operator"),
+            criterion.get("value"));
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * Add a criterion.
+   *
+   * @throws IllegalArgumentException if the field or the operator is not supported, or if the
+   *     filter matches a list of ids
+   */
+  public ContactBulkFilter add(String field, String operator, Object value) {
+    if (ids != null) {
+      throw new IllegalArgumentException("A list of ids can't be combined with criteria");
+    }
+    final Property property = field == null ? null : Mapper.of(Contact.class).getProperty(field);
+    if (property == null
+        || property.isVirtual()
+        || property.isCollection()
+        || property.getType() == PropertyType.BINARY) {
+      throw new IllegalArgumentException("Field can't be filtered: " + field);
+    }
+    final String op = operator == null ? null : OPERATORS.get(operator);
+    if (op == null || ("LIKE".equals(op) && property.getType() != PropertyType.STRING)) {
+      throw new IllegalArgumentException("Operator not supported: " + operator);
+    }
+
+    final String path = property.isReference() ? "self." + field + ".id" : "self." + field;
+    if (op.startsWith("IS ")) {
+      clauses.add(String.format("%s %s", path, op));
+      return this;
+    }
+
+    final String param = "_p" + params.size();
+    if ("IN".equals(op)) {
+      if (!(value instanceof Collection)) {
+        throw new IllegalArgumentException("A list of values is expected: " + field);
+      }
+      final List<Object> values = new ArrayList<>();
+      for (Object item : (Collection<?>) value) {
+        values.add(adapt(property, item));
+      }
+      // an empty IN () is not valid JPQL, and matches nothing anyway
+      clauses.add(values.isEmpty() ? "1 = 0" : String.format("%s IN (:%s)", path, param));
+      if (!values.isEmpty()) {
+        params.put(param, values);
+      }
+      return this;
+    }
+
+    if (value == null) {
+      throw new IllegalArgumentException("A value is expected: " + field);
+    }
+    clauses.add(String.format("%s %s :%s", path, op, param));
+    params.put(param, adapt(property, value));
+    return this;
+  }
+
+  /** The JPQL condition on {@code self}, without the {@link #getIds() ids}. */
+  public String getCondition() {
+    return clauses.isEmpty() ? "1 = 1" : "(" + String.join(") AND (", clauses) + ")";
+  }
+
+  /** The named parameters of the condition. */
+  public Map<String, Object> getParams() {
+    return params;
+  }
+
+  /** The ids of the contacts to match, sorted, or null to match on the condition only. */
+  public List<Long> getIds() {
+    return ids;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Object adapt(Property property, Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (property.isReference()) {
+      if (value instanceof Model) {
+        return ((Model) value).getId();
+      }
+      if (value instanceof Map) {
+        return adapt(property, ((Map<String, Object>) value).get("id"));
+      }
+      return Long.valueOf(value.toString());
+    }
+    return Adapter.adapt(value, property.getJavaType(), property.getJavaType(), null);
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.app.AppSettings;
+import com.axelor.auth.AuthUtils;
+import com.axelor.auth.db.User;
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.contact.db.Contact;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaSecurity;
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
+import com.axelor.inject.Beans;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.inject.persist.UnitOfWork;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import javax.inject.Singleton;
+import javax.persistence.Cache;
+import javax.persistence.TypedQuery;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk update of a field of many contacts.
+ *
+ * <p>Unlike the generic mass update, the matching contacts are updated in chunks of {@code
+ * contact.bulk.chunk-size} ids, walked in id order, one short transaction each. A list of ids is
+ * split in Java, each chunk is updated by id without querying the list again. Every chunk is
+ * written with a JDBC batch update that also bumps the version and the audit columns, then only the
+ * updated contacts are evicted from the second level cache.
+ *
+ * <p>The JDBC update bypasses the repository, the computed fields and the message tracking, so only
+ * the fields of {@link #FIELDS} can be updated: none of them is used by a computed field or by the
+ * contact repository. The write permission is checked on the ids of every chunk, the contacts the
+ * user can't write are skipped.
+ *
+ * <p>The updates started from the contact grid run in the background, one at a time, see {@link
+ * #start(String, Object, ContactBulkFilter)}. Each one is recorded as a {@link BatchRun}, whose
+ * items are updated after every chunk, so that its progress can be followed from the batch runs.
+ */
+@Singleton
+public class ContactBulkUpdateService {
+
+  /** The fields that can be bulk updated. */
+  public static final Set<String> FIELDS = ImmutableSet.of("company");
+
+  /** The job name of the batch runs, followed by the field. */
+  public static final String RUN_PREFIX = "contact-bulk-update:";
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final int chunkSize;
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "contact-bulk-update");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public ContactBulkUpdateService() {
+    this.chunkSize = Math.max(1, AppSettings.get().getInt("contact.bulk.chunk-size", 1000));
+  }
+
+  /**
+   * Count the contacts an update would change, without changing them.
+   *
+   * @param filter the contacts to count
+   * @return the number of matching contacts
+   */
+  public long count(ContactBulkFilter filter) {
+    if (filter.getIds() == null) {
+      return count(filter, null);
+    }
+    long count = 0;
+    for (List<Long> ids : Lists.partition(filter.getIds(), chunkSize)) {
+      count += count(filter, ids);
+    }
+    return count;
+  }
+
+  private long count(ContactBulkFilter filter, List<Long> ids) {
+    final TypedQuery<Long> query =
+        JPA.em()
+            .createQuery(
+                "SELECT COUNT(self.id) FROM Contact self WHERE "
+                    + filter.getCondition()
+                    + (ids == null ? "" : " AND self.id IN (:_ids)"),
+                Long.class);
+    filter.getParams().forEach(query::setParameter);
+    if (ids != null) {
+      query.setParameter("_ids", ids);
+    }
+    return query.getSingleResult();
+  }
+
+  /**
+   * Start a bulk update in the background, as the current user.
+   *
+   * @param field one of {@link #FIELDS}
+   * @param value the new value, an id or a record for a many-to-one
+   * @param filter the contacts to update
+   * @return the id of the {@link BatchRun} recording the update
+   * @throws IllegalArgumentException if the field can't be bulk updated
+   */
+  public Long start(String field, Object value, ContactBulkFilter filter) {
+    if (!FIELDS.contains(field)) {
+      throw new IllegalArgumentException("Field can't be bulk updated: " + field);
+    }
+    final BatchRun run = new BatchRun();
+    run.setJobName(RUN_PREFIX + field);
+    run.setStartedOn(LocalDateTime.now());
+    run.setStatus(BatchStatus.RUNNING);
+    run.setPartitionCount(1);
+    run.setItems(0L);
+    JPA.runInTransaction(() -> JPA.save(run));
+    final Long runId = run.getId();
+
+    final Runnable task = () -> runInBackground(runId, field, value, filter);
+    // the permissions and the audit columns are those of the current user
+    final Subject subject = ThreadContext.getSubject();
+    executor.submit(subject == null ? task : subject.associateWith(task));
+    return runId;
+  }
+
+  private void runInBackground(Long runId, String field, Object value, ContactBulkFilter filter) {
+    final long start = System.nanoTime();
+    long updated = 0;
+    RuntimeException failure = null;
+    try {
+      updated =
+          update(field, value, filter, count -> JPA.runInTransaction(() -> progress(runId, count)));
+    } catch (RuntimeException e) {
+      failure = e;
+      log.error("Contact bulk update of {} failed", field, e);
+    }
+
+    final long items = updated;
+    final long elapsed = System.nanoTime() - start;
+    final RuntimeException error = failure;
+    try {
+      JPA.runInTransaction(
+          () -> {
+            final BatchRun run = JPA.em().find(BatchRun.class, runId);
+            JPA.em().refresh(run);
+            run.setEndedOn(LocalDateTime.now());
+            run.setStatus(error == null ? BatchStatus.DONE : BatchStatus.FAILED);
+            run.setItems(items);
+            run.setItemsPerSecond(
+                elapsed == 0
+                    ? BigDecimal.ZERO
+                    : BigDecimal.valueOf(items * 1_000_000_000.0 / elapsed)
+                        .setScale(2, RoundingMode.HALF_UP));
+            if (error != null) {
+              run.setMessage(error.toString());
+            }
+          });
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+
+  private void progress(Long runId, long items) {
+    JPA.em()
+        .createQuery("UPDATE BatchRun self SET self.items = :items WHERE self.id = :id")
+        .setParameter("items", items)
+        .setParameter("id", runId)
+        .executeUpdate();
+  }
+
+  /** @see #update(String, Object, ContactBulkFilter, LongConsumer) */
+  public long update(String field, Object value, ContactBulkFilter filter) {
+    return update(field, value, filter, null);
+  }
+
+  /**
+   * Set a field of the matching contacts.
+   *
+   * @param field one of {@link #FIELDS}
+   * @param value the new value, an id or a record for a many-to-one
+   * @param filter the contacts to update
+   * @param progress called with the number of contacts updated so far after each chunk, may be null
+   * @return the number of updated contacts
+   * @throws IllegalArgumentException if the field can't be bulk updated
+   */
+  public long update(String field, Object value, ContactBulkFilter filter, LongConsumer progress) {
+    if (!FIELDS.contains(field)) {
+      throw new IllegalArgumentException("Field can't be bulk updated: " + field);
+    }
+
+    final Property property = Mapper.of(Contact.class).getProperty(field);
+    final AbstractEntityPersister persister = persister();
+    final Object columnValue = ContactBulkFilter.adapt(property, value);
+    final User user = AuthUtils.getUser();
+    final String sql =
+        String.format(
+            "UPDATE %s SET %s = ?, %s = %s + 1, %s = ?, %s = ? WHERE %s = ?",
+            persister.getTableName(),
+            persister.getPropertyColumnNames(field)[0],
+            persister.getVersionColumnName(),
+            persister.getVersionColumnName(),
+            persister.getPropertyColumnNames("updatedOn")[0],
+            persister.getPropertyColumnNames("updatedBy")[0],
+            persister.getIdentifierColumnNames()[0]);
+
+    final long start = System.currentTimeMillis();
+    final long total = filter.getIds() == null ? count(filter) : filter.getIds().size();
+    final Cache cache = JPA.em().getEntityManagerFactory().getCache();
+
+    long updated = 0;
+    long skipped = 0;
+    long lastId = 0;
+    while (true) {
+      final List<Long> chunk = nextChunk(filter, lastId);
+      if (chunk.isEmpty()) {
+        break;
+      }
+      lastId = chunk.get(chunk.size() - 1);
+
+      final List<Long> ids = permitted(chunk);
+      skipped += chunk.size() - ids.size();
+      if (ids.isEmpty()) {
+        continue;
+      }
+
+      final Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+      final long[] rows = {0};
+      JPA.runInTransaction(
+          () ->
+              JPA.jdbcWork(
+                  connection -> {
+                    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                      for (Long id : ids) {
+                        stmt.setObject(1, columnValue);
+                        stmt.setTimestamp(2, now);
+                        if (user == null) {
+                          stmt.setNull(3, Types.BIGINT);
+                        } else {
+                          stmt.setLong(3, user.getId());
+                        }
+                        stmt.setLong(4, id);
+                        stmt.addBatch();
+                      }
+                      for (int count : stmt.executeBatch()) {
+                        // the ids of a list may not exist
+                        rows[0] += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                      }
+                    }
+                  }));
+      ids.forEach(id -> cache.evict(Contact.class, id));
+
+      updated += rows[0];
+      if (progress != null) {
+        progress.accept(updated);
+      }
+      log.info("Contact bulk update of {}: {}/{}", field, updated + skipped, total);
+    }
+
+    // the session may hold stale copies of the updated contacts
+    JPA.em().clear();
+
+    log.info(
+        "Contact bulk update of {}: {} contacts updated, {} not permitted, in {} ms",
+        field,
+        updated,
+        skipped,
+        System.currentTimeMillis() - start);
+    return updated;
+  }
+
+  private List<Long> nextChunk(ContactBulkFilter filter, long lastId) {
+    final List<Long> ids = filter.getIds();
+    if (ids != null) {
+      // the next ids of the sorted list, a query would bind the whole list for every chunk
+      int from = Collections.binarySearch(ids, lastId + 1);
+      from = from < 0 ? -from - 1 : from;
+      return ids.subList(from, Math.min(ids.size(), from + chunkSize));
+    }
+    final TypedQuery<Long> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM Contact self WHERE "
+                    + filter.getCondition()
+                    + " AND self.id > :_lastId ORDER BY self.id",
+                Long.class)
+            .setParameter("_lastId", lastId)
+            .setMaxResults(chunkSize);
+    filter.getParams().forEach(query::setParameter);
+    return query.getResultList();
+  }
+
+  private List<Long> permitted(List<Long> ids) {
+    final JpaSecurity security = Beans.get(JpaSecurity.class);
+    if (security.isPermitted(JpaSecurity.CAN_WRITE, Contact.class, ids.toArray(new Long[0]))) {
+      return ids;
+    }
+    // some record rule denies part of the chunk, check the contacts one by one
+    final List<Long> permitted = new ArrayList<>();
+    for (Long id : ids) {
+      if (security.isPermitted(JpaSecurity.CAN_WRITE, Contact.class, id)) {
+        permitted.add(id);
+      }
+    }
+    return permitted;
+  }
+
+  private AbstractEntityPersister persister() {
+    return (AbstractEntityPersister)
+        JPA.em()
+            .getEntityManagerFactory()
+            .unwrap(SessionFactoryImplementor.class)
+            .getMetamodel()
+            .entityPersister(Contact.class);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.google.common.base.MoreObjects;
+import java.util.Objects;
+
+/**
+ * A candidate pair of duplicate contacts, as found by {@link ContactDuplicateFinder}.
+ *
+ * <p>Two candidates are equal when they pair the same contacts, whatever their score.
+ */
+public class ContactDuplicate {
+
+  private final long firstId;
+
+  private final long secondId;
+
+  private final double score;
+
+  public ContactDuplicate(long firstId, long secondId, double score) {
+    this.firstId = Math.min(firstId, secondId);
+    this.secondId = Math.max(firstId, secondId);
+    this.score = score;
+  }
+
+  public long getFirstId() {
+    return firstId;
+  }
+
+  public long getSecondId() {
+    return secondId;
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ContactDuplicate)) {
+      return false;
+    }
+    final ContactDuplicate other = (ContactDuplicate) obj;
+    return firstId == other.firstId && secondId == other.secondId;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(firstId, secondId);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(getClass())
+        .add("firstId", firstId)
+        .add("secondId", secondId)
+        .add("score", score)
+        .toString();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The best candidate duplicates found by the scans, at most {@code limit} of them.
+ *
+ * <p>The pairs are kept once, with their best score, and ordered by score: once the limit is
+ * reached, a better pair evicts the worst one. The memory used by a search is therefore bounded
+ * whatever the number of contacts. This class is thread-safe.
+ */
+public class ContactDuplicateCandidates {
+
+  private static final Comparator<ContactDuplicate> ORDER =
+      Comparator.comparingDouble(ContactDuplicate::getScore)
+          .thenComparingLong(ContactDuplicate::getFirstId)
+          .thenComparingLong(ContactDuplicate::getSecondId);
+
+  private final int limit;
+
+  /** the pairs, by themselves as they are equal whatever their score */
+  private final Map<ContactDuplicate, ContactDuplicate> pairs = new HashMap<>();
+
+  /** the pairs, worst first */
+  private final TreeSet<ContactDuplicate> ranked = new TreeSet<>(ORDER);
+
+  /** the score a new pair must exceed once full, read without locking */
+  private volatile double floor = -1;
+
+  public ContactDuplicateCandidates(int limit) {
+    this.limit = Math.max(1, limit);
+  }
+
+  /** Keep a candidate pair if it is among the best ones. */
+  public void offer(ContactDuplicate duplicate) {
+    if (duplicate.getScore() <= floor) {
+      return;
+    }
+    synchronized (this) {
+      final ContactDuplicate current = pairs.get(duplicate);
+      if (current != null) {
+        if (current.getScore() >= duplicate.getScore()) {
+          return;
+        }
+        ranked.remove(current);
+      }
+      pairs.put(duplicate, duplicate);
+      ranked.add(duplicate);
+      if (ranked.size() > limit) {
+        final ContactDuplicate worst = ranked.pollFirst();
+        pairs.remove(worst);
+      }
+      if (ranked.size() == limit) {
+        floor = ranked.first().getScore();
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return ranked.size();
+  }
+
+  /** The candidate pairs, best scores first. */
+  public synchronized List<ContactDuplicate> toList() {
+    return new ArrayList<>(ranked.descendingSet());
+  }
+}
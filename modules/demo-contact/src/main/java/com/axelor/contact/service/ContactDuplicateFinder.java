@@ -0,0 +1,343 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.common.StringUtils;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Sorted-neighbourhood duplicate detection over contact signatures.
+ *
+ * <p>For every blocking key the signatures are sorted by that key and each one is compared with the
+ * next {@code window - 1} signatures only, so a scan costs {@code O(n log n + n * window)}. The
+ * comparisons of a scan are split in ranges and run on a {@link ForkJoinPool}.
+ */
+public class ContactDuplicateFinder {
+
+  public static final int DEFAULT_WINDOW = 10;
+
+  public static final double DEFAULT_THRESHOLD = 0.9;
+
+  private static final int RANGE_SIZE = 2048;
+
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+  private static final Pattern NON_ALNUM = Pattern.compile("[^a-z0-9]+");
+
+  private static final Pattern NON_DIGIT = Pattern.compile("[^0-9]+");
+
+  /** The keys used to sort signatures, one scan per key. */
+  public enum BlockingKey {
+    NAME(Signature::getNameKey),
+    EMAIL(Signature::getEmail),
+    PHONE(Signature::getPhone);
+
+    private final Function<Signature, String> extractor;
+
+    BlockingKey(Function<Signature, String> extractor) {
+      this.extractor = extractor;
+    }
+
+    public String of(Signature signature) {
+      return extractor.apply(signature);
+    }
+  }
+
+  /** The normalized, comparable form of a contact. */
+  public static class Signature {
+
+    private final long id;
+    private final String name;
+    private final String nameKey;
+    private final String email;
+    private final String phone;
+    private final long profile;
+
+    public Signature(long id, String firstName, String lastName, String email, String phone) {
+      final String first = normalizeName(firstName);
+      final String last = normalizeName(lastName);
+      this.id = id;
+      this.name = (first + " " + last).trim();
+      this.nameKey = last.isEmpty() && first.isEmpty() ? null : last + " " + first;
+      this.email = normalizeEmail(email);
+      this.phone = normalizePhone(phone);
+      this.profile = profile(this.name);
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getNameKey() {
+      return nameKey;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public String getPhone() {
+      return phone;
+    }
+  }
+
+  private final ForkJoinPool pool;
+
+  private final int window;
+
+  private final double threshold;
+
+  public ContactDuplicateFinder(ForkJoinPool pool, int window, double threshold) {
+    this.pool = pool;
+    this.window = Math.max(2, window);
+    this.threshold = threshold;
+  }
+
+  /**
+   * Scan the given signatures with all the blocking keys.
+   *
+   * @param signatures the signatures to compare
+   * @return the candidate pairs scoring at least the threshold
+   */
+  public List<ContactDuplicate> find(List<Signature> signatures) {
+    final ContactDuplicateCandidates found = new ContactDuplicateCandidates(Integer.MAX_VALUE);
+    for (BlockingKey key : BlockingKey.values()) {
+      scan(signatures, key, found);
+    }
+    return found.toList();
+  }
+
+  /**
+   * Scan the given signatures with a single blocking key and offer the candidate pairs to the
+   * given collector, which keeps the pairs found by several keys once.
+   *
+   * @param signatures the signatures to compare
+   * @param key the blocking key to sort on
+   * @param found the candidates to update
+   */
+  public void scan(List<Signature> signatures, BlockingKey key, ContactDuplicateCandidates found) {
+    final Signature[] sorted =
+        signatures.stream().filter(s -> key.of(s) != null).toArray(Signature[]::new);
+    Arrays.parallelSort(sorted, Comparator.comparing(key::of));
+    pool.invoke(new CompareRange(sorted, 0, sorted.length, found));
+  }
+
+  private class CompareRange extends RecursiveAction {
+
+    private final Signature[] sorted;
+    private final int from;
+    private final int to;
+    private final ContactDuplicateCandidates found;
+
+    CompareRange(Signature[] sorted, int from, int to, ContactDuplicateCandidates found) {
+      this.sorted = sorted;
+      this.from = from;
+      this.to = to;
+      this.found = found;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > RANGE_SIZE) {
+        final int middle = (from + to) >>> 1;
+        invokeAll(
+            new CompareRange(sorted, from, middle, found),
+            new CompareRange(sorted, middle, to, found));
+        return;
+      }
+      for (int i = from; i < to; i++) {
+        final int last = Math.min(sorted.length, i + window);
+        for (int j = i + 1; j < last; j++) {
+          final Signature a = sorted[i];
+          final Signature b = sorted[j];
+          if (a.getId() == b.getId()) {
+            continue;
+          }
+          final double score = score(a, b, threshold);
+          if (score >= threshold) {
+            found.offer(new ContactDuplicate(a.getId(), b.getId(), score));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the similarity score of two signatures, between 0 and 1.
+   *
+   * <p>A shared email is considered a sure match, a shared phone raises the name similarity.
+   */
+  public static double score(Signature a, Signature b) {
+    if (a.getEmail() != null && a.getEmail().equals(b.getEmail())) {
+      return 1.0;
+    }
+    double score = jaroWinkler(a.getName(), b.getName());
+    if (a.getPhone() != null && a.getPhone().equals(b.getPhone())) {
+      score = Math.min(1.0, score + 0.15);
+    }
+    return score;
+  }
+
+  /**
+   * Same as {@link #score(Signature, Signature)} but returns 0 without computing the name
+   * similarity when its upper bound, derived from the character profiles, is below the minimum.
+   */
+  static double score(Signature a, Signature b, double minimum) {
+    if (a.getEmail() != null && a.getEmail().equals(b.getEmail())) {
+      return 1.0;
+    }
+    final boolean samePhone = a.getPhone() != null && a.getPhone().equals(b.getPhone());
+    if (upperBound(a, b) < (samePhone ? minimum - 0.15 : minimum)) {
+      return 0.0;
+    }
+    return score(a, b);
+  }
+
+  /**
+   * The Jaro-Winkler similarity of two names can't exceed the one obtained with all the shared
+   * characters matching, without transpositions, and with the longest common prefix bonus.
+   */
+  private static double upperBound(Signature a, Signature b) {
+    final int len1 = a.getName().length();
+    final int len2 = b.getName().length();
+    if (len1 == 0 || len2 == 0 || a.profile < 0 || b.profile < 0) {
+      return 1.0;
+    }
+    int matches = 0;
+    for (int shift = 0; shift < 64; shift += 4) {
+      matches += Math.min((a.profile >>> shift) & 0xF, (b.profile >>> shift) & 0xF);
+    }
+    final double m = Math.min(matches, Math.min(len1, len2));
+    final double jaro = (m / len1 + m / len2 + 1.0) / 3.0;
+    return jaro + 0.4 * (1.0 - jaro);
+  }
+
+  /**
+   * Count the characters of the given name in 16 buckets of 4 bits, or return -1 when a bucket
+   * overflows.
+   */
+  private static long profile(String name) {
+    long profile = 0;
+    for (int i = 0; i < name.length(); i++) {
+      final int shift = (name.charAt(i) & 0xF) << 2;
+      if (((profile >>> shift) & 0xF) == 0xF) {
+        return -1;
+      }
+      profile += 1L << shift;
+    }
+    return profile;
+  }
+
+  public static String normalizeName(String value) {
+    if (StringUtils.isBlank(value)) {
+      return "";
+    }
+    String text = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+    text = DIACRITICS.matcher(text).replaceAll("").toLowerCase();
+    return NON_ALNUM.matcher(text).replaceAll(" ").trim();
+  }
+
+  public static String normalizeEmail(String value) {
+    if (StringUtils.isBlank(value) || value.indexOf('@') < 1) {
+      return null;
+    }
+    final String email = value.trim().toLowerCase();
+    final int at = email.indexOf('@');
+    String local = email.substring(0, at);
+    final int plus = local.indexOf('+');
+    if (plus > 0) {
+      local = local.substring(0, plus);
+    }
+    return local + email.substring(at);
+  }
+
+  public static String normalizePhone(String value) {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    final String digits = NON_DIGIT.matcher(value).replaceAll("");
+    // compare the subscriber part only, so that +33 6.. and 06.. match
+    return digits.length() < 6 ? null : digits.substring(Math.max(0, digits.length() - 9));
+  }
+
+  static double jaroWinkler(String s1, String s2) {
+    if (s1.equals(s2)) {
+      return 1.0;
+    }
+    final int len1 = s1.length();
+    final int len2 = s2.length();
+    if (len1 == 0 || len2 == 0) {
+      return 0.0;
+    }
+
+    final int range = Math.max(0, Math.max(len1, len2) / 2 - 1);
+    final boolean[] matched1 = new boolean[len1];
+    final boolean[] matched2 = new boolean[len2];
+
+    int matches = 0;
+    for (int i = 0; i < len1; i++) {
+      final int start = Math.max(0, i - range);
+      final int end = Math.min(len2, i + range + 1);
+      for (int j = start; j < end; j++) {
+        if (!matched2[j] && s1.charAt(i) == s2.charAt(j)) {
+          matched1[i] = true;
+          matched2[j] = true;
+          matches++;
+          break;
+        }
+      }
+    }
+    if (matches == 0) {
+      return 0.0;
+    }
+
+    int transpositions = 0;
+    for (int i = 0, k = 0; i < len1; i++) {
+      if (matched1[i]) {
+        while (!matched2[k]) {
+          k++;
+        }
+        if (s1.charAt(i) != s2.charAt(k)) {
+          transpositions++;
+        }
+        k++;
+      }
+    }
+
+    final double m = matches;
+    final double jaro = (m / len1 + m / len2 + (m - transpositions / 2.0) / m) / 3.0;
+
+    int prefix = 0;
+    while (prefix < Math.min(4, Math.min(len1, len2)) && s1.charAt(prefix) == s2.charAt(prefix)) {
+      prefix++;
+    }
+    return jaro + prefix * 0.1 * (1.0 - jaro);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.app.AppSettings;
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.db.ContactDuplicatePair;
+import com.axelor.contact.service.ContactDuplicateFinder.BlockingKey;
+import com.axelor.contact.service.ContactDuplicateFinder.Signature;
+import com.axelor.db.JPA;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds candidate duplicate contacts.
+ *
+ * <p>Contacts are read as compact {@link Signature}s, page by page. To keep memory bounded on large
+ * address books, the signatures can be split in {@code contact.dedup.partitions} partitions on the
+ * prefix of each blocking key: only one partition is held in memory at a time, at the cost of one
+ * more read of the contact table per partition and key. Only the best {@code
+ * contact.dedup.max-candidates} pairs are kept while scanning.
+ *
+ * <p>The administrators run the search and merge the pairs found from the duplicate contacts menu,
+ * see {@link #saveDuplicates()} and {@link ContactMergeService}.
+ */
+@Singleton
+public class ContactDuplicateService {
+
+  private static final int PAGE_SIZE = 5000;
+
+  private static final int PREFIX_LENGTH = 3;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final ForkJoinPool pool;
+
+  private final int window;
+
+  private final double threshold;
+
+  private final int partitions;
+
+  private final int maxCandidates;
+
+  public ContactDuplicateService() {
+    final AppSettings settings = AppSettings.get();
+    this.pool =
+        new ForkJoinPool(
+            settings.getInt(
+                "contact.dedup.parallelism", Runtime.getRuntime().availableProcessors()));
+    this.window = settings.getInt("contact.dedup.window", ContactDuplicateFinder.DEFAULT_WINDOW);
+    this.threshold =
+        Double.parseDouble(
+            settings.get(
+                "contact.dedup.threshold",
+                String.valueOf(ContactDuplicateFinder.DEFAULT_THRESHOLD)));
+    this.partitions = Math.max(1, settings.getInt("contact.dedup.partitions", 1));
+    this.maxCandidates = settings.getInt("contact.dedup.max-candidates", 100_000);
+  }
+
+  /**
+   * Find the candidate duplicates of the whole contact table.
+   *
+   * @return the candidate pairs, best scores first
+   */
+  public List<ContactDuplicate> findDuplicates() {
+    final ContactDuplicateFinder finder = new ContactDuplicateFinder(pool, window, threshold);
+    final ContactDuplicateCandidates found = new ContactDuplicateCandidates(maxCandidates);
+    final long start = System.currentTimeMillis();
+
+    if (partitions == 1) {
+      final List<Signature> signatures = load(s -> true);
+      for (BlockingKey key : BlockingKey.values()) {
+        finder.scan(signatures, key, found);
+      }
+    } else {
+      for (BlockingKey key : BlockingKey.values()) {
+        for (int partition = 0; partition < partitions; partition++) {
+          final int current = partition;
+          finder.scan(load(s -> partitionOf(key.of(s)) == current), key, found);
+        }
+      }
+    }
+
+    log.info(
+        "Found {} candidate duplicate contacts in {} ms",
+        found.size(),
+        System.currentTimeMillis() - start);
+
+    return found.toList();
+  }
+
+  /**
+   * Find the candidate duplicates and save them as {@link ContactDuplicatePair}s, in place of those
+   * of the previous search, for the administrators to review and merge.
+   *
+   * @return the number of pairs found
+   */
+  public int saveDuplicates() {
+    final List<ContactDuplicate> found = findDuplicates();
+    JPA.runInTransaction(
+        () -> {
+          final EntityManager em = JPA.em();
+          em.createQuery("DELETE FROM ContactDuplicatePair self").executeUpdate();
+          int count = 0;
+          for (ContactDuplicate duplicate : found) {
+            final ContactDuplicatePair pair = new ContactDuplicatePair();
+            pair.setFirst(em.getReference(Contact.class, duplicate.getFirstId()));
+            pair.setSecond(em.getReference(Contact.class, duplicate.getSecondId()));
+            pair.setScore(BigDecimal.valueOf(duplicate.getScore()).setScale(4, RoundingMode.DOWN));
+            em.persist(pair);
+            if (++count % PAGE_SIZE == 0) {
+              em.flush();
+              em.clear();
+            }
+          }
+        });
+    return found.size();
+  }
+
+  private int partitionOf(String key) {
+    if (key == null) {
+      return -1;
+    }
+    final String prefix = key.length() > PREFIX_LENGTH ? key.substring(0, PREFIX_LENGTH) : key;
+    return Math.floorMod(prefix.hashCode(), partitions);
+  }
+
+  private List<Signature> load(Predicate<Signature> accept) {
+    final List<Signature> signatures = new ArrayList<>();
+    long lastId = 0;
+    List<Object[]> page;
+    do {
+      page =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.firstName, self.lastName FROM Contact self "
+                      + "WHERE self.id > :lastId ORDER BY self.id",
+                  Object[].class)
+              .setParameter("lastId", lastId)
+              .setMaxResults(PAGE_SIZE)
+              .getResultList();
+      if (page.isEmpty()) {
+        break;
+      }
+
+      final long from = (Long) page.get(0)[0];
+      lastId = (Long) page.get(page.size() - 1)[0];
+
+      final Map<Long, String> emails = loadValues("Email", "email", from, lastId);
+      final Map<Long, String> phones = loadValues("Phone", "phone", from, lastId);
+
+      for (Object[] row : page) {
+        final Long id = (Long) row[0];
+        final Signature signature =
+            new Signature(id, (String) row[1], (String) row[2], emails.get(id), phones.get(id));
+        if (accept.test(signature)) {
+          signatures.add(signature);
+        }
+      }
+    } while (page.size() == PAGE_SIZE);
+    return signatures;
+  }
+
+  /** Load the primary (or else the first) value of a contact's emails or phones, by contact id. */
+  private Map<Long, String> loadValues(String entity, String field, long from, long to) {
+    final List<Object[]> rows =
+        JPA.em()
+            .createQuery(
+                String.format(
+                    "SELECT self.contact.id, self.%s, self.primary FROM %s self "
+                        + "WHERE self.contact.id BETWEEN :from AND :to ORDER BY self.id",
+                    field, entity),
+                Object[].class)
+            .setParameter("from", from)
+            .setParameter("to", to)
+            .getResultList();
+    final Map<Long, String> values = new HashMap<>();
+    for (Object[] row : rows) {
+      final Long id = (Long) row[0];
+      if (Boolean.TRUE.equals(row[2])) {
+        values.put(id, (String) row[1]);
+      } else {
+        values.putIfAbsent(id, (String) row[1]);
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.contact.db.Circle;
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.db.repo.ContactRepository;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges duplicate contacts into a master contact.
+ *
+ * <p>The records referencing the duplicates are re-pointed with bulk updates, one transaction per
+ * batch of duplicates. Modules owning other references to {@link Contact} should extend {@link
+ * #repoint(Contact, List)}.
+ */
+public class ContactMergeService {
+
+  protected static final int BATCH_SIZE = 500;
+
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  @Inject private ContactRepository contacts;
+
+  /**
+   * Merge duplicate contacts into a master contact.
+   *
+   * @param masterId the id of the master contact
+   * @param duplicateIds the ids of the duplicates, the master and the nulls are ignored
+   * @throws IllegalArgumentException if the master contact doesn't exist
+   */
+  public void merge(Long masterId, Collection<Long> duplicateIds) {
+    if (masterId == null || contacts.find(masterId) == null) {
+      throw new IllegalArgumentException("No master contact " + masterId);
+    }
+    final List<Long> ids =
+        duplicateIds.stream()
+            .filter(Objects::nonNull)
+            .filter(id -> !id.equals(masterId))
+            .distinct()
+            .collect(Collectors.toList());
+
+    for (List<Long> batch : Lists.partition(ids, BATCH_SIZE)) {
+      JPA.runInTransaction(() -> mergeBatch(masterId, batch));
+      log.debug("Merged {} duplicates into contact {}", batch.size(), masterId);
+    }
+  }
+
+  protected void mergeBatch(Long masterId, List<Long> ids) {
+    final EntityManager em = JPA.em();
+    em.flush();
+
+    // checked before any update, the master may have been removed since the previous batch
+    Contact master = contacts.find(masterId);
+    if (master == null) {
+      throw new IllegalArgumentException("No master contact " + masterId);
+    }
+    repoint(master, ids);
+    em.createQuery(
+            "DELETE FROM ContactDuplicatePair self "
+                + "WHERE self.first.id IN (:ids) OR self.second.id IN (:ids)")
+        .setParameter("ids", ids)
+        .executeUpdate();
+
+    // bulk updates bypass the persistence context, reload from the database
+    em.clear();
+
+    master = contacts.find(masterId);
+    for (Contact duplicate :
+        Query.of(Contact.class).filter("self.id IN (:ids)").bind("ids", ids).fetch()) {
+      if (duplicate.getCircles() != null) {
+        for (Circle circle : duplicate.getCircles()) {
+          master.addCircle(circle);
+        }
+      }
+      contacts.remove(duplicate);
+    }
+    contacts.save(master);
+  }
+
+  /**
+   * Re-point the records referencing the given duplicates to the master contact.
+   *
+   * @param master the master contact
+   * @param ids the duplicate contact ids
+   */
+  protected void repoint(Contact master, List<Long> ids) {
+    repoint("Address", "contact", master, ids);
+    repoint("Email", "contact", master, ids);
+    repoint("Phone", "contact", master, ids);
+  }
+
+  protected int repoint(String entity, String field, Contact master, List<Long> ids) {
+    return JPA.em()
+        .createQuery(
+            String.format(
+                "UPDATE %s self SET self.%s = :master WHERE self.%s.id IN (:ids)",
+                entity, field, field))
+        .setParameter("master", master)
+        .setParameter("ids", ids)
+        .executeUpdate();
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import java.util.Arrays;
+
+/**
+ * A compressed bitmap of record ids, following the Roaring layout.
+ *
+ * <p>Ids are split on their high 16 bits into containers. A container holding up to 4096 values
+ * is a sorted {@code char[]}, a denser one is a plain 65536 bits bitmap. Ids must fit in 32
+ * unsigned bits.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class IdBitmap {
+
+  private static final long MAX_ID = 0xFFFFFFFFL;
+
+  private char[] keys;
+
+  private Container[] containers;
+
+  private int size;
+
+  public IdBitmap() {
+    this(4);
+  }
+
+  private IdBitmap(int capacity) {
+    keys = new char[capacity];
+    containers = new Container[capacity];
+  }
+
+  public static IdBitmap of(long... ids) {
+    final IdBitmap bitmap = new IdBitmap();
+    for (long id : ids) {
+      bitmap.add(id);
+    }
+    return bitmap;
+  }
+
+  public void add(long id) {
+    final char key = highOf(id);
+    int i = indexOf(key);
+    if (i < 0) {
+      i = -i - 1;
+      insert(i, key, new Container());
+    }
+    containers[i].add((char) id);
+  }
+
+  public void remove(long id) {
+    final int i = indexOf(highOf(id));
+    if (i >= 0) {
+      containers[i].remove((char) id);
+      if (containers[i].cardinality == 0) {
+        delete(i);
+      }
+    }
+  }
+
+  public boolean contains(long id) {
+    final int i = indexOf(highOf(id));
+    return i >= 0 && containers[i].contains((char) id);
+  }
+
+  public long cardinality() {
+    long total = 0;
+    for (int i = 0; i < size; i++) {
+      total += containers[i].cardinality;
+    }
+    return total;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public IdBitmap copy() {
+    final IdBitmap copy = new IdBitmap(Math.max(4, size));
+    for (int i = 0; i < size; i++) {
+      copy.keys[i] = keys[i];
+      copy.containers[i] = containers[i].copy();
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  public IdBitmap and(IdBitmap other) {
+    final IdBitmap result = new IdBitmap(Math.max(4, Math.min(size, other.size)));
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        final Container c = containers[i].and(other.containers[j]);
+        if (c.cardinality > 0) {
+          result.append(keys[i], c);
+        }
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  public IdBitmap or(IdBitmap other) {
+    final IdBitmap result = new IdBitmap(Math.max(4, size + other.size));
+    int i = 0;
+    int j = 0;
+    while (i < size || j < other.size) {
+      if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+        result.append(keys[i], containers[i].copy());
+        i++;
+      } else if (i >= size || keys[i] > other.keys[j]) {
+        result.append(other.keys[j], other.containers[j].copy());
+        j++;
+      } else {
+        result.append(keys[i], containers[i].or(other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  public IdBitmap andNot(IdBitmap other) {
+    final IdBitmap result = new IdBitmap(Math.max(4, size));
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      while (j < other.size && other.keys[j] < keys[i]) {
+        j++;
+      }
+      final Container c =
+          j < other.size && other.keys[j] == keys[i]
+              ? containers[i].andNot(other.containers[j])
+              : containers[i].copy();
+      if (c.cardinality > 0) {
+        result.append(keys[i], c);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get a page of ids, in ascending order.
+   *
+   * @param offset the number of ids to skip
+   * @param limit the maximum number of ids to return
+   * @return the ids
+   * @throws IllegalArgumentException if the offset or the limit is negative
+   */
+  public long[] page(long offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit);
+    }
+    final long[] page = new long[(int) Math.max(0, Math.min(limit, cardinality() - offset))];
+    int count = 0;
+    long skip = offset;
+    for (int i = 0; i < size && count < page.length; i++) {
+      final Container c = containers[i];
+      if (skip >= c.cardinality) {
+        skip -= c.cardinality;
+        continue;
+      }
+      count = c.select((long) keys[i] << 16, (int) skip, page, count);
+      skip = 0;
+    }
+    return page;
+  }
+
+  private static char highOf(long id) {
+    if (id < 0 || id > MAX_ID) {
+      throw new IllegalArgumentException("Id out of bitmap range: " + id);
+    }
+    return (char) (id >>> 16);
+  }
+
+  private int indexOf(char key) {
+    // fast path for ascending insertion
+    if (size > 0 && keys[size - 1] == key) {
+      return size - 1;
+    }
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private void append(char key, Container container) {
+    insert(size, key, container);
+  }
+
+  private void insert(int index, char key, Container container) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containers, index, containers, index + 1, size - index);
+    keys[index] = key;
+    containers[index] = container;
+    size++;
+  }
+
+  private void delete(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+    containers[--size] = null;
+  }
+
+  /** The low 16 bits of the ids sharing the same high 16 bits. */
+  private static final class Container {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int WORDS = 1024;
+
+    /** sorted values, used while {@link #bits} is null */
+    private char[] values;
+
+    private long[] bits;
+
+    private int cardinality;
+
+    Container() {
+      values = new char[4];
+    }
+
+    private Container(char[] values, long[] bits, int cardinality) {
+      this.values = values;
+      this.bits = bits;
+      this.cardinality = cardinality;
+    }
+
+    Container copy() {
+      return bits == null
+          ? new Container(Arrays.copyOf(values, Math.max(4, cardinality)), null, cardinality)
+          : new Container(null, bits.clone(), cardinality);
+    }
+
+    boolean contains(char value) {
+      if (bits != null) {
+        return (bits[value >>> 6] & (1L << value)) != 0;
+      }
+      return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    void add(char value) {
+      if (bits != null) {
+        final long before = bits[value >>> 6];
+        bits[value >>> 6] = before | (1L << value);
+        if (before != bits[value >>> 6]) {
+          cardinality++;
+        }
+        return;
+      }
+      int i =
+          cardinality > 0 && values[cardinality - 1] < value
+              ? -cardinality - 1
+              : Arrays.binarySearch(values, 0, cardinality, value);
+      if (i >= 0) {
+        return;
+      }
+      if (cardinality == ARRAY_MAX) {
+        bits = words();
+        values = null;
+        add(value);
+        return;
+      }
+      i = -i - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.max(4, Math.min(ARRAY_MAX, cardinality * 2)));
+      }
+      System.arraycopy(values, i, values, i + 1, cardinality - i);
+      values[i] = value;
+      cardinality++;
+    }
+
+    void remove(char value) {
+      if (bits != null) {
+        final long before = bits[value >>> 6];
+        bits[value >>> 6] = before & ~(1L << value);
+        if (before != bits[value >>> 6] && --cardinality <= ARRAY_MAX) {
+          values = toArray(bits, cardinality);
+          bits = null;
+        }
+        return;
+      }
+      final int i = Arrays.binarySearch(values, 0, cardinality, value);
+      if (i >= 0) {
+        System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+        cardinality--;
+      }
+    }
+
+    Container and(Container other) {
+      if (bits == null && other.bits == null) {
+        final char[] result = new char[Math.min(cardinality, other.cardinality)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < cardinality && j < other.cardinality) {
+          if (values[i] < other.values[j]) {
+            i++;
+          } else if (values[i] > other.values[j]) {
+            j++;
+          } else {
+            result[k++] = values[i];
+            i++;
+            j++;
+          }
+        }
+        return new Container(result, null, k);
+      }
+      if (bits == null || other.bits == null) {
+        final Container array = bits == null ? this : other;
+        final Container bitmap = bits == null ? other : this;
+        final char[] result = new char[array.cardinality];
+        int k = 0;
+        for (int i = 0; i < array.cardinality; i++) {
+          if (bitmap.contains(array.values[i])) {
+            result[k++] = array.values[i];
+          }
+        }
+        return new Container(result, null, k);
+      }
+      final long[] result = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        result[i] = bits[i] & other.bits[i];
+      }
+      return fromWords(result);
+    }
+
+    Container or(Container other) {
+      final long[] result = words();
+      if (other.bits == null) {
+        for (int i = 0; i < other.cardinality; i++) {
+          result[other.values[i] >>> 6] |= 1L << other.values[i];
+        }
+      } else {
+        for (int i = 0; i < WORDS; i++) {
+          result[i] |= other.bits[i];
+        }
+      }
+      return fromWords(result);
+    }
+
+    Container andNot(Container other) {
+      if (bits == null) {
+        final char[] result = new char[cardinality];
+        int k = 0;
+        for (int i = 0; i < cardinality; i++) {
+          if (!other.contains(values[i])) {
+            result[k++] = values[i];
+          }
+        }
+        return new Container(result, null, k);
+      }
+      final long[] result = bits.clone();
+      if (other.bits == null) {
+        for (int i = 0; i < other.cardinality; i++) {
+          result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+        }
+      } else {
+        for (int i = 0; i < WORDS; i++) {
+          result[i] &= ~other.bits[i];
+        }
+      }
+      return fromWords(result);
+    }
+
+    /** Copy the values after skipping {@code skip} of them, returns the new position in out. */
+    int select(long high, int skip, long[] out, int position) {
+      int pos = position;
+      if (bits == null) {
+        for (int i = skip; i < cardinality && pos < out.length; i++) {
+          out[pos++] = high | values[i];
+        }
+        return pos;
+      }
+      int seen = 0;
+      for (int w = 0; w < WORDS && pos < out.length; w++) {
+        long word = bits[w];
+        final int count = Long.bitCount(word);
+        if (seen + count <= skip) {
+          seen += count;
+          continue;
+        }
+        while (word != 0 && pos < out.length) {
+          final long bit = Long.numberOfTrailingZeros(word);
+          if (seen++ >= skip) {
+            out[pos++] = high | ((long) w << 6) | bit;
+          }
+          word &= word - 1;
+        }
+      }
+      return pos;
+    }
+
+    private long[] words() {
+      if (bits != null) {
+        return bits.clone();
+      }
+      final long[] words = new long[WORDS];
+      for (int i = 0; i < cardinality; i++) {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return words;
+    }
+
+    private static Container fromWords(long[] words) {
+      int cardinality = 0;
+      for (long word : words) {
+        cardinality += Long.bitCount(word);
+      }
+      return cardinality > ARRAY_MAX
+          ? new Container(null, words, cardinality)
+          : new Container(toArray(words, cardinality), null, cardinality);
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+      final char[] values = new char[Math.max(4, cardinality)];
+      int k = 0;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0) {
+          values[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return values;
+    }
+  }
+}
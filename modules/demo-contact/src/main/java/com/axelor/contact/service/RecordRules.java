@@ -0,0 +1,110 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.db.JpaSecurity;
+import com.axelor.db.JpaSecurity.AccessType;
+import com.axelor.db.Model;
+import com.axelor.inject.Beans;
+import com.axelor.rpc.filter.Filter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.Query;
+
+/**
+ * The record rules of the current user on a model, as a JPQL condition on {@code self}.
+ *
+ * <p>The rules are given by {@link JpaSecurity#getFilter(AccessType, Class, Long...)} with
+ * positional parameters, which can't be mixed with the named parameters of the paging queries: the
+ * placeholders are renamed {@code :_rN} here, so that the condition can be appended to any query on
+ * the model.
+ */
+public final class RecordRules {
+
+  private final String condition;
+
+  private final Map<String, Object> params = new HashMap<>();
+
+  private RecordRules(String condition) {
+    this.condition = condition;
+  }
+
+  /**
+   * Get the rules of the current user.
+   *
+   * @param access the access, such as {@link JpaSecurity#CAN_READ}
+   * @param model the model
+   * @return the rules, or null when no rule restricts the records
+   */
+  public static RecordRules of(AccessType access, Class<? extends Model> model) {
+    final Filter filter = Beans.get(JpaSecurity.class).getFilter(access, model);
+    return filter == null ? null : of(filter.getQuery(), filter.getParams());
+  }
+
+  /**
+   * Get the rules of a filter.
+   *
+   * @param query the condition on {@code self}, with {@code ?} or {@code ?N} placeholders
+   * @param params the values of the placeholders
+   */
+  public static RecordRules of(String query, List<?> params) {
+    final StringBuilder condition = new StringBuilder();
+    final Map<String, Object> named = new HashMap<>();
+    boolean quoted = false;
+    int next = 0;
+    for (int i = 0; i < query.length(); i++) {
+      final char c = query.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      }
+      if (c != '?' || quoted) {
+        condition.append(c);
+        continue;
+      }
+      int end = i + 1;
+      while (end < query.length() && Character.isDigit(query.charAt(end))) {
+        end++;
+      }
+      final int index = end > i + 1 ? Integer.parseInt(query.substring(i + 1, end)) - 1 : next++;
+      condition.append(":_r").append(index);
+      named.put("_r" + index, params.get(index));
+      i = end - 1;
+    }
+    final RecordRules rules = new RecordRules("(" + condition + ")");
+    rules.params.putAll(named);
+    return rules;
+  }
+
+  /** The JPQL condition on {@code self}. */
+  public String getCondition() {
+    return condition;
+  }
+
+  /** The named parameters of the condition. */
+  public Map<String, Object> getParams() {
+    return params;
+  }
+
+  /** Bind the parameters of the condition to a query. */
+  public <Q extends Query> Q bind(Q query) {
+    params.forEach(query::setParameter);
+    return query;
+  }
+}
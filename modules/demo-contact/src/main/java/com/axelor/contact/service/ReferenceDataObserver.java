@@ -0,0 +1,50 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.event.Observes;
+import com.axelor.events.PostRequest;
+import com.axelor.events.RequestEvent;
+import com.axelor.events.StartupEvent;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/** Keeps the {@link ReferenceDataService} in sync with the reference records. */
+public class ReferenceDataObserver {
+
+  @Inject private ReferenceDataService referenceData;
+
+  public void onStartup(@Observes StartupEvent event) {
+    referenceData.load();
+  }
+
+  public void onSave(@Observes @Named(RequestEvent.SAVE) PostRequest event) {
+    reloadIfReference(event);
+  }
+
+  public void onRemove(@Observes @Named(RequestEvent.REMOVE) PostRequest event) {
+    reloadIfReference(event);
+  }
+
+  private void reloadIfReference(PostRequest event) {
+    if (referenceData.isReference(event.getRequest().getBeanClass())) {
+      referenceData.load();
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.service;
+
+import com.axelor.contact.db.Country;
+import com.axelor.contact.db.Title;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookup of small reference tables ({@link Country}, {@link Title}...) by id or by code.
+ *
+ * <p>The codes of the reference records are loaded once into immutable maps, swapped atomically
+ * when a reference record is saved or removed. Records are returned through {@link
+ * javax.persistence.EntityManager#find(Class, Object)} so they are attached to the current session
+ * and served by the second level cache, these entities being cacheable.
+ *
+ * <p>Modules owning other reference entities should extend {@link #types()}, which is only called
+ * once: the types are kept in a set, checked on every saved record.
+ */
+@Singleton
+public class ReferenceDataService {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+  private volatile Set<Class<? extends Model>> typeSet;
+
+  /** The reference entities, they must have a unique {@code code} field. */
+  protected List<Class<? extends Model>> types() {
+    final List<Class<? extends Model>> types = new ArrayList<>();
+    types.add(Country.class);
+    types.add(Title.class);
+    return types;
+  }
+
+  public boolean isReference(Class<?> type) {
+    return type != null && typeSet().contains(type);
+  }
+
+  private Set<Class<? extends Model>> typeSet() {
+    Set<Class<? extends Model>> set = typeSet;
+    if (set == null) {
+      set = ImmutableSet.copyOf(types());
+      typeSet = set;
+    }
+    return set;
+  }
+
+  /** (Re)load the codes of all the reference entities. */
+  public void load() {
+    final Map<Class<?>, Map<String, Long>> codes = new HashMap<>();
+    for (Class<? extends Model> type : typeSet()) {
+      final Map<String, Long> byCode = new HashMap<>();
+      final String jpql = "SELECT self.id, self.code FROM " + type.getName() + " self";
+      final List<Object[]> rows = JPA.em().createQuery(jpql, Object[].class).getResultList();
+      for (Object[] row : rows) {
+        byCode.put((String) row[1], (Long) row[0]);
+      }
+      codes.put(type, byCode);
+    }
+    snapshot.set(new Snapshot(codes));
+    log.debug("Reference data loaded: {}", codes.keySet());
+  }
+
+  /**
+   * Find a reference record by id.
+   *
+   * <p>Unlike a query, this is served by the second level cache.
+   *
+   * @return the record or null if there is no such record
+   */
+  public <T extends Model> T find(Class<T> type, Long id) {
+    return id == null ? null : JPA.em().find(type, id);
+  }
+
+  /**
+   * Find reference records by id, unknown ids are ignored.
+   *
+   * @return the records, in the order of the given ids
+   */
+  public <T extends Model> List<T> find(Class<T> type, Collection<Long> ids) {
+    final List<T> records = new ArrayList<>();
+    if (ids != null) {
+      for (Long id : ids) {
+        final T record = find(type, id);
+        if (record != null) {
+          records.add(record);
+        }
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Find a reference record by code.
+   *
+   * @return the record or null if there is no such record
+   */
+  public <T extends Model> T findByCode(Class<T> type, String code) {
+    if (code == null) {
+      return null;
+    }
+    final Long id = snapshot().idOf(type, code);
+    if (id != null) {
+      return find(type, id);
+    }
+    // may have been created without a request event since the last load, e.g. by the data import
+    final List<Long> created =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM " + type.getName() + " self WHERE self.code = :code",
+                Long.class)
+            .setParameter("code", code)
+            .getResultList();
+    if (created.isEmpty()) {
+      return null;
+    }
+    if (isReference(type)) {
+      load();
+    }
+    return find(type, created.get(0));
+  }
+
+  private Snapshot snapshot() {
+    if (snapshot.get() == null) {
+      load();
+    }
+    return snapshot.get();
+  }
+
+  private static final class Snapshot {
+
+    private final Map<Class<?>, Map<String, Long>> codes;
+
+    Snapshot(Map<Class<?>, Map<String, Long>> codes) {
+      final ImmutableMap.Builder<Class<?>, Map<String, Long>> builder = ImmutableMap.builder();
+      codes.forEach((type, byCode) -> builder.put(type, ImmutableMap.copyOf(byCode)));
+      this.codes = builder.build();
+    }
+
+    Long idOf(Class<?> type, String code) {
+      return codes.getOrDefault(type, ImmutableMap.of()).get(code);
+    }
+  }
+}
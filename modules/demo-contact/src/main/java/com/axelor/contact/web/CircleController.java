@@ -0,0 +1,102 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.web;
+
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.service.CircleMembershipIndex;
+import com.axelor.contact.service.IdBitmap;
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JpaSecurity;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+
+public class CircleController {
+
+  private static final int DEFAULT_LIMIT = 40;
+
+  private static final int MAX_LIMIT = 1000;
+
+  @Inject private CircleMembershipIndex index;
+
+  /**
+   * Count and page the contacts of a circle segment.
+   *
+   * <p>The request data gives the circle ids as {@code all}, {@code any} and {@code none} lists,
+   * and the page with {@code offset} and {@code limit}, at most {@value #MAX_LIMIT}.
+   */
+  public void segment(ActionRequest request, ActionResponse response) {
+    if (!Beans.get(JpaSecurity.class).isPermitted(JpaSecurity.CAN_READ, Contact.class)) {
+      response.setError(I18n.get("You are not allowed to read the contacts."));
+      return;
+    }
+
+    final Map<String, Object> data = request.getData();
+    final List<Long> all = toIds(data.get("all"));
+    final List<Long> any = toIds(data.get("any"));
+    final List<Long> none = toIds(data.get("none"));
+    final long offset = toLong(data.get("offset"), 0L);
+    final long limit = toLong(data.get("limit"), DEFAULT_LIMIT);
+    if (offset < 0 || limit < 0) {
+      response.setError(I18n.get("Invalid page."));
+      return;
+    }
+
+    final IdBitmap segment =
+        index.segment(all, any, none, RecordRules.of(JpaSecurity.CAN_READ, Contact.class));
+    final List<Long> ids = new ArrayList<>();
+    for (long id : segment.page(offset, (int) Math.min(limit, MAX_LIMIT))) {
+      ids.add(id);
+    }
+
+    final Map<String, Object> result = new HashMap<>();
+    result.put("total", segment.cardinality());
+    result.put("ids", ids);
+
+    response.setData(Lists.newArrayList(result));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Long> toIds(Object value) {
+    final List<Long> ids = new ArrayList<>();
+    if (value instanceof Collection) {
+      for (Object item : (Collection<Object>) value) {
+        if (item instanceof Map) {
+          item = ((Map<String, Object>) item).get("id");
+        }
+        if (item != null) {
+          ids.add(Long.valueOf(item.toString()));
+        }
+      }
+    }
+    return ids;
+  }
+
+  private long toLong(Object value, long defaultValue) {
+    return value == null ? defaultValue : Long.parseLong(value.toString());
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.web;
+
+import com.axelor.batch.db.BatchRun;
+import com.axelor.contact.db.Company;
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.service.ContactBulkFilter;
+import com.axelor.contact.service.ContactBulkUpdateService;
+import com.axelor.db.JpaSecurity;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.meta.schema.actions.ActionView;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+
+public class ContactController {
+
+  @Inject private ContactBulkUpdateService bulkUpdateService;
+
+  /**
+   * Bulk update a field of the contacts.
+   *
+   * <p>The request data gives the {@code field}, its new {@code value} and the contacts to update,
+   * either as a list of {@code ids} or as {@code criteria} (see {@link ContactBulkFilter}). With
+   * {@code dryRun}, only the number of matching contacts is returned. Otherwise the update is
+   * started in the background and the id of its {@link BatchRun} is returned as {@code run}.
+   */
+  @SuppressWarnings("unchecked")
+  public void bulkUpdate(ActionRequest request, ActionResponse response) {
+    if (!canUpdate(response)) {
+      return;
+    }
+
+    final Map<String, Object> data = request.getData();
+    final String field = (String) data.get("field");
+    if (!ContactBulkUpdateService.FIELDS.contains(field)) {
+      response.setError(I18n.get("This field can't be bulk updated."));
+      return;
+    }
+
+    final ContactBulkFilter filter;
+    try {
+      if (data.get("ids") instanceof Collection) {
+        filter = ContactBulkFilter.ids(toIds((Collection<Object>) data.get("ids")));
+      } else if (data.get("criteria") instanceof List) {
+        filter = ContactBulkFilter.parse((List<Map<String, Object>>) data.get("criteria"));
+      } else {
+        response.setError(I18n.get("No contacts selected."));
+        return;
+      }
+    } catch (IllegalArgumentException e) {
+      response.setError(I18n.get("Invalid criteria."));
+      return;
+    }
+
+    final Map<String, Object> result = new HashMap<>();
+    if (Boolean.TRUE.equals(data.get("dryRun"))) {
+      result.put("count", bulkUpdateService.count(filter));
+    } else {
+      result.put("run", bulkUpdateService.start(field, data.get("value"), filter));
+    }
+
+    response.setData(Lists.newArrayList(result));
+  }
+
+  /**
+   * Set the company of the contacts selected in the grid, from the change company popup, and show
+   * the batch run of the update.
+   */
+  @SuppressWarnings("unchecked")
+  public void bulkUpdateCompany(ActionRequest request, ActionResponse response) {
+    if (!canUpdate(response)) {
+      return;
+    }
+    final Object selected = request.getContext().get("_contactIds");
+    if (!(selected instanceof Collection) || ((Collection<?>) selected).isEmpty()) {
+      response.setError(I18n.get("No contacts selected."));
+      return;
+    }
+    final Company company = request.getContext().asType(Contact.class).getCompany();
+    final Long runId =
+        bulkUpdateService.start(
+            "company",
+            company == null ? null : company.getId(),
+            ContactBulkFilter.ids(toIds((Collection<Object>) selected)));
+
+    response.setCanClose(true);
+    response.setView(
+        ActionView.define(I18n.get("Batch run"))
+            .model(BatchRun.class.getName())
+            .add("form", "batch-run-form")
+            .context("_showRecord", runId)
+            .map());
+  }
+
+  private boolean canUpdate(ActionResponse response) {
+    if (!Beans.get(JpaSecurity.class).isPermitted(JpaSecurity.CAN_WRITE, Contact.class)) {
+      response.setError(I18n.get("You are not allowed to update the contacts."));
+      return false;
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Long> toIds(Collection<Object> values) {
+    final List<Long> ids = new ArrayList<>();
+    for (Object item : values) {
+      if (item instanceof Map) {
+        item = ((Map<String, Object>) item).get("id");
+      }
+      if (item != null) {
+        ids.add(Long.valueOf(item.toString()));
+      }
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact.web;
+
+import com.axelor.auth.AuthUtils;
+import com.axelor.contact.db.ContactDuplicatePair;
+import com.axelor.contact.service.ContactDuplicateService;
+import com.axelor.contact.service.ContactMergeService;
+import com.axelor.db.JPA;
+import com.axelor.i18n.I18n;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import java.util.Collections;
+import javax.inject.Inject;
+
+/** The duplicate contacts menu, where the administrators find and merge the duplicate contacts. */
+public class ContactDuplicateController {
+
+  @Inject private ContactDuplicateService duplicateService;
+
+  @Inject private ContactMergeService mergeService;
+
+  /** Search the whole contact table for candidate duplicates, replacing the previous pairs. */
+  public void find(ActionRequest request, ActionResponse response) {
+    if (!canMerge(response)) {
+      return;
+    }
+    final int count = duplicateService.saveDuplicates();
+    response.setReload(true);
+    response.setNotify(String.format(I18n.get("%d candidate duplicate pairs found."), count));
+  }
+
+  /** Merge the second contact of the pair into the first one. */
+  public void keepFirst(ActionRequest request, ActionResponse response) {
+    merge(request, response, true);
+  }
+
+  /** Merge the first contact of the pair into the second one. */
+  public void keepSecond(ActionRequest request, ActionResponse response) {
+    merge(request, response, false);
+  }
+
+  private void merge(ActionRequest request, ActionResponse response, boolean keepFirst) {
+    if (!canMerge(response)) {
+      return;
+    }
+    final Long id = request.getContext().asType(ContactDuplicatePair.class).getId();
+    final ContactDuplicatePair pair = id == null ? null : JPA.find(ContactDuplicatePair.class, id);
+    if (pair == null) {
+      response.setError(I18n.get("No contacts selected."));
+      return;
+    }
+    final Long firstId = pair.getFirst().getId();
+    final Long secondId = pair.getSecond().getId();
+    if (keepFirst) {
+      mergeService.merge(firstId, Collections.singletonList(secondId));
+    } else {
+      mergeService.merge(secondId, Collections.singletonList(firstId));
+    }
+    // the pair was removed with the duplicate
+    response.setCanClose(true);
+    response.setNotify(I18n.get("Contacts merged."));
+  }
+
+  private boolean canMerge(ActionResponse response) {
+    if (!AuthUtils.isAdmin(AuthUtils.getUser())) {
+      response.setError(I18n.get("Only administrators can merge the duplicate contacts."));
+      return false;
+    }
+    return true;
+  }
+}
@@ -24,6 +24,7 @@ import com.axelor.contact.db.Contact;
 import com.axelor.contact.db.Country;
 import com.axelor.contact.db.repo.CountryRepository;
 import com.axelor.contact.service.HelloService;
+import com.axelor.contact.service.ReferenceDataService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.meta.schema.actions.ActionView;
@@ -44,6 +45,8 @@ public class HelloController {
 
   @Inject private HelloService service;
 
+  @Inject private ReferenceDataService referenceData;
+
   public void say(ActionRequest request, ActionResponse response) {
 
     Contact contact = request.getContext().asType(Contact.class);
@@ -108,8 +111,7 @@ public class HelloController {
 
   private List<Address> createAddresses() {
 
-    Country frCountry =
-        Beans.get(CountryRepository.class).all().filter("self.code = ?", "FR").fetchOne();
+    Country frCountry = referenceData.findByCode(Country.class, "FR");
 
     if (frCountry == null) {
       frCountry = createDefaultCountry();
@@ -0,0 +1,187 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.batch.jobs.ChunkJob;
+import com.axelor.batch.jobs.EntityItemReader;
+import com.axelor.batch.jobs.ItemProcessor;
+import com.axelor.batch.jobs.ItemReader;
+import com.axelor.batch.jobs.ItemWriter;
+import com.axelor.contact.db.Circle;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionException;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ChunkJobTest {
+
+  private static final String JOB_NAME = "test.circles";
+
+  private static final int COUNT = 50;
+
+  static class CircleJob extends ChunkJob<Circle, Circle> {
+
+    final Set<String> processed = ConcurrentHashMap.newKeySet();
+
+    final Set<String> written = ConcurrentHashMap.newKeySet();
+
+    volatile String failOn;
+
+    volatile String interruptOn;
+
+    @Override
+    protected ItemReader<Circle> reader(JobDataMap data) {
+      return new EntityItemReader<>(Circle.class, "self.code LIKE 'batch_%'", null);
+    }
+
+    @Override
+    protected ItemProcessor<Circle, Circle> processor(JobDataMap data) {
+      return circle -> {
+        if (circle.getCode().equals(failOn)) {
+          throw new IllegalStateException("killed");
+        }
+        if (circle.getCode().equals(interruptOn)) {
+          interrupt();
+        }
+        processed.add(circle.getCode());
+        return circle;
+      };
+    }
+
+    @Override
+    protected ItemWriter<Circle> writer(JobDataMap data) {
+      return items -> items.forEach(circle -> written.add(circle.getCode()));
+    }
+  }
+
+  @BeforeEach
+  public void setUp() {
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < COUNT; i++) {
+            final Circle circle = new Circle();
+            circle.setCode(String.format("batch_%02d", i));
+            circle.setName(String.format("Batch %02d", i));
+            JPA.save(circle);
+          }
+        });
+  }
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> {
+          Query.of(Circle.class).filter("self.code LIKE 'batch_%'").delete();
+          Query.of(BatchCheckpoint.class).delete();
+          Query.of(BatchRun.class).delete();
+        });
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    final JobDataMap data = new JobDataMap();
+    data.put(ChunkJob.PARAM_CHUNK_SIZE, "10");
+
+    final CircleJob job = new CircleJob();
+    job.failOn = "batch_25";
+    assertThrows(JobExecutionException.class, () -> job.run(JOB_NAME, data));
+
+    // the two first chunks are committed, the third is rolled back
+    assertEquals(25, job.processed.size());
+    assertEquals(20, job.written.size());
+    final BatchCheckpoint checkpoint = Query.of(BatchCheckpoint.class).fetchOne();
+    assertEquals(BatchStatus.FAILED, checkpoint.getStatus());
+    assertEquals(20L, (long) checkpoint.getItems());
+
+    job.failOn = null;
+    job.processed.clear();
+    job.written.clear();
+    job.run(JOB_NAME, data);
+
+    assertEquals(COUNT - 20, job.processed.size());
+    assertEquals(COUNT - 20, job.written.size());
+
+    final List<BatchRun> runs = Query.of(BatchRun.class).order("id").fetch();
+    assertEquals(2, runs.size());
+    assertEquals(BatchStatus.FAILED, runs.get(0).getStatus());
+    assertEquals(BatchStatus.DONE, runs.get(1).getStatus());
+    assertEquals(true, runs.get(1).getResumed());
+    assertEquals(COUNT - 20, (long) runs.get(1).getItems());
+  }
+
+  @Test
+  public void testInterrupt() throws Exception {
+    final JobDataMap data = new JobDataMap();
+    data.put(ChunkJob.PARAM_CHUNK_SIZE, "10");
+
+    // interrupted in the third chunk, which still commits
+    CircleJob job = new CircleJob();
+    job.interruptOn = "batch_25";
+    job.run(JOB_NAME, data);
+
+    assertEquals(30, job.written.size());
+    final BatchCheckpoint checkpoint = Query.of(BatchCheckpoint.class).fetchOne();
+    assertEquals(BatchStatus.STOPPED, checkpoint.getStatus());
+    assertEquals(30L, (long) checkpoint.getItems());
+
+    job = new CircleJob();
+    job.run(JOB_NAME, data);
+    assertEquals(COUNT - 30, job.written.size());
+
+    final List<BatchRun> runs = Query.of(BatchRun.class).order("id").fetch();
+    assertEquals(BatchStatus.STOPPED, runs.get(0).getStatus());
+    assertEquals(BatchStatus.DONE, runs.get(1).getStatus());
+    assertEquals(true, runs.get(1).getResumed());
+  }
+
+  @Test
+  public void testPartitions() throws Exception {
+    final JobDataMap data = new JobDataMap();
+    data.put(ChunkJob.PARAM_CHUNK_SIZE, "7");
+    data.put(ChunkJob.PARAM_PARTITIONS, "3");
+
+    final CircleJob job = new CircleJob();
+    job.run(JOB_NAME, data);
+
+    assertEquals(COUNT, job.written.size());
+    assertEquals(
+        3,
+        Query.of(BatchCheckpoint.class)
+            .filter("self.status = :status")
+            .bind("status", BatchStatus.DONE)
+            .count());
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.batch.jobs.ChunkJob;
+import com.axelor.batch.jobs.EntityItemReader;
+import com.axelor.batch.jobs.ItemProcessor;
+import com.axelor.batch.jobs.ItemReader;
+import com.axelor.batch.jobs.ItemWriter;
+import com.axelor.contact.db.Circle;
+import com.axelor.contact.jobs.ClusterScheduler;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.SchedulerRepository;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ClusterSchedulerTest {
+
+  private static final int COUNT = 40;
+
+  private static final Set<String> WRITTEN = ConcurrentHashMap.newKeySet();
+
+  private static final Set<String> NODES = ConcurrentHashMap.newKeySet();
+
+  public static class PartitionedJob extends ChunkJob<Circle, Circle> {
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+      if (context.getMergedJobDataMap().containsKey(PARAM_PARTITION)) {
+        try {
+          NODES.add(context.getScheduler().getSchedulerInstanceId());
+        } catch (SchedulerException e) {
+          throw new JobExecutionException(e);
+        }
+      }
+      super.execute(context);
+    }
+
+    @Override
+    protected ItemReader<Circle> reader(JobDataMap data) {
+      return new EntityItemReader<>(Circle.class, "self.code LIKE 'cluster_%'", null);
+    }
+
+    @Override
+    protected ItemProcessor<Circle, Circle> processor(JobDataMap data) {
+      return circle -> {
+        // keep every partition busy long enough for both nodes to pick some
+        Thread.sleep(100);
+        return circle;
+      };
+    }
+
+    @Override
+    protected ItemWriter<Circle> writer(JobDataMap data) {
+      return items -> items.forEach(circle -> WRITTEN.add(circle.getCode()));
+    }
+  }
+
+  @BeforeEach
+  public void setUp() {
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < COUNT; i++) {
+            final Circle circle = new Circle();
+            circle.setCode(String.format("cluster_%02d", i));
+            circle.setName(String.format("Cluster %02d", i));
+            JPA.save(circle);
+          }
+        });
+  }
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> {
+          Query.of(Circle.class).filter("self.code LIKE 'cluster_%'").delete();
+          Query.of(BatchCheckpoint.class).delete();
+          Query.of(BatchRun.class).delete();
+        });
+  }
+
+  @Test
+  public void testPartitionsSpreadOverNodes() throws Exception {
+    // the nodes share the cluster name, which keys the schedulers of a JVM
+    final Scheduler node1 = ClusterScheduler.create("node1");
+    SchedulerRepository.getInstance().remove(node1.getSchedulerName());
+    final Scheduler node2 = ClusterScheduler.create("node2");
+    SchedulerRepository.getInstance().remove(node2.getSchedulerName());
+    try {
+      node1.start();
+      node2.start();
+
+      node1.scheduleJob(
+          JobBuilder.newJob(PartitionedJob.class)
+              .withIdentity("test.cluster", ClusterScheduler.GROUP)
+              .usingJobData(ChunkJob.PARAM_PARTITIONS, "4")
+              .usingJobData(ChunkJob.PARAM_CHUNK_SIZE, "5")
+              .build(),
+          TriggerBuilder.newTrigger().startNow().build());
+
+      final long deadline = System.currentTimeMillis() + 60_000;
+      while (doneCount() < 4 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(200);
+      }
+
+      assertEquals(4, doneCount());
+      assertEquals(COUNT, WRITTEN.size());
+      assertEquals(Set.of("node1", "node2"), NODES);
+    } finally {
+      node1.shutdown(true);
+      node2.shutdown(true);
+    }
+  }
+
+  private long doneCount() {
+    return Query.of(BatchCheckpoint.class)
+        .filter("self.jobName = 'test.cluster' AND self.status = :status")
+        .bind("status", BatchStatus.DONE)
+        .count();
+  }
+}
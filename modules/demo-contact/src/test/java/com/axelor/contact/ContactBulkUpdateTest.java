@@ -0,0 +1,178 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.contact.db.Company;
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.service.ContactBulkFilter;
+import com.axelor.contact.service.ContactBulkUpdateService;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ContactBulkUpdateTest {
+
+  private final List<Long> ids = new ArrayList<>();
+
+  private Company company;
+
+  @BeforeEach
+  public void setUp() {
+    JPA.runInTransaction(
+        () -> {
+          company = new Company();
+          company.setCode("bulk");
+          company.setName("Bulk Inc.");
+          company = JPA.save(company);
+          for (int i = 0; i < 5; i++) {
+            final Contact contact = new Contact("Bulk", String.format("Contact %02d", i));
+            ids.add(JPA.save(contact).getId());
+          }
+        });
+  }
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> {
+          Query.of(Contact.class).filter("self.firstName = 'Bulk'").delete();
+          Query.of(Company.class).filter("self.code = 'bulk'").delete();
+        });
+  }
+
+  @Test
+  public void testUpdateIds() {
+    final ContactBulkUpdateService service = Beans.get(ContactBulkUpdateService.class);
+    final ContactBulkFilter filter = ContactBulkFilter.ids(ids.subList(0, 3));
+
+    assertEquals(3, service.count(filter));
+    assertEquals(3, service.update("company", company.getId(), filter));
+
+    assertEquals(company.getId(), find(0).getCompany().getId());
+    assertEquals(company.getId(), find(2).getCompany().getId());
+    assertNull(find(3).getCompany());
+    assertEquals(1, (int) find(0).getVersion());
+  }
+
+  @Test
+  public void testUpdateLargeIdList() {
+    final ContactBulkUpdateService service = Beans.get(ContactBulkUpdateService.class);
+    // more ids than the bind parameters of a statement, most of them unknown
+    final List<Long> list = new ArrayList<>();
+    for (long i = 0; i < 40_000; i++) {
+      list.add(Long.MAX_VALUE - i);
+    }
+    list.addAll(ids);
+    final ContactBulkFilter filter = ContactBulkFilter.ids(list);
+
+    assertEquals(5, service.count(filter));
+    assertEquals(5, service.update("company", company.getId(), filter));
+    assertEquals(company.getId(), find(4).getCompany().getId());
+  }
+
+  @Test
+  public void testStart() throws InterruptedException {
+    final ContactBulkUpdateService service = Beans.get(ContactBulkUpdateService.class);
+    final Long runId = service.start("company", company.getId(), ContactBulkFilter.ids(ids));
+
+    BatchRun run = null;
+    for (int i = 0; i < 100; i++) {
+      JPA.em().clear();
+      run = JPA.em().find(BatchRun.class, runId);
+      if (run.getStatus() != BatchStatus.RUNNING) {
+        break;
+      }
+      Thread.sleep(100);
+    }
+    assertEquals(BatchStatus.DONE, run.getStatus());
+    assertEquals(5L, (long) run.getItems());
+    assertEquals(company.getId(), find(4).getCompany().getId());
+  }
+
+  @Test
+  public void testUpdateCriteria() {
+    final ContactBulkUpdateService service = Beans.get(ContactBulkUpdateService.class);
+    final ContactBulkFilter filter =
+        ContactBulkFilter.parse(
+            Arrays.asList(
+                criterion("firstName", "=", "Bulk"),
+                criterion("lastName", "like", "Contact 0%"),
+                criterion("company", "isNull", null)));
+
+    assertEquals(5, service.count(filter));
+    assertEquals(
+        5, service.update("company", Collections.singletonMap("id", company.getId()), filter));
+    assertEquals(0, service.count(filter));
+  }
+
+  @Test
+  public void testRejected() {
+    final ContactBulkUpdateService service = Beans.get(ContactBulkUpdateService.class);
+    final ContactBulkFilter filter = ContactBulkFilter.ids(ids);
+
+    // only the allowed fields can be updated
+    assertThrows(IllegalArgumentException.class, () -> service.update("lastName", "x", filter));
+    assertThrows(IllegalArgumentException.class, () -> service.update("fullName", "x", filter));
+
+    // criteria are checked against the contact fields, never copied into the query
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ContactBulkFilter.parse(Arrays.asList(criterion("1 = 1 OR self.id", ">", 0))));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ContactBulkFilter.parse(Arrays.asList(criterion("id", "> 0 OR 1 =", 0))));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ContactBulkFilter.parse(Arrays.asList(criterion("emails", "isNull", null))));
+
+    assertEquals(0, service.count(ContactBulkFilter.ids(Collections.emptyList())));
+  }
+
+  private Contact find(int index) {
+    return JPA.em().find(Contact.class, ids.get(index));
+  }
+
+  private Map<String, Object> criterion(String field, String operator, Object value) {
+    final Map<String, Object> criterion = new HashMap<>();
+    criterion.put("fieldName", field);
+    criterion.put("operator", operator);
+    criterion.put("value", value);
+    return criterion;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.contact.service.ContactDuplicate;
+import com.axelor.contact.service.ContactDuplicateCandidates;
+import com.axelor.contact.service.ContactDuplicateFinder;
+import com.axelor.contact.service.ContactDuplicateFinder.Signature;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class ContactDuplicateTest {
+
+  private final ContactDuplicateFinder finder =
+      new ContactDuplicateFinder(
+          ForkJoinPool.commonPool(),
+          ContactDuplicateFinder.DEFAULT_WINDOW,
+          ContactDuplicateFinder.DEFAULT_THRESHOLD);
+
+  @Test
+  public void testNormalize() {
+    assertEquals("jerome dupre", ContactDuplicateFinder.normalizeName(" Jérôme-Dupré "));
+    assertEquals("john@gmail.com", ContactDuplicateFinder.normalizeEmail("John+news@Gmail.com"));
+    assertEquals(
+        ContactDuplicateFinder.normalizePhone("+33 6 12 34 56 78"),
+        ContactDuplicateFinder.normalizePhone("06.12.34.56.78"));
+  }
+
+  @Test
+  public void testFind() {
+    final Random random = new Random(42);
+    final List<Signature> signatures = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      signatures.add(
+          new Signature(i + 10, word(random), word(random), "mail" + i + "@test.com", null));
+    }
+    signatures.add(new Signature(1, "Fredrick", "Brandt", "hello1@test.com", null));
+    signatures.add(new Signature(2, "Frédrick", "Brandt", null, null));
+    signatures.add(new Signature(3, "Fred", "Smith", "Hello1@test.com", null));
+
+    final List<ContactDuplicate> found = finder.find(signatures);
+
+    assertTrue(found.stream().anyMatch(d -> d.getFirstId() == 1 && d.getSecondId() == 2));
+    assertTrue(found.stream().anyMatch(d -> d.getFirstId() == 1 && d.getSecondId() == 3));
+    assertTrue(found.stream().allMatch(d -> d.getFirstId() < 10));
+  }
+
+  @Test
+  public void testBounded() {
+    final Random random = new Random(7);
+    final List<ContactDuplicate> all = new ArrayList<>();
+    final ContactDuplicateCandidates found = new ContactDuplicateCandidates(10);
+    for (int i = 0; i < 1000; i++) {
+      final ContactDuplicate duplicate = new ContactDuplicate(i, i + 1, random.nextDouble());
+      all.add(duplicate);
+      found.offer(duplicate);
+      // the same pair found again by another key, with a lower score
+      found.offer(new ContactDuplicate(i + 1, i, duplicate.getScore() / 2));
+    }
+
+    all.sort(Comparator.comparingDouble(ContactDuplicate::getScore).reversed());
+    final List<ContactDuplicate> best = found.toList();
+    assertEquals(10, best.size());
+    for (int i = 0; i < best.size(); i++) {
+      assertEquals(all.get(i).getFirstId(), best.get(i).getFirstId());
+      assertEquals(all.get(i).getScore(), best.get(i).getScore());
+    }
+  }
+
+  @Test
+  public void testLargeIds() {
+    final ContactDuplicateCandidates found = new ContactDuplicateCandidates(10);
+    // the same low 32 bits, but distinct pairs
+    found.offer(new ContactDuplicate(1, 2, 0.95));
+    found.offer(new ContactDuplicate(1, (1L << 32) | 2, 0.92));
+    found.offer(new ContactDuplicate((1L << 32) | 1, 2, 0.91));
+
+    assertEquals(3, found.size());
+    assertEquals((1L << 32) | 2, found.toList().get(1).getSecondId());
+  }
+
+  private String word(Random random) {
+    final char[] chars = new char[8];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.contact.db.Address;
+import com.axelor.contact.db.Circle;
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.db.Email;
+import com.axelor.contact.db.Phone;
+import com.axelor.contact.service.ContactDuplicateService;
+import com.axelor.contact.service.ContactMergeService;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ContactMergeTest {
+
+  private final Long[] ids = new Long[3];
+
+  @BeforeEach
+  public void setUp() {
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < ids.length; i++) {
+            final Circle circle = new Circle();
+            circle.setCode("merge" + i);
+            circle.setName("Merge " + i);
+
+            final Contact contact = new Contact("Merge", "Contact " + i);
+            contact.addCircle(JPA.save(circle));
+            ids[i] = JPA.save(contact).getId();
+
+            final Email email = new Email();
+            email.setEmail("merge" + i + "@test.com");
+            email.setContact(contact);
+            JPA.save(email);
+
+            final Phone phone = new Phone();
+            phone.setPhone("060000000" + i);
+            phone.setContact(contact);
+            JPA.save(phone);
+
+            final Address address = new Address();
+            address.setStreet(i + " Merge street");
+            address.setContact(contact);
+            JPA.save(address);
+          }
+        });
+  }
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> {
+          JPA.em().createQuery("DELETE FROM ContactDuplicatePair self").executeUpdate();
+          final String merged = "self.contact.firstName = 'Merge'";
+          Query.of(Email.class).filter(merged).fetch().forEach(JPA::remove);
+          Query.of(Phone.class).filter(merged).fetch().forEach(JPA::remove);
+          Query.of(Address.class).filter(merged).fetch().forEach(JPA::remove);
+          Query.of(Contact.class).filter("self.firstName = 'Merge'").fetch().forEach(JPA::remove);
+          Query.of(Circle.class).filter("self.code LIKE 'merge%'").delete();
+        });
+  }
+
+  @Test
+  public void testMerge() {
+    Beans.get(ContactMergeService.class).merge(ids[0], Arrays.asList(ids[1], ids[2], ids[0]));
+    JPA.em().clear();
+
+    assertNull(JPA.em().find(Contact.class, ids[1]));
+    assertNull(JPA.em().find(Contact.class, ids[2]));
+
+    final Contact master = JPA.em().find(Contact.class, ids[0]);
+    assertNotNull(master);
+    assertEquals(3, master.getCircles().size());
+    // the records of the duplicates point to the master
+    assertEquals(3, count(Email.class, ids[0]));
+    assertEquals(3, count(Phone.class, ids[0]));
+    assertEquals(3, count(Address.class, ids[0]));
+  }
+
+  @Test
+  public void testMissingMaster() {
+    final ContactMergeService service = Beans.get(ContactMergeService.class);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> service.merge(Long.MAX_VALUE, Collections.singletonList(ids[1])));
+    JPA.em().clear();
+
+    // nothing was re-pointed or removed
+    assertNotNull(JPA.em().find(Contact.class, ids[1]));
+    assertEquals(1, count(Email.class, ids[1]));
+    assertEquals(1, count(Address.class, ids[1]));
+  }
+
+  @Test
+  public void testDuplicatePairs() {
+    assertTrue(Beans.get(ContactDuplicateService.class).saveDuplicates() > 0);
+    assertTrue(pairs(ids[1]) > 0);
+
+    Beans.get(ContactMergeService.class).merge(ids[0], Collections.singletonList(ids[1]));
+    // the pairs of the merged duplicate are gone with it
+    assertEquals(0, pairs(ids[1]));
+  }
+
+  private long pairs(Long contactId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT COUNT(self) FROM ContactDuplicatePair self "
+                + "WHERE self.first.id = :contact OR self.second.id = :contact",
+            Long.class)
+        .setParameter("contact", contactId)
+        .getSingleResult();
+  }
+
+  private long count(Class<?> entity, Long contactId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT COUNT(self) FROM "
+                + entity.getSimpleName()
+                + " self WHERE self.contact.id = :contact",
+            Long.class)
+        .setParameter("contact", contactId)
+        .getSingleResult();
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.contact.service.IdBitmap;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+public class IdBitmapTest {
+
+  @Test
+  public void testOperations() {
+    final Random random = new Random(42);
+    final IdBitmap a = new IdBitmap();
+    final IdBitmap b = new IdBitmap();
+    final TreeSet<Long> setA = new TreeSet<>();
+    final TreeSet<Long> setB = new TreeSet<>();
+
+    // dense values end up in bitmap containers, sparse ones in array containers
+    for (int i = 0; i < 100_000; i++) {
+      final long x = random.nextInt(200_000);
+      final long y = random.nextInt(20_000_000);
+      a.add(x);
+      setA.add(x);
+      b.add(y);
+      setB.add(y);
+    }
+    for (int i = 0; i < 20_000; i++) {
+      final long x = random.nextInt(200_000);
+      a.remove(x);
+      setA.remove(x);
+    }
+
+    assertEquals(setA.size(), a.cardinality());
+
+    final TreeSet<Long> and = new TreeSet<>(setA);
+    and.retainAll(setB);
+    assertArrayEquals(toArray(and), a.and(b).page(0, and.size()));
+
+    final TreeSet<Long> or = new TreeSet<>(setA);
+    or.addAll(setB);
+    assertArrayEquals(toArray(or), a.or(b).page(0, or.size()));
+
+    final TreeSet<Long> andNot = new TreeSet<>(setA);
+    andNot.removeAll(setB);
+    assertArrayEquals(toArray(andNot), a.andNot(b).page(0, andNot.size()));
+
+    final long[] page = a.page(1000, 10);
+    assertArrayEquals(
+        setA.stream().skip(1000).limit(10).mapToLong(Long::longValue).toArray(), page);
+  }
+
+  @Test
+  public void testInvalidPage() {
+    final IdBitmap bitmap = IdBitmap.of(1, 2, 3);
+    assertThrows(IllegalArgumentException.class, () -> bitmap.page(-1, 10));
+    assertThrows(IllegalArgumentException.class, () -> bitmap.page(0, -1));
+    assertArrayEquals(new long[0], bitmap.page(5, 10));
+  }
+
+  private long[] toArray(TreeSet<Long> set) {
+    return set.stream().mapToLong(Long::longValue).toArray();
+  }
+}
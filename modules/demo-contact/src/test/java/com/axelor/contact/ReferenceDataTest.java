@@ -0,0 +1,103 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.contact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.contact.db.Contact;
+import com.axelor.contact.db.Country;
+import com.axelor.contact.service.ReferenceDataObserver;
+import com.axelor.contact.service.ReferenceDataService;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.events.PostRequest;
+import com.axelor.inject.Beans;
+import com.axelor.rpc.Request;
+import com.axelor.rpc.Response;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ReferenceDataTest {
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> Query.of(Country.class).filter("self.name = 'Reference land'").delete());
+    Beans.get(ReferenceDataService.class).load();
+  }
+
+  @Test
+  public void testLoad() {
+    final ReferenceDataService service = Beans.get(ReferenceDataService.class);
+    final Long id = createCountry("RL");
+    service.load();
+
+    assertTrue(service.isReference(Country.class));
+    assertFalse(service.isReference(Contact.class));
+    assertEquals(id, service.findByCode(Country.class, "RL").getId());
+    assertEquals(id, service.find(Country.class, id).getId());
+    assertNull(service.findByCode(Country.class, "R?"));
+  }
+
+  @Test
+  public void testInvalidateOnSave() {
+    final ReferenceDataService service = Beans.get(ReferenceDataService.class);
+    final ReferenceDataObserver observer = Beans.get(ReferenceDataObserver.class);
+    final Long id = createCountry("RL");
+    service.load();
+
+    // renamed without a request event, the loaded codes still have the old one
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery("UPDATE Country self SET self.code = 'RM' WHERE self.id = :id")
+                .setParameter("id", id)
+                .executeUpdate());
+    assertEquals(id, service.findByCode(Country.class, "RL").getId());
+
+    observer.onSave(saved(Contact.class));
+    assertEquals(id, service.findByCode(Country.class, "RL").getId());
+
+    observer.onSave(saved(Country.class));
+    assertNull(service.findByCode(Country.class, "RL"));
+    assertEquals(id, service.findByCode(Country.class, "RM").getId());
+  }
+
+  private Long createCountry(String code) {
+    final Country country = new Country();
+    country.setCode(code);
+    country.setName("Reference land");
+    JPA.runInTransaction(() -> JPA.save(country));
+    return country.getId();
+  }
+
+  private PostRequest saved(Class<?> model) {
+    final Request request = new Request();
+    request.setModel(model.getName());
+    return new PostRequest(request, new Response());
+  }
+}
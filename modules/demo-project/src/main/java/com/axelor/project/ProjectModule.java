@@ -19,12 +19,23 @@
 package com.axelor.project;
 
 import com.axelor.app.AxelorModule;
+import com.axelor.project.service.ProjectMembershipIndex;
+import com.axelor.project.service.ResourceLoadService;
+import com.axelor.project.service.TaskCalendarObserver;
+import com.axelor.project.service.TaskCounterService;
+import com.axelor.project.service.TaskRankObserver;
 import com.axelor.project.service.UpdateUserProjectQuickMenu;
 
 public class ProjectModule extends AxelorModule {
 
   @Override
   protected void configure() {
+    bind(ProjectMembershipIndex.class);
+    bind(TaskRankObserver.class);
+    bind(TaskCalendarObserver.class);
+    bind(TaskCounterService.class);
+    bind(ResourceLoadService.class);
+
     addQuickMenu(UpdateUserProjectQuickMenu.class);
   }
 }
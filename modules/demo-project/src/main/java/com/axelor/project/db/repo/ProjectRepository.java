@@ -0,0 +1,67 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.db.repo;
+
+import com.axelor.auth.db.User;
+import com.axelor.batch.service.TransactionCallbacks;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.service.ProjectMembershipIndex;
+import com.axelor.project.service.ProjectRollupService;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import org.hibernate.Hibernate;
+
+public class ProjectRepository extends AbstractProjectRepository {
+
+  @Inject private ProjectRollupService rollupService;
+
+  @Inject private ProjectMembershipIndex membershipIndex;
+
+  @Override
+  public Project save(Project entity) {
+    // tasks edited with the project are saved by cascade, not by their repository
+    if (entity.getTasks() != null && Hibernate.isInitialized(entity.getTasks())) {
+      int total = 0;
+      for (ProjectTask task : entity.getTasks()) {
+        rollupService.updateProgress(task);
+        total += task.getLoggedMinutes() == null ? 0 : task.getLoggedMinutes();
+      }
+      entity.setTotalMinutes(total);
+    }
+    final Project project = super.save(entity);
+    final Long id = project.getId();
+    if (project.getMembers() != null && Hibernate.isInitialized(project.getMembers())) {
+      final Set<Long> members =
+          project.getMembers().stream().map(User::getId).collect(Collectors.toSet());
+      TransactionCallbacks.afterCommit(() -> membershipIndex.update(id, members));
+    } else {
+      TransactionCallbacks.afterCommit(() -> membershipIndex.invalidateProject(id));
+    }
+    return project;
+  }
+
+  @Override
+  public void remove(Project entity) {
+    final Long id = entity.getId();
+    super.remove(entity);
+    TransactionCallbacks.afterCommit(() -> membershipIndex.remove(id));
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.db.repo;
+
+import com.axelor.batch.service.IntervalBuckets;
+import com.axelor.project.db.ProjectTask;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/** Keeps the {@link IntervalBuckets} key of the tasks up to date. */
+public class ProjectTaskListener {
+
+  @PrePersist
+  @PreUpdate
+  public void updateTimeBucket(ProjectTask entity) {
+    entity.setTimeBucket(IntervalBuckets.key(entity.getStartDate(), entity.getEndDate()));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.db.repo;
+
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.service.ProjectRollupService;
+import com.axelor.project.service.ProjectRollupService.StoredTask;
+import com.axelor.project.service.ResourceLoadService;
+import com.axelor.project.service.TaskCounterService;
+import com.axelor.project.service.TaskDependencyOrder;
+import com.axelor.project.service.TaskRankService;
+import com.axelor.project.service.TimesheetRollupService;
+import java.util.Objects;
+import javax.inject.Inject;
+
+public class ProjectTaskRepository extends AbstractProjectTaskRepository {
+
+  @Inject private ProjectRollupService rollupService;
+
+  @Inject private TaskDependencyOrder dependencyOrder;
+
+  @Inject private TaskRankService rankService;
+
+  @Inject private TimesheetRollupService timesheetService;
+
+  @Inject private TaskCounterService counterService;
+
+  @Inject private ResourceLoadService resourceLoad;
+
+  @Override
+  public ProjectTask save(ProjectTask entity) {
+    final StoredTask stored = rollupService.storedTask(entity.getId());
+    final long total = value(entity.getTotalMinutes());
+    final long logged = value(entity.getLoggedMinutes());
+    rollupService.beforeSave(entity);
+    if (entity.getKanbanRank() == null) {
+      entity.setKanbanRank(rankService.lastRank(entity.getState()));
+    }
+    final ProjectTask task = super.save(entity);
+    dependencyOrder.update(task, stored == null ? null : stored.getProjectId());
+    rollupService.afterSave(task, stored, total, logged);
+    counterService.afterSave(task, stored);
+    resourceLoad.update(task);
+    final Long projectId = task.getProject() == null ? null : task.getProject().getId();
+    if (stored != null && !Objects.equals(stored.getProjectId(), projectId)) {
+      timesheetService.moveTask(task.getId(), projectId);
+    }
+    return task;
+  }
+
+  @Override
+  public void remove(ProjectTask entity) {
+    final StoredTask stored = rollupService.storedTask(entity.getId());
+    final long total = value(entity.getTotalMinutes());
+    final long logged = value(entity.getLoggedMinutes());
+    timesheetService.removeTask(entity.getId());
+    super.remove(entity);
+    dependencyOrder.remove(entity.getId(), stored == null ? null : stored.getProjectId());
+    rollupService.afterRemove(stored, total, logged);
+    counterService.afterRemove(stored);
+    resourceLoad.remove(entity.getId());
+  }
+
+  private static long value(Integer value) {
+    return value == null ? 0 : value;
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.db.repo;
+
+import com.axelor.project.db.ProjectWork;
+import com.axelor.project.service.ProjectRollupService;
+import com.axelor.project.service.ProjectRollupService.StoredWork;
+import com.axelor.project.service.TimesheetRollupService;
+import javax.inject.Inject;
+
+public class ProjectWorkRepository extends AbstractProjectWorkRepository {
+
+  @Inject private ProjectRollupService rollupService;
+
+  @Inject private TimesheetRollupService timesheetService;
+
+  @Override
+  public ProjectWork save(ProjectWork entity) {
+    final StoredWork stored = rollupService.storedWork(entity.getId());
+    final ProjectWork work = super.save(entity);
+    rollupService.afterSave(work, stored);
+    timesheetService.afterSave(work, stored);
+    return work;
+  }
+
+  @Override
+  public void remove(ProjectWork entity) {
+    final StoredWork stored = rollupService.storedWork(entity.getId());
+    super.remove(entity);
+    rollupService.afterRemove(stored);
+    timesheetService.afterRemove(stored);
+  }
+}
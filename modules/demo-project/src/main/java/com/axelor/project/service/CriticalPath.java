@@ -0,0 +1,239 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import java.util.Arrays;
+
+/**
+ * Critical path method over a task dependency graph held in primitive arrays.
+ *
+ * <p>Tasks are indexed from {@code 0} to {@code n - 1} and times are plain numbers, minutes in
+ * practice. A dependency links a predecessor to a successor and is turned into a lag: the
+ * successor can't start before the predecessor start plus the lag. The graph is stored as
+ * compressed successor lists, ordered with Kahn's algorithm, then scheduled with one forward and
+ * one backward pass, so the whole computation is linear in the number of tasks and dependencies.
+ */
+public final class CriticalPath {
+
+  public static final int FINISH_TO_START = 0;
+
+  public static final int START_TO_START = 1;
+
+  public static final int FINISH_TO_FINISH = 2;
+
+  public static final int START_TO_FINISH = 3;
+
+  private final long[] durations;
+
+  private int[] predecessors = new int[16];
+
+  private int[] successors = new int[16];
+
+  private byte[] types = new byte[16];
+
+  private int edgeCount;
+
+  /** @param durations the duration of each task */
+  public CriticalPath(long[] durations) {
+    this.durations = durations;
+  }
+
+  public int size() {
+    return durations.length;
+  }
+
+  /**
+   * Add a dependency.
+   *
+   * @param predecessor the index of the task depended on
+   * @param successor the index of the dependent task
+   * @param type one of {@link #FINISH_TO_START}, {@link #START_TO_START}, {@link
+   *     #FINISH_TO_FINISH} or {@link #START_TO_FINISH}
+   */
+  public void addDependency(int predecessor, int successor, int type) {
+    if (type < FINISH_TO_START || type > START_TO_FINISH) {
+      throw new IllegalArgumentException("Unknown dependency type: " + type);
+    }
+    if (edgeCount == predecessors.length) {
+      predecessors = Arrays.copyOf(predecessors, edgeCount * 2);
+      successors = Arrays.copyOf(successors, edgeCount * 2);
+      types = Arrays.copyOf(types, edgeCount * 2);
+    }
+    predecessors[edgeCount] = predecessor;
+    successors[edgeCount] = successor;
+    types[edgeCount] = (byte) type;
+    edgeCount++;
+  }
+
+  private long lag(int edge) {
+    switch (types[edge]) {
+      case FINISH_TO_START:
+        return durations[predecessors[edge]];
+      case FINISH_TO_FINISH:
+        return durations[predecessors[edge]] - durations[successors[edge]];
+      case START_TO_FINISH:
+        return -durations[successors[edge]];
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Schedule the tasks.
+   *
+   * @param release the time no task can start before
+   * @return the schedule
+   * @throws IllegalStateException if the dependencies contain a cycle
+   */
+  public Schedule compute(long release) {
+    return compute(release, null);
+  }
+
+  /**
+   * Schedule the tasks, each one starting at the earliest at its own release time.
+   *
+   * @param release the time no task can start before
+   * @param releases the time each task can't start before, may be null
+   * @return the schedule
+   * @throws IllegalStateException if the dependencies contain a cycle
+   */
+  public Schedule compute(long release, long[] releases) {
+    final int n = durations.length;
+
+    // compressed successor lists
+    final int[] offsets = new int[n + 1];
+    for (int e = 0; e < edgeCount; e++) {
+      offsets[predecessors[e] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    final int[] targets = new int[edgeCount];
+    final long[] lags = new long[edgeCount];
+    final int[] position = Arrays.copyOf(offsets, n);
+    final int[] indegree = new int[n];
+    for (int e = 0; e < edgeCount; e++) {
+      final int k = position[predecessors[e]]++;
+      targets[k] = successors[e];
+      lags[k] = lag(e);
+      indegree[successors[e]]++;
+    }
+
+    // topological order
+    final int[] order = new int[n];
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < n; i++) {
+      if (indegree[i] == 0) {
+        order[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      final int u = order[head++];
+      for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+        if (--indegree[targets[k]] == 0) {
+          order[tail++] = targets[k];
+        }
+      }
+    }
+    if (tail < n) {
+      throw new IllegalStateException(
+          String.format("Task dependencies contain a cycle through %d tasks", n - tail));
+    }
+
+    // forward pass
+    final long[] earliest = new long[n];
+    for (int i = 0; i < n; i++) {
+      earliest[i] = releases == null ? release : Math.max(release, releases[i]);
+    }
+    long finish = release;
+    for (int i = 0; i < n; i++) {
+      final int u = order[i];
+      for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+        earliest[targets[k]] = Math.max(earliest[targets[k]], earliest[u] + lags[k]);
+      }
+      finish = Math.max(finish, earliest[u] + durations[u]);
+    }
+
+    // backward pass
+    final long[] latest = new long[n];
+    for (int i = n - 1; i >= 0; i--) {
+      final int u = order[i];
+      long start = finish - durations[u];
+      for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+        start = Math.min(start, latest[targets[k]] - lags[k]);
+      }
+      latest[u] = start;
+    }
+
+    return new Schedule(order, earliest, latest, finish);
+  }
+
+  /** The result of {@link CriticalPath#compute(long, long[])}. */
+  public static final class Schedule {
+
+    private final int[] order;
+
+    private final long[] earliest;
+
+    private final long[] latest;
+
+    private final long finish;
+
+    private Schedule(int[] order, long[] earliest, long[] latest, long finish) {
+      this.order = order;
+      this.earliest = earliest;
+      this.latest = latest;
+      this.finish = finish;
+    }
+
+    public long earliestStart(int task) {
+      return earliest[task];
+    }
+
+    public long latestStart(int task) {
+      return latest[task];
+    }
+
+    public long slack(int task) {
+      return latest[task] - earliest[task];
+    }
+
+    public boolean isCritical(int task) {
+      return latest[task] == earliest[task];
+    }
+
+    /** The end of the last task. */
+    public long finish() {
+      return finish;
+    }
+
+    /** The tasks without slack, in topological order. */
+    public int[] criticalPath() {
+      int count = 0;
+      final int[] path = new int[order.length];
+      for (int u : order) {
+        if (isCritical(u)) {
+          path[count++] = u;
+        }
+      }
+      return Arrays.copyOf(path, count);
+    }
+  }
+}
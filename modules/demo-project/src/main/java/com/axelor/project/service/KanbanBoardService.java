@@ -0,0 +1,350 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JPA;
+import com.axelor.project.db.ProjectTask;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Singleton;
+import javax.persistence.TypedQuery;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+/**
+ * Pages the columns of the project task Kanban board.
+ *
+ * <p>The first page and the total of every column are read with a single windowed query, instead
+ * of a search and a count per column. A column is then continued from the {@code (kanbanRank, id)}
+ * of its last card, the order of the board, so loading more cards costs the same deep in a column
+ * as at its top. Tasks without rank sort last, as {@link TaskRankService} renumbers them.
+ *
+ * <p>On databases without window functions (HSQLDB) the first pages are read column by column. So
+ * are they when {@link RecordRules} restrict the tasks: the rules are JPQL, they can't be added to
+ * the SQL of the windowed query.
+ */
+@Singleton
+public class KanbanBoardService {
+
+  public static final int DEFAULT_LIMIT = 10;
+
+  public static final int MAX_LIMIT = 100;
+
+  /** the rank of the tasks without rank */
+  private static final long LAST_RANK = Long.MAX_VALUE;
+
+  private static final String CARD =
+      "SELECT self.id, self.version, self.name, self.notes, self.progress, self.startDate, "
+          + "self.endDate, user.id, user.code, self.state, self.kanbanRank "
+          + "FROM ProjectTask self LEFT JOIN self.user user ";
+
+  private Boolean windowed;
+
+  /** A page of the cards of a column. */
+  public static final class Column {
+
+    private final String state;
+
+    private final List<Map<String, Object>> cards = new ArrayList<>();
+
+    private long total;
+
+    private Long nextRank;
+
+    private Long nextId;
+
+    Column(String state) {
+      this.state = state;
+    }
+
+    public String getState() {
+      return state;
+    }
+
+    /** The cards, in board order. */
+    public List<Map<String, Object>> getCards() {
+      return cards;
+    }
+
+    /** The number of cards in the whole column, only set on a first page. */
+    public long getTotal() {
+      return total;
+    }
+
+    /** The rank to continue from, with {@link #getNextId()}; null on the last page. */
+    public Long getNextRank() {
+      return nextRank;
+    }
+
+    public Long getNextId() {
+      return nextId;
+    }
+
+    public Map<String, Object> toMap() {
+      final Map<String, Object> map = new HashMap<>();
+      map.put("state", state);
+      map.put("cards", cards);
+      map.put("total", total);
+      map.put("nextRank", nextRank);
+      map.put("nextId", nextId);
+      return map;
+    }
+  }
+
+  /**
+   * Get the first page and the total of every column.
+   *
+   * @param states the states of the columns, in board order, null for the tasks without state
+   * @param projectId the project of the tasks, all tasks if null
+   * @param limit the number of cards per column, clamped to 1..{@value #MAX_LIMIT}
+   * @param rules the record rules of the user, null if no rule restricts the tasks
+   * @return the columns
+   */
+  public List<Column> board(List<String> states, Long projectId, int limit, RecordRules rules) {
+    final int size = clamp(limit);
+    if (states.isEmpty()) {
+      return new ArrayList<>();
+    }
+    if (rules != null || !isWindowed()) {
+      final List<Column> columns = new ArrayList<>();
+      for (String state : states) {
+        final Column column = column(state, projectId, null, null, size, rules);
+        column.total = count(state, projectId, rules);
+        columns.add(column);
+      }
+      return columns;
+    }
+
+    final Map<String, Column> columns = new LinkedHashMap<>();
+    states.forEach(state -> columns.put(state, new Column(state)));
+    final Map<Long, Column> pageIds = new LinkedHashMap<>();
+    JPA.jdbcWork(connection -> firstPages(connection, states, projectId, size, columns, pageIds));
+
+    if (!pageIds.isEmpty()) {
+      final Map<Long, Object[]> rows = new HashMap<>();
+      for (Object[] row :
+          JPA.em()
+              .createQuery(CARD + "WHERE self.id IN :ids", Object[].class)
+              .setParameter("ids", pageIds.keySet())
+              .getResultList()) {
+        rows.put((Long) row[0], row);
+      }
+      // ids are in board order, the query ones aren't
+      for (Map.Entry<Long, Column> entry : pageIds.entrySet()) {
+        add(entry.getValue(), rows.get(entry.getKey()), size);
+      }
+    }
+    return new ArrayList<>(columns.values());
+  }
+
+  /**
+   * Get the next page of a column.
+   *
+   * @param state the state of the column
+   * @param projectId the project of the tasks, all tasks if null
+   * @param afterRank the {@link Column#getNextRank()} of the previous page
+   * @param afterId the {@link Column#getNextId()} of the previous page
+   * @param limit the number of cards, clamped to 1..{@value #MAX_LIMIT}
+   * @param rules the record rules of the user, null if no rule restricts the tasks
+   */
+  public Column column(
+      String state, Long projectId, Long afterRank, Long afterId, int limit, RecordRules rules) {
+    final int size = clamp(limit);
+    final String rank = "COALESCE(self.kanbanRank, " + LAST_RANK + ")";
+    final StringBuilder where =
+        new StringBuilder(state == null ? "WHERE self.state IS NULL" : "WHERE self.state = :state");
+    if (projectId != null) {
+      where.append(" AND self.project.id = :project");
+    }
+    if (afterId != null) {
+      where.append(String.format(" AND (%1$s > :rank OR (%1$s = :rank AND self.id > :id))", rank));
+    }
+    if (rules != null) {
+      where.append(" AND ").append(rules.getCondition());
+    }
+    final TypedQuery<Object[]> query =
+        JPA.em()
+            .createQuery(CARD + where + " ORDER BY " + rank + ", self.id", Object[].class)
+            .setMaxResults(size + 1);
+    if (state != null) {
+      query.setParameter("state", state);
+    }
+    if (projectId != null) {
+      query.setParameter("project", projectId);
+    }
+    if (afterId != null) {
+      query.setParameter("rank", afterRank == null ? LAST_RANK : afterRank);
+      query.setParameter("id", afterId);
+    }
+    if (rules != null) {
+      rules.bind(query);
+    }
+    final Column column = new Column(state);
+    for (Object[] row : query.getResultList()) {
+      add(column, row, size);
+    }
+    return column;
+  }
+
+  private static int clamp(int limit) {
+    return Math.max(1, Math.min(limit, MAX_LIMIT));
+  }
+
+  private long count(String state, Long projectId, RecordRules rules) {
+    final TypedQuery<Long> query =
+        JPA.em()
+            .createQuery(
+                "SELECT COUNT(self.id) FROM ProjectTask self WHERE "
+                    + (state == null ? "self.state IS NULL" : "self.state = :state")
+                    + (projectId == null ? "" : " AND self.project.id = :project")
+                    + (rules == null ? "" : " AND " + rules.getCondition()),
+                Long.class);
+    if (state != null) {
+      query.setParameter("state", state);
+    }
+    if (projectId != null) {
+      query.setParameter("project", projectId);
+    }
+    if (rules != null) {
+      rules.bind(query);
+    }
+    return query.getSingleResult();
+  }
+
+  private void firstPages(
+      Connection connection,
+      Collection<String> states,
+      Long projectId,
+      int limit,
+      Map<String, Column> columns,
+      Map<Long, Column> pageIds)
+      throws SQLException {
+    final AbstractEntityPersister task =
+        (AbstractEntityPersister)
+            JPA.em()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getMetamodel()
+                .entityPersister(ProjectTask.class);
+    final String id = task.getIdentifierColumnNames()[0];
+    final String state = task.getPropertyColumnNames("state")[0];
+    final String rank =
+        String.format("COALESCE(%s, %d)", task.getPropertyColumnNames("kanbanRank")[0], LAST_RANK);
+    final List<String> values = new ArrayList<>();
+    for (String s : states) {
+      if (s != null) {
+        values.add(s);
+      }
+    }
+    final List<String> conditions = new ArrayList<>();
+    if (!values.isEmpty()) {
+      conditions.add(
+          String.format(
+              "%s IN (%s)", state, String.join(", ", Collections.nCopies(values.size(), "?"))));
+    }
+    if (values.size() < states.size()) {
+      conditions.add(state + " IS NULL");
+    }
+    final String sql =
+        String.format(
+            "SELECT id, state, total FROM ("
+                + "SELECT %1$s AS id, %2$s AS state, "
+                + "ROW_NUMBER() OVER (PARTITION BY %2$s ORDER BY %3$s, %1$s) AS position, "
+                + "COUNT(*) OVER (PARTITION BY %2$s) AS total "
+                + "FROM %4$s WHERE (%5$s)%6$s) cards "
+                + "WHERE position <= ? ORDER BY state, position",
+            id,
+            state,
+            rank,
+            task.getTableName(),
+            String.join(" OR ", conditions),
+            projectId == null
+                ? ""
+                : " AND " + task.getPropertyColumnNames("project")[0] + " = ?");
+
+    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+      int i = 1;
+      for (String s : values) {
+        stmt.setString(i++, s);
+      }
+      if (projectId != null) {
+        stmt.setLong(i++, projectId);
+      }
+      // one more card tells whether the column continues
+      stmt.setInt(i, limit + 1);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          final Column column = columns.get(rs.getString(2));
+          column.total = rs.getLong(3);
+          pageIds.put(rs.getLong(1), column);
+        }
+      }
+    }
+  }
+
+  private static void add(Column column, Object[] row, int limit) {
+    if (row == null || column.nextId != null) {
+      return;
+    }
+    if (column.cards.size() == limit) {
+      final Map<String, Object> last = column.cards.get(limit - 1);
+      column.nextId = (Long) last.get("id");
+      column.nextRank = last.get("kanbanRank") == null ? LAST_RANK : (Long) last.get("kanbanRank");
+      return;
+    }
+    final Map<String, Object> card = new HashMap<>();
+    card.put("id", row[0]);
+    card.put("version", row[1]);
+    card.put("name", row[2]);
+    card.put("notes", row[3]);
+    card.put("progress", row[4]);
+    card.put("startDate", row[5]);
+    card.put("endDate", row[6]);
+    if (row[7] != null) {
+      final Map<String, Object> user = new HashMap<>();
+      user.put("id", row[7]);
+      user.put("code", row[8]);
+      card.put("user", user);
+    }
+    card.put("state", row[9]);
+    card.put("kanbanRank", row[10]);
+    column.cards.add(card);
+  }
+
+  private boolean isWindowed() {
+    if (windowed == null) {
+      JPA.jdbcWork(
+          connection -> {
+            final String product = connection.getMetaData().getDatabaseProductName();
+            windowed = !product.toUpperCase().contains("HSQL");
+          });
+    }
+    return windowed;
+  }
+}
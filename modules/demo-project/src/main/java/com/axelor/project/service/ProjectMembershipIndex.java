@@ -0,0 +1,226 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.event.Observes;
+import com.axelor.events.PostRequest;
+import com.axelor.events.RequestEvent;
+import com.axelor.events.StartupEvent;
+import com.axelor.ui.QuickMenuItem;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * In-memory index of the {@code Project.members} memberships, from each user to the ids of its
+ * projects, with a cache of the "My projects" quick menu items of each user.
+ *
+ * <p>The index is loaded at startup and kept up to date by the project repository. The cached menu
+ * of a user is dropped when its memberships, one of its projects or any user changes.
+ *
+ * <p>The index lives in the memory of each node: on a cluster, a node only sees the members saved
+ * on the other nodes after {@link #load()}, until then the "My projects" menu may miss or keep
+ * projects there.
+ */
+@Singleton
+public class ProjectMembershipIndex {
+
+  private static final int PAGE_SIZE = 10_000;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Map<Long, NavigableSet<Long>> projectsByUser = new HashMap<>();
+
+  private Map<Long, Set<Long>> membersByProject = new HashMap<>();
+
+  private final Map<Long, List<QuickMenuItem>> menus = new ConcurrentHashMap<>();
+
+  /** incremented on every menu invalidation, so that a menu built meanwhile is not cached */
+  private final AtomicLong menuGeneration = new AtomicLong();
+
+  public void onStartup(@Observes StartupEvent event) {
+    load();
+  }
+
+  public void onSave(@Observes @Named(RequestEvent.SAVE) PostRequest event) {
+    // the default project of a user changed
+    if (User.class.isAssignableFrom(event.getRequest().getBeanClass())) {
+      invalidateMenus();
+    }
+  }
+
+  /** (Re)load the whole index from the database. */
+  public void load() {
+    final Map<Long, NavigableSet<Long>> loadedProjects = new HashMap<>();
+    final Map<Long, Set<Long>> loadedMembers = new HashMap<>();
+
+    long lastId = 0;
+    while (true) {
+      final List<Long> projectIds =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id FROM Project self WHERE self.id > :lastId ORDER BY self.id",
+                  Long.class)
+              .setParameter("lastId", lastId)
+              .setMaxResults(PAGE_SIZE)
+              .getResultList();
+      if (projectIds.isEmpty()) {
+        break;
+      }
+      lastId = projectIds.get(projectIds.size() - 1);
+      final List<Object[]> rows =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, member.id FROM Project self JOIN self.members member "
+                      + "WHERE self.id IN :ids",
+                  Object[].class)
+              .setParameter("ids", projectIds)
+              .getResultList();
+      for (Object[] row : rows) {
+        loadedMembers.computeIfAbsent((Long) row[0], k -> new HashSet<>()).add((Long) row[1]);
+        loadedProjects.computeIfAbsent((Long) row[1], k -> new TreeSet<>()).add((Long) row[0]);
+      }
+    }
+
+    lock.writeLock().lock();
+    try {
+      projectsByUser = loadedProjects;
+      membersByProject = loadedMembers;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    invalidateMenus();
+  }
+
+  /**
+   * Record the members of a project.
+   *
+   * @param projectId the project id
+   * @param memberIds the ids of all the project members
+   */
+  public void update(Long projectId, Collection<Long> memberIds) {
+    final Set<Long> members = new HashSet<>(memberIds);
+    lock.writeLock().lock();
+    try {
+      final Set<Long> previous = membersByProject.put(projectId, members);
+      if (previous != null) {
+        for (Long userId : previous) {
+          final NavigableSet<Long> projectIds = projectsByUser.get(userId);
+          if (projectIds != null && !members.contains(userId)) {
+            projectIds.remove(projectId);
+          }
+          invalidateMenu(userId);
+        }
+      }
+      for (Long userId : members) {
+        projectsByUser.computeIfAbsent(userId, k -> new TreeSet<>()).add(projectId);
+        invalidateMenu(userId);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(Long projectId) {
+    update(projectId, Collections.emptySet());
+    lock.writeLock().lock();
+    try {
+      membersByProject.remove(projectId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Drop the cached menus of the members of a project, after it is renamed for example. */
+  public void invalidateProject(Long projectId) {
+    lock.readLock().lock();
+    try {
+      for (Long userId : membersByProject.getOrDefault(projectId, Collections.emptySet())) {
+        invalidateMenu(userId);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the ids of the projects of a user, in ascending order.
+   *
+   * @param userId the user id
+   * @param limit the maximum number of ids to return
+   * @return the project ids
+   */
+  public long[] projects(Long userId, int limit) {
+    lock.readLock().lock();
+    try {
+      final NavigableSet<Long> projectIds = projectsByUser.get(userId);
+      if (projectIds == null) {
+        return new long[0];
+      }
+      return projectIds.stream().limit(limit).mapToLong(Long::longValue).toArray();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the cached quick menu items of a user.
+   *
+   * @param userId the user id
+   * @param builder builds the items when they are not cached
+   * @return the items
+   */
+  public List<QuickMenuItem> menu(Long userId, Supplier<List<QuickMenuItem>> builder) {
+    final List<QuickMenuItem> cached = menus.get(userId);
+    if (cached != null) {
+      return cached;
+    }
+    final long generation = menuGeneration.get();
+    final List<QuickMenuItem> items = Collections.unmodifiableList(builder.get());
+    if (menuGeneration.get() == generation) {
+      menus.put(userId, items);
+    }
+    return items;
+  }
+
+  public void invalidateMenu(Long userId) {
+    menuGeneration.incrementAndGet();
+    menus.remove(userId);
+  }
+
+  public void invalidateMenus() {
+    menuGeneration.incrementAndGet();
+    menus.clear();
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.db.JPA;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.ProjectWork;
+import com.google.inject.persist.Transactional;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.persistence.FlushModeType;
+import org.hibernate.Hibernate;
+
+/**
+ * Maintains the persisted work rollups of the project tasks.
+ *
+ * <p>A task holds the time logged on itself ({@code loggedMinutes}, {@code workCount}) and on
+ * itself and all its sub-tasks ({@code totalMinutes}), from which its {@code progress} is derived.
+ * A project holds the time logged on its tasks. The repositories apply the changes as deltas up
+ * the {@code parentTask} chain and to the project, so the work items are never walked on read. The
+ * deltas are bulk updates, which don't bump the version of the parents and the project: saving
+ * two sibling tasks at once doesn't fail on their common rows.
+ *
+ * <p>The {@code childCount} of a task counts its sub-tasks, the one of a project its root tasks,
+ * so the task tree knows which nodes can be expanded without querying their children.
+ */
+public class ProjectRollupService {
+
+  /** The stored associations and state of a task, before it is saved. */
+  public static final class StoredTask {
+
+    final Long parentId;
+
+    final Long projectId;
+
+    final Long userId;
+
+    final String state;
+
+    StoredTask(Long parentId, Long projectId, Long userId, String state) {
+      this.parentId = parentId;
+      this.projectId = projectId;
+      this.userId = userId;
+      this.state = state;
+    }
+
+    public Long getProjectId() {
+      return projectId;
+    }
+
+    public Long getUserId() {
+      return userId;
+    }
+
+    public String getState() {
+      return state;
+    }
+  }
+
+  /** The stored task, time, user and date of a work item, before it is saved. */
+  public static final class StoredWork {
+
+    final Long taskId;
+
+    final long minutes;
+
+    final Long userId;
+
+    final LocalDate date;
+
+    StoredWork(Long taskId, long minutes, Long userId, LocalDate date) {
+      this.taskId = taskId;
+      this.minutes = minutes;
+      this.userId = userId;
+      this.date = date;
+    }
+
+    public Long getTaskId() {
+      return taskId;
+    }
+
+    public long getMinutes() {
+      return minutes;
+    }
+
+    public Long getUserId() {
+      return userId;
+    }
+
+    public LocalDate getDate() {
+      return date;
+    }
+  }
+
+  /**
+   * The progress of a task: 100 once complete, else the ratio of the logged time to the task
+   * duration. Without work or dates, the planned progress.
+   */
+  public static int progress(
+      String state,
+      LocalDateTime startDate,
+      LocalDateTime endDate,
+      BigDecimal plannedProgress,
+      int workCount,
+      long loggedMinutes) {
+    if ("complete".equals(state)) {
+      return 100;
+    }
+    if (workCount == 0 || startDate == null || endDate == null) {
+      return plannedProgress == null ? 0 : plannedProgress.intValue();
+    }
+    final double duration = ChronoUnit.HOURS.between(startDate, endDate);
+    final double result = Math.min(100.0, ((loggedMinutes / 60.0) / duration) * 100);
+    return (int) Math.round(result);
+  }
+
+  public static long minutes(LocalTime hours) {
+    return hours == null ? 0 : hours.getHour() * 60L + hours.getMinute();
+  }
+
+  public void updateProgress(ProjectTask task) {
+    task.setProgress(
+        progress(
+            task.getState(),
+            task.getStartDate(),
+            task.getEndDate(),
+            task.getPlannedProgress(),
+            value(task.getWorkCount()),
+            value(task.getLoggedMinutes())));
+  }
+
+  /** Read the stored associations and state of a task, ignoring the pending changes. */
+  public StoredTask storedTask(Long id) {
+    if (id == null) {
+      return null;
+    }
+    final List<Object[]> rows =
+        JPA.em()
+            .createQuery(
+                "SELECT parent.id, project.id, user.id, self.state FROM ProjectTask self "
+                    + "LEFT JOIN self.parentTask parent LEFT JOIN self.project project "
+                    + "LEFT JOIN self.user user WHERE self.id = :id",
+                Object[].class)
+            .setParameter("id", id)
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+    if (rows.isEmpty()) {
+      return null;
+    }
+    final Object[] row = rows.get(0);
+    return new StoredTask((Long) row[0], (Long) row[1], (Long) row[2], (String) row[3]);
+  }
+
+  /** Read the stored task, time, user and date of a work item, ignoring the pending changes. */
+  public StoredWork storedWork(Long id) {
+    if (id == null) {
+      return null;
+    }
+    final List<Object[]> rows =
+        JPA.em()
+            .createQuery(
+                "SELECT self.task.id, self.hours, user.id, self.date FROM ProjectWork self "
+                    + "LEFT JOIN self.user user WHERE self.id = :id",
+                Object[].class)
+            .setParameter("id", id)
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+    return rows.isEmpty()
+        ? null
+        : new StoredWork(
+            (Long) rows.get(0)[0],
+            minutes((LocalTime) rows.get(0)[1]),
+            (Long) rows.get(0)[2],
+            (LocalDate) rows.get(0)[3]);
+  }
+
+  /**
+   * Update the rollups of a task before it is saved: its own time is recomputed when its work items
+   * are loaded, which is the case when they are edited with the task.
+   */
+  public void beforeSave(ProjectTask task) {
+    final long childMinutes =
+        task.getId() == null ? 0 : value(task.getTotalMinutes()) - value(task.getLoggedMinutes());
+    if (task.getWorkItems() != null && Hibernate.isInitialized(task.getWorkItems())) {
+      long logged = 0;
+      for (ProjectWork work : task.getWorkItems()) {
+        logged += minutes(work.getHours());
+      }
+      task.setWorkCount(task.getWorkItems().size());
+      task.setLoggedMinutes((int) logged);
+    }
+    task.setTotalMinutes((int) (value(task.getLoggedMinutes()) + childMinutes));
+    updateProgress(task);
+  }
+
+  /**
+   * Propagate the changes of a saved task to its parents and its project.
+   *
+   * @param task the saved task
+   * @param stored its stored associations, null if new
+   * @param previousTotal its total time before {@link #beforeSave(ProjectTask)}
+   * @param previousLogged its own time before {@link #beforeSave(ProjectTask)}
+   */
+  public void afterSave(
+      ProjectTask task, StoredTask stored, long previousTotal, long previousLogged) {
+    final Long parentId = task.getParentTask() == null ? null : task.getParentTask().getId();
+    final Long projectId = task.getProject() == null ? null : task.getProject().getId();
+    final long total = value(task.getTotalMinutes());
+    final long logged = value(task.getLoggedMinutes());
+
+    final Long oldParentId = stored == null ? null : stored.parentId;
+    final Long oldProjectId = stored == null ? null : stored.projectId;
+    final long oldTotal = stored == null ? 0 : previousTotal;
+    final long oldLogged = stored == null ? 0 : previousLogged;
+
+    if (Objects.equals(oldParentId, parentId)) {
+      addToParents(parentId, total - oldTotal);
+    } else {
+      addToParents(oldParentId, -oldTotal);
+      addToParents(parentId, total);
+    }
+    if (Objects.equals(oldProjectId, projectId)) {
+      addToProject(projectId, logged - oldLogged);
+    } else {
+      addToProject(oldProjectId, -oldLogged);
+      addToProject(projectId, logged);
+    }
+    if (stored == null || !Objects.equals(oldParentId, parentId)) {
+      addChild(oldParentId, stored == null ? null : oldProjectId, -1);
+      addChild(parentId, projectId, 1);
+    } else if (parentId == null && !Objects.equals(oldProjectId, projectId)) {
+      addChild(null, oldProjectId, -1);
+      addChild(null, projectId, 1);
+    }
+  }
+
+  /** Remove the time of a deleted task from its parents and its project. */
+  public void afterRemove(StoredTask stored, long total, long logged) {
+    if (stored != null) {
+      addToParents(stored.parentId, -total);
+      addToProject(stored.projectId, -logged);
+      addChild(stored.parentId, stored.projectId, -1);
+    }
+  }
+
+  /** Propagate the changes of a saved work item. */
+  public void afterSave(ProjectWork work, StoredWork stored) {
+    final Long taskId = work.getTask() == null ? null : work.getTask().getId();
+    final long minutes = minutes(work.getHours());
+    if (stored == null) {
+      addWork(taskId, 1, minutes);
+    } else if (Objects.equals(stored.taskId, taskId)) {
+      addWork(taskId, 0, minutes - stored.minutes);
+    } else {
+      addWork(stored.taskId, -1, -stored.minutes);
+      addWork(taskId, 1, minutes);
+    }
+  }
+
+  /** Remove the time of a deleted work item. */
+  public void afterRemove(StoredWork stored) {
+    if (stored != null) {
+      addWork(stored.taskId, -1, -stored.minutes);
+    }
+  }
+
+  /**
+   * Add work to a task, its parents and its project.
+   *
+   * @param taskId the task id
+   * @param count the number of work items added, negative if removed
+   * @param minutes the time added, negative if removed
+   */
+  public void addWork(Long taskId, int count, long minutes) {
+    if (taskId == null || (count == 0 && minutes == 0)) {
+      return;
+    }
+    final List<Object[]> rows =
+        JPA.em()
+            .createQuery(
+                "SELECT parent.id, project.id FROM ProjectTask self "
+                    + "LEFT JOIN self.parentTask parent LEFT JOIN self.project project "
+                    + "WHERE self.id = :id",
+                Object[].class)
+            .setParameter("id", taskId)
+            .getResultList();
+    if (rows.isEmpty()) {
+      return;
+    }
+    JPA.em()
+        .createQuery(
+            "UPDATE ProjectTask self SET "
+                + "self.workCount = COALESCE(self.workCount, 0) + :count, "
+                + "self.loggedMinutes = COALESCE(self.loggedMinutes, 0) + :minutes, "
+                + "self.totalMinutes = COALESCE(self.totalMinutes, 0) + :minutes "
+                + "WHERE self.id = :id")
+        .setParameter("count", count)
+        .setParameter("minutes", (int) minutes)
+        .setParameter("id", taskId)
+        .executeUpdate();
+    // the progress is derived from the updated time, read in the locked row
+    final Object[] task =
+        JPA.em()
+            .createQuery(
+                "SELECT self.state, self.startDate, self.endDate, self.plannedProgress, "
+                    + "self.workCount, self.loggedMinutes FROM ProjectTask self "
+                    + "WHERE self.id = :id",
+                Object[].class)
+            .setParameter("id", taskId)
+            .getSingleResult();
+    JPA.em()
+        .createQuery("UPDATE ProjectTask self SET self.progress = :progress WHERE self.id = :id")
+        .setParameter(
+            "progress",
+            progress(
+                (String) task[0],
+                (LocalDateTime) task[1],
+                (LocalDateTime) task[2],
+                (BigDecimal) task[3],
+                value((Integer) task[4]),
+                value((Integer) task[5])))
+        .setParameter("id", taskId)
+        .executeUpdate();
+    reload(ProjectTask.class, taskId);
+    addToParents((Long) rows.get(0)[0], minutes);
+    addToProject((Long) rows.get(0)[1], minutes);
+  }
+
+  /**
+   * Count a child added to a tree node: its parent task, or its project for a root task.
+   *
+   * @param parentId the parent task id
+   * @param projectId the project id, used if the task has no parent
+   * @param count the number of children added, negative if removed
+   */
+  private void addChild(Long parentId, Long projectId, int count) {
+    if (parentId != null) {
+      update(ProjectTask.class, "childCount", parentId, count);
+    } else if (projectId != null) {
+      update(Project.class, "childCount", projectId, count);
+    }
+  }
+
+  private void addToParents(Long parentId, long minutes) {
+    final Set<Long> visited = new HashSet<>();
+    Long id = parentId;
+    while (minutes != 0 && id != null && visited.add(id)) {
+      final List<Long> parents =
+          JPA.em()
+              .createQuery(
+                  "SELECT parent.id FROM ProjectTask self LEFT JOIN self.parentTask parent "
+                      + "WHERE self.id = :id",
+                  Long.class)
+              .setParameter("id", id)
+              .getResultList();
+      if (parents.isEmpty()) {
+        return;
+      }
+      update(ProjectTask.class, "totalMinutes", id, minutes);
+      id = parents.get(0);
+    }
+  }
+
+  private void addToProject(Long projectId, long minutes) {
+    if (projectId != null && minutes != 0) {
+      update(Project.class, "totalMinutes", projectId, minutes);
+    }
+  }
+
+  /**
+   * Add a delta to a counter of a task or a project with a bulk update, which neither reads the row
+   * nor bumps its version, so that concurrent saves of sibling tasks or work items don't conflict
+   * on their common parents and project.
+   */
+  private void update(Class<?> type, String field, Long id, long delta) {
+    JPA.em()
+        .createQuery(
+            String.format(
+                "UPDATE %s self SET self.%s = COALESCE(self.%s, 0) + :delta WHERE self.id = :id",
+                type.getSimpleName(), field, field))
+        .setParameter("delta", (int) delta)
+        .setParameter("id", id)
+        .executeUpdate();
+    reload(type, id);
+  }
+
+  /**
+   * Reload a task or a project updated in bulk if the session holds it, so that it doesn't show,
+   * nor save again, the former counters. It has no pending changes: the session is flushed before
+   * a bulk update.
+   */
+  private void reload(Class<?> type, Long id) {
+    final Object entity = JPA.em().getReference(type, id);
+    if (Hibernate.isInitialized(entity)) {
+      JPA.em().refresh(entity);
+    }
+  }
+
+  /** Recompute all the rollups from the work items, e.g. after a bulk import. */
+  @Transactional
+  public void rebuild() {
+    final Map<Long, long[]> work = new HashMap<>();
+    final List<Object[]> rows =
+        JPA.em()
+            .createQuery("SELECT self.task.id, self.hours FROM ProjectWork self", Object[].class)
+            .getResultList();
+    for (Object[] row : rows) {
+      final long[] counts = work.computeIfAbsent((Long) row[0], k -> new long[2]);
+      counts[0]++;
+      counts[1] += minutes((LocalTime) row[1]);
+    }
+
+    final List<ProjectTask> tasks =
+        JPA.em()
+            .createQuery("SELECT self FROM ProjectTask self", ProjectTask.class)
+            .getResultList();
+    final Map<Long, Long> projects = new HashMap<>();
+    for (ProjectTask task : tasks) {
+      task.setChildCount(0);
+    }
+    for (ProjectTask task : tasks) {
+      final long[] counts = work.getOrDefault(task.getId(), new long[2]);
+      task.setWorkCount((int) counts[0]);
+      task.setLoggedMinutes((int) counts[1]);
+      task.setTotalMinutes(0);
+      updateProgress(task);
+      if (task.getProject() != null) {
+        projects.merge(task.getProject().getId(), counts[1], Long::sum);
+      }
+    }
+    final Map<Long, Integer> children = new HashMap<>();
+    for (ProjectTask task : tasks) {
+      task.setTotalMinutes(value(task.getTotalMinutes()) + value(task.getLoggedMinutes()));
+      if (task.getParentTask() != null) {
+        final ProjectTask parent = task.getParentTask();
+        parent.setChildCount(value(parent.getChildCount()) + 1);
+      } else if (task.getProject() != null) {
+        children.merge(task.getProject().getId(), 1, Integer::sum);
+      }
+      final Set<ProjectTask> visited = new HashSet<>();
+      for (ProjectTask parent = task.getParentTask();
+          parent != null && visited.add(parent);
+          parent = parent.getParentTask()) {
+        parent.setTotalMinutes(value(parent.getTotalMinutes()) + value(task.getLoggedMinutes()));
+      }
+    }
+
+    for (Project project :
+        JPA.em().createQuery("SELECT self FROM Project self", Project.class).getResultList()) {
+      project.setTotalMinutes(projects.getOrDefault(project.getId(), 0L).intValue());
+      project.setChildCount(children.getOrDefault(project.getId(), 0));
+    }
+  }
+
+  private static int value(Integer value) {
+    return value == null ? 0 : value;
+  }
+}
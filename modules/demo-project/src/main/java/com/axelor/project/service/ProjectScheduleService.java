@@ -0,0 +1,335 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.db.JPA;
+import com.axelor.project.db.ProjectTask;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import javax.inject.Inject;
+import javax.persistence.Cache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the planned start dates of the tasks of a project with the {@link CriticalPath}
+ * method.
+ *
+ * <p>The tasks and their four dependency sets are read with plain JDBC into primitive arrays, the
+ * schedule is computed in memory and the changed {@code plannedStartDate} are written back with a
+ * JDBC batch update. A task starts at the earliest at its current planned start date, without one
+ * at the earliest planned or actual start date of the project, or today. Dependencies on tasks of
+ * other projects are ignored.
+ */
+public class ProjectScheduleService {
+
+  private static final int BATCH_SIZE = 500;
+
+  private static final String[] DEPENDENCIES = {
+    "finishToStartTaskSet", "startToStartTaskSet", "finishToFinishTaskSet", "startToFinishTaskSet"
+  };
+
+  private static final int[] DEPENDENCY_TYPES = {
+    CriticalPath.FINISH_TO_START,
+    CriticalPath.START_TO_START,
+    CriticalPath.FINISH_TO_FINISH,
+    CriticalPath.START_TO_FINISH
+  };
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  @Inject private ResourceLoadService resourceLoad;
+
+  /** The outcome of a scheduling run. */
+  public static final class Summary {
+
+    private final int tasks;
+
+    private final int updated;
+
+    private final long[] criticalPath;
+
+    private final LocalDateTime finish;
+
+    Summary(int tasks, int updated, long[] criticalPath, LocalDateTime finish) {
+      this.tasks = tasks;
+      this.updated = updated;
+      this.criticalPath = criticalPath;
+      this.finish = finish;
+    }
+
+    public int getTasks() {
+      return tasks;
+    }
+
+    /** The number of tasks whose planned start date changed. */
+    public int getUpdated() {
+      return updated;
+    }
+
+    /** The ids of the tasks without slack, in dependency order. */
+    public long[] getCriticalPath() {
+      return criticalPath;
+    }
+
+    /** The planned end of the project. */
+    public LocalDateTime getFinish() {
+      return finish;
+    }
+  }
+
+  /** The tasks of a project, sorted by id. */
+  private static final class Graph {
+
+    long[] ids = new long[0];
+
+    long[] durations = new long[0];
+
+    LocalDateTime[] plannedStarts = new LocalDateTime[0];
+
+    LocalDateTime release;
+
+    CriticalPath path;
+
+    int indexOf(long id) {
+      return Arrays.binarySearch(ids, id);
+    }
+  }
+
+  /**
+   * Schedule a project and save the planned start dates.
+   *
+   * @param projectId the project id
+   * @return the schedule summary
+   * @throws IllegalStateException if the task dependencies contain a cycle
+   */
+  public Summary schedule(Long projectId) {
+    final long start = System.currentTimeMillis();
+    final Graph graph = load(projectId);
+    final long loaded = System.currentTimeMillis();
+
+    final int n = graph.ids.length;
+    final long[] releases = new long[n];
+    for (int i = 0; i < n; i++) {
+      releases[i] =
+          graph.plannedStarts[i] == null
+              ? 0
+              : ChronoUnit.MINUTES.between(graph.release, graph.plannedStarts[i]);
+    }
+    final CriticalPath.Schedule schedule = graph.path.compute(0, releases);
+    final long computed = System.currentTimeMillis();
+
+    final long[] changedIds = new long[n];
+    final LocalDateTime[] changedStarts = new LocalDateTime[n];
+    int changed = 0;
+    for (int i = 0; i < n; i++) {
+      final LocalDateTime plannedStart = graph.release.plusMinutes(schedule.earliestStart(i));
+      if (!plannedStart.equals(graph.plannedStarts[i])) {
+        changedIds[changed] = graph.ids[i];
+        changedStarts[changed] = plannedStart;
+        changed++;
+      }
+    }
+    save(Arrays.copyOf(changedIds, changed), changedStarts);
+
+    final int[] path = schedule.criticalPath();
+    final long[] criticalPath = new long[path.length];
+    for (int i = 0; i < path.length; i++) {
+      criticalPath[i] = graph.ids[path[i]];
+    }
+
+    log.info(
+        "Project {} scheduled: {} tasks, {} updated, {} critical, "
+            + "loaded in {} ms, computed in {} ms, saved in {} ms",
+        projectId,
+        n,
+        changed,
+        criticalPath.length,
+        loaded - start,
+        computed - loaded,
+        System.currentTimeMillis() - computed);
+
+    return new Summary(n, changed, criticalPath, graph.release.plusMinutes(schedule.finish()));
+  }
+
+  private Graph load(Long projectId) {
+    final MetamodelImplementor metamodel = metamodel();
+    final AbstractEntityPersister task =
+        (AbstractEntityPersister) metamodel.entityPersister(ProjectTask.class);
+    final String id = task.getIdentifierColumnNames()[0];
+    final String project = task.getPropertyColumnNames("project")[0];
+
+    final Graph graph = new Graph();
+    JPA.jdbcWork(
+        connection -> {
+          loadTasks(
+              connection,
+              graph,
+              String.format(
+                  "SELECT %s, %s, %s, %s FROM %s WHERE %s = ? ORDER BY %s",
+                  id,
+                  task.getPropertyColumnNames("plannedDuration")[0],
+                  task.getPropertyColumnNames("plannedStartDate")[0],
+                  task.getPropertyColumnNames("startDate")[0],
+                  task.getTableName(),
+                  project,
+                  id),
+              projectId);
+          for (int d = 0; d < DEPENDENCIES.length; d++) {
+            final AbstractCollectionPersister dependency =
+                (AbstractCollectionPersister)
+                    metamodel.collectionPersister(
+                        ProjectTask.class.getName() + "." + DEPENDENCIES[d]);
+            loadDependencies(
+                connection,
+                graph,
+                String.format(
+                    "SELECT j.%s, j.%s FROM %s j JOIN %s t ON t.%s = j.%s WHERE t.%s = ?",
+                    dependency.getKeyColumnNames()[0],
+                    dependency.getElementColumnNames()[0],
+                    dependency.getTableName(),
+                    task.getTableName(),
+                    id,
+                    dependency.getKeyColumnNames()[0],
+                    project),
+                projectId,
+                DEPENDENCY_TYPES[d]);
+          }
+        });
+    return graph;
+  }
+
+  private void loadTasks(Connection connection, Graph graph, String sql, Long projectId)
+      throws SQLException {
+    int n = 0;
+    LocalDateTime release = null;
+    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+      stmt.setLong(1, projectId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          if (n == graph.ids.length) {
+            final int capacity = Math.max(16, n * 2);
+            graph.ids = Arrays.copyOf(graph.ids, capacity);
+            graph.durations = Arrays.copyOf(graph.durations, capacity);
+            graph.plannedStarts = Arrays.copyOf(graph.plannedStarts, capacity);
+          }
+          final BigDecimal hours = rs.getBigDecimal(2);
+          graph.ids[n] = rs.getLong(1);
+          graph.durations[n] =
+              hours == null ? 0 : Math.max(0, Math.round(hours.doubleValue() * 60));
+          graph.plannedStarts[n] = toLocalDateTime(rs.getTimestamp(3));
+          release = earliest(release, graph.plannedStarts[n]);
+          release = earliest(release, toLocalDateTime(rs.getTimestamp(4)));
+          n++;
+        }
+      }
+    }
+    graph.ids = Arrays.copyOf(graph.ids, n);
+    graph.durations = Arrays.copyOf(graph.durations, n);
+    graph.plannedStarts = Arrays.copyOf(graph.plannedStarts, n);
+    graph.release =
+        release == null ? LocalDate.now().atStartOfDay() : release.truncatedTo(ChronoUnit.MINUTES);
+    graph.path = new CriticalPath(graph.durations);
+  }
+
+  private void loadDependencies(
+      Connection connection, Graph graph, String sql, Long projectId, int type)
+      throws SQLException {
+    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+      stmt.setLong(1, projectId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          final int successor = graph.indexOf(rs.getLong(1));
+          final int predecessor = graph.indexOf(rs.getLong(2));
+          if (successor >= 0 && predecessor >= 0) {
+            graph.path.addDependency(predecessor, successor, type);
+          }
+        }
+      }
+    }
+  }
+
+  private void save(long[] ids, LocalDateTime[] plannedStarts) {
+    if (ids.length == 0) {
+      return;
+    }
+    final AbstractEntityPersister task =
+        (AbstractEntityPersister) metamodel().entityPersister(ProjectTask.class);
+    final String sql =
+        String.format(
+            "UPDATE %s SET %s = ?, %s = %s + 1 WHERE %s = ?",
+            task.getTableName(),
+            task.getPropertyColumnNames("plannedStartDate")[0],
+            task.getVersionColumnName(),
+            task.getVersionColumnName(),
+            task.getIdentifierColumnNames()[0]);
+
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < ids.length; i++) {
+                      stmt.setTimestamp(1, Timestamp.valueOf(plannedStarts[i]));
+                      stmt.setLong(2, ids[i]);
+                      stmt.addBatch();
+                      if ((i + 1) % BATCH_SIZE == 0) {
+                        stmt.executeBatch();
+                      }
+                    }
+                    stmt.executeBatch();
+                  }
+                }));
+
+    final Cache cache = JPA.em().getEntityManagerFactory().getCache();
+    for (long id : ids) {
+      cache.evict(ProjectTask.class, id);
+    }
+    // the session may hold stale copies of the updated tasks
+    JPA.em().clear();
+    resourceLoad.refresh(ids);
+  }
+
+  private static LocalDateTime toLocalDateTime(Timestamp value) {
+    return value == null ? null : value.toLocalDateTime();
+  }
+
+  private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+    return a == null || (b != null && b.isBefore(a)) ? b : a;
+  }
+
+  private static MetamodelImplementor metamodel() {
+    return JPA.em()
+        .getEntityManagerFactory()
+        .unwrap(SessionFactoryImplementor.class)
+        .getMetamodel();
+  }
+}
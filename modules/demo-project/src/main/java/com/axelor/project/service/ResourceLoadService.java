@@ -0,0 +1,423 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.batch.service.TransactionCallbacks;
+import com.axelor.db.JPA;
+import com.axelor.event.Observes;
+import com.axelor.events.StartupEvent;
+import com.axelor.project.db.ProjectTask;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory planned load of the users, in minutes per day.
+ *
+ * <p>A task books its {@code plannedDuration} hours on its user from the day of its {@code
+ * plannedStartDate}, at most {@link #DAY_CAPACITY} minutes a day, the next days taking the rest.
+ * Each user has an {@code int[]} of booked minutes indexed by day, so finding the overloaded days
+ * of all the users over a year is a scan of a few arrays.
+ *
+ * <p>The load is built at startup and kept up to date by the task repository, the changes being
+ * applied when their transaction commits. The changes committed while {@link #load()} runs are
+ * replayed on the loaded state. Tasks written outside of the repository are only seen after {@link
+ * #load()}.
+ *
+ * <p>The load lives in the memory of each node: on a cluster, a node only sees the tasks saved on
+ * the other nodes after {@link #sync()}, which re-reads the tasks changed since the previous sync.
+ */
+@Singleton
+public class ResourceLoadService {
+
+  /** The working time of a day, in minutes. */
+  public static final int DAY_CAPACITY = 8 * 60;
+
+  private static final int PAGE_SIZE = 10_000;
+
+  /** The minimum time between two syncs, in ms. */
+  private static final long SYNC_INTERVAL = 10_000;
+
+  /** Tasks flushed before a sync may commit after it, they are read again by the next one. */
+  private static final long SYNC_OVERLAP_MINUTES = 1;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Map<Long, Load> loads = new HashMap<>();
+
+  /** the booking of every planned task, to undo it when the task changes */
+  private Map<Long, Booking> bookings = new HashMap<>();
+
+  /** the changes booked during each running load, replayed on the loaded state */
+  private final List<Map<Long, Booking>> replays = new ArrayList<>();
+
+  /** the start of the last load or sync, null before the first load */
+  private LocalDateTime syncedAt;
+
+  private long lastSync;
+
+  /** The booked minutes of a user, by day. */
+  private static final class Load {
+
+    /** epoch day of {@code minutes[0]} */
+    long firstDay;
+
+    int[] minutes = new int[0];
+
+    void add(long day, int value) {
+      if (minutes.length == 0) {
+        firstDay = day;
+        minutes = new int[64];
+      } else if (day < firstDay) {
+        final int shift = (int) Math.max(firstDay - day, minutes.length / 2);
+        final int[] grown = new int[minutes.length + shift];
+        System.arraycopy(minutes, 0, grown, shift, minutes.length);
+        minutes = grown;
+        firstDay -= shift;
+      } else if (day - firstDay >= minutes.length) {
+        minutes = Arrays.copyOf(minutes, (int) Math.max(day - firstDay + 1, minutes.length * 2L));
+      }
+      minutes[(int) (day - firstDay)] += value;
+    }
+
+    int get(long day) {
+      final long i = day - firstDay;
+      return i < 0 || i >= minutes.length ? 0 : minutes[(int) i];
+    }
+  }
+
+  /** The days booked by a task. */
+  private static final class Booking {
+
+    final long userId;
+
+    final long firstDay;
+
+    final long minutes;
+
+    Booking(long userId, long firstDay, long minutes) {
+      this.userId = userId;
+      this.firstDay = firstDay;
+      this.minutes = minutes;
+    }
+
+    void apply(Map<Long, Load> loads, int sign) {
+      final Load load = loads.computeIfAbsent(userId, k -> new Load());
+      long day = firstDay;
+      for (long left = minutes; left > 0; left -= DAY_CAPACITY) {
+        load.add(day++, sign * (int) Math.min(left, DAY_CAPACITY));
+      }
+    }
+  }
+
+  /** An overloaded day of a user. */
+  public static final class Overload {
+
+    private final Long userId;
+
+    private final LocalDate day;
+
+    private final int minutes;
+
+    Overload(Long userId, LocalDate day, int minutes) {
+      this.userId = userId;
+      this.day = day;
+      this.minutes = minutes;
+    }
+
+    public Long getUserId() {
+      return userId;
+    }
+
+    public LocalDate getDay() {
+      return day;
+    }
+
+    /** The booked minutes, more than {@link ResourceLoadService#DAY_CAPACITY}. */
+    public int getMinutes() {
+      return minutes;
+    }
+  }
+
+  public void onStartup(@Observes StartupEvent event) {
+    load();
+  }
+
+  /** (Re)load the whole load from the database. */
+  public void load() {
+    final long start = System.currentTimeMillis();
+    final LocalDateTime loadedAt = LocalDateTime.now();
+    final Map<Long, Load> loadedLoads = new HashMap<>();
+    final Map<Long, Booking> loadedBookings = new HashMap<>();
+    // the tasks committed while loading may be read before their change
+    final Map<Long, Booking> replay = new HashMap<>();
+    lock.writeLock().lock();
+    try {
+      replays.add(replay);
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    try {
+      read(loadedLoads, loadedBookings);
+    } catch (RuntimeException e) {
+      lock.writeLock().lock();
+      try {
+        replays.remove(replay);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      throw e;
+    }
+
+    lock.writeLock().lock();
+    try {
+      replays.remove(replay);
+      replay.forEach((taskId, booking) -> book(loadedLoads, loadedBookings, taskId, booking));
+      loads = loadedLoads;
+      bookings = loadedBookings;
+      syncedAt = loadedAt;
+      lastSync = start;
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    log.info(
+        "Resource load built: {} tasks of {} users in {} ms",
+        loadedBookings.size(),
+        loadedLoads.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  /** Read the bookings of all the planned tasks. */
+  private static void read(Map<Long, Load> loads, Map<Long, Booking> bookings) {
+    long lastId = 0;
+    while (true) {
+      final List<Object[]> rows =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.user.id, self.plannedStartDate, self.plannedDuration "
+                      + "FROM ProjectTask self WHERE self.id > :lastId "
+                      + "AND self.plannedStartDate IS NOT NULL AND self.plannedDuration > 0 "
+                      + "ORDER BY self.id",
+                  Object[].class)
+              .setParameter("lastId", lastId)
+              .setMaxResults(PAGE_SIZE)
+              .getResultList();
+      if (rows.isEmpty()) {
+        break;
+      }
+      for (Object[] row : rows) {
+        final Booking booking = booking((Long) row[1], (LocalDateTime) row[2], (BigDecimal) row[3]);
+        if (booking != null) {
+          booking.apply(loads, 1);
+          bookings.put((Long) row[0], booking);
+        }
+      }
+      lastId = (Long) rows.get(rows.size() - 1)[0];
+    }
+  }
+
+  /** Record the planning of a saved task, once its transaction commits. */
+  public void update(ProjectTask task) {
+    final Long taskId = task.getId();
+    final Booking booking =
+        booking(
+            task.getUser() == null ? null : task.getUser().getId(),
+            task.getPlannedStartDate(),
+            task.getPlannedDuration());
+    TransactionCallbacks.afterCommit(() -> book(taskId, booking));
+  }
+
+  /** Drop the planning of a deleted task, once its transaction commits. */
+  public void remove(Long taskId) {
+    TransactionCallbacks.afterCommit(() -> book(taskId, null));
+  }
+
+  /** Re-read the planning of tasks updated outside of the repository. */
+  public void refresh(long[] taskIds) {
+    for (int from = 0; from < taskIds.length; from += PAGE_SIZE) {
+      final List<Long> ids = new ArrayList<>();
+      for (int i = from; i < Math.min(taskIds.length, from + PAGE_SIZE); i++) {
+        ids.add(taskIds[i]);
+      }
+      for (Object[] row :
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.user.id, self.plannedStartDate, self.plannedDuration "
+                      + "FROM ProjectTask self WHERE self.id IN :ids",
+                  Object[].class)
+              .setParameter("ids", ids)
+              .getResultList()) {
+        book((Long) row[0], booking((Long) row[1], (LocalDateTime) row[2], (BigDecimal) row[3]));
+      }
+    }
+  }
+
+  /**
+   * Catch up with the tasks saved on the other nodes of a cluster, at most every {@value
+   * #SYNC_INTERVAL} ms. The tasks created or updated since the previous sync are re-read, and the
+   * whole load is reloaded if some booked tasks were deleted.
+   */
+  public void sync() {
+    final LocalDateTime since;
+    final long start = System.currentTimeMillis();
+    final LocalDateTime now = LocalDateTime.now();
+    lock.writeLock().lock();
+    try {
+      if (start - lastSync < SYNC_INTERVAL) {
+        return;
+      }
+      lastSync = start;
+      since = syncedAt == null ? null : syncedAt.minusMinutes(SYNC_OVERLAP_MINUTES);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (since == null) {
+      load();
+      return;
+    }
+
+    final long[] changed =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM ProjectTask self "
+                    + "WHERE self.updatedOn >= :since OR self.createdOn >= :since",
+                Long.class)
+            .setParameter("since", since)
+            .getResultList()
+            .stream()
+            .mapToLong(Long::longValue)
+            .toArray();
+    refresh(changed);
+
+    final long planned =
+        JPA.em()
+            .createQuery(
+                "SELECT COUNT(self.id) FROM ProjectTask self WHERE self.user IS NOT NULL "
+                    + "AND self.plannedStartDate IS NOT NULL AND self.plannedDuration * 60 >= 1",
+                Long.class)
+            .getSingleResult();
+    final int booked;
+    lock.writeLock().lock();
+    try {
+      syncedAt = now;
+      booked = bookings.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (planned != booked) {
+      load();
+    }
+  }
+
+  private void book(Long taskId, Booking booking) {
+    lock.writeLock().lock();
+    try {
+      book(loads, bookings, taskId, booking);
+      for (Map<Long, Booking> replay : replays) {
+        replay.put(taskId, booking);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static void book(
+      Map<Long, Load> loads, Map<Long, Booking> bookings, Long taskId, Booking booking) {
+    final Booking previous =
+        booking == null ? bookings.remove(taskId) : bookings.put(taskId, booking);
+    if (previous != null) {
+      previous.apply(loads, -1);
+    }
+    if (booking != null) {
+      booking.apply(loads, 1);
+    }
+  }
+
+  private static Booking booking(Long userId, LocalDateTime start, BigDecimal hours) {
+    if (userId == null || start == null || hours == null || hours.signum() <= 0) {
+      return null;
+    }
+    final long minutes = hours.multiply(BigDecimal.valueOf(60)).longValue();
+    return minutes > 0 ? new Booking(userId, start.toLocalDate().toEpochDay(), minutes) : null;
+  }
+
+  /**
+   * Get the booked minutes of a user per day.
+   *
+   * @return the minutes, from {@code from} to {@code to} included
+   */
+  public int[] load(Long userId, LocalDate from, LocalDate to) {
+    final int[] result = new int[(int) (to.toEpochDay() - from.toEpochDay() + 1)];
+    lock.readLock().lock();
+    try {
+      final Load load = loads.get(userId);
+      if (load != null) {
+        for (int i = 0; i < result.length; i++) {
+          result[i] = load.get(from.toEpochDay() + i);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  /**
+   * Find the days where users are booked over their capacity.
+   *
+   * @param from the first day
+   * @param to the last day, included
+   * @return the overloaded days, by user then day
+   */
+  public List<Overload> overloaded(LocalDate from, LocalDate to) {
+    final List<Overload> result = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      loads.entrySet().stream()
+          .sorted(Map.Entry.comparingByKey())
+          .forEach(
+              entry -> {
+                final Load load = entry.getValue();
+                for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+                  final int minutes = load.get(day);
+                  if (minutes > DAY_CAPACITY) {
+                    result.add(new Overload(entry.getKey(), LocalDate.ofEpochDay(day), minutes));
+                  }
+                }
+              });
+    } finally {
+      lock.readLock().unlock();
+    }
+    return result;
+  }
+}
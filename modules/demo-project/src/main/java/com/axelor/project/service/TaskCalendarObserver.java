@@ -0,0 +1,44 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.batch.service.IntervalBuckets;
+import com.axelor.event.Observes;
+import com.axelor.events.PreRequest;
+import com.axelor.events.RequestEvent;
+import com.axelor.events.StartupEvent;
+import com.axelor.project.db.ProjectTask;
+import javax.inject.Named;
+
+/**
+ * Serves the date window searches of the task calendars with the {@link IntervalBuckets} index of
+ * the tasks.
+ */
+public class TaskCalendarObserver {
+
+  public void onStartup(@Observes StartupEvent event) {
+    IntervalBuckets.backfill(ProjectTask.class, "startDate", "endDate", "timeBucket");
+  }
+
+  public void onSearch(@Observes @Named(RequestEvent.SEARCH) PreRequest event) {
+    if (ProjectTask.class.equals(event.getRequest().getBeanClass())) {
+      IntervalBuckets.restrict(event.getRequest(), "startDate", "endDate", "timeBucket");
+    }
+  }
+}
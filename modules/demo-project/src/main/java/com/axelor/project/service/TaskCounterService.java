@@ -0,0 +1,174 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.event.Observes;
+import com.axelor.events.StartupEvent;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.UserTaskCounter;
+import com.axelor.project.service.ProjectRollupService.StoredTask;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains the {@link UserTaskCounter} of every user, the number of their pending tasks shown on
+ * the welcome dashboard.
+ *
+ * <p>The task repository applies the changes of {@code user} and {@code state} as deltas. Tasks
+ * written outside of the repository (data import, bulk updates) are caught up by {@link
+ * #reconcile()}, run at startup and by the {@code TaskCounterJob}.
+ */
+public class TaskCounterService {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  /** A pending task, the same as {@code self.state != 'complete'} in a query. */
+  public static boolean isOpen(String state) {
+    return state != null && !"complete".equals(state);
+  }
+
+  public void onStartup(@Observes StartupEvent event) {
+    reconcile();
+  }
+
+  public void afterSave(ProjectTask task, StoredTask stored) {
+    final Long userId = task.getUser() == null ? null : task.getUser().getId();
+    final boolean open = isOpen(task.getState());
+    if (stored == null) {
+      add(userId, open ? 1 : 0);
+      return;
+    }
+    final boolean wasOpen = isOpen(stored.getState());
+    if (open == wasOpen && Objects.equals(userId, stored.getUserId())) {
+      return;
+    }
+    add(stored.getUserId(), wasOpen ? -1 : 0);
+    add(userId, open ? 1 : 0);
+  }
+
+  public void afterRemove(StoredTask stored) {
+    if (stored != null && isOpen(stored.getState())) {
+      add(stored.getUserId(), -1);
+    }
+  }
+
+  /** Get the number of pending tasks of a user. */
+  public int count(Long userId) {
+    final List<Integer> rows =
+        JPA.em()
+            .createQuery(
+                "SELECT self.openTasks FROM UserTaskCounter self WHERE self.user.id = :user",
+                Integer.class)
+            .setParameter("user", userId)
+            .getResultList();
+    return rows.isEmpty() || rows.get(0) == null ? 0 : rows.get(0);
+  }
+
+  private void add(Long userId, int delta) {
+    if (userId == null || delta == 0) {
+      return;
+    }
+    final int updated =
+        JPA.em()
+            .createQuery(
+                "UPDATE UserTaskCounter self SET self.openTasks = self.openTasks + :delta "
+                    + "WHERE self.user.id = :user")
+            .setParameter("delta", delta)
+            .setParameter("user", userId)
+            .executeUpdate();
+    if (updated == 0) {
+      // first task of the user, the count includes the pending changes
+      final UserTaskCounter counter = new UserTaskCounter();
+      counter.setUser(JPA.em().find(User.class, userId));
+      counter.setOpenTasks(countTasks(userId));
+      JPA.em().persist(counter);
+    }
+  }
+
+  private int countTasks(Long userId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT COUNT(self.id) FROM ProjectTask self "
+                + "WHERE self.state != 'complete' AND self.user.id = :user",
+            Long.class)
+        .setParameter("user", userId)
+        .getSingleResult()
+        .intValue();
+  }
+
+  /**
+   * Recount the pending tasks of all the users and fix the counters that drifted.
+   *
+   * <p>The counters are locked first, so the deltas of the concurrent task changes are either
+   * committed before the recount or applied after it, never overwritten.
+   *
+   * @return the number of counters fixed
+   */
+  public int reconcile() {
+    final long start = System.currentTimeMillis();
+    final AtomicInteger fixed = new AtomicInteger();
+    JPA.runInTransaction(
+        () -> {
+          final EntityManager em = JPA.em();
+          em.createQuery("SELECT self.id FROM UserTaskCounter self ORDER BY self.id", Long.class)
+              .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+              .getResultList();
+
+          final String count =
+              "(SELECT COUNT(task.id) FROM ProjectTask task "
+                  + "WHERE task.state != 'complete' AND task.user = self.user)";
+          fixed.addAndGet(
+              em.createQuery(
+                      "UPDATE UserTaskCounter self SET self.openTasks = "
+                          + count
+                          + " WHERE self.openTasks IS NULL OR self.openTasks != "
+                          + count)
+                  .executeUpdate());
+
+          for (Object[] row :
+              em.createQuery(
+                      "SELECT self.user.id, COUNT(self.id) FROM ProjectTask self "
+                          + "WHERE self.state != 'complete' AND NOT EXISTS "
+                          + "(SELECT counter.id FROM UserTaskCounter counter "
+                          + "WHERE counter.user = self.user) "
+                          + "GROUP BY self.user.id",
+                      Object[].class)
+                  .getResultList()) {
+            final UserTaskCounter counter = new UserTaskCounter();
+            counter.setUser(em.find(User.class, row[0]));
+            counter.setOpenTasks(((Long) row[1]).intValue());
+            em.persist(counter);
+            fixed.incrementAndGet();
+          }
+        });
+
+    log.info(
+        "Task counters reconciled: {} fixed in {} ms",
+        fixed.get(),
+        System.currentTimeMillis() - start);
+    return fixed.get();
+  }
+}
@@ -0,0 +1,474 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.batch.service.TransactionCallbacks;
+import com.axelor.db.JPA;
+import com.axelor.i18n.I18n;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Singleton;
+import javax.persistence.FlushModeType;
+import javax.persistence.TypedQuery;
+import javax.validation.ValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a topological order of the tasks of each project to reject dependency cycles on save.
+ *
+ * <p>The four dependency sets of a task are merged into one predecessor graph per project, loaded
+ * on first use. An edge that agrees with the current order is accepted in constant time. Otherwise
+ * only the tasks between its two ends in the order are visited, to find a cycle or to reorder
+ * them (Pearce and Kelly dynamic topological sort).
+ *
+ * <p>Dependencies on tasks of other projects are not checked. A project graph is dropped when the
+ * transaction that changed it rolls back, and {@link #rebuild(Long)} reloads it from the database.
+ *
+ * <p>The graphs live in the memory of each node: on a cluster, a node misses the dependencies saved
+ * on the other nodes since it loaded a graph, so a cycle made of dependencies saved on two nodes
+ * may be accepted. It is then found by the scheduling of the project and by {@link
+ * #rebuild(Long)}, the "Check dependencies" action.
+ */
+@Singleton
+public class TaskDependencyOrder {
+
+  private static final String[] DEPENDENCIES = {
+    "finishToStartTaskSet", "startToStartTaskSet", "finishToFinishTaskSet", "startToFinishTaskSet"
+  };
+
+  private static final Long NO_PROJECT = 0L;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Map<Long, Graph> graphs = new ConcurrentHashMap<>();
+
+  /**
+   * Record the dependencies of a task that is being saved.
+   *
+   * @param task the task, with an id
+   * @param previousProjectId the stored project id of the task, null for none
+   * @throws ValidationException if a new dependency closes a cycle
+   */
+  public void update(ProjectTask task, Long previousProjectId) {
+    final Long projectId = keyOf(task.getProject());
+    final Long previousKey = previousProjectId == null ? NO_PROJECT : previousProjectId;
+    if (!previousKey.equals(projectId)) {
+      remove(task.getId(), previousKey);
+    }
+
+    final Set<Long> predecessorIds = new HashSet<>();
+    for (Collection<ProjectTask> dependencies :
+        Arrays.asList(
+            task.getFinishToStartTaskSet(),
+            task.getStartToStartTaskSet(),
+            task.getFinishToFinishTaskSet(),
+            task.getStartToFinishTaskSet())) {
+      if (dependencies != null) {
+        for (ProjectTask predecessor : dependencies) {
+          if (predecessor.getId() != null
+              && Objects.equals(keyOf(predecessor.getProject()), projectId)) {
+            predecessorIds.add(predecessor.getId());
+          }
+        }
+      }
+    }
+
+    final Graph graph = graphs.computeIfAbsent(projectId, this::load);
+    synchronized (graph) {
+      final int node = graph.node(task.getId());
+      final List<Integer> added = new ArrayList<>();
+      for (Long predecessorId : predecessorIds) {
+        final int predecessor = graph.node(predecessorId);
+        if (graph.hasEdge(predecessor, node)) {
+          continue;
+        }
+        if (!graph.addEdge(predecessor, node)) {
+          added.forEach(p -> graph.removeEdge(p, node));
+          throw new ValidationException(
+              String.format(
+                  I18n.get("Task %s can't depend on %s, it would create a dependency cycle."),
+                  task.getName(),
+                  nameOf(predecessorId)));
+        }
+        added.add(predecessor);
+      }
+      for (int predecessor : graph.predecessors(node)) {
+        if (!predecessorIds.contains(graph.ids[predecessor])) {
+          graph.removeEdge(predecessor, node);
+        }
+      }
+    }
+    dropOnRollback(projectId, previousKey);
+  }
+
+  /**
+   * Forget a removed task.
+   *
+   * @param taskId the task id
+   * @param projectId the stored project id of the task, null for none
+   */
+  public void remove(Long taskId, Long projectId) {
+    final Long key = projectId == null ? NO_PROJECT : projectId;
+    final Graph graph = graphs.get(key);
+    if (graph != null) {
+      synchronized (graph) {
+        graph.removeNode(taskId);
+      }
+      dropOnRollback(key, key);
+    }
+  }
+
+  /**
+   * Reload the order of a project from the database.
+   *
+   * @param projectId the project id, null for the tasks without project
+   * @return the dependencies left out because they close a cycle, as {@code [predecessor id,
+   *     task id]} pairs
+   */
+  public List<long[]> rebuild(Long projectId) {
+    final Long key = projectId == null ? NO_PROJECT : projectId;
+    final Graph graph = load(key);
+    graphs.put(key, graph);
+    return graph.cycles;
+  }
+
+  /** Drop the order of a project, it will be reloaded on next use. */
+  public void invalidate(Long projectId) {
+    graphs.remove(projectId == null ? NO_PROJECT : projectId);
+  }
+
+  private void dropOnRollback(Long projectId, Long previousProjectId) {
+    TransactionCallbacks.afterRollback(
+        () -> {
+          graphs.remove(projectId);
+          graphs.remove(previousProjectId);
+        });
+  }
+
+  private Graph load(Long projectId) {
+    final long start = System.currentTimeMillis();
+    final String condition =
+        NO_PROJECT.equals(projectId) ? "%s.project IS NULL" : "%s.project.id = :project";
+
+    final Graph graph = new Graph();
+    for (Long id :
+        query(Long.class, "SELECT self.id FROM ProjectTask self WHERE " + condition, projectId)) {
+      graph.node(id);
+    }
+
+    // edges as predecessor, successor node pairs
+    final List<int[]> edges = new ArrayList<>();
+    for (String dependencies : DEPENDENCIES) {
+      for (Object[] row :
+          query(
+              Object[].class,
+              "SELECT dep.id, self.id FROM ProjectTask self JOIN self."
+                  + dependencies
+                  + " dep WHERE "
+                  + condition
+                  + " AND "
+                  + condition.replace("%s", "dep"),
+              projectId)) {
+        edges.add(new int[] {graph.node((Long) row[0]), graph.node((Long) row[1])});
+      }
+    }
+
+    // initial order with Kahn's algorithm, tasks left on cycles go last
+    final int n = graph.size;
+    final int[] indegree = new int[n];
+    final List<List<Integer>> successors = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      successors.add(new ArrayList<>());
+    }
+    for (int[] edge : edges) {
+      if (successors.get(edge[0]).add(edge[1])) {
+        indegree[edge[1]]++;
+      }
+    }
+    final int[] order = new int[n];
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < n; i++) {
+      if (indegree[i] == 0) {
+        order[tail++] = i;
+      }
+    }
+    while (head < tail) {
+      for (int v : successors.get(order[head++])) {
+        if (--indegree[v] == 0) {
+          order[tail++] = v;
+        }
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (indegree[i] > 0) {
+        order[tail++] = i;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      graph.ord[order[i]] = i;
+    }
+
+    for (int[] edge : edges) {
+      if (!graph.hasEdge(edge[0], edge[1]) && !graph.addEdge(edge[0], edge[1])) {
+        graph.cycles.add(new long[] {graph.ids[edge[0]], graph.ids[edge[1]]});
+      }
+    }
+
+    if (!graph.cycles.isEmpty()) {
+      log.warn("Project {}: {} task dependencies close a cycle", projectId, graph.cycles.size());
+    }
+    log.debug(
+        "Project {}: dependency order of {} tasks loaded in {} ms",
+        projectId,
+        n,
+        System.currentTimeMillis() - start);
+    return graph;
+  }
+
+  private <T> List<T> query(Class<T> type, String jpql, Long projectId) {
+    final TypedQuery<T> query =
+        JPA.em()
+            .createQuery(jpql.replace("%s", "self"), type)
+            .setFlushMode(FlushModeType.COMMIT);
+    if (!NO_PROJECT.equals(projectId)) {
+      query.setParameter("project", projectId);
+    }
+    return query.getResultList();
+  }
+
+  private static Long keyOf(Project project) {
+    return project == null || project.getId() == null ? NO_PROJECT : project.getId();
+  }
+
+  private static String nameOf(Long taskId) {
+    final ProjectTask task = JPA.em().find(ProjectTask.class, taskId);
+    return task == null ? String.valueOf(taskId) : task.getName();
+  }
+
+  /** The dependency graph of a project, with a topological order of its nodes. */
+  private static final class Graph {
+
+    final Map<Long, Integer> index = new HashMap<>();
+
+    final List<long[]> cycles = new ArrayList<>();
+
+    long[] ids = new long[16];
+
+    /** the position of each node in the order */
+    int[] ord = new int[16];
+
+    IntList[] successors = new IntList[16];
+
+    IntList[] predecessors = new IntList[16];
+
+    boolean[] visited = new boolean[16];
+
+    int size;
+
+    int nextOrd;
+
+    int node(long id) {
+      final Integer existing = index.get(id);
+      if (existing != null) {
+        return existing;
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        ord = Arrays.copyOf(ord, size * 2);
+        successors = Arrays.copyOf(successors, size * 2);
+        predecessors = Arrays.copyOf(predecessors, size * 2);
+        visited = Arrays.copyOf(visited, size * 2);
+      }
+      ids[size] = id;
+      ord[size] = nextOrd++;
+      successors[size] = new IntList();
+      predecessors[size] = new IntList();
+      index.put(id, size);
+      return size++;
+    }
+
+    void removeNode(long id) {
+      final Integer node = index.remove(id);
+      if (node == null) {
+        return;
+      }
+      for (int v : successors[node].toArray()) {
+        predecessors[v].remove(node);
+      }
+      for (int u : predecessors[node].toArray()) {
+        successors[u].remove(node);
+      }
+      successors[node] = new IntList();
+      predecessors[node] = new IntList();
+    }
+
+    int[] predecessors(int node) {
+      return predecessors[node].toArray();
+    }
+
+    boolean hasEdge(int from, int to) {
+      return successors[from].contains(to);
+    }
+
+    void removeEdge(int from, int to) {
+      successors[from].remove(to);
+      predecessors[to].remove(from);
+    }
+
+    /** Add the edge from x to y, reordering the affected nodes, false if it closes a cycle. */
+    boolean addEdge(int x, int y) {
+      if (x == y) {
+        return false;
+      }
+      final int lower = ord[y];
+      final int upper = ord[x];
+      if (lower < upper) {
+        final IntList forward = new IntList();
+        final boolean cycle = !walk(y, upper, true, forward);
+        if (cycle) {
+          return false;
+        }
+        final IntList backward = new IntList();
+        walk(x, lower, false, backward);
+        reorder(backward, forward);
+      }
+      successors[x].add(y);
+      predecessors[y].add(x);
+      return true;
+    }
+
+    /**
+     * Collect the nodes reachable from start within the bound, following successors with a lower
+     * position than the bound (forward) or predecessors with a higher one (backward).
+     *
+     * @return false if the forward walk reaches the bound itself, that is a cycle
+     */
+    private boolean walk(int start, int bound, boolean forward, IntList reached) {
+      final IntList stack = new IntList();
+      stack.add(start);
+      visited[start] = true;
+      boolean acyclic = true;
+      while (stack.size > 0 && acyclic) {
+        final int u = stack.values[--stack.size];
+        reached.add(u);
+        final IntList next = forward ? successors[u] : predecessors[u];
+        for (int i = 0; i < next.size; i++) {
+          final int w = next.values[i];
+          if (forward && ord[w] == bound) {
+            acyclic = false;
+            break;
+          }
+          if (!visited[w] && (forward ? ord[w] < bound : ord[w] > bound)) {
+            visited[w] = true;
+            stack.add(w);
+          }
+        }
+      }
+      for (int i = 0; i < reached.size; i++) {
+        visited[reached.values[i]] = false;
+      }
+      for (int i = 0; i < stack.size; i++) {
+        visited[stack.values[i]] = false;
+      }
+      return acyclic;
+    }
+
+    /** Give the backward nodes the lowest positions of both sets, keeping their relative order. */
+    private void reorder(IntList backward, IntList forward) {
+      final int[] b = sortByOrd(backward);
+      final int[] f = sortByOrd(forward);
+      final int[] positions = new int[b.length + f.length];
+      for (int i = 0; i < b.length; i++) {
+        positions[i] = ord[b[i]];
+      }
+      for (int i = 0; i < f.length; i++) {
+        positions[b.length + i] = ord[f[i]];
+      }
+      Arrays.sort(positions);
+      for (int i = 0; i < b.length; i++) {
+        ord[b[i]] = positions[i];
+      }
+      for (int i = 0; i < f.length; i++) {
+        ord[f[i]] = positions[b.length + i];
+      }
+    }
+
+    private int[] sortByOrd(IntList nodes) {
+      final long[] keyed = new long[nodes.size];
+      for (int i = 0; i < nodes.size; i++) {
+        keyed[i] = ((long) ord[nodes.values[i]] << 32) | nodes.values[i];
+      }
+      Arrays.sort(keyed);
+      final int[] sorted = new int[keyed.length];
+      for (int i = 0; i < keyed.length; i++) {
+        sorted[i] = (int) keyed[i];
+      }
+      return sorted;
+    }
+  }
+
+  /** A growable list of ints. */
+  private static final class IntList {
+
+    int[] values = new int[4];
+
+    int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    boolean contains(int value) {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void remove(int value) {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == value) {
+          values[i] = values[--size];
+          return;
+        }
+      }
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
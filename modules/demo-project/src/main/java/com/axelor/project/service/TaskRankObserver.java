@@ -0,0 +1,220 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.db.JPA;
+import com.axelor.event.Observes;
+import com.axelor.events.PostRequest;
+import com.axelor.events.PreRequest;
+import com.axelor.events.RequestEvent;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.rpc.Request;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Turns the save of a Kanban column sent by the web client after a card is dragged into the update
+ * of the moved task only.
+ *
+ * <p>The client sends every loaded card of the column, in their new order, with their index as
+ * {@code kanbanRank}. The moved card is the one with a new state, or else the one out of order
+ * compared to the stored ranks. It gets a rank between its new neighbors from the {@link
+ * TaskRankService}, the other cards get their stored rank, state and version back so they are not
+ * written, whatever the client had loaded.
+ */
+public class TaskRankObserver {
+
+  private static final Set<String> KANBAN_KEYS =
+      new HashSet<>(Arrays.asList("id", "version", "kanbanRank", "state"));
+
+  @Inject private TaskRankService rankService;
+
+  public void onSave(@Observes @Named(RequestEvent.SAVE) PreRequest event) {
+    final Request request = event.getRequest();
+    if (!ProjectTask.class.equals(request.getBeanClass())) {
+      return;
+    }
+    final List<Map<String, Object>> records = kanbanRecords(request);
+    if (records.isEmpty()) {
+      return;
+    }
+
+    final List<Long> ids = new ArrayList<>();
+    records.forEach(record -> ids.add(Long.valueOf(record.get("id").toString())));
+
+    final Map<Long, Object[]> initial = stored(ids);
+    Map<Long, Object[]> ranked = initial;
+    final Set<String> unranked = new HashSet<>();
+    for (Object[] row : initial.values()) {
+      if (row[0] == null) {
+        unranked.add((String) row[1]);
+      }
+    }
+    if (!unranked.isEmpty()) {
+      unranked.forEach(rankService::rebalance);
+      ranked = stored(ids);
+    }
+
+    final int moved = movedIndex(records, ids, ranked);
+    if (moved < 0) {
+      restore(records, ids, ranked, -1);
+      return;
+    }
+
+    final Map<String, Object> record = records.get(moved);
+    final Long id = ids.get(moved);
+    if (!ranked.containsKey(id)) {
+      return;
+    }
+    final String state =
+        (String) (record.containsKey("state") ? record.get("state") : ranked.get(id)[1]);
+    final long rank =
+        rankService.rank(
+            state,
+            id,
+            moved > 0 ? ids.get(moved - 1) : null,
+            moved + 1 < ids.size() ? ids.get(moved + 1) : null);
+
+    // renumbering the columns bumped the versions
+    final Object clientVersion = record.get("version");
+    final Map<Long, Object[]> current = stored(ids);
+    restore(records, ids, current, moved);
+    record.put("kanbanRank", rank);
+    final Object[] before = initial.get(id);
+    if (before == null || !Objects.equals(asString(clientVersion), asString(before[2]))) {
+      record.put("version", clientVersion);
+    }
+  }
+
+  public void onSaved(@Observes @Named(RequestEvent.SAVE) PostRequest event) {
+    if (ProjectTask.class.equals(event.getRequest().getBeanClass())) {
+      rankService.rebalancePending();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Map<String, Object>> kanbanRecords(Request request) {
+    final List<Map<String, Object>> records = new ArrayList<>();
+    if (request.getRecords() == null) {
+      return records;
+    }
+    for (Object item : request.getRecords()) {
+      if (!(item instanceof Map)) {
+        return new ArrayList<>();
+      }
+      final Map<String, Object> record = (Map<String, Object>) item;
+      if (record.get("id") == null || !record.containsKey("kanbanRank")) {
+        return new ArrayList<>();
+      }
+      for (String key : record.keySet()) {
+        if (!KANBAN_KEYS.contains(key) && !key.startsWith("_") && !key.startsWith("$")) {
+          return new ArrayList<>();
+        }
+      }
+      records.add(record);
+    }
+    return records;
+  }
+
+  /** The stored rank, state and version of the tasks. */
+  private Map<Long, Object[]> stored(List<Long> ids) {
+    final Map<Long, Object[]> stored = new HashMap<>();
+    for (Object[] row :
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, self.kanbanRank, self.state, self.version FROM ProjectTask self "
+                    + "WHERE self.id IN :ids",
+                Object[].class)
+            .setParameter("ids", ids)
+            .getResultList()) {
+      stored.put((Long) row[0], new Object[] {row[1], row[2], row[3]});
+    }
+    return stored;
+  }
+
+  private int movedIndex(
+      List<Map<String, Object>> records, List<Long> ids, Map<Long, Object[]> stored) {
+    for (int i = 0; i < records.size(); i++) {
+      final Object[] row = stored.get(ids.get(i));
+      if (row != null
+          && records.get(i).containsKey("state")
+          && !Objects.equals(records.get(i).get("state"), row[1])) {
+        return i;
+      }
+    }
+    if (sorted(ids, stored, -1)) {
+      return -1;
+    }
+    for (int i = 0; i < ids.size(); i++) {
+      if (sorted(ids, stored, i)) {
+        return i;
+      }
+    }
+    // more than one card out of order, move the first one
+    return 0;
+  }
+
+  /** Whether the stored ranks are in order, skipping one task. */
+  private boolean sorted(List<Long> ids, Map<Long, Object[]> stored, int skip) {
+    Long previous = null;
+    for (int i = 0; i < ids.size(); i++) {
+      if (i == skip) {
+        continue;
+      }
+      final Object[] row = stored.get(ids.get(i));
+      final Long rank = row == null ? null : (Long) row[0];
+      if (rank == null || (previous != null && rank < previous)) {
+        return false;
+      }
+      previous = rank;
+    }
+    return true;
+  }
+
+  /**
+   * Put back the stored ranks and versions, and the stored states of all but the moved card, so the
+   * stale copies of the client don't overwrite concurrent changes.
+   */
+  private void restore(
+      List<Map<String, Object>> records, List<Long> ids, Map<Long, Object[]> stored, int moved) {
+    for (int i = 0; i < records.size(); i++) {
+      final Object[] row = stored.get(ids.get(i));
+      final Map<String, Object> record = records.get(i);
+      if (row != null) {
+        record.put("kanbanRank", row[0]);
+        record.put("version", row[2]);
+        if (i != moved && record.containsKey("state")) {
+          record.put("state", row[1]);
+        }
+      }
+    }
+  }
+
+  private static String asString(Object value) {
+    return value == null ? null : value.toString();
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.google.inject.persist.UnitOfWork;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.inject.Singleton;
+import javax.persistence.Cache;
+import javax.persistence.TypedQuery;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gap based ordering of the tasks in the Kanban columns.
+ *
+ * <p>The tasks of a column, that is of a state, are ordered by {@code kanbanRank}. Ranks are spaced
+ * by {@link #GAP}, so a moved task gets a rank between its new neighbors and is the only row
+ * written. When a gap gets small the column is renumbered in the background after the move is
+ * saved, see {@link #rebalancePending()}, and when it is exhausted before that, synchronously.
+ *
+ * <p>Two concurrent moves are plain single row updates checked by the task version. Two tasks
+ * dropped in the same gap at the same time may get the same rank, the next move between them then
+ * renumbers the column.
+ */
+@Singleton
+public class TaskRankService {
+
+  public static final long GAP = 1L << 16;
+
+  /** gaps below this size schedule a background renumbering */
+  private static final long MIN_GAP = 64;
+
+  private static final int BATCH_SIZE = 500;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "task-rank-rebalance");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  /** The rank of a task added at the end of a column. */
+  public long lastRank(String state) {
+    final Long max =
+        query(Long.class, "SELECT MAX(self.kanbanRank) FROM ProjectTask self WHERE %s", state, null)
+            .getSingleResult();
+    return max == null ? GAP : max + GAP;
+  }
+
+  /**
+   * Compute the rank of a task moved next to other tasks of a column. The previous task is used
+   * when given, else the next one, else the task goes last.
+   *
+   * @param state the column
+   * @param taskId the moved task
+   * @param previousId the task just before the new position, may be null
+   * @param nextId the task just after the new position, may be null
+   * @return the new rank of the task
+   */
+  public long rank(String state, Long taskId, Long previousId, Long nextId) {
+    for (int attempt = 0; ; attempt++) {
+      final Long rank = tryRank(state, taskId, previousId, nextId);
+      if (rank != null) {
+        return rank;
+      }
+      if (attempt > 0) {
+        throw new IllegalStateException("Unable to rank task " + taskId + " in column " + state);
+      }
+      rebalance(state);
+    }
+  }
+
+  /** The rank between the neighbors, null if they have no rank or no gap left. */
+  private Long tryRank(String state, Long taskId, Long previousId, Long nextId) {
+    Long lower;
+    Long upper;
+    if (previousId != null) {
+      lower = storedRank(previousId);
+      if (lower == null) {
+        return null;
+      }
+      upper = neighbor(state, taskId, "self.kanbanRank > :rank ORDER BY self.kanbanRank", lower);
+    } else if (nextId != null) {
+      upper = storedRank(nextId);
+      if (upper == null) {
+        return null;
+      }
+      lower =
+          neighbor(state, taskId, "self.kanbanRank < :rank ORDER BY self.kanbanRank DESC", upper);
+    } else {
+      return lastRank(state);
+    }
+
+    if (lower == null) {
+      return upper - GAP;
+    }
+    if (upper == null) {
+      return lower + GAP;
+    }
+    if (upper - lower < 2) {
+      return null;
+    }
+    if (upper - lower < MIN_GAP) {
+      pending.add(Objects.toString(state, ""));
+    }
+    return lower + (upper - lower) / 2;
+  }
+
+  private Long storedRank(Long taskId) {
+    final List<Long> ranks =
+        JPA.em()
+            .createQuery(
+                "SELECT self.kanbanRank FROM ProjectTask self WHERE self.id = :id", Long.class)
+            .setParameter("id", taskId)
+            .getResultList();
+    return ranks.isEmpty() ? null : ranks.get(0);
+  }
+
+  private Long neighbor(String state, Long taskId, String condition, long rank) {
+    final List<Long> ranks =
+        query(
+                Long.class,
+                "SELECT self.kanbanRank FROM ProjectTask self WHERE %s AND self.id != :id AND "
+                    + condition,
+                state,
+                taskId)
+            .setParameter("rank", rank)
+            .setMaxResults(1)
+            .getResultList();
+    return ranks.isEmpty() ? null : ranks.get(0);
+  }
+
+  private <T> TypedQuery<T> query(Class<T> type, String jpql, String state, Long taskId) {
+    final TypedQuery<T> query =
+        JPA.em()
+            .createQuery(
+                String.format(jpql, state == null ? "self.state IS NULL" : "self.state = :state"),
+                type);
+    if (state != null) {
+      query.setParameter("state", state);
+    }
+    if (taskId != null) {
+      query.setParameter("id", taskId);
+    }
+    return query;
+  }
+
+  /**
+   * Renumber in the background the columns whose gaps got small. To be called once the moves that
+   * used these gaps are committed.
+   */
+  public void rebalancePending() {
+    for (String key : pending) {
+      if (!pending.remove(key)) {
+        continue;
+      }
+      final String state = key.isEmpty() ? null : key;
+      executor.execute(
+          () -> {
+            try {
+              rebalance(state);
+            } catch (Exception e) {
+              log.error("Kanban column {} renumbering failed", state, e);
+            } finally {
+              Beans.get(UnitOfWork.class).end();
+            }
+          });
+    }
+  }
+
+  /**
+   * Renumber the tasks of a column with {@link #GAP} between them, keeping their order. Tasks
+   * without rank go last, by priority. The persistence context is cleared.
+   */
+  public void rebalance(String state) {
+    final long start = System.currentTimeMillis();
+    pending.remove(Objects.toString(state, ""));
+    final List<Long> ids =
+        query(
+                Long.class,
+                "SELECT self.id FROM ProjectTask self WHERE %s ORDER BY "
+                    + "CASE WHEN self.kanbanRank IS NULL THEN 1 ELSE 0 END, "
+                    + "self.kanbanRank, self.priority, self.id",
+                state,
+                null)
+            .getResultList();
+
+    final AbstractEntityPersister persister =
+        (AbstractEntityPersister)
+            JPA.em()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getMetamodel()
+                .entityPersister(ProjectTask.class);
+    final String sql =
+        String.format(
+            "UPDATE %s SET %s = ?, %s = %s + 1 WHERE %s = ?",
+            persister.getTableName(),
+            persister.getPropertyColumnNames("kanbanRank")[0],
+            persister.getVersionColumnName(),
+            persister.getVersionColumnName(),
+            persister.getIdentifierColumnNames()[0]);
+
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < ids.size(); i++) {
+                      stmt.setLong(1, (i + 1) * GAP);
+                      stmt.setLong(2, ids.get(i));
+                      stmt.addBatch();
+                      if ((i + 1) % BATCH_SIZE == 0) {
+                        stmt.executeBatch();
+                      }
+                    }
+                    stmt.executeBatch();
+                  }
+                }));
+
+    final Cache cache = JPA.em().getEntityManagerFactory().getCache();
+    ids.forEach(id -> cache.evict(ProjectTask.class, id));
+    // the session may hold stale copies of the renumbered tasks
+    JPA.em().clear();
+
+    log.info(
+        "Kanban column {} renumbered: {} tasks in {} ms",
+        state,
+        ids.size(),
+        System.currentTimeMillis() - start);
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JPA;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+/**
+ * Pages the nodes of the project task tree.
+ *
+ * <p>A level is read by pages of ascending ids, continued from the id of the last node of the
+ * previous page, so a deep page costs the same as the first one. Every node comes with its stored
+ * {@code childCount}, telling whether it can be expanded without querying its children.
+ *
+ * <p>The {@link RecordRules} of the user restrict the nodes of every page. The stored counts don't
+ * follow the rules, a node may show fewer children than its count once expanded.
+ */
+public class TaskTreeService {
+
+  public static final int DEFAULT_LIMIT = 50;
+
+  public static final int MAX_LIMIT = 500;
+
+  private static final String SELECT =
+      "SELECT self.id, self.name, self.progress, self.childCount, parent.id "
+          + "FROM ProjectTask self LEFT JOIN self.parentTask parent ";
+
+  /** A page of the children of a node. */
+  public static final class Page {
+
+    private final List<Map<String, Object>> nodes = new ArrayList<>();
+
+    private Long next;
+
+    /** The nodes, as maps of {@code id}, {@code title}, {@code progress} and {@code childCount}. */
+    public List<Map<String, Object>> getNodes() {
+      return nodes;
+    }
+
+    /** The id to continue from, null on the last page. */
+    public Long getNext() {
+      return next;
+    }
+
+    public Map<String, Object> toMap() {
+      final Map<String, Object> map = new HashMap<>();
+      map.put("nodes", nodes);
+      map.put("next", next);
+      return map;
+    }
+  }
+
+  /**
+   * Get a page of the root tasks of a project.
+   *
+   * @param projectId the project id
+   * @param after the id to continue from, null for the first page
+   * @param limit the maximum number of nodes, clamped to 1..{@value #MAX_LIMIT}
+   * @param rules the record rules of the user, null if no rule restricts the tasks
+   */
+  public Page roots(Long projectId, Long after, int limit, RecordRules rules) {
+    return page(
+        "self.project.id = :parent AND self.parentTask IS NULL", projectId, after, limit, rules);
+  }
+
+  /**
+   * Get a page of the sub-tasks of a task.
+   *
+   * @see #roots(Long, Long, int, RecordRules)
+   */
+  public Page children(Long taskId, Long after, int limit, RecordRules rules) {
+    return page("self.parentTask.id = :parent", taskId, after, limit, rules);
+  }
+
+  /**
+   * Get the first page of the sub-tasks of several tasks, such as the nodes visible on screen.
+   *
+   * <p>The tasks whose children fit in a page are all read with a single query, only the larger
+   * ones are paged one by one.
+   *
+   * @param taskIds the task ids
+   * @param limit the maximum number of nodes per task, clamped to 1..{@value #MAX_LIMIT}
+   * @param rules the record rules of the user, null if no rule restricts the tasks
+   * @return the pages by task id, in the order of the given ids, only for the tasks the rules allow
+   */
+  public Map<Long, Page> children(Collection<Long> taskIds, int limit, RecordRules rules) {
+    final int size = clamp(limit);
+    final Map<Long, Page> pages = new LinkedHashMap<>();
+    if (taskIds.isEmpty()) {
+      return pages;
+    }
+    final List<Long> small = new ArrayList<>();
+    final List<Long> large = new ArrayList<>();
+    for (Object[] row :
+        bind(
+                JPA.em()
+                    .createQuery(
+                        "SELECT self.id, self.childCount FROM ProjectTask self "
+                            + "WHERE self.id IN :ids"
+                            + and(rules),
+                        Object[].class),
+                rules)
+            .setParameter("ids", taskIds)
+            .getResultList()) {
+      final Integer count = (Integer) row[1];
+      if (count == null || count <= size) {
+        small.add((Long) row[0]);
+      } else {
+        large.add((Long) row[0]);
+      }
+    }
+    for (Long id : taskIds) {
+      if (small.contains(id) || large.contains(id)) {
+        pages.put(id, new Page());
+      }
+    }
+    if (!small.isEmpty()) {
+      // stored counts may lag behind an import, so the limit is still enforced per task
+      for (Object[] row :
+          bind(
+                  JPA.em()
+                      .createQuery(
+                          SELECT
+                              + "WHERE parent.id IN :ids"
+                              + and(rules)
+                              + " ORDER BY parent.id, self.id",
+                          Object[].class),
+                  rules)
+              .setParameter("ids", small)
+              .getResultList()) {
+        add(pages.get((Long) row[4]), row, size);
+      }
+    }
+    for (Long id : large) {
+      pages.put(id, children(id, null, size, rules));
+    }
+    return pages;
+  }
+
+  private static int clamp(int limit) {
+    return Math.max(1, Math.min(limit, MAX_LIMIT));
+  }
+
+  private static String and(RecordRules rules) {
+    return rules == null ? "" : " AND " + rules.getCondition();
+  }
+
+  private static <Q extends Query> Q bind(Q query, RecordRules rules) {
+    return rules == null ? query : rules.bind(query);
+  }
+
+  private Page page(String filter, Long parentId, Long after, int limit, RecordRules rules) {
+    final int size = clamp(limit);
+    final TypedQuery<Object[]> query =
+        bind(
+                JPA.em()
+                    .createQuery(
+                        SELECT
+                            + "WHERE "
+                            + filter
+                            + (after == null ? "" : " AND self.id > :after")
+                            + and(rules)
+                            + " ORDER BY self.id",
+                        Object[].class),
+                rules)
+            .setParameter("parent", parentId)
+            .setMaxResults(size + 1);
+    if (after != null) {
+      query.setParameter("after", after);
+    }
+    final Page page = new Page();
+    for (Object[] row : query.getResultList()) {
+      add(page, row, size);
+    }
+    return page;
+  }
+
+  private static void add(Page page, Object[] row, int limit) {
+    if (page.next != null) {
+      return;
+    }
+    if (page.nodes.size() == limit) {
+      page.next = (Long) page.nodes.get(limit - 1).get("id");
+      return;
+    }
+    final Map<String, Object> node = new HashMap<>();
+    node.put("id", row[0]);
+    node.put("title", row[1]);
+    node.put("progress", row[2]);
+    node.put("childCount", row[3] == null ? 0 : row[3]);
+    page.nodes.add(node);
+  }
+}
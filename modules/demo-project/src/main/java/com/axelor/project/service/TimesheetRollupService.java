@@ -0,0 +1,345 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.service;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.ProjectWork;
+import com.axelor.project.db.ProjectWorkRollup;
+import com.axelor.project.service.ProjectRollupService.StoredWork;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains the {@link ProjectWorkRollup} table, the logged time per user, task and ISO week.
+ *
+ * <p>A week that spans two months is split in one row for each month, so that both weekly and
+ * monthly totals are exact sums of rows. The work repository applies every change as a delta to
+ * the rows of the old and new keys, and the totals below read a few rows through the {@code
+ * (user, weekStart)} and {@code (project, monthStart)} indexes.
+ *
+ * <p>The rows of a task are only changed with the task row locked, in id order when a work item
+ * moves between tasks. This serializes the update-or-insert of a row, which the unique constraint
+ * alone doesn't protect when the user is null, and lets {@link #rebuild()} block the changes while
+ * it recomputes the table.
+ */
+public class TimesheetRollupService {
+
+  private static final int CHUNK_SIZE = 1000;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  public static LocalDate weekStart(LocalDate date) {
+    return date.with(DayOfWeek.MONDAY);
+  }
+
+  public static LocalDate monthStart(LocalDate date) {
+    return date.withDayOfMonth(1);
+  }
+
+  /** Apply the changes of a saved work item. */
+  public void afterSave(ProjectWork work, StoredWork stored) {
+    final Long taskId = work.getTask() == null ? null : work.getTask().getId();
+    lockTasks(stored == null ? null : stored.getTaskId(), taskId);
+    if (stored != null) {
+      add(stored.getUserId(), stored.getTaskId(), stored.getDate(), -1, -stored.getMinutes());
+    }
+    add(
+        work.getUser() == null ? null : work.getUser().getId(),
+        taskId,
+        work.getDate(),
+        1,
+        ProjectRollupService.minutes(work.getHours()));
+  }
+
+  /** Remove the time of a deleted work item. */
+  public void afterRemove(StoredWork stored) {
+    if (stored != null) {
+      lockTasks(stored.getTaskId());
+      add(stored.getUserId(), stored.getTaskId(), stored.getDate(), -1, -stored.getMinutes());
+    }
+  }
+
+  /** Follow a task moved to another project. */
+  public void moveTask(Long taskId, Long projectId) {
+    JPA.em()
+        .createQuery(
+            "UPDATE ProjectWorkRollup self SET self.project = :project WHERE self.task.id = :task")
+        .setParameter("project", projectId == null ? null : JPA.em().find(Project.class, projectId))
+        .setParameter("task", taskId)
+        .executeUpdate();
+  }
+
+  /** Drop the rows of a task about to be deleted. */
+  public void removeTask(Long taskId) {
+    if (taskId != null) {
+      JPA.em()
+          .createQuery("DELETE FROM ProjectWorkRollup self WHERE self.task.id = :task")
+          .setParameter("task", taskId)
+          .executeUpdate();
+    }
+  }
+
+  private void lockTasks(Long... taskIds) {
+    final List<Long> ids = new ArrayList<>();
+    for (Long id : taskIds) {
+      if (id != null) {
+        ids.add(id);
+      }
+    }
+    if (!ids.isEmpty()) {
+      JPA.em()
+          .createQuery(
+              "SELECT self.id FROM ProjectTask self WHERE self.id IN :ids ORDER BY self.id",
+              Long.class)
+          .setParameter("ids", ids)
+          .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+          .getResultList();
+    }
+  }
+
+  private void add(Long userId, Long taskId, LocalDate date, int count, long minutes) {
+    if (taskId == null || date == null) {
+      return;
+    }
+    final LocalDate week = weekStart(date);
+    final LocalDate month = monthStart(date);
+    final String key =
+        "self.task.id = :task AND self.weekStart = :week AND self.monthStart = :month AND "
+            + (userId == null ? "self.user IS NULL" : "self.user.id = :user");
+
+    final Query update =
+        JPA.em()
+            .createQuery(
+                "UPDATE ProjectWorkRollup self SET self.workCount = self.workCount + :count, "
+                    + "self.minutes = self.minutes + :minutes WHERE "
+                    + key)
+            .setParameter("count", count)
+            .setParameter("minutes", minutes);
+    if (bind(update, userId, taskId, week, month).executeUpdate() == 0) {
+      final ProjectTask task = JPA.em().find(ProjectTask.class, taskId);
+      final ProjectWorkRollup rollup = new ProjectWorkRollup();
+      rollup.setUser(userId == null ? null : JPA.em().find(User.class, userId));
+      rollup.setTask(task);
+      rollup.setProject(task.getProject());
+      rollup.setWeekStart(week);
+      rollup.setMonthStart(month);
+      rollup.setWorkCount(count);
+      rollup.setMinutes(minutes);
+      JPA.em().persist(rollup);
+    } else if (count < 0) {
+      bind(
+              JPA.em()
+                  .createQuery(
+                      "DELETE FROM ProjectWorkRollup self WHERE self.workCount <= 0 AND " + key),
+              userId,
+              taskId,
+              week,
+              month)
+          .executeUpdate();
+    }
+  }
+
+  private Query bind(Query query, Long userId, Long taskId, LocalDate week, LocalDate month) {
+    query.setParameter("task", taskId).setParameter("week", week).setParameter("month", month);
+    if (userId != null) {
+      query.setParameter("user", userId);
+    }
+    return query;
+  }
+
+  /**
+   * Recompute the whole table from the work items.
+   *
+   * <p>The work items are read and the rows replaced in one transaction, with all the tasks locked
+   * so that no work item changes in between. The timesheets can't be saved until it commits.
+   */
+  public void rebuild() {
+    final long start = System.currentTimeMillis();
+    final long[] counts = new long[2];
+    JPA.runInTransaction(() -> rebuild(counts));
+    log.info(
+        "Timesheet rollups rebuilt: {} work items in {} rows, in {} ms",
+        counts[0],
+        counts[1],
+        System.currentTimeMillis() - start);
+  }
+
+  private void rebuild(long[] counts) {
+    final EntityManager em = JPA.em();
+    em.createQuery("SELECT self.id FROM ProjectTask self ORDER BY self.id", Long.class)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .getResultList();
+
+    // user, task, week, month -> work count, minutes
+    final Map<List<Object>, long[]> totals = new HashMap<>();
+    final Map<Long, Long> projects = new HashMap<>();
+    long lastId = 0;
+    long works = 0;
+    while (true) {
+      final List<Object[]> rows =
+          em.createQuery(
+                  "SELECT self.id, user.id, self.task.id, project.id, self.date, self.hours "
+                      + "FROM ProjectWork self LEFT JOIN self.user user "
+                      + "LEFT JOIN self.task.project project "
+                      + "WHERE self.id > :lastId ORDER BY self.id",
+                  Object[].class)
+              .setParameter("lastId", lastId)
+              .setMaxResults(CHUNK_SIZE)
+              .getResultList();
+      if (rows.isEmpty()) {
+        break;
+      }
+      for (Object[] row : rows) {
+        final LocalDate date = (LocalDate) row[4];
+        final List<Object> key = Arrays.asList(row[1], row[2], weekStart(date), monthStart(date));
+        final long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+        total[0]++;
+        total[1] += ProjectRollupService.minutes((LocalTime) row[5]);
+        if (row[3] != null) {
+          projects.put((Long) row[2], (Long) row[3]);
+        }
+      }
+      lastId = (Long) rows.get(rows.size() - 1)[0];
+      works += rows.size();
+    }
+
+    em.createQuery("DELETE FROM ProjectWorkRollup self").executeUpdate();
+    int count = 0;
+    for (Map.Entry<List<Object>, long[]> entry : totals.entrySet()) {
+      final List<Object> key = entry.getKey();
+      final Long projectId = projects.get((Long) key.get(1));
+      final ProjectWorkRollup rollup = new ProjectWorkRollup();
+      rollup.setUser(key.get(0) == null ? null : em.getReference(User.class, key.get(0)));
+      rollup.setTask(em.getReference(ProjectTask.class, key.get(1)));
+      rollup.setProject(projectId == null ? null : em.getReference(Project.class, projectId));
+      rollup.setWeekStart((LocalDate) key.get(2));
+      rollup.setMonthStart((LocalDate) key.get(3));
+      rollup.setWorkCount((int) entry.getValue()[0]);
+      rollup.setMinutes(entry.getValue()[1]);
+      em.persist(rollup);
+      if (++count % CHUNK_SIZE == 0) {
+        em.flush();
+        em.clear();
+      }
+    }
+    counts[0] = works;
+    counts[1] = totals.size();
+  }
+
+  /**
+   * Get the minutes logged per week.
+   *
+   * @param userId the user, all users if null
+   * @param projectId the project, all projects if null
+   * @param from a day of the first week
+   * @param to a day of the last week
+   * @return the minutes by week start, in week order, without empty weeks
+   */
+  public Map<LocalDate, Long> weekly(Long userId, Long projectId, LocalDate from, LocalDate to) {
+    return totals("weekStart", userId, projectId, weekStart(from), weekStart(to));
+  }
+
+  /**
+   * Get the minutes logged per month.
+   *
+   * @return the minutes by month start, in month order, without empty months
+   * @see #weekly(Long, Long, LocalDate, LocalDate)
+   */
+  public Map<LocalDate, Long> monthly(Long userId, Long projectId, YearMonth from, YearMonth to) {
+    return totals("monthStart", userId, projectId, from.atDay(1), to.atDay(1));
+  }
+
+  /** Get the minutes a user logged in the week of a day. */
+  public long week(Long userId, LocalDate day) {
+    return weekly(userId, null, day, day).values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  /**
+   * Get the minutes logged per project over a range of months.
+   *
+   * @param userId the user, all users if null
+   * @return the minutes by project id, null for the tasks without project
+   */
+  public Map<Long, Long> perProject(Long userId, YearMonth from, YearMonth to) {
+    final TypedQuery<Object[]> query =
+        JPA.em()
+            .createQuery(
+                "SELECT project.id, SUM(self.minutes) FROM ProjectWorkRollup self "
+                    + "LEFT JOIN self.project project "
+                    + "WHERE self.monthStart BETWEEN :from AND :to"
+                    + (userId == null ? "" : " AND self.user.id = :user")
+                    + " GROUP BY project.id",
+                Object[].class)
+            .setParameter("from", from.atDay(1))
+            .setParameter("to", to.atDay(1));
+    if (userId != null) {
+      query.setParameter("user", userId);
+    }
+    final Map<Long, Long> result = new HashMap<>();
+    for (Object[] row : query.getResultList()) {
+      result.put((Long) row[0], ((Number) row[1]).longValue());
+    }
+    return result;
+  }
+
+  private Map<LocalDate, Long> totals(
+      String period, Long userId, Long projectId, LocalDate from, LocalDate to) {
+    final TypedQuery<Object[]> query =
+        JPA.em()
+            .createQuery(
+                String.format(
+                    "SELECT self.%1$s, SUM(self.minutes) FROM ProjectWorkRollup self "
+                        + "WHERE self.%1$s BETWEEN :from AND :to%2$s%3$s "
+                        + "GROUP BY self.%1$s ORDER BY self.%1$s",
+                    period,
+                    userId == null ? "" : " AND self.user.id = :user",
+                    projectId == null ? "" : " AND self.project.id = :project"),
+                Object[].class)
+            .setParameter("from", from)
+            .setParameter("to", to);
+    if (userId != null) {
+      query.setParameter("user", userId);
+    }
+    if (projectId != null) {
+      query.setParameter("project", projectId);
+    }
+    final Map<LocalDate, Long> result = new LinkedHashMap<>();
+    for (Object[] row : query.getResultList()) {
+      result.put((LocalDate) row[0], ((Number) row[1]).longValue());
+    }
+    return result;
+  }
+}
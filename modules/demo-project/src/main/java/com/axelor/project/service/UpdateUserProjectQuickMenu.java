@@ -20,8 +20,8 @@ package com.axelor.project.service;
 
 import com.axelor.auth.AuthUtils;
 import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
 import com.axelor.db.JpaSecurity;
-import com.axelor.db.Query;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.project.db.Project;
@@ -33,9 +33,12 @@ import com.axelor.ui.QuickMenuItem;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import javax.inject.Inject;
 
 public class UpdateUserProjectQuickMenu implements QuickMenuCreator {
 
+  @Inject private ProjectMembershipIndex index;
+
   @Override
   public QuickMenu create() {
     return new QuickMenu(I18n.get("My projects"), 0, true, getItems());
@@ -48,11 +51,21 @@ public class UpdateUserProjectQuickMenu implements QuickMenuCreator {
       return Collections.emptyList();
     }
 
+    return index.menu(user.getId(), () -> buildItems(user));
+  }
+
+  private List<QuickMenuItem> buildItems(User user) {
     String action = ProjectController.class.getName() + ":updateDefaultProject";
+    Project defaultProject = user.getDefaultProject();
     List<QuickMenuItem> items = new ArrayList<>();
-    for (Project project :
-        Query.of(Project.class).filter("?1 MEMBER OF self.members", user).fetch(10)) {
-      boolean isDefaultProject = project.equals(user.getDefaultProject());
+    for (long projectId : index.projects(user.getId(), 10)) {
+      // served by the second level cache
+      Project project = JPA.em().find(Project.class, projectId);
+      if (project == null) {
+        continue;
+      }
+      boolean isDefaultProject =
+          defaultProject != null && project.getId().equals(defaultProject.getId());
       QuickMenuItem item =
           new QuickMenuItem(
               project.getName(),
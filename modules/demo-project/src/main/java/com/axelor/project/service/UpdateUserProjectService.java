@@ -20,6 +20,7 @@ package com.axelor.project.service;
 
 import com.axelor.auth.db.User;
 import com.axelor.auth.db.repo.UserRepository;
+import com.axelor.batch.service.TransactionCallbacks;
 import com.axelor.inject.Beans;
 import com.axelor.project.db.Project;
 import com.google.inject.persist.Transactional;
@@ -30,5 +31,9 @@ public class UpdateUserProjectService {
   public void updateDefaultProject(User user, Project project) {
     user.setDefaultProject(project);
     Beans.get(UserRepository.class).save(user);
+    // a menu built before the commit would still see the previous default project
+    final Long userId = user.getId();
+    TransactionCallbacks.afterCommit(
+        () -> Beans.get(ProjectMembershipIndex.class).invalidateMenu(userId));
   }
 }
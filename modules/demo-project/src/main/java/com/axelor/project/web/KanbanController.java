@@ -0,0 +1,140 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.web;
+
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JpaSecurity;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.meta.MetaStore;
+import com.axelor.meta.schema.views.Selection.Option;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.service.KanbanBoardService;
+import com.axelor.project.service.KanbanBoardService.Column;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class KanbanController {
+
+  /**
+   * Page the cards of the Kanban board.
+   *
+   * <p>The request data gives the {@code states} of the columns to get their first page and total,
+   * or a single {@code state} with the {@code nextRank} and {@code nextId} of its previous page to
+   * continue it, a null state for the tasks without state. The tasks can be restricted to a {@code
+   * project} and the pages sized with {@code limit}, at most {@value KanbanBoardService#MAX_LIMIT}.
+   */
+  public void cards(ActionRequest request, ActionResponse response) {
+    final Map<String, Object> data = request.getData();
+    final Long projectId = toLong(data.get("project"));
+    if (!canRead(response, projectId)) {
+      return;
+    }
+
+    final KanbanBoardService service = Beans.get(KanbanBoardService.class);
+    final RecordRules rules = RecordRules.of(JpaSecurity.CAN_READ, ProjectTask.class);
+    final Long limitValue = toLong(data.get("limit"));
+    final int limit =
+        limitValue == null
+            ? KanbanBoardService.DEFAULT_LIMIT
+            : (int) Math.max(1, Math.min(limitValue, KanbanBoardService.MAX_LIMIT));
+
+    final Map<String, Object> result = new HashMap<>();
+    if (data.get("states") instanceof Collection) {
+      final List<String> states = new ArrayList<>();
+      for (Object state : (Collection<?>) data.get("states")) {
+        states.add(state == null ? null : state.toString());
+      }
+      final List<Map<String, Object>> columns = new ArrayList<>();
+      for (Column column : service.board(states, projectId, limit, rules)) {
+        columns.add(column.toMap());
+      }
+      result.put("columns", columns);
+    } else if (data.containsKey("state")) {
+      final Object state = data.get("state");
+      result.putAll(
+          service
+              .column(
+                  state == null ? null : state.toString(),
+                  projectId,
+                  toLong(data.get("nextRank")),
+                  toLong(data.get("nextId")),
+                  limit,
+                  rules)
+              .toMap());
+    }
+
+    response.setData(Lists.newArrayList(result));
+  }
+
+  /** Show the first cards of every state of the project in context, in the board dashlet. */
+  public void board(ActionRequest request, ActionResponse response) {
+    final Long projectId = toLong(request.getContext().get("id"));
+    final List<Map<String, Object>> columns = new ArrayList<>();
+    if (projectId == null) {
+      response.setData(columns);
+      return;
+    }
+    if (!canRead(response, projectId)) {
+      return;
+    }
+
+    final List<String> states = new ArrayList<>();
+    final Map<String, String> titles = new HashMap<>();
+    for (Option option : MetaStore.getSelectionList("project.task.state.selection")) {
+      states.add(option.getValue());
+      titles.put(option.getValue(), option.getLocalizedTitle());
+    }
+    for (Column column :
+        Beans.get(KanbanBoardService.class)
+            .board(
+                states,
+                projectId,
+                KanbanBoardService.DEFAULT_LIMIT,
+                RecordRules.of(JpaSecurity.CAN_READ, ProjectTask.class))) {
+      final Map<String, Object> map = column.toMap();
+      map.put("title", titles.get(column.getState()));
+      columns.add(map);
+    }
+    response.setData(columns);
+  }
+
+  /** Check that the user can read the tasks, and the project if any. */
+  private boolean canRead(ActionResponse response, Long projectId) {
+    final JpaSecurity security = Beans.get(JpaSecurity.class);
+    if (!security.isPermitted(JpaSecurity.CAN_READ, ProjectTask.class)
+        || (projectId != null
+            && !security.isPermitted(JpaSecurity.CAN_READ, Project.class, projectId))) {
+      response.setError(I18n.get("You are not allowed to read the tasks."));
+      return false;
+    }
+    return true;
+  }
+
+  private Long toLong(Object value) {
+    return value == null ? null : Long.valueOf(value.toString());
+  }
+}
@@ -19,13 +19,21 @@
 package com.axelor.project.web;
 
 import com.axelor.auth.AuthUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaSecurity;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
 import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.ProjectScheduleService;
+import com.axelor.project.service.TaskDependencyOrder;
 import com.axelor.project.service.UpdateUserProjectService;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class ProjectController {
 
@@ -41,4 +49,66 @@ public class ProjectController {
 
     response.setNotify(I18n.get("Default project updated."));
   }
+
+  public void schedule(ActionRequest request, ActionResponse response) {
+    Long projectId = (Long) request.getContext().get("id");
+    if (projectId == null) {
+      return;
+    }
+    final Long[] taskIds =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM ProjectTask self WHERE self.project.id = :id", Long.class)
+            .setParameter("id", projectId)
+            .getResultList()
+            .toArray(new Long[0]);
+    final JpaSecurity security = Beans.get(JpaSecurity.class);
+    if (!security.isPermitted(JpaSecurity.CAN_WRITE, ProjectTask.class, taskIds)) {
+      response.setError(I18n.get("You are not allowed to schedule the tasks of this project."));
+      return;
+    }
+
+    try {
+      ProjectScheduleService.Summary summary =
+          Beans.get(ProjectScheduleService.class).schedule(projectId);
+      response.setReload(true);
+      response.setNotify(
+          String.format(
+              I18n.get("%d tasks scheduled, %d on the critical path."),
+              summary.getTasks(),
+              summary.getCriticalPath().length));
+    } catch (IllegalStateException e) {
+      response.setError(
+          I18n.get("Task dependencies contain a cycle, use Check dependencies to find it."));
+    }
+  }
+
+  public void checkDependencies(ActionRequest request, ActionResponse response) {
+    Long projectId = (Long) request.getContext().get("id");
+    if (projectId == null) {
+      return;
+    }
+
+    List<long[]> cycles = Beans.get(TaskDependencyOrder.class).rebuild(projectId);
+    if (cycles.isEmpty()) {
+      response.setNotify(I18n.get("Task dependencies are valid."));
+      return;
+    }
+
+    ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    String edges =
+        cycles.stream()
+            .map(
+                edge ->
+                    String.format(
+                        I18n.get("%s depends on %s"),
+                        nameOf(tasks.find(edge[1])),
+                        nameOf(tasks.find(edge[0]))))
+            .collect(Collectors.joining("<br>"));
+    response.setError(I18n.get("These task dependencies create a cycle:") + "<br>" + edges);
+  }
+
+  private String nameOf(ProjectTask task) {
+    return task == null ? "" : task.getName();
+  }
 }
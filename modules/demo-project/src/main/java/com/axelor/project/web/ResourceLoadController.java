@@ -0,0 +1,91 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.web;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.db.JpaSecurity;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.service.ResourceLoadService;
+import com.axelor.project.service.ResourceLoadService.Overload;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ResourceLoadController {
+
+  private static final int DAYS = 30;
+
+  /**
+   * The users booked over their capacity in the next days, for the dashboard. It needs the read
+   * access to the users and the tasks.
+   */
+  public void overloaded(ActionRequest request, ActionResponse response) {
+    final List<Map<String, Object>> data = new ArrayList<>();
+    final JpaSecurity security = Beans.get(JpaSecurity.class);
+    if (!security.isPermitted(JpaSecurity.CAN_READ, User.class)
+        || !security.isPermitted(JpaSecurity.CAN_READ, ProjectTask.class)) {
+      response.setData(data);
+      return;
+    }
+
+    final ResourceLoadService service = Beans.get(ResourceLoadService.class);
+    service.sync();
+    final LocalDate from = LocalDate.now();
+    final List<Overload> overloads = service.overloaded(from, from.plusDays(DAYS - 1));
+
+    final Set<Long> userIds = new HashSet<>();
+    overloads.forEach(overload -> userIds.add(overload.getUserId()));
+    final Map<Long, String> names = new HashMap<>();
+    if (!userIds.isEmpty()) {
+      for (Object[] row :
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.name FROM User self WHERE self.id IN :ids", Object[].class)
+              .setParameter("ids", userIds)
+              .getResultList()) {
+        names.put((Long) row[0], (String) row[1]);
+      }
+    }
+
+    for (Overload overload : overloads) {
+      final Map<String, Object> row = new HashMap<>();
+      row.put("userId", overload.getUserId());
+      row.put("user", names.get(overload.getUserId()));
+      row.put("day", overload.getDay());
+      row.put("hours", hours(overload.getMinutes()));
+      row.put("overtime", hours(overload.getMinutes() - ResourceLoadService.DAY_CAPACITY));
+      data.add(row);
+    }
+    response.setData(data);
+  }
+
+  private static BigDecimal hours(int minutes) {
+    return BigDecimal.valueOf(minutes).divide(BigDecimal.valueOf(60), 2, RoundingMode.HALF_UP);
+  }
+}
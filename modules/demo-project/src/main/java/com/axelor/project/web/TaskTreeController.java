@@ -0,0 +1,121 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.web;
+
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JpaSecurity;
+import com.axelor.db.Model;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.service.TaskTreeService;
+import com.axelor.project.service.TaskTreeService.Page;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TaskTreeController {
+
+  /**
+   * Page the children of tree nodes.
+   *
+   * <p>The request data gives either a {@code project} to get its root tasks, a {@code task} to get
+   * its sub-tasks, or a {@code tasks} list of the visible tasks to get the first page of each. The
+   * page is continued with {@code after}, the {@code next} id of the previous page, and sized with
+   * {@code limit}, at most {@value TaskTreeService#MAX_LIMIT}.
+   */
+  public void children(ActionRequest request, ActionResponse response) {
+    final Map<String, Object> data = request.getData();
+    final Long taskId = toLong(data.get("task"));
+    final Long projectId = toLong(data.get("project"));
+    if (!canRead(response, ProjectTask.class, taskId)
+        || !canRead(response, Project.class, projectId)) {
+      return;
+    }
+
+    final TaskTreeService service = Beans.get(TaskTreeService.class);
+    final RecordRules rules = RecordRules.of(JpaSecurity.CAN_READ, ProjectTask.class);
+    final Long after = toLong(data.get("after"));
+    final Long limitValue = toLong(data.get("limit"));
+    final int limit =
+        limitValue == null
+            ? TaskTreeService.DEFAULT_LIMIT
+            : (int) Math.max(1, Math.min(limitValue, TaskTreeService.MAX_LIMIT));
+
+    final Map<String, Object> result = new HashMap<>();
+    if (data.get("tasks") instanceof Collection) {
+      final List<Long> ids = new ArrayList<>();
+      for (Object item : (Collection<?>) data.get("tasks")) {
+        ids.add(toLong(item instanceof Map ? ((Map<?, ?>) item).get("id") : item));
+      }
+      final Map<String, Object> pages = new HashMap<>();
+      for (Map.Entry<Long, Page> entry : service.children(ids, limit, rules).entrySet()) {
+        pages.put(entry.getKey().toString(), entry.getValue().toMap());
+      }
+      result.put("pages", pages);
+    } else if (taskId != null) {
+      result.putAll(service.children(taskId, after, limit, rules).toMap());
+    } else if (projectId != null) {
+      result.putAll(service.roots(projectId, after, limit, rules).toMap());
+    }
+
+    response.setData(Lists.newArrayList(result));
+  }
+
+  /** Show the first page of the sub-tasks of the task in context, in the sub-tasks dashlet. */
+  public void subTasks(ActionRequest request, ActionResponse response) {
+    final Long taskId = toLong(request.getContext().get("id"));
+    if (taskId == null) {
+      response.setData(new ArrayList<>());
+      return;
+    }
+    if (!canRead(response, ProjectTask.class, taskId)) {
+      return;
+    }
+    response.setData(
+        Beans.get(TaskTreeService.class)
+            .children(
+                taskId,
+                null,
+                TaskTreeService.DEFAULT_LIMIT,
+                RecordRules.of(JpaSecurity.CAN_READ, ProjectTask.class))
+            .getNodes());
+  }
+
+  /** Check that the user can read the tasks and the given record, if any. */
+  private boolean canRead(ActionResponse response, Class<? extends Model> model, Long id) {
+    final JpaSecurity security = Beans.get(JpaSecurity.class);
+    if (!security.isPermitted(JpaSecurity.CAN_READ, ProjectTask.class)
+        || (id != null && !security.isPermitted(JpaSecurity.CAN_READ, model, id))) {
+      response.setError(I18n.get("You are not allowed to read the tasks."));
+      return false;
+    }
+    return true;
+  }
+
+  private Long toLong(Object value) {
+    return value == null ? null : Long.valueOf(value.toString());
+  }
+}
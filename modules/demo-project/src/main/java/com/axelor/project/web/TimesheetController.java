@@ -0,0 +1,40 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project.web;
+
+import com.axelor.auth.AuthUtils;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.project.service.TimesheetRollupService;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+
+public class TimesheetController {
+
+  /** Rebuild the timesheets from all the work items, restricted to the administrators. */
+  public void rebuild(ActionRequest request, ActionResponse response) {
+    if (!AuthUtils.isAdmin(AuthUtils.getUser())) {
+      response.setError(I18n.get("Only administrators can rebuild the timesheets."));
+      return;
+    }
+    Beans.get(TimesheetRollupService.class).rebuild();
+    response.setReload(true);
+    response.setNotify(I18n.get("Timesheets rebuilt from the work items."));
+  }
+}
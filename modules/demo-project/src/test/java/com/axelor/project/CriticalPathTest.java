@@ -0,0 +1,182 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.project.service.CriticalPath;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class CriticalPathTest {
+
+  @Test
+  public void testDependencyTypes() {
+    // 0 -F2S-> 1 -S2S-> 2, 0 -F2F-> 3, 1 -S2F-> 4
+    final CriticalPath path = new CriticalPath(new long[] {10, 5, 20, 4, 30});
+    path.addDependency(0, 1, CriticalPath.FINISH_TO_START);
+    path.addDependency(1, 2, CriticalPath.START_TO_START);
+    path.addDependency(0, 3, CriticalPath.FINISH_TO_FINISH);
+    path.addDependency(1, 4, CriticalPath.START_TO_FINISH);
+
+    final CriticalPath.Schedule schedule = path.compute(100);
+
+    assertEquals(100, schedule.earliestStart(0));
+    assertEquals(110, schedule.earliestStart(1));
+    assertEquals(110, schedule.earliestStart(2));
+    assertEquals(106, schedule.earliestStart(3));
+    assertEquals(100, schedule.earliestStart(4));
+    assertEquals(130, schedule.finish());
+
+    assertArrayEquals(new int[] {0, 1, 2, 4}, schedule.criticalPath());
+    assertEquals(20, schedule.slack(3));
+    assertEquals(0, schedule.slack(4));
+  }
+
+  @Test
+  public void testReleases() {
+    // 0 -F2S-> 1, 2 alone: 1 is released after 0 ends, 2 keeps its own release
+    final CriticalPath path = new CriticalPath(new long[] {10, 5, 20});
+    path.addDependency(0, 1, CriticalPath.FINISH_TO_START);
+
+    final CriticalPath.Schedule schedule = path.compute(100, new long[] {0, 130, 150});
+
+    assertEquals(100, schedule.earliestStart(0));
+    assertEquals(130, schedule.earliestStart(1));
+    assertEquals(150, schedule.earliestStart(2));
+    assertEquals(170, schedule.finish());
+    assertArrayEquals(new int[] {2}, schedule.criticalPath());
+  }
+
+  @Test
+  public void testCycle() {
+    final CriticalPath path = new CriticalPath(new long[] {1, 1, 1});
+    path.addDependency(0, 1, CriticalPath.FINISH_TO_START);
+    path.addDependency(1, 2, CriticalPath.FINISH_TO_START);
+    path.addDependency(2, 1, CriticalPath.START_TO_START);
+    assertThrows(IllegalStateException.class, () -> path.compute(0));
+  }
+
+  @Test
+  public void testRandomGraphs() {
+    final Random random = new Random(33);
+    for (int run = 0; run < 50; run++) {
+      final int n = 1 + random.nextInt(60);
+      final long[] durations = random.longs(n, 0, 100).toArray();
+      final int m = random.nextInt(3 * n);
+      final int[][] edges = new int[m][];
+      final CriticalPath path = new CriticalPath(durations);
+      for (int e = 0; e < m; e++) {
+        // edges go from a lower to a higher index so the graph is acyclic
+        final int a = random.nextInt(n);
+        final int b = random.nextInt(n);
+        if (a == b) {
+          edges[e] = new int[] {0, 0, -1};
+          continue;
+        }
+        edges[e] = new int[] {Math.min(a, b), Math.max(a, b), random.nextInt(4)};
+        path.addDependency(edges[e][0], edges[e][1], edges[e][2]);
+      }
+
+      final CriticalPath.Schedule schedule = path.compute(0);
+      final long[][] expected = relax(durations, edges);
+      for (int i = 0; i < n; i++) {
+        assertEquals(expected[0][i], schedule.earliestStart(i));
+        assertEquals(expected[1][i], schedule.latestStart(i));
+        assertTrue(schedule.slack(i) >= 0);
+      }
+    }
+  }
+
+  @Test
+  public void testLargeGraph() {
+    final int n = 100_000;
+    final Random random = new Random(7);
+    final CriticalPath path = new CriticalPath(random.longs(n, 0, 480).toArray());
+    for (int i = 1; i < n; i++) {
+      for (int k = 0; k < 3; k++) {
+        path.addDependency(random.nextInt(i), i, random.nextInt(4));
+      }
+    }
+
+    final long start = System.currentTimeMillis();
+    final CriticalPath.Schedule schedule = path.compute(0);
+    final long time = System.currentTimeMillis() - start;
+
+    assertTrue(schedule.criticalPath().length > 0);
+    assertTrue(time < 1000, "100k tasks scheduled in " + time + " ms");
+  }
+
+  /** Naive fixpoint iteration of the same constraints. */
+  private static long[][] relax(long[] durations, int[][] edges) {
+    final int n = durations.length;
+    final long[] earliest = new long[n];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int[] edge : edges) {
+        if (edge[2] >= 0) {
+          final long start = earliest[edge[0]] + lag(durations, edge);
+          if (start > earliest[edge[1]]) {
+            earliest[edge[1]] = start;
+            changed = true;
+          }
+        }
+      }
+    }
+    long finish = 0;
+    for (int i = 0; i < n; i++) {
+      finish = Math.max(finish, earliest[i] + durations[i]);
+    }
+    final long[] latest = new long[n];
+    for (int i = 0; i < n; i++) {
+      latest[i] = finish - durations[i];
+    }
+    changed = true;
+    while (changed) {
+      changed = false;
+      for (int[] edge : edges) {
+        if (edge[2] >= 0) {
+          final long start = latest[edge[1]] - lag(durations, edge);
+          if (start < latest[edge[0]]) {
+            latest[edge[0]] = start;
+            changed = true;
+          }
+        }
+      }
+    }
+    return new long[][] {earliest, latest};
+  }
+
+  private static long lag(long[] durations, int[] edge) {
+    switch (edge[2]) {
+      case CriticalPath.FINISH_TO_START:
+        return durations[edge[0]];
+      case CriticalPath.FINISH_TO_FINISH:
+        return durations[edge[0]] - durations[edge[1]];
+      case CriticalPath.START_TO_FINISH:
+        return -durations[edge[1]];
+      default:
+        return 0;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.contact.service.RecordRules;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.KanbanBoardService;
+import com.axelor.project.service.KanbanBoardService.Column;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class KanbanBoardTest {
+
+  private static final List<String> STATES = Arrays.asList("draft", "progress", "complete");
+
+  /** the states of the board, and the tasks without state */
+  private static final List<String> COLUMNS = Arrays.asList("draft", "progress", "complete", null);
+
+  @Test
+  public void testPaging() {
+    final Random random = new Random(19);
+    final KanbanBoardService service = Beans.get(KanbanBoardService.class);
+    final Long[] projectId = new Long[1];
+
+    JPA.runInTransaction(
+        () -> {
+          final User user = new User("kanban-board", "Kanban board");
+          user.setPassword("kanban");
+          JPA.save(user);
+          final Project project = new Project();
+          project.setName("Kanban board project");
+          projectId[0] = Beans.get(ProjectRepository.class).save(project).getId();
+          for (int i = 0; i < 90; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName("Kanban board task " + i);
+            task.setUser(user);
+            task.setCreateDate(LocalDateTime.now());
+            task.setState(STATES.get(random.nextInt(STATES.size() - 1)));
+            task.setProject(project);
+            // duplicate ranks, as left by concurrent moves
+            task.setKanbanRank((long) random.nextInt(40));
+            Beans.get(ProjectTaskRepository.class).save(task);
+          }
+        });
+    // tasks without rank, as left by an import; the complete column stays empty
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery(
+                    "UPDATE ProjectTask self SET self.kanbanRank = NULL "
+                        + "WHERE self.project.id = :project AND MOD(self.id, 5) = 0")
+                .setParameter("project", projectId[0])
+                .executeUpdate());
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery(
+                    "UPDATE ProjectTask self SET self.state = NULL "
+                        + "WHERE self.project.id = :project AND MOD(self.id, 7) = 0")
+                .setParameter("project", projectId[0])
+                .executeUpdate());
+
+    final List<Column> board = service.board(COLUMNS, projectId[0], 10, null);
+    assertEquals(COLUMNS, board.stream().map(Column::getState).collect(Collectors.toList()));
+    for (Column first : board) {
+      final List<Long> expected = ids(first.getState(), projectId[0]);
+      assertEquals(expected.size(), first.getTotal());
+
+      final List<Long> actual = new ArrayList<>(cardIds(first));
+      Column page = first;
+      while (page.getNextId() != null) {
+        page =
+            service.column(
+                page.getState(), projectId[0], page.getNextRank(), page.getNextId(), 10, null);
+        actual.addAll(cardIds(page));
+      }
+      assertEquals(expected, actual);
+    }
+
+    assertEquals(0, service.board(new ArrayList<>(), projectId[0], 10, null).size());
+    // out of range limits are clamped
+    assertEquals(1, service.board(STATES, projectId[0], 0, null).get(0).getCards().size());
+    assertEquals(
+        1, service.column("draft", projectId[0], null, null, -1, null).getCards().size());
+
+    // record rules restrict the cards and the totals
+    final RecordRules rules = RecordRules.of("self.kanbanRank < ?", Arrays.asList(20L));
+    for (Column first : service.board(COLUMNS, projectId[0], 10, rules)) {
+      final List<Long> expected = ids(first.getState(), projectId[0]);
+      expected.retainAll(ranked(projectId[0], 20L));
+      assertEquals(expected.size(), first.getTotal());
+
+      final List<Long> actual = new ArrayList<>(cardIds(first));
+      Column page = first;
+      while (page.getNextId() != null) {
+        page =
+            service.column(
+                page.getState(), projectId[0], page.getNextRank(), page.getNextId(), 10, rules);
+        actual.addAll(cardIds(page));
+      }
+      assertEquals(expected, actual);
+    }
+  }
+
+  private List<Long> ranked(Long projectId, Long below) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.id FROM ProjectTask self "
+                + "WHERE self.project.id = :project AND self.kanbanRank < :rank",
+            Long.class)
+        .setParameter("project", projectId)
+        .setParameter("rank", below)
+        .getResultList();
+  }
+
+  private List<Long> cardIds(Column column) {
+    return column.getCards().stream().map(c -> (Long) c.get("id")).collect(Collectors.toList());
+  }
+
+  private List<Long> ids(String state, Long projectId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT self.id FROM ProjectTask self "
+                + "WHERE COALESCE(self.state, '') = :state AND self.project.id = :project ORDER BY "
+                + "CASE WHEN self.kanbanRank IS NULL THEN 1 ELSE 0 END, self.kanbanRank, self.id",
+            Long.class)
+        .setParameter("state", state == null ? "" : state)
+        .setParameter("project", projectId)
+        .getResultList();
+  }
+}
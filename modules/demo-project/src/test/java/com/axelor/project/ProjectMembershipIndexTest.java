@@ -0,0 +1,108 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.service.ProjectMembershipIndex;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import com.axelor.ui.QuickMenuItem;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityTransaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ProjectMembershipIndexTest {
+
+  @Test
+  public void testMemberships() {
+    final ProjectMembershipIndex index = Beans.get(ProjectMembershipIndex.class);
+    final ProjectRepository projects = Beans.get(ProjectRepository.class);
+    final long[] ids = new long[3];
+    final Long[] userIds = new Long[2];
+
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < userIds.length; i++) {
+            final User user = new User("member" + i, "Member " + i);
+            user.setPassword("member");
+            userIds[i] = JPA.save(user).getId();
+          }
+          for (int i = 0; i < ids.length; i++) {
+            final Project project = new Project();
+            project.setName("Membership project " + i);
+            project.addMember(JPA.em().find(User.class, userIds[0]));
+            if (i == 1) {
+              project.addMember(JPA.em().find(User.class, userIds[1]));
+            }
+            ids[i] = projects.save(project).getId();
+          }
+        });
+
+    assertArrayEquals(ids, index.projects(userIds[0], 10));
+    assertArrayEquals(new long[] {ids[1]}, index.projects(userIds[1], 10));
+    assertArrayEquals(new long[] {ids[0], ids[1]}, index.projects(userIds[0], 2));
+
+    final List<QuickMenuItem> menu = index.menu(userIds[0], ArrayList::new);
+    assertSame(menu, index.menu(userIds[0], ArrayList::new));
+
+    JPA.runInTransaction(
+        () -> {
+          final Project project = projects.find(ids[1]);
+          project.removeMember(JPA.em().find(User.class, userIds[0]));
+          projects.save(project);
+        });
+
+    assertArrayEquals(new long[] {ids[0], ids[2]}, index.projects(userIds[0], 10));
+    // the cached menu was dropped
+    assertNotSame(menu, index.menu(userIds[0], ArrayList::new));
+
+    JPA.runInTransaction(() -> projects.remove(projects.find(ids[1])));
+    assertArrayEquals(new long[0], index.projects(userIds[1], 10));
+
+    index.load();
+    assertArrayEquals(new long[] {ids[0], ids[2]}, index.projects(userIds[0], 10));
+
+    // a rolled back change leaves the index as is
+    final EntityTransaction txn = JPA.em().getTransaction();
+    txn.begin();
+    try {
+      final Project project = projects.find(ids[0]);
+      project.addMember(JPA.em().find(User.class, userIds[1]));
+      projects.save(project);
+      projects.remove(projects.find(ids[2]));
+    } finally {
+      txn.rollback();
+    }
+    JPA.em().clear();
+    assertArrayEquals(new long[] {ids[0], ids[2]}, index.projects(userIds[0], 10));
+    assertArrayEquals(new long[0], index.projects(userIds[1], 10));
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.ProjectWork;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.db.repo.ProjectWorkRepository;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ProjectRollupTest {
+
+  /** The progress formula of the former computed field. */
+  private static int referenceProgress(ProjectTask task, List<ProjectWork> workItems) {
+    double result = 0.0, duration = 0.0;
+    if ("complete".equals(task.getState())) {
+      return 100;
+    }
+    if (workItems == null
+        || workItems.isEmpty()
+        || task.getStartDate() == null
+        || task.getEndDate() == null) {
+      return task.getPlannedProgress().intValue();
+    }
+    for (ProjectWork work : workItems) {
+      LocalTime time = work.getHours();
+      result += time.getHour();
+      result += time.getMinute() / 60.0;
+    }
+    duration = ChronoUnit.HOURS.between(task.getStartDate(), task.getEndDate());
+
+    result = Math.min(100.0, ((result / duration) * 100));
+    return (int) Math.round(result);
+  }
+
+  private static long minutes(List<ProjectWork> workItems) {
+    return workItems.stream()
+        .mapToLong(w -> w.getHours().getHour() * 60L + w.getHours().getMinute())
+        .sum();
+  }
+
+  @Test
+  public void testRollups() {
+    final Random random = new Random(7);
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final ProjectWorkRepository works = Beans.get(ProjectWorkRepository.class);
+    final List<Long> taskIds = new ArrayList<>();
+    final List<Long> workIds = new ArrayList<>();
+    final Long[] projectIds = new Long[2];
+
+    JPA.runInTransaction(
+        () -> {
+          final User user = new User("rollup", "Rollup");
+          user.setPassword("rollup");
+          JPA.save(user);
+
+          for (int p = 0; p < 2; p++) {
+            final Project project = new Project();
+            project.setName("Rollup project " + p);
+            projectIds[p] = Beans.get(ProjectRepository.class).save(project).getId();
+          }
+
+          for (int i = 0; i < 12; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName("Rollup task " + i);
+            task.setUser(user);
+            task.setCreateDate(LocalDateTime.now());
+            task.setStartDate(LocalDateTime.of(2021, 1, 1, 8, 0));
+            task.setEndDate(LocalDateTime.of(2021, 1, 1 + random.nextInt(5), 18, 0));
+            task.setPlannedProgress(BigDecimal.valueOf(random.nextInt(100)));
+            task.setState(i == 5 ? "complete" : "progress");
+            task.setProject(JPA.em().find(Project.class, projectIds[i % 2]));
+            // a three levels tree: 0 <- 1..3 <- 4..11
+            if (i > 0) {
+              task.setParentTask(
+                  JPA.em().find(ProjectTask.class, taskIds.get(i < 4 ? 0 : 1 + (i % 3))));
+            }
+            taskIds.add(tasks.save(task).getId());
+          }
+        });
+
+    // add, edit and remove work items
+    for (int i = 0; i < 60; i++) {
+      final int step = i;
+      JPA.runInTransaction(
+          () -> {
+            if (step % 7 == 6 && !workIds.isEmpty()) {
+              final Long id = workIds.remove(random.nextInt(workIds.size()));
+              works.remove(works.find(id));
+            } else if (step % 5 == 4 && !workIds.isEmpty()) {
+              final ProjectWork work = works.find(workIds.get(random.nextInt(workIds.size())));
+              work.setHours(LocalTime.of(random.nextInt(9), random.nextInt(60)));
+              work.setTask(tasks.find(taskIds.get(random.nextInt(taskIds.size()))));
+              works.save(work);
+            } else {
+              final ProjectWork work = new ProjectWork();
+              work.setName("Work " + step);
+              work.setDate(LocalDate.of(2021, 1, 1));
+              work.setHours(LocalTime.of(random.nextInt(9), random.nextInt(60)));
+              work.setTask(tasks.find(taskIds.get(random.nextInt(taskIds.size()))));
+              workIds.add(works.save(work).getId());
+            }
+          });
+    }
+
+    // move a sub-tree to the other root and project
+    JPA.runInTransaction(
+        () -> {
+          final ProjectTask task = tasks.find(taskIds.get(2));
+          task.setParentTask(tasks.find(taskIds.get(3)));
+          task.setProject(JPA.em().find(Project.class, projectIds[0]));
+          tasks.save(task);
+        });
+
+    JPA.em().clear();
+    assertRollups(taskIds, projectIds);
+  }
+
+  @Test
+  public void testVersions() {
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final ProjectWorkRepository works = Beans.get(ProjectWorkRepository.class);
+    final Long[] ids = new Long[3];
+
+    JPA.runInTransaction(
+        () -> {
+          final Project project = new Project();
+          project.setName("Versions project");
+          ids[0] = Beans.get(ProjectRepository.class).save(project).getId();
+          final ProjectTask parent = new ProjectTask();
+          parent.setName("Versions parent");
+          parent.setProject(project);
+          ids[1] = tasks.save(parent).getId();
+          final ProjectTask child = new ProjectTask();
+          child.setName("Versions child");
+          child.setProject(project);
+          child.setParentTask(parent);
+          ids[2] = tasks.save(child).getId();
+        });
+    JPA.em().clear();
+    final int projectVersion = JPA.em().find(Project.class, ids[0]).getVersion();
+    final int parentVersion = tasks.find(ids[1]).getVersion();
+
+    // the project and the parent are held by the session while the work is logged
+    JPA.runInTransaction(
+        () -> {
+          final Project project = JPA.em().find(Project.class, ids[0]);
+          final ProjectTask parent = tasks.find(ids[1]);
+          for (int i = 0; i < 3; i++) {
+            final ProjectWork work = new ProjectWork();
+            work.setName("Versions work " + i);
+            work.setDate(LocalDate.of(2021, 1, 1));
+            work.setHours(LocalTime.of(1, 30));
+            work.setTask(tasks.find(ids[2]));
+            works.save(work);
+          }
+          assertEquals(270, (int) parent.getTotalMinutes());
+          assertEquals(270, (int) project.getTotalMinutes());
+        });
+
+    JPA.em().clear();
+    final Project project = JPA.em().find(Project.class, ids[0]);
+    final ProjectTask parent = tasks.find(ids[1]);
+    assertEquals(270, (int) project.getTotalMinutes());
+    assertEquals(1, (int) project.getChildCount());
+    assertEquals(270, (int) parent.getTotalMinutes());
+    assertEquals(1, (int) parent.getChildCount());
+    assertEquals(3, (int) tasks.find(ids[2]).getWorkCount());
+    assertEquals(projectVersion, (int) project.getVersion());
+    assertEquals(parentVersion, (int) parent.getVersion());
+  }
+
+  private void assertRollups(List<Long> taskIds, Long[] projectIds) {
+    final long[] projectMinutes = new long[2];
+    for (Long id : taskIds) {
+      final ProjectTask task = JPA.em().find(ProjectTask.class, id);
+      final List<ProjectWork> workItems =
+          Query.of(ProjectWork.class).filter("self.task.id = ?", id).fetch();
+
+      assertEquals(referenceProgress(task, workItems), (int) task.getProgress(), task.getName());
+      assertEquals(minutes(workItems), (long) task.getLoggedMinutes(), task.getName());
+      assertEquals(subTreeMinutes(task), (long) task.getTotalMinutes(), task.getName());
+
+      projectMinutes[projectIds[0].equals(task.getProject().getId()) ? 0 : 1] +=
+          minutes(workItems);
+    }
+    for (int p = 0; p < 2; p++) {
+      final Project project = JPA.em().find(Project.class, projectIds[p]);
+      assertEquals(projectMinutes[p], (long) project.getTotalMinutes());
+    }
+  }
+
+  private long subTreeMinutes(ProjectTask task) {
+    long total = minutes(Query.of(ProjectWork.class).filter("self.task = ?", task).fetch());
+    for (ProjectTask child :
+        Query.of(ProjectTask.class).filter("self.parentTask = ?", task).fetch()) {
+      total += subTreeMinutes(child);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.ResourceLoadService;
+import com.axelor.project.service.ResourceLoadService.Overload;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class ResourceLoadTest {
+
+  private static final LocalDate FIRST_DAY = LocalDate.of(2022, 1, 1);
+
+  private static final LocalDate LAST_DAY = FIRST_DAY.plusDays(99);
+
+  @Test
+  public void testLoad() {
+    final Random random = new Random(23);
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final ResourceLoadService service = Beans.get(ResourceLoadService.class);
+    final List<Long> userIds = new ArrayList<>();
+    final List<Long> taskIds = new ArrayList<>();
+
+    JPA.runInTransaction(
+        () -> {
+          for (int u = 0; u < 4; u++) {
+            final User user = new User("load" + u, "Load " + u);
+            user.setPassword("load");
+            userIds.add(JPA.save(user).getId());
+          }
+        });
+    service.load();
+
+    // plan, replan, reassign and remove tasks
+    for (int i = 0; i < 150; i++) {
+      final int step = i;
+      JPA.runInTransaction(
+          () -> {
+            if (step % 10 == 9 && !taskIds.isEmpty()) {
+              tasks.remove(tasks.find(taskIds.remove(random.nextInt(taskIds.size()))));
+              return;
+            }
+            final ProjectTask task =
+                step % 3 == 2 && !taskIds.isEmpty()
+                    ? tasks.find(taskIds.get(random.nextInt(taskIds.size())))
+                    : new ProjectTask();
+            task.setName("Load task " + step);
+            task.setCreateDate(LocalDateTime.now());
+            task.setUser(JPA.em().find(User.class, userIds.get(random.nextInt(userIds.size()))));
+            task.setPlannedStartDate(FIRST_DAY.plusDays(random.nextInt(90)).atTime(9, 0));
+            task.setPlannedDuration(
+                random.nextInt(8) == 0 ? null : BigDecimal.valueOf(random.nextInt(60), 1));
+            final Long id = tasks.save(task).getId();
+            if (!taskIds.contains(id)) {
+              taskIds.add(id);
+            }
+          });
+    }
+
+    // a rolled back change is not applied
+    final Long rolledBack = taskIds.get(0);
+    assertThrows(
+        RuntimeException.class,
+        () ->
+            JPA.runInTransaction(
+                () -> {
+                  final ProjectTask task = tasks.find(rolledBack);
+                  task.setPlannedDuration(BigDecimal.valueOf(500));
+                  tasks.save(task);
+                  throw new IllegalStateException();
+                }));
+
+    JPA.em().clear();
+    final List<int[]> expected = new ArrayList<>();
+    for (Long userId : userIds) {
+      final int[] load = naiveLoad(userId);
+      assertArrayEquals(load, service.load(userId, FIRST_DAY, LAST_DAY));
+      expected.add(load);
+    }
+
+    // the same after a full reload
+    service.load();
+    for (int u = 0; u < userIds.size(); u++) {
+      assertArrayEquals(expected.get(u), service.load(userIds.get(u), FIRST_DAY, LAST_DAY));
+    }
+
+    int overloaded = 0;
+    for (int[] load : expected) {
+      for (int minutes : load) {
+        overloaded += minutes > ResourceLoadService.DAY_CAPACITY ? 1 : 0;
+      }
+    }
+    final List<Overload> result = service.overloaded(FIRST_DAY, LAST_DAY);
+    assertEquals(
+        overloaded, result.stream().filter(o -> userIds.contains(o.getUserId())).count());
+  }
+
+  /** Book the planned hours of the tasks of a user day by day. */
+  private int[] naiveLoad(Long userId) {
+    final int[] load = new int[(int) (LAST_DAY.toEpochDay() - FIRST_DAY.toEpochDay() + 1)];
+    for (ProjectTask task :
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM ProjectTask self WHERE self.user.id = :user", ProjectTask.class)
+            .setParameter("user", userId)
+            .getResultList()) {
+      if (task.getPlannedStartDate() == null || task.getPlannedDuration() == null) {
+        continue;
+      }
+      int left = task.getPlannedDuration().multiply(BigDecimal.valueOf(60)).intValue();
+      LocalDate day = task.getPlannedStartDate().toLocalDate();
+      while (left > 0) {
+        final int booked = Math.min(left, ResourceLoadService.DAY_CAPACITY);
+        final int i = (int) (day.toEpochDay() - FIRST_DAY.toEpochDay());
+        if (i >= 0 && i < load.length) {
+          load[i] += booked;
+        }
+        left -= booked;
+        day = day.plusDays(1);
+      }
+    }
+    return load;
+  }
+}
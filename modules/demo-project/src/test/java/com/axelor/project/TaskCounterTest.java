@@ -0,0 +1,118 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.TaskCounterService;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class TaskCounterTest {
+
+  private static final String[] STATES = {null, "draft", "progress", "complete"};
+
+  @Test
+  public void testCounters() {
+    final Random random = new Random(13);
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final TaskCounterService service = Beans.get(TaskCounterService.class);
+    final List<Long> userIds = new ArrayList<>();
+    final List<Long> taskIds = new ArrayList<>();
+
+    JPA.runInTransaction(
+        () -> {
+          for (int u = 0; u < 3; u++) {
+            final User user = new User("counter" + u, "Counter " + u);
+            user.setPassword("counter");
+            userIds.add(JPA.save(user).getId());
+          }
+        });
+
+    // create, reassign, change the state and remove tasks
+    for (int i = 0; i < 100; i++) {
+      final int step = i;
+      JPA.runInTransaction(
+          () -> {
+            final User user = JPA.em().find(User.class, userIds.get(random.nextInt(3)));
+            if (step % 9 == 8 && !taskIds.isEmpty()) {
+              tasks.remove(tasks.find(taskIds.remove(random.nextInt(taskIds.size()))));
+            } else if (step % 3 == 2 && !taskIds.isEmpty()) {
+              final ProjectTask task = tasks.find(taskIds.get(random.nextInt(taskIds.size())));
+              if (random.nextBoolean()) {
+                task.setUser(user);
+              }
+              task.setState(STATES[random.nextInt(STATES.length)]);
+              tasks.save(task);
+            } else {
+              final ProjectTask task = new ProjectTask();
+              task.setName("Counter task " + step);
+              task.setCreateDate(LocalDateTime.now());
+              task.setUser(user);
+              task.setState(STATES[random.nextInt(STATES.length)]);
+              taskIds.add(tasks.save(task).getId());
+            }
+          });
+    }
+
+    JPA.em().clear();
+    for (Long userId : userIds) {
+      assertEquals(countTasks(userId), service.count(userId));
+    }
+
+    // counters drifted by a bulk update are fixed
+    JPA.runInTransaction(
+        () ->
+            JPA.em()
+                .createQuery(
+                    "UPDATE UserTaskCounter self SET self.openTasks = 1000 "
+                        + "WHERE self.user.id IN :users")
+                .setParameter("users", userIds)
+                .executeUpdate());
+    assertEquals(userIds.size(), service.reconcile());
+    JPA.em().clear();
+    for (Long userId : userIds) {
+      assertEquals(countTasks(userId), service.count(userId));
+    }
+  }
+
+  private int countTasks(Long userId) {
+    return JPA.em()
+        .createQuery(
+            "SELECT COUNT(self.id) FROM ProjectTask self "
+                + "WHERE self.state != 'complete' AND self.user.id = :user",
+            Long.class)
+        .setParameter("user", userId)
+        .getSingleResult()
+        .intValue();
+  }
+}
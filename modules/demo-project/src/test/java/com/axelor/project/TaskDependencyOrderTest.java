@@ -0,0 +1,170 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.TaskDependencyOrder;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import javax.validation.ValidationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class TaskDependencyOrderTest {
+
+  private static final int TASKS = 20;
+
+  @Test
+  public void testCycles() {
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final List<Long> ids = createTasks("Dependency project");
+    final List<Set<Integer>> predecessors = new ArrayList<>();
+    for (int i = 0; i < TASKS; i++) {
+      predecessors.add(new HashSet<>());
+    }
+
+    final Random random = new Random(34);
+    for (int step = 0; step < 150; step++) {
+      final int task = random.nextInt(TASKS);
+      final int predecessor = random.nextInt(TASKS);
+      final boolean cyclic = task == predecessor || reaches(predecessors, task, predecessor);
+      final boolean remove = random.nextInt(4) == 0;
+
+      final Runnable save =
+          () ->
+              JPA.runInTransaction(
+                  () -> {
+                    final ProjectTask entity = tasks.find(ids.get(task));
+                    final ProjectTask other = tasks.find(ids.get(predecessor));
+                    if (remove) {
+                      entity.removeFinishToStartTaskSetItem(other);
+                      entity.removeStartToStartTaskSetItem(other);
+                    } else if (random.nextBoolean()) {
+                      entity.addFinishToStartTaskSetItem(other);
+                    } else {
+                      entity.addStartToStartTaskSetItem(other);
+                    }
+                    tasks.save(entity);
+                  });
+
+      if (remove) {
+        save.run();
+        predecessors.get(task).remove(predecessor);
+      } else if (cyclic) {
+        assertThrows(ValidationException.class, save::run);
+      } else {
+        save.run();
+        predecessors.get(task).add(predecessor);
+      }
+      JPA.em().clear();
+    }
+  }
+
+  @Test
+  public void testRebuild() {
+    final List<Long> ids = createTasks("Rebuild project");
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    JPA.runInTransaction(
+        () -> {
+          final ProjectTask second = tasks.find(ids.get(1));
+          second.addFinishToStartTaskSetItem(tasks.find(ids.get(0)));
+          tasks.save(second);
+        });
+
+    // a cycle written behind the repository back
+    JPA.runInTransaction(
+        () ->
+            JPA.jdbcWork(
+                connection -> {
+                  final String sql =
+                      "INSERT INTO PROJECT_TASK_S2S (from_task_id, to_task_id) VALUES (?, ?)";
+                  try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setLong(1, ids.get(0));
+                    stmt.setLong(2, ids.get(1));
+                    stmt.executeUpdate();
+                  }
+                }));
+
+    final Long projectId = tasks.find(ids.get(0)).getProject().getId();
+    assertEquals(1, Beans.get(TaskDependencyOrder.class).rebuild(projectId).size());
+  }
+
+  private List<Long> createTasks(String name) {
+    final List<Long> ids = new ArrayList<>();
+    JPA.runInTransaction(
+        () -> {
+          final User user = new User(name.toLowerCase().replace(' ', '-'), name);
+          user.setPassword("dependency");
+          JPA.save(user);
+
+          final Project project = new Project();
+          project.setName(name);
+          Beans.get(ProjectRepository.class).save(project);
+
+          for (int i = 0; i < TASKS; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName(name + " task " + i);
+            task.setUser(user);
+            task.setProject(project);
+            task.setCreateDate(LocalDateTime.now());
+            ids.add(Beans.get(ProjectTaskRepository.class).save(task).getId());
+          }
+        });
+    return ids;
+  }
+
+  /** Whether task {@code to} depends on task {@code from}, directly or not. */
+  private static boolean reaches(List<Set<Integer>> predecessors, int from, int to) {
+    final Deque<Integer> stack = new ArrayDeque<>();
+    final Set<Integer> seen = new HashSet<>();
+    stack.push(to);
+    while (!stack.isEmpty()) {
+      final int task = stack.pop();
+      if (task == from) {
+        return true;
+      }
+      for (int predecessor : predecessors.get(task)) {
+        if (seen.add(predecessor)) {
+          stack.push(predecessor);
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.TaskRankService;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class TaskRankTest {
+
+  private static final String STATE = "rank-test";
+
+  @Test
+  public void testMoves() {
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final TaskRankService rankService = Beans.get(TaskRankService.class);
+    final List<Long> order = new ArrayList<>();
+
+    JPA.runInTransaction(
+        () -> {
+          final User user = new User("ranker", "Ranker");
+          user.setPassword("ranker");
+          JPA.save(user);
+          for (int i = 0; i < 30; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName("Ranked task " + i);
+            task.setState(STATE);
+            task.setUser(user);
+            task.setCreateDate(LocalDateTime.now());
+            order.add(tasks.save(task).getId());
+          }
+        });
+    assertOrder(order);
+
+    final Random random = new Random(36);
+    for (int step = 0; step < 200; step++) {
+      final Long id = order.remove(random.nextInt(order.size()));
+      // keep dropping in the same place half of the time to exhaust the gap
+      final int position = step % 2 == 0 ? 1 : random.nextInt(order.size() + 1);
+      order.add(position, id);
+
+      final Long previousId = position > 0 ? order.get(position - 1) : null;
+      final Long nextId = position + 1 < order.size() ? order.get(position + 1) : null;
+      JPA.runInTransaction(
+          () -> {
+            final long rank = rankService.rank(STATE, id, previousId, nextId);
+            final ProjectTask task = tasks.find(id);
+            task.setKanbanRank(rank);
+            tasks.save(task);
+          });
+      JPA.em().clear();
+      assertOrder(order);
+    }
+  }
+
+  private void assertOrder(List<Long> expected) {
+    assertEquals(
+        expected,
+        JPA.em()
+            .createQuery(
+                "SELECT self.id FROM ProjectTask self WHERE self.state = :state "
+                    + "ORDER BY self.kanbanRank, self.id",
+                Long.class)
+            .setParameter("state", STATE)
+            .getResultList());
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.service.TaskTreeService;
+import com.axelor.project.service.TaskTreeService.Page;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class TaskTreeTest {
+
+  @Test
+  public void testTree() {
+    final Random random = new Random(17);
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final TaskTreeService service = Beans.get(TaskTreeService.class);
+    final List<Long> taskIds = new ArrayList<>();
+    final Long[] projectIds = new Long[2];
+
+    JPA.runInTransaction(
+        () -> {
+          final User user = new User("tree", "Tree");
+          user.setPassword("tree");
+          JPA.save(user);
+          for (int p = 0; p < 2; p++) {
+            final Project project = new Project();
+            project.setName("Tree project " + p);
+            projectIds[p] = Beans.get(ProjectRepository.class).save(project).getId();
+          }
+          for (int i = 0; i < 120; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName("Tree task " + i);
+            task.setUser(user);
+            task.setCreateDate(LocalDateTime.now());
+            task.setProject(JPA.em().find(Project.class, projectIds[i % 2]));
+            // a wide first task and a few deeper levels
+            if (i > 0 && i % 4 != 0) {
+              final Long parentId = i < 80 ? taskIds.get(0) : taskIds.get(random.nextInt(i));
+              task.setParentTask(JPA.em().find(ProjectTask.class, parentId));
+            }
+            taskIds.add(tasks.save(task).getId());
+          }
+        });
+
+    // move some tasks to other parents, to the root and to the other project
+    for (int i = 0; i < 30; i++) {
+      JPA.runInTransaction(
+          () -> {
+            final ProjectTask task = tasks.find(taskIds.get(60 + random.nextInt(60)));
+            final Long parentId = taskIds.get(random.nextInt(60));
+            task.setParentTask(random.nextInt(4) == 0 ? null : tasks.find(parentId));
+            task.setProject(JPA.em().find(Project.class, projectIds[random.nextInt(2)]));
+            tasks.save(task);
+          });
+    }
+
+    JPA.em().clear();
+    for (Long projectId : projectIds) {
+      final List<Long> roots =
+          ids("self.project.id = :parent AND self.parentTask IS NULL", projectId);
+      final Project project = JPA.em().find(Project.class, projectId);
+      assertEquals(roots.size(), (int) project.getChildCount());
+      assertEquals(roots, pageAll(projectId, null, 7));
+    }
+    for (Long taskId : taskIds) {
+      final List<Long> children = ids("self.parentTask.id = :parent", taskId);
+      final ProjectTask task = JPA.em().find(ProjectTask.class, taskId);
+      assertEquals(children.size(), task.getChildCount() == null ? 0 : task.getChildCount());
+      assertEquals(children, pageAll(null, taskId, 7));
+    }
+
+    // the first page of every visible task, in a batch
+    final List<Long> visible = taskIds.subList(0, 40);
+    final Map<Long, Page> pages = service.children(visible, 10, null);
+    assertEquals(visible, new ArrayList<>(pages.keySet()));
+    for (Long taskId : visible) {
+      final Page page = service.children(taskId, null, 10, null);
+      assertEquals(nodeIds(page), nodeIds(pages.get(taskId)));
+      assertEquals(page.getNext(), pages.get(taskId).getNext());
+    }
+
+    // out of range limits are clamped
+    assertEquals(1, service.children(taskIds.get(0), null, 0, null).getNodes().size());
+    assertEquals(
+        ids("self.parentTask.id = :parent", taskIds.get(0)).size(),
+        service.children(taskIds.get(0), null, Integer.MAX_VALUE, null).getNodes().size());
+  }
+
+  private List<Long> pageAll(Long projectId, Long taskId, int limit) {
+    final TaskTreeService service = Beans.get(TaskTreeService.class);
+    final List<Long> ids = new ArrayList<>();
+    Long after = null;
+    do {
+      final Page page =
+          projectId == null
+              ? service.children(taskId, after, limit, null)
+              : service.roots(projectId, after, limit, null);
+      ids.addAll(nodeIds(page));
+      after = page.getNext();
+    } while (after != null);
+    return ids;
+  }
+
+  private List<Long> nodeIds(Page page) {
+    return page.getNodes().stream().map(n -> (Long) n.get("id")).collect(Collectors.toList());
+  }
+
+  private List<Long> ids(String filter, Long parentId) {
+    final String query =
+        "SELECT self.id FROM ProjectTask self WHERE " + filter + " ORDER BY self.id";
+    return JPA.em()
+        .createQuery(query, Long.class)
+        .setParameter("parent", parentId)
+        .getResultList();
+  }
+}
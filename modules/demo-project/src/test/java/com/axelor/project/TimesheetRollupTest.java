@@ -0,0 +1,161 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import com.axelor.project.db.Project;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.ProjectWork;
+import com.axelor.project.db.repo.ProjectRepository;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.db.repo.ProjectWorkRepository;
+import com.axelor.project.service.TimesheetRollupService;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import javax.persistence.TypedQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({TestModule.class})
+public class TimesheetRollupTest {
+
+  private static final LocalDate FIRST_DAY = LocalDate.of(2021, 3, 1);
+
+  @Test
+  public void testRollups() {
+    final Random random = new Random(11);
+    final ProjectTaskRepository tasks = Beans.get(ProjectTaskRepository.class);
+    final ProjectWorkRepository works = Beans.get(ProjectWorkRepository.class);
+    final TimesheetRollupService service = Beans.get(TimesheetRollupService.class);
+    final List<Long> taskIds = new ArrayList<>();
+    final List<Long> userIds = new ArrayList<>();
+    final List<Long> workIds = new ArrayList<>();
+    final Long[] projectIds = new Long[2];
+
+    JPA.runInTransaction(
+        () -> {
+          for (int u = 0; u < 2; u++) {
+            final User user = new User("timesheet" + u, "Timesheet " + u);
+            user.setPassword("timesheet");
+            userIds.add(JPA.save(user).getId());
+          }
+          for (int p = 0; p < 2; p++) {
+            final Project project = new Project();
+            project.setName("Timesheet project " + p);
+            projectIds[p] = Beans.get(ProjectRepository.class).save(project).getId();
+          }
+          for (int i = 0; i < 4; i++) {
+            final ProjectTask task = new ProjectTask();
+            task.setName("Timesheet task " + i);
+            task.setCreateDate(LocalDateTime.now());
+            task.setUser(JPA.em().find(User.class, userIds.get(i % 2)));
+            task.setProject(JPA.em().find(Project.class, projectIds[i % 2]));
+            taskIds.add(tasks.save(task).getId());
+          }
+        });
+
+    // add, edit and remove work items over two months, across the week of March 29th
+    for (int i = 0; i < 80; i++) {
+      final int step = i;
+      JPA.runInTransaction(
+          () -> {
+            if (step % 7 == 6 && !workIds.isEmpty()) {
+              works.remove(works.find(workIds.remove(random.nextInt(workIds.size()))));
+              return;
+            }
+            final ProjectWork work =
+                step % 5 == 4 && !workIds.isEmpty()
+                    ? works.find(workIds.get(random.nextInt(workIds.size())))
+                    : new ProjectWork();
+            work.setName("Work " + step);
+            work.setDate(FIRST_DAY.plusDays(random.nextInt(50)));
+            work.setHours(LocalTime.of(random.nextInt(9), random.nextInt(60)));
+            work.setTask(tasks.find(taskIds.get(random.nextInt(taskIds.size()))));
+            final int user = random.nextInt(3);
+            work.setUser(user == 2 ? null : JPA.em().find(User.class, userIds.get(user)));
+            final Long id = works.save(work).getId();
+            if (!workIds.contains(id)) {
+              workIds.add(id);
+            }
+          });
+    }
+
+    // move a task to the other project
+    JPA.runInTransaction(
+        () -> {
+          final ProjectTask task = tasks.find(taskIds.get(0));
+          task.setProject(JPA.em().find(Project.class, projectIds[1]));
+          tasks.save(task);
+        });
+
+    JPA.em().clear();
+    assertTotals(service, userIds, projectIds);
+
+    service.rebuild();
+    JPA.em().clear();
+    assertTotals(service, userIds, projectIds);
+  }
+
+  private void assertTotals(TimesheetRollupService service, List<Long> userIds, Long[] projectIds) {
+    final LocalDate last = FIRST_DAY.plusDays(60);
+    for (Long userId : userIds) {
+      for (Long projectId : new Long[] {null, projectIds[0], projectIds[1]}) {
+        final Map<LocalDate, Long> weeks = new TreeMap<>();
+        final Map<LocalDate, Long> months = new TreeMap<>();
+        for (ProjectWork work : workItems(userId, projectId)) {
+          final long minutes = work.getHours().getHour() * 60L + work.getHours().getMinute();
+          weeks.merge(TimesheetRollupService.weekStart(work.getDate()), minutes, Long::sum);
+          months.merge(TimesheetRollupService.monthStart(work.getDate()), minutes, Long::sum);
+        }
+        assertEquals(weeks, new TreeMap<>(service.weekly(userId, projectId, FIRST_DAY, last)));
+        final YearMonth from = YearMonth.from(FIRST_DAY);
+        final YearMonth to = YearMonth.from(last);
+        assertEquals(months, new TreeMap<>(service.monthly(userId, projectId, from, to)));
+      }
+    }
+  }
+
+  private List<ProjectWork> workItems(Long userId, Long projectId) {
+    final TypedQuery<ProjectWork> query =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM ProjectWork self WHERE self.user.id = :user"
+                    + (projectId == null ? "" : " AND self.task.project.id = :project"),
+                ProjectWork.class)
+            .setParameter("user", userId);
+    if (projectId != null) {
+      query.setParameter("project", projectId);
+    }
+    return query.getResultList();
+  }
+}
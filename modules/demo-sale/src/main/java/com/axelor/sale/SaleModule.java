@@ -20,9 +20,14 @@ package com.axelor.sale;
 
 import com.axelor.app.AxelorModule;
 import com.axelor.contact.service.AccessContactQuickMenu;
+import com.axelor.contact.service.ContactMergeService;
 import com.axelor.contact.service.HelloServiceImpl;
+import com.axelor.contact.service.ReferenceDataService;
 import com.axelor.sale.service.AccessSaleQuickMenu;
+import com.axelor.sale.service.ContactMergeServiceSale;
 import com.axelor.sale.service.HelloServiceSaleImpl;
+import com.axelor.sale.service.OrderCalendarObserver;
+import com.axelor.sale.service.ReferenceDataServiceSale;
 
 public class SaleModule extends AxelorModule {
 
@@ -30,5 +35,8 @@ public class SaleModule extends AxelorModule {
   protected void configure() {
     bind(HelloServiceImpl.class).to(HelloServiceSaleImpl.class);
     bind(AccessContactQuickMenu.class).to(AccessSaleQuickMenu.class);
+    bind(ContactMergeService.class).to(ContactMergeServiceSale.class);
+    bind(ReferenceDataService.class).to(ReferenceDataServiceSale.class);
+    bind(OrderCalendarObserver.class);
   }
 }
@@ -0,0 +1,54 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.sale.jobs;
+
+import com.axelor.batch.jobs.ChunkJob;
+import com.axelor.batch.jobs.EntityItemReader;
+import com.axelor.batch.jobs.ItemProcessor;
+import com.axelor.batch.jobs.ItemReader;
+import com.axelor.batch.jobs.ItemWriter;
+import com.axelor.sale.db.Order;
+import com.axelor.sale.db.repo.OrderRepository;
+import com.axelor.sale.service.SaleOrderService;
+import javax.inject.Inject;
+import org.quartz.JobDataMap;
+
+/** Recalculates the amounts of the sale orders not yet confirmed. */
+public class OrderRecalculateJob extends ChunkJob<Order, Order> {
+
+  @Inject private SaleOrderService saleOrderService;
+
+  @Inject private OrderRepository orders;
+
+  @Override
+  protected ItemReader<Order> reader(JobDataMap data) {
+    return new EntityItemReader<>(
+        Order.class, "self.confirmed IS NULL OR self.confirmed = FALSE", null);
+  }
+
+  @Override
+  protected ItemProcessor<Order, Order> processor(JobDataMap data) {
+    return saleOrderService::calculate;
+  }
+
+  @Override
+  protected ItemWriter<Order> writer(JobDataMap data) {
+    return items -> items.forEach(orders::save);
+  }
+}
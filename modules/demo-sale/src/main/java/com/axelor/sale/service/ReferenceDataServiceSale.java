@@ -0,0 +1,38 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.sale.service;
+
+import com.axelor.contact.service.ReferenceDataService;
+import com.axelor.db.Model;
+import com.axelor.sale.db.Currency;
+import com.axelor.sale.db.Tax;
+import java.util.List;
+import javax.inject.Singleton;
+
+@Singleton
+public class ReferenceDataServiceSale extends ReferenceDataService {
+
+  @Override
+  protected List<Class<? extends Model>> types() {
+    final List<Class<? extends Model>> types = super.types();
+    types.add(Currency.class);
+    types.add(Tax.class);
+    return types;
+  }
+}
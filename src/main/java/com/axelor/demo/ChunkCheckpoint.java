@@ -0,0 +1,135 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.service.TransactionCallbacks;
+import com.axelor.db.JPA;
+import com.axelor.inject.Beans;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * Saves the checkpoint of a resumable import in the transactions which import its rows.
+ *
+ * <p>The {@link ResumableImporter} numbers the rows of its chunks in a {@link #ROW} column and
+ * makes {@link #call(Object, Map)} the callback of the input, which calls the original callback
+ * and records the number of the row. Just before a transaction of the importer commits, the last
+ * row it imported is saved in the {@link BatchCheckpoint} of the input, so that the rows and their
+ * checkpoint are committed together, whenever the importer commits.
+ */
+public class ChunkCheckpoint implements AutoCloseable {
+
+  /** The column of the row numbers, in the files of the chunks. */
+  static final String ROW = "_resume_row";
+
+  /** The callback of the inputs of the chunks. */
+  static final String CALL = ChunkCheckpoint.class.getName() + ":call";
+
+  private static final ThreadLocal<ChunkCheckpoint> CURRENT = new ThreadLocal<>();
+
+  private String name;
+
+  private Object target;
+
+  private Method callback;
+
+  /** the last row imported by the current transaction */
+  private long row;
+
+  private boolean pending;
+
+  /** The instance of the importer, see {@link #call(Object, Map)}. */
+  public ChunkCheckpoint() {}
+
+  /**
+   * Record the rows imported by the current thread, until closed.
+   *
+   * @param name the job name of the checkpoint
+   * @param callable the original callback of the input, as {@code class:method}, may be empty
+   */
+  static ChunkCheckpoint open(String name, String callable) throws ReflectiveOperationException {
+    final ChunkCheckpoint checkpoint = new ChunkCheckpoint();
+    checkpoint.name = name;
+    if (callable != null && !callable.isEmpty()) {
+      final String[] parts = callable.split(":");
+      final Class<?> type = Class.forName(parts[0]);
+      checkpoint.target = Beans.get(type);
+      checkpoint.callback = type.getMethod(parts[1], Object.class, Map.class);
+    }
+    CURRENT.set(checkpoint);
+    return checkpoint;
+  }
+
+  /** The callback of the chunks, called for each row by the importer. */
+  public Object call(Object bean, Map<String, Object> context) throws Exception {
+    final ChunkCheckpoint checkpoint = CURRENT.get();
+    return checkpoint == null ? bean : checkpoint.imported(bean, context);
+  }
+
+  private Object imported(Object bean, Map<String, Object> context) throws Exception {
+    final Object result = callback == null ? bean : invoke(bean, context);
+    final Object value = context.get(ROW);
+    if (value == null) {
+      return result;
+    }
+    row = Math.max(row, Long.parseLong(value.toString()));
+    if (!pending) {
+      pending = true;
+      TransactionCallbacks.beforeCommit(this::save);
+      TransactionCallbacks.afterCompletion(() -> pending = false, () -> pending = false);
+    }
+    return result;
+  }
+
+  private Object invoke(Object bean, Map<String, Object> context) throws Exception {
+    try {
+      return callback.invoke(target, bean, context);
+    } catch (InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  /** Move the checkpoint to the last row, in the transaction about to commit. */
+  private void save() {
+    JPA.em()
+        .createQuery(
+            "UPDATE BatchCheckpoint self SET self.items = self.items + (:row - self.lastKey), "
+                + "self.lastKey = :row, self.version = self.version + 1 "
+                + "WHERE self.jobName = :name AND self.partitionIndex = 0 AND self.lastKey < :row")
+        .setParameter("row", row)
+        .setParameter("name", name)
+        .executeUpdate();
+  }
+
+  @Override
+  public void close() {
+    if (CURRENT.get() == this) {
+      CURRENT.remove();
+    }
+  }
+}
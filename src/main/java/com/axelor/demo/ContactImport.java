@@ -19,9 +19,6 @@
 package com.axelor.demo;
 
 import com.axelor.contact.db.Contact;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -35,12 +32,17 @@ public class ContactImport {
     final Path path = (Path) context.get("__path__");
 
     try {
+      final Path images = path.resolve(CONTACT_IMAGES_DIR);
       final Path image =
-          ImportUtils.findByFileName(
-              path.resolve(CONTACT_IMAGES_DIR),
-              String.join("-", contact.getFirstName(), contact.getLastName()));
-      if (image != null && image.toFile().exists()) {
-        contact.setImage(readFileToBytes(image));
+          ImportUtils.index(images)
+              .find(String.join("-", contact.getFirstName(), contact.getLastName()));
+      if (image != null) {
+        final ImagePipeline pipeline =
+            ImportUtils.images(
+                ImportUtils.input(),
+                images,
+                row -> String.join("-", row.get("firstName"), row.get("lastName")));
+        contact.setImage(pipeline == null ? ImagePipeline.read(image) : pipeline.take(image));
       }
     } catch (Exception e) {
       // ignore
@@ -48,17 +50,4 @@ public class ContactImport {
 
     return contact;
   }
-
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  private byte[] readFileToBytes(Path path) throws IOException {
-
-    File file = path.toFile();
-    byte[] bytes = new byte[(int) file.length()];
-
-    try (FileInputStream fis = new FileInputStream(file)) {
-      fis.read(bytes);
-    }
-
-    return bytes;
-  }
 }
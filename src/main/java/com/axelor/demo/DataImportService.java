@@ -0,0 +1,116 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.inject.Beans;
+import com.google.inject.persist.UnitOfWork;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the data imports of this node in the background, one at a time.
+ *
+ * <p>The imports are started from the data import menu, see {@code
+ * com.axelor.demo.web.ImportController}. Their config file and data directory are given by the
+ * {@code data.import.config} and {@code data.import.dir} settings.
+ */
+@Singleton
+public class DataImportService {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "data-import");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private Future<?> running;
+
+  private ResumableImporter resumable;
+
+  /**
+   * Start a {@link ResumableImporter}, which resumes the previous run if it didn't complete.
+   *
+   * @param configFile the CSV import config
+   * @param dataDir the directory of the CSV files
+   * @return false if an import is already running
+   */
+  public synchronized boolean start(String configFile, String dataDir) {
+    if (isRunning()) {
+      return false;
+    }
+    final ResumableImporter importer = new ResumableImporter(configFile, dataDir);
+    resumable = importer;
+    running = executor.submit(() -> run("resumable", importer::run));
+    return true;
+  }
+
+  /**
+   * Stop the running resumable import after its current chunk.
+   *
+   * @return false if no resumable import is running
+   */
+  public synchronized boolean stop() {
+    if (!isRunning() || resumable == null) {
+      return false;
+    }
+    resumable.stop();
+    return true;
+  }
+
+  /**
+   * Start a {@link ParallelDataImporter}.
+   *
+   * @param configFile the CSV import config
+   * @param dataDir the directory of the CSV files
+   * @return false if an import is already running
+   */
+  public synchronized boolean startParallel(String configFile, String dataDir) {
+    if (isRunning()) {
+      return false;
+    }
+    final ParallelDataImporter importer = new ParallelDataImporter(configFile, dataDir);
+    resumable = null;
+    running = executor.submit(() -> run("parallel", importer::run));
+    return true;
+  }
+
+  public synchronized boolean isRunning() {
+    return running != null && !running.isDone();
+  }
+
+  private void run(String name, Runnable importer) {
+    final long start = System.currentTimeMillis();
+    try {
+      importer.run();
+      log.info("Data import {} done in {} ms", name, System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      log.error("Data import {} failed", name, e);
+    } finally {
+      Beans.get(UnitOfWork.class).end();
+    }
+  }
+}
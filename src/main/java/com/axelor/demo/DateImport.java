@@ -0,0 +1,59 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.common.StringUtils;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+
+/**
+ * Date conversions for the import bindings.
+ *
+ * <p>The demo dates are given relative to {@link #BASE_DATE} and moved to the current date. Each
+ * binding calls one of these compiled helpers instead of evaluating the whole conversion as a
+ * dynamic Groovy expression per row.
+ */
+public class DateImport {
+
+  /** the date the demo dates are relative to */
+  public static final LocalDate BASE_DATE = LocalDate.of(2021, 1, 1);
+
+  private DateImport() {}
+
+  /** Move a date time from the base date to the current date. */
+  public static LocalDateTime shift(String dateTime) {
+    return StringUtils.isBlank(dateTime) ? null : LocalDateTime.parse(dateTime).plus(offset());
+  }
+
+  /** Move a date from the base date to the current date. */
+  public static LocalDate shiftDate(String date) {
+    return StringUtils.isBlank(date) ? null : LocalDate.parse(date).plus(offset());
+  }
+
+  /** Get the date some days from today, today if no gap is given. */
+  public static LocalDate today(String gap) {
+    final LocalDate today = LocalDate.now();
+    return StringUtils.isBlank(gap) ? today : today.plusDays(Long.parseLong(gap.trim()));
+  }
+
+  private static Period offset() {
+    return BASE_DATE.until(LocalDate.now());
+  }
+}
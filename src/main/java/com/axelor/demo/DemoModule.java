@@ -27,5 +27,7 @@ public class DemoModule extends AxelorModule {
   protected void configure() {
     bind(MailService.class).to(DemoMailService.class);
     bind(DemoEventLogger.class);
+    bind(ImportProgressService.class);
+    bind(DataImportService.class);
   }
 }
@@ -0,0 +1,145 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The files of a directory tree, sorted by file name for prefix lookups.
+ *
+ * <p>The tree is walked once, a lookup is then a binary search of the names starting with the
+ * prefix and a range minimum query of their walk order, both in O(log n). For the same prefix, it
+ * returns the same file as {@link ImportUtils#findByFileName(Path, String)}, the first one in walk
+ * order.
+ */
+public final class FileIndex {
+
+  private final String[] names;
+
+  private final Path[] paths;
+
+  /** the walk order of each file */
+  private final int[] positions;
+
+  /** a segment tree of the files first in walk order, leaves from {@code names.length} on */
+  private final int[] first;
+
+  private FileIndex(List<Path> files) {
+    final Integer[] order = new Integer[files.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    final String[] fileNames = new String[order.length];
+    for (int i = 0; i < order.length; i++) {
+      fileNames[i] = files.get(i).getFileName().toString();
+    }
+    Arrays.sort(order, Comparator.comparing((Integer i) -> fileNames[i]));
+
+    names = new String[order.length];
+    paths = new Path[order.length];
+    positions = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      names[i] = fileNames[order[i]];
+      paths[i] = files.get(order[i]);
+      positions[i] = order[i];
+    }
+
+    first = new int[2 * order.length];
+    for (int i = 0; i < order.length; i++) {
+      first[order.length + i] = i;
+    }
+    for (int i = order.length - 1; i > 0; i--) {
+      first[i] = earlier(first[2 * i], first[2 * i + 1]);
+    }
+  }
+
+  private int earlier(int a, int b) {
+    return positions[a] <= positions[b] ? a : b;
+  }
+
+  /**
+   * Walk a directory tree.
+   *
+   * @param root the directory, may not exist
+   * @return the index of its files and directories, empty if it doesn't exist
+   */
+  public static FileIndex of(Path root) throws IOException {
+    final List<Path> files = new ArrayList<>();
+    if (Files.exists(root)) {
+      try (Stream<Path> stream = Files.walk(root)) {
+        stream.forEach(files::add);
+      }
+    }
+    return new FileIndex(files);
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * Find a file by the start of its name.
+   *
+   * @param prefix the start of the file name
+   * @return the first file found by the walk, or null
+   */
+  public Path find(String prefix) {
+    // the names starting with the prefix are sorted in [low, high)
+    final int low = search(prefix, 0, false);
+    final int high = search(prefix, low, true);
+    if (low == high) {
+      return null;
+    }
+    int result = low;
+    for (int l = low + names.length, h = high + names.length; l < h; l >>>= 1, h >>>= 1) {
+      if ((l & 1) == 1) {
+        result = earlier(result, first[l++]);
+      }
+      if ((h & 1) == 1) {
+        result = earlier(result, first[--h]);
+      }
+    }
+    return paths[result];
+  }
+
+  /**
+   * Find the first name from {@code from} on which is not before the prefix or, if {@code
+   * matched}, which doesn't start with it.
+   */
+  private int search(String prefix, int from, boolean matched) {
+    int low = from;
+    int high = names.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (matched ? names[mid].startsWith(prefix) : names[mid].compareTo(prefix) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Reads the images of an import ahead of the rows that need them.
+ *
+ * <p>The images are given in row order. A feeder thread submits their reads to a shared I/O pool as
+ * long as the images read and not yet taken fit in a memory budget, and waits otherwise. A row
+ * then {@link #take(Path)} its image, only waiting if its read isn't done yet. Images of skipped
+ * rows are dropped when a later one is taken.
+ */
+public final class ImagePipeline implements AutoCloseable {
+
+  /** files from this size on are read through a mapped buffer */
+  private static final long MAP_THRESHOLD = 1 << 20;
+
+  private static final int KB = 1024;
+
+  private static final AtomicInteger THREADS = new AtomicInteger();
+
+  private static final ExecutorService IO_POOL =
+      Executors.newFixedThreadPool(
+          4,
+          runnable -> {
+            final Thread thread =
+                new Thread(runnable, "import-image-io-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Deque<Entry> pending = new ArrayDeque<>();
+
+  /** the memory budget, in KB */
+  private final Semaphore budget;
+
+  private final int budgetKb;
+
+  private final Thread feeder;
+
+  private static final class Entry {
+
+    final Path path;
+
+    final int permits;
+
+    final CompletableFuture<byte[]> bytes;
+
+    Entry(Path path, int permits, CompletableFuture<byte[]> bytes) {
+      this.path = path;
+      this.permits = permits;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Start reading images.
+   *
+   * @param images the image of each row, in row order, null for the rows without image
+   * @param maxBytes the memory budget of the images read ahead
+   */
+  public ImagePipeline(List<Path> images, long maxBytes) {
+    budgetKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / KB));
+    budget = new Semaphore(budgetKb);
+    feeder = new Thread(() -> feed(images), "import-image-feeder");
+    feeder.setDaemon(true);
+    feeder.start();
+  }
+
+  /**
+   * Start reading the images of the rows of a CSV file.
+   *
+   * @param csv the CSV file, with a header line
+   * @param images the image files
+   * @param imageName the image name prefix of a row, given as a map of its columns, or null
+   * @param maxBytes the memory budget of the images read ahead
+   */
+  public static ImagePipeline of(
+      Path csv, FileIndex images, Function<Map<String, String>, String> imageName, long maxBytes)
+      throws IOException {
+    final List<Path> paths = new ArrayList<>();
+    try (CSVReader reader = new CSVReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8))) {
+      final String[] header = reader.readNext();
+      String[] values;
+      while (header != null && (values = reader.readNext()) != null) {
+        final Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.length && i < values.length; i++) {
+          row.put(header[i], values[i]);
+        }
+        final String name = imageName.apply(row);
+        paths.add(name == null ? null : images.find(name));
+      }
+    } catch (CsvValidationException e) {
+      throw new IOException(e);
+    }
+    return new ImagePipeline(paths, maxBytes);
+  }
+
+  private void feed(List<Path> images) {
+    try {
+      for (Path path : images) {
+        if (path == null) {
+          continue;
+        }
+        final int permits = permits(path);
+        budget.acquire(permits);
+        final CompletableFuture<byte[]> bytes =
+            CompletableFuture.supplyAsync(() -> readUnchecked(path), IO_POOL);
+        synchronized (pending) {
+          pending.addLast(new Entry(path, permits, bytes));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private int permits(Path path) {
+    try {
+      return (int) Math.max(1, Math.min(budgetKb, Files.size(path) / KB));
+    } catch (IOException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * Get the bytes of an image, waiting for its read if needed, or reading it now if it wasn't
+   * planned or not submitted yet.
+   */
+  public byte[] take(Path path) throws IOException {
+    Entry entry = null;
+    synchronized (pending) {
+      while (!pending.isEmpty()) {
+        final Entry head = pending.pollFirst();
+        if (head.path.equals(path)) {
+          entry = head;
+          break;
+        }
+        // the row of this image was skipped
+        budget.release(head.permits);
+      }
+    }
+    if (entry == null) {
+      return read(path);
+    }
+    try {
+      return entry.bytes.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      budget.release(entry.permits);
+    }
+  }
+
+  @Override
+  public void close() {
+    feeder.interrupt();
+    synchronized (pending) {
+      pending.clear();
+    }
+  }
+
+  /** Read a whole file, without the short reads of {@code InputStream.read(byte[])}. */
+  public static byte[] read(Path path) throws IOException {
+    if (Files.size(path) < MAP_THRESHOLD) {
+      return Files.readAllBytes(path);
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+
+  private static byte[] readUnchecked(Path path) {
+    try {
+      return read(path);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.batch.service.TransactionCallbacks;
+import com.axelor.common.StringUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Key lookups for the import bindings, served from memory.
+ *
+ * <p>A {@code search} binding such as {@code self.id = :customer_id_} runs one query per row. The
+ * helpers of this class preload the keys of the target type on their first use of an {@link
+ * ImportRun}, by pages, and resolve the next rows from memory. A key that is not found, such as
+ * one of a record inserted since the preload, is queried and then cached; the lists of keys are
+ * queried in one batch. Records are returned as references of the current session, without
+ * loading them. Outside of a run, every lookup is a query.
+ *
+ * <p>The keys belong to the run and are dropped when it is closed, which also logs the number of
+ * queries saved. They are also dropped when a transaction which read some of them is rolled back,
+ * as they may be the ids of records it inserted.
+ */
+public class ImportKeys {
+
+  private static final int PAGE_SIZE = 10_000;
+
+  private static final Logger log = LoggerFactory.getLogger(ImportKeys.class);
+
+  private final Map<String, Keys> keys = new ConcurrentHashMap<>();
+
+  /** the transactions which read keys, watched for a rollback */
+  private final Set<Transaction> transactions = ConcurrentHashMap.newKeySet();
+
+  ImportKeys() {}
+
+  /** Resolve a record by id. */
+  public static <T extends Model> T id(Class<T> type, Object id) {
+    return find(type, "id", id);
+  }
+
+  /** Resolve records by id, given as a collection or a {@code |} separated list. */
+  public static <T extends Model> List<T> ids(Class<T> type, Object ids) {
+    return findAll(type, "id", ids);
+  }
+
+  /** Resolve a record by code. */
+  public static <T extends Model> T code(Class<T> type, Object code) {
+    return find(type, "code", code);
+  }
+
+  public static <T extends Model> T find(Class<T> type, String property, Object key) {
+    final Keys cache = keys(type, property);
+    final Object value = cache.toKey(key);
+    if (value == null) {
+      return null;
+    }
+    final Long id = cache.find(value);
+    return id == null ? null : JPA.em().getReference(type, id);
+  }
+
+  public static <T extends Model> List<T> findAll(Class<T> type, String property, Object keys) {
+    final Keys cache = keys(type, property);
+    final Set<Object> values = new LinkedHashSet<>();
+    for (Object key : split(keys)) {
+      final Object value = cache.toKey(key);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    final List<T> records = new ArrayList<>();
+    for (Long id : cache.findAll(values)) {
+      records.add(JPA.em().getReference(type, id));
+    }
+    return records;
+  }
+
+  /**
+   * Get the metrics of the keys of a type in the current run.
+   *
+   * @return the number of lookups and of queries run, or zeros if the keys are not loaded
+   */
+  public static long[] metrics(Class<?> type, String property) {
+    final ImportRun run = ImportRun.current();
+    final Keys keys = run == null ? null : run.keys().keys.get(type.getName() + "." + property);
+    return keys == null
+        ? new long[2]
+        : new long[] {keys.lookups.longValue(), keys.queries.longValue()};
+  }
+
+  /** Drop the keys. */
+  void clear() {
+    keys.clear();
+  }
+
+  /** Log the metrics of the keys and drop them. */
+  void close() {
+    keys.values().forEach(Keys::report);
+    clear();
+  }
+
+  private static Keys keys(Class<?> type, String property) {
+    final ImportRun run = ImportRun.current();
+    if (run == null) {
+      return new Keys(null, type, property);
+    }
+    final ImportKeys owner = run.keys();
+    return owner.keys.computeIfAbsent(
+        type.getName() + "." + property, name -> new Keys(owner, type, property));
+  }
+
+  /** Drop the keys if the current transaction, which read some of them, is rolled back. */
+  private void watch() {
+    final Transaction transaction = JPA.em().unwrap(Session.class).getTransaction();
+    if (transaction == null || !transaction.isActive() || !transactions.add(transaction)) {
+      return;
+    }
+    TransactionCallbacks.afterCompletion(
+        () -> transactions.remove(transaction),
+        () -> {
+          transactions.remove(transaction);
+          clear();
+        });
+  }
+
+  private static Collection<?> split(Object keys) {
+    if (keys == null) {
+      return new ArrayList<>();
+    }
+    if (keys instanceof Collection) {
+      return (Collection<?>) keys;
+    }
+    return Arrays.asList(keys.toString().split("\\|"));
+  }
+
+  /** The ids of the records of a type, by key. */
+  private static final class Keys {
+
+    private final ImportKeys owner;
+
+    private final String type;
+
+    private final String property;
+
+    private final boolean byId;
+
+    private final Map<Object, Long> ids = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder queries = new LongAdder();
+
+    private volatile boolean loaded;
+
+    /** @param owner the keys of the run, or null to query every lookup */
+    Keys(ImportKeys owner, Class<?> type, String property) {
+      this.owner = owner;
+      this.type = type.getName();
+      this.property = property;
+      this.byId = "id".equals(property);
+    }
+
+    Object toKey(Object key) {
+      if (key == null || StringUtils.isBlank(key.toString())) {
+        return null;
+      }
+      return byId ? Long.valueOf(key.toString().trim()) : key.toString();
+    }
+
+    Long find(Object key) {
+      lookups.increment();
+      preload();
+      final Long id = ids.get(key);
+      if (id != null) {
+        return id;
+      }
+      final List<Long> found = query(Arrays.asList(key));
+      return found.isEmpty() ? null : found.get(0);
+    }
+
+    List<Long> findAll(Collection<Object> keys) {
+      lookups.increment();
+      preload();
+      final List<Object> missing = new ArrayList<>();
+      for (Object key : keys) {
+        if (!ids.containsKey(key)) {
+          missing.add(key);
+        }
+      }
+      if (!missing.isEmpty()) {
+        query(missing);
+      }
+      final List<Long> found = new ArrayList<>();
+      for (Object key : keys) {
+        final Long id = ids.get(key);
+        if (id != null) {
+          found.add(id);
+        }
+      }
+      return found;
+    }
+
+    private synchronized void preload() {
+      if (loaded || owner == null) {
+        return;
+      }
+      owner.watch();
+      final String jpql =
+          "SELECT self.id, self."
+              + property
+              + " FROM "
+              + type
+              + " self WHERE self.id > :after ORDER BY self.id";
+      long after = 0;
+      List<Object[]> rows;
+      do {
+        rows =
+            JPA.em()
+                .createQuery(jpql, Object[].class)
+                .setParameter("after", after)
+                .setMaxResults(PAGE_SIZE)
+                .getResultList();
+        queries.increment();
+        for (Object[] row : rows) {
+          after = (Long) row[0];
+          if (row[1] != null) {
+            ids.put(row[1], after);
+          }
+        }
+      } while (rows.size() == PAGE_SIZE);
+      loaded = true;
+    }
+
+    /** Query keys missing from memory, records inserted since the preload are cached. */
+    private List<Long> query(Collection<Object> keys) {
+      if (owner != null) {
+        owner.watch();
+      }
+      queries.increment();
+      final List<Object[]> rows =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self." + property + " FROM " + type + " self "
+                      + "WHERE self." + property + " IN (:keys)",
+                  Object[].class)
+              .setParameter("keys", keys)
+              .getResultList();
+      final List<Long> found = new ArrayList<>();
+      for (Object[] row : rows) {
+        ids.put(row[1], (Long) row[0]);
+        found.add((Long) row[0]);
+      }
+      return found;
+    }
+
+    void report() {
+      final long count = lookups.longValue();
+      final long run = queries.longValue();
+      log.info(
+          "Import keys of {}.{}: {} lookups, {} queries, {} queries saved",
+          type,
+          property,
+          count,
+          run,
+          Math.max(0, count - run));
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.batch.db.BatchStatus;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Singleton;
+
+/**
+ * Live progress of the resumable imports of this node, by input.
+ *
+ * <p>The progress of a run is kept in memory until the next run of the same input. The committed
+ * state of an input is its {@link com.axelor.batch.db.BatchCheckpoint}.
+ */
+@Singleton
+public class ImportProgressService {
+
+  private final Map<String, Progress> inputs = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking an input.
+   *
+   * @param name the input name
+   * @param fileSize the size of the input file in bytes
+   * @param resumedRows the rows committed by the previous runs
+   * @param resumedBytes the bytes of the file skipped with these rows
+   */
+  public Progress start(String name, long fileSize, long resumedRows, long resumedBytes) {
+    final Progress progress = new Progress(name, fileSize, resumedRows, resumedBytes);
+    inputs.put(name, progress);
+    return progress;
+  }
+
+  public Progress get(String name) {
+    return inputs.get(name);
+  }
+
+  /** The inputs in the order they were started. */
+  public List<Progress> list() {
+    final List<Progress> list = new ArrayList<>(inputs.values());
+    list.sort((a, b) -> Long.compare(a.startedAt, b.startedAt));
+    return list;
+  }
+
+  public static final class Progress {
+
+    private final String name;
+
+    private final long fileSize;
+
+    private final long resumedRows;
+
+    private final long resumedBytes;
+
+    private final long startedAt = System.nanoTime();
+
+    private volatile long rows;
+
+    private volatile long errors;
+
+    private volatile long bytes;
+
+    private volatile BatchStatus status = BatchStatus.RUNNING;
+
+    private Progress(String name, long fileSize, long resumedRows, long resumedBytes) {
+      this.name = name;
+      this.fileSize = fileSize;
+      this.resumedRows = resumedRows;
+      this.resumedBytes = resumedBytes;
+      this.bytes = resumedBytes;
+    }
+
+    /** Record a committed chunk. */
+    public synchronized void chunk(long chunkRows, long chunkErrors, long bytesRead) {
+      rows += chunkRows;
+      errors += chunkErrors;
+      bytes = bytesRead;
+    }
+
+    public void end(BatchStatus endStatus) {
+      status = endStatus;
+      if (endStatus == BatchStatus.DONE) {
+        bytes = fileSize;
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public BatchStatus getStatus() {
+      return status;
+    }
+
+    /** The rows committed, including those of the previous runs. */
+    public long getRows() {
+      return resumedRows + rows;
+    }
+
+    public long getErrors() {
+      return errors;
+    }
+
+    public double getRowsPerSecond() {
+      final double seconds = (System.nanoTime() - startedAt) / 1e9;
+      return seconds <= 0 ? 0 : rows / seconds;
+    }
+
+    /** The part of the file read, from 0 to 1. */
+    public double getDone() {
+      return fileSize <= 0 ? 1 : Math.min(1, (double) bytes / fileSize);
+    }
+
+    /**
+     * Estimate the remaining time from the bytes read by this run.
+     *
+     * @return the remaining seconds, or -1 if unknown
+     */
+    public long getEta() {
+      final double seconds = (System.nanoTime() - startedAt) / 1e9;
+      if (status != BatchStatus.RUNNING) {
+        return 0;
+      }
+      final long read = bytes - resumedBytes;
+      if (read <= 0 || seconds <= 0) {
+        return -1;
+      }
+      return Math.round((fileSize - bytes) * seconds / read);
+    }
+  }
+}
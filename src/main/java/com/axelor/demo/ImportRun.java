@@ -0,0 +1,218 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.auth.AuthService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The state shared by the callbacks of one import run, such as the {@link FileIndex} of the data
+ * directories, the {@link ImagePipeline} and the {@link PasswordHasher} of the imported files and
+ * the {@link ImportKeys}.
+ *
+ * <p>An importer opens the run before its first input and closes it after the last one. The run
+ * is attached to the thread which opened it, an importer running inputs on other threads attaches
+ * it to them with {@link #attach()}. The callbacks get it with {@link #current()}, which is null
+ * outside of a run, for example when the demo data are loaded by the platform, and then work
+ * without it. Closing the run stops its pipelines and hashers.
+ *
+ * <p>An importer also records the file of the input each thread imports with {@link #input(Path)},
+ * so that the callbacks shared by several inputs read ahead in the right file.
+ */
+public final class ImportRun implements AutoCloseable {
+
+  private static final ThreadLocal<ImportRun> CURRENT = new ThreadLocal<>();
+
+  /** the file of the input imported by the thread */
+  private static final ThreadLocal<Path> INPUT = new ThreadLocal<>();
+
+  private final Map<Path, FileIndex> indexes = new ConcurrentHashMap<>();
+
+  private final Map<Path, ImagePipeline> pipelines = new ConcurrentHashMap<>();
+
+  private final Map<Path, PasswordHasher> hashers = new ConcurrentHashMap<>();
+
+  private final ImportKeys keys = new ImportKeys();
+
+  /** the directories standing for the data directory, such as the chunks of a resumable import */
+  private final Map<Path, Path> aliases = new ConcurrentHashMap<>();
+
+  private ImportRun() {}
+
+  /** Open a run and attach it to the current thread. */
+  public static ImportRun open() {
+    final ImportRun run = new ImportRun();
+    CURRENT.set(run);
+    return run;
+  }
+
+  /** Get the run of the current thread, or null. */
+  public static ImportRun current() {
+    return CURRENT.get();
+  }
+
+  /** Attach the run to the current thread, until {@link #detach()}. */
+  public void attach() {
+    CURRENT.set(this);
+  }
+
+  /** Detach the run of the current thread. */
+  public static void detach() {
+    CURRENT.remove();
+    INPUT.remove();
+  }
+
+  /**
+   * Record the file of the input imported by the current thread, until the next call or {@link
+   * #detach()}.
+   *
+   * @param file the CSV file, given in an aliased directory or not, null if none is imported
+   */
+  public void input(Path file) {
+    if (file == null) {
+      INPUT.remove();
+    } else {
+      INPUT.set(file);
+    }
+  }
+
+  /** Get the file of the input imported by the current thread, or null. */
+  public Path input() {
+    return INPUT.get();
+  }
+
+  /**
+   * Make the files of a directory stand for those of another one, until {@link #unalias(Path)}.
+   *
+   * @param dir the directory, such as a chunk of a resumable import
+   * @param target the directory of the original files
+   */
+  public void alias(Path dir, Path target) {
+    aliases.put(dir.toAbsolutePath().normalize(), target.toAbsolutePath().normalize());
+  }
+
+  public void unalias(Path dir) {
+    aliases.remove(dir.toAbsolutePath().normalize());
+  }
+
+  /** Get the original file of a file, given in an aliased directory or not. */
+  public Path resolve(Path file) {
+    final Path path = file.toAbsolutePath().normalize();
+    final Path target = path.getParent() == null ? null : aliases.get(path.getParent());
+    return target == null ? path : target.resolve(path.getFileName());
+  }
+
+  /**
+   * Get the {@link FileIndex} of a directory tree, built on the first call of the run.
+   *
+   * @param path the directory, may not exist
+   */
+  public FileIndex index(Path path) throws IOException {
+    // the real path, a chunk of a resumable import sees the folders through links
+    final Path key = Files.exists(path) ? path.toRealPath() : path.toAbsolutePath().normalize();
+    try {
+      return indexes.computeIfAbsent(key, ImportRun::walk);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Get the {@link ImagePipeline} of a CSV file, started on the first call of the run. A file of an
+   * aliased directory gets the pipeline of the original file.
+   *
+   * @see ImagePipeline#of(Path, FileIndex, Function, long)
+   */
+  public ImagePipeline images(
+      Path csv, Path imagesDir, Function<Map<String, String>, String> imageName, long maxBytes)
+      throws IOException {
+    try {
+      return pipelines.computeIfAbsent(
+          resolve(csv),
+          key -> {
+            try {
+              return ImagePipeline.of(key, index(imagesDir), imageName, maxBytes);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Get the {@link PasswordHasher} of a CSV file, started on the first call of the run. A file of
+   * an aliased directory gets the hasher of the original file.
+   *
+   * @see PasswordHasher#of(AuthService, Path, int)
+   */
+  public PasswordHasher passwords(Path csv, AuthService authService, int threads)
+      throws IOException {
+    try {
+      return hashers.computeIfAbsent(
+          resolve(csv),
+          key -> {
+            try {
+              return PasswordHasher.of(authService, key, threads);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  ImportKeys keys() {
+    return keys;
+  }
+
+  private static FileIndex walk(Path path) {
+    try {
+      return FileIndex.of(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stop the pipelines and the hashers, drop the state of the run, logging the metrics of the keys,
+   * and detach it from the current thread.
+   */
+  @Override
+  public void close() {
+    pipelines.values().forEach(ImagePipeline::close);
+    pipelines.clear();
+    hashers.values().forEach(PasswordHasher::close);
+    hashers.clear();
+    indexes.clear();
+    aliases.clear();
+    keys.close();
+    if (CURRENT.get() == this) {
+      detach();
+    }
+  }
+}
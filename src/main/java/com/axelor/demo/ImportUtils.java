@@ -18,15 +18,29 @@
  */
 package com.axelor.demo;
 
+import com.axelor.app.AppSettings;
+import com.axelor.auth.AuthService;
+import com.axelor.inject.Beans;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class ImportUtils {
 
+  /** the memory budget of the images read ahead of each import */
+  private static final long IMAGE_BUFFER = 64L << 20;
+
   public ImportUtils() {}
 
+  /**
+   * Find a file by the start of its name, walking the directory tree.
+   *
+   * <p>Import callbacks should use {@link #index(Path)}, which walks the tree only once per
+   * import run.
+   */
   public static Path findByFileName(Path path, String fileName) throws IOException {
     Path result = null;
     try (Stream<Path> pathStream =
@@ -38,4 +52,63 @@ public class ImportUtils {
     }
     return result;
   }
+
+  /**
+   * Get the {@link FileIndex} of a directory tree.
+   *
+   * <p>In an {@link ImportRun}, the index is built on the first call and reused by the next ones of
+   * the run. Outside of a run, it is built for this call only.
+   */
+  public static FileIndex index(Path path) throws IOException {
+    final ImportRun run = ImportRun.current();
+    return run == null ? FileIndex.of(path) : run.index(path);
+  }
+
+  /**
+   * Get the CSV file of the input imported by the current thread.
+   *
+   * @return the file, or null outside of a run or if the importer doesn't record its inputs
+   * @see ImportRun#input(Path)
+   */
+  public static Path input() {
+    final ImportRun run = ImportRun.current();
+    return run == null ? null : run.input();
+  }
+
+  /**
+   * Get the {@link ImagePipeline} reading the images of the rows of a CSV file ahead of the import.
+   *
+   * <p>The pipeline is started on the first call of an {@link ImportRun} and stopped with the run.
+   *
+   * @param csv the imported CSV file, see {@link #input()}, may be null
+   * @param imagesDir the directory of the images
+   * @param imageName the image name prefix of a row, given as a map of its columns, or null
+   * @return the pipeline, or null outside of a run or without file, the images are then read with
+   *     {@link ImagePipeline#read(Path)}
+   */
+  public static ImagePipeline images(
+      Path csv, Path imagesDir, Function<Map<String, String>, String> imageName)
+      throws IOException {
+    final ImportRun run = ImportRun.current();
+    return run == null || csv == null ? null : run.images(csv, imagesDir, imageName, IMAGE_BUFFER);
+  }
+
+  /**
+   * Get the {@link PasswordHasher} of the users of a CSV file, started on the first call of an
+   * {@link ImportRun} and stopped with the run.
+   *
+   * @param csv the imported CSV file, see {@link #input()}, may be null
+   * @return the hasher, or null outside of a run, without file or if disabled with {@code
+   *     data.import.hash-threads = 0}, the passwords are then hashed by the import thread
+   */
+  public static PasswordHasher passwords(Path csv) throws IOException {
+    final ImportRun run = ImportRun.current();
+    final int threads =
+        AppSettings.get()
+            .getInt("data.import.hash-threads", Runtime.getRuntime().availableProcessors());
+    if (run == null || csv == null || threads <= 0) {
+      return null;
+    }
+    return run.passwords(csv, Beans.get(AuthService.class), threads);
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.app.AppSettings;
+import com.axelor.auth.AuditableRunner;
+import com.axelor.data.csv.CSVBind;
+import com.axelor.data.csv.CSVConfig;
+import com.axelor.data.csv.CSVImporter;
+import com.axelor.data.csv.CSVInput;
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
+import com.axelor.inject.Beans;
+import com.google.inject.persist.UnitOfWork;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the inputs of a CSV import config in parallel, following their dependencies.
+ *
+ * <p>The dependencies are inferred from the bindings. An input writes its type and the records
+ * created by its nested bindings, and reads the types of its other relational bindings, whether
+ * they are resolved with a {@code search} or an {@code eval}. Two inputs conflict when one writes
+ * a type the other writes or reads, and conflicting inputs keep their order of the config. For
+ * example, the second {@code 9_order.csv} input, which validates the orders, still runs after the
+ * order lines.
+ *
+ * <p>Each input runs with its own {@link CSVImporter} and session, as the admin user, in the {@link
+ * ImportBatchMode} if enabled. The inputs share one {@link ImportRun}. Records touched by the
+ * {@code call} callbacks are not part of the analysis, so the callbacks must only update the
+ * records of their input or the ones it reads.
+ */
+public class ParallelDataImporter {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final CSVConfig config;
+
+  private final String dataDir;
+
+  private final List<Set<Integer>> dependencies;
+
+  public ParallelDataImporter(String configFile, String dataDir) {
+    this.config = CSVConfig.parse(new File(configFile));
+    this.dataDir = dataDir;
+    this.dependencies = plan(config.getInputs());
+  }
+
+  /**
+   * Get the dependencies of the inputs.
+   *
+   * @return the indexes of the inputs each input waits for, by input index
+   */
+  public List<Set<Integer>> getDependencies() {
+    return Collections.unmodifiableList(dependencies);
+  }
+
+  public List<CSVInput> getInputs() {
+    return Collections.unmodifiableList(config.getInputs());
+  }
+
+  /**
+   * Run the import on {@code data.import.threads} threads, the number of cores by default.
+   *
+   * <p>An input which fails cancels the inputs depending on it, the other ones still run.
+   */
+  public void run() {
+    final int threads =
+        AppSettings.get().getInt("data.import.threads", Runtime.getRuntime().availableProcessors());
+    final List<CSVInput> inputs = config.getInputs();
+    final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    final long start = System.currentTimeMillis();
+
+    try (ImportRun importRun = ImportRun.open()) {
+      for (int i = 0; i < inputs.size(); i++) {
+        final CSVInput input = inputs.get(i);
+        final CompletableFuture<?>[] before =
+            dependencies.get(i).stream().map(tasks::get).toArray(CompletableFuture[]::new);
+        tasks.add(
+            CompletableFuture.allOf(before).thenRunAsync(() -> run(importRun, input), executor));
+      }
+      CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+
+    log.info(
+        "Imported {} inputs on {} threads in {} ms",
+        inputs.size(),
+        threads,
+        System.currentTimeMillis() - start);
+  }
+
+  private void run(ImportRun importRun, CSVInput input) {
+    final CSVConfig single = new CSVConfig();
+    single.setInputs(new ArrayList<>(Collections.singletonList(input)));
+    single.setAdapters(config.getAdapters());
+
+    final long start = System.currentTimeMillis();
+    importRun.attach();
+    importRun.input(Paths.get(dataDir, input.getFileName()));
+    try {
+      final CSVImporter importer = new CSVImporter(single, dataDir);
+      Beans.get(AuditableRunner.class).run(() -> ImportBatchMode.run(importer));
+    } finally {
+      ImportRun.detach();
+      Beans.get(UnitOfWork.class).end();
+    }
+    log.debug("Imported {} in {} ms", input.getFileName(), System.currentTimeMillis() - start);
+  }
+
+  private static List<Set<Integer>> plan(List<CSVInput> inputs) {
+    final List<Set<String>> writes = new ArrayList<>();
+    final List<Set<String>> touches = new ArrayList<>();
+    for (CSVInput input : inputs) {
+      final Set<String> written = new HashSet<>();
+      final Set<String> read = new HashSet<>();
+      written.add(input.getTypeName());
+      collect(typeOf(input.getTypeName()), input.getBindings(), written, read);
+      read.addAll(written);
+      writes.add(written);
+      touches.add(read);
+    }
+
+    final List<Set<Integer>> dependencies = new ArrayList<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      final Set<Integer> before = new TreeSet<>();
+      for (int j = 0; j < i; j++) {
+        if (conflict(writes.get(i), touches.get(j)) || conflict(writes.get(j), touches.get(i))) {
+          before.add(j);
+        }
+      }
+      dependencies.add(before);
+    }
+    return dependencies;
+  }
+
+  private static void collect(
+      Class<?> type, Collection<CSVBind> bindings, Set<String> written, Set<String> read) {
+    if (type == null) {
+      // unknown type, conflicts with every other input
+      written.add("*");
+      return;
+    }
+    if (bindings == null) {
+      return;
+    }
+    final Mapper mapper = Mapper.of(type);
+    for (CSVBind bind : bindings) {
+      final Property property =
+          bind.getField() == null ? null : mapper.getProperty(bind.getField());
+      if (property == null || property.getTarget() == null) {
+        continue;
+      }
+      final Class<?> target = property.getTarget();
+      if (bind.getBindings() != null && !bind.getBindings().isEmpty() && bind.getSearch() == null) {
+        written.add(target.getName());
+        collect(target, bind.getBindings(), written, read);
+      } else {
+        read.add(target.getName());
+      }
+    }
+  }
+
+  private static boolean conflict(Set<String> written, Set<String> touched) {
+    if (written.contains("*") || touched.contains("*")) {
+      return true;
+    }
+    for (String type : written) {
+      if (touched.contains(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Class<?> typeOf(String name) {
+    try {
+      return Class.forName(name);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+}
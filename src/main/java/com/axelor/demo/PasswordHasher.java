@@ -0,0 +1,185 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.auth.AuthService;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes the passwords of a user import on a worker pool, ahead of the rows that need them.
+ *
+ * <p>The users are given in row order. A feeder thread submits their hashes to the pool, at most
+ * a few per thread ahead of the import, and the import then {@link #take(String, String)} the hash
+ * of its row. The users are still saved by the import thread, in order and in its transactions,
+ * only the hashing moves to the pool. A row whose password differs from the planned one, such as
+ * one changed by the bindings, is hashed by the import thread.
+ */
+public final class PasswordHasher implements AutoCloseable {
+
+  /** the number of hashes computed ahead per thread */
+  private static final int AHEAD = 8;
+
+  private final AuthService authService;
+
+  private final ExecutorService pool;
+
+  private final Semaphore window;
+
+  private final Deque<Entry> pending = new ArrayDeque<>();
+
+  private final Thread feeder;
+
+  private static final class Entry {
+
+    final String code;
+
+    final String password;
+
+    final CompletableFuture<String> hash;
+
+    Entry(String code, String password, CompletableFuture<String> hash) {
+      this.code = code;
+      this.password = password;
+      this.hash = hash;
+    }
+  }
+
+  /**
+   * Start hashing passwords.
+   *
+   * @param authService the service hashing the passwords
+   * @param users the code and the password of each row, in row order
+   * @param threads the number of hashing threads
+   */
+  public PasswordHasher(AuthService authService, List<String[]> users, int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    this.authService = authService;
+    this.pool =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, "import-password-hash-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.window = new Semaphore(threads * AHEAD);
+    this.feeder = new Thread(() -> feed(users), "import-password-feeder");
+    feeder.setDaemon(true);
+    feeder.start();
+  }
+
+  /**
+   * Start hashing the passwords of the rows of a CSV file.
+   *
+   * @param csv the CSV file, with {@code code} and {@code password} columns
+   * @see #PasswordHasher(AuthService, List, int)
+   */
+  public static PasswordHasher of(AuthService authService, Path csv, int threads)
+      throws IOException {
+    final List<String[]> users = new ArrayList<>();
+    try (CSVReader reader = new CSVReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8))) {
+      final List<String> header = Arrays.asList(reader.readNext());
+      final int code = header.indexOf("code");
+      final int password = header.indexOf("password");
+      String[] values;
+      while ((values = reader.readNext()) != null) {
+        users.add(new String[] {value(values, code), value(values, password)});
+      }
+    } catch (CsvValidationException e) {
+      throw new IOException(e);
+    }
+    return new PasswordHasher(authService, users, threads);
+  }
+
+  private static String value(String[] values, int index) {
+    return index < 0 || index >= values.length ? null : values[index];
+  }
+
+  private void feed(List<String[]> users) {
+    try {
+      for (String[] user : users) {
+        final String password = user[1];
+        if (password == null || password.isEmpty()) {
+          continue;
+        }
+        window.acquire();
+        final CompletableFuture<String> hash =
+            CompletableFuture.supplyAsync(() -> authService.encrypt(password), pool);
+        synchronized (pending) {
+          pending.addLast(new Entry(user[0], password, hash));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get the hash of the password of a user, waiting for it if needed, or hashing it now if it
+   * wasn't planned or not submitted yet.
+   */
+  public String take(String code, String password) {
+    Entry entry = null;
+    synchronized (pending) {
+      while (!pending.isEmpty()) {
+        final Entry head = pending.pollFirst();
+        window.release();
+        if (head.code != null && head.code.equals(code)) {
+          entry = head;
+          break;
+        }
+        // the row of this user was skipped
+      }
+    }
+    if (entry == null || !entry.password.equals(password)) {
+      return authService.encrypt(password);
+    }
+    try {
+      return entry.hash.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return authService.encrypt(password);
+    } catch (ExecutionException e) {
+      return authService.encrypt(password);
+    }
+  }
+
+  @Override
+  public void close() {
+    feeder.interrupt();
+    pool.shutdownNow();
+  }
+}
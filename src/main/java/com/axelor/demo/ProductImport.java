@@ -45,7 +45,7 @@ public class ProductImport {
 
   private void loadAttachments(Product product, Path basePath) {
     try {
-      final Path attachment = ImportUtils.findByFileName(basePath.resolve("pdf"), "sample.pdf");
+      final Path attachment = ImportUtils.index(basePath.resolve("pdf")).find("sample.pdf");
       if (attachment == null || !attachment.toFile().exists()) {
         return;
       }
@@ -68,7 +68,7 @@ public class ProductImport {
   private void loadImage(Product product, Path basePath) {
     try {
       final Path image =
-          ImportUtils.findByFileName(basePath.resolve(PRODUCT_IMAGES_DIR), product.getCode());
+          ImportUtils.index(basePath.resolve(PRODUCT_IMAGES_DIR)).find(product.getCode());
       if (image != null && image.toFile().exists()) {
         final MetaFile metaFile = Beans.get(MetaFiles.class).upload(image.toFile());
         product.setImage(metaFile);
@@ -0,0 +1,38 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.inject.Beans;
+import com.axelor.project.db.ProjectTask;
+import com.axelor.project.db.ProjectWork;
+import com.axelor.project.db.repo.ProjectTaskRepository;
+import com.axelor.project.db.repo.ProjectWorkRepository;
+import java.util.Map;
+
+public class ProjectImport {
+
+  public Object importTask(Object bean, Map context) {
+    // save through the repository to maintain the task rollups
+    return Beans.get(ProjectTaskRepository.class).save((ProjectTask) bean);
+  }
+
+  public Object importWork(Object bean, Map context) {
+    return Beans.get(ProjectWorkRepository.class).save((ProjectWork) bean);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.common.StringUtils;
+import com.axelor.contact.db.Country;
+import com.axelor.contact.db.Title;
+import com.axelor.contact.service.ReferenceDataService;
+import com.axelor.inject.Beans;
+import com.axelor.sale.db.Currency;
+import com.axelor.sale.db.Tax;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference data lookups for the import bindings.
+ *
+ * <p>A {@code search} binding runs one query per row, these helpers resolve the records from the
+ * {@link ReferenceDataService} instead.
+ */
+public class ReferenceImport {
+
+  private ReferenceImport() {}
+
+  public static Title title(Object id) {
+    return referenceData().find(Title.class, toId(id));
+  }
+
+  public static Country country(Object id) {
+    return referenceData().find(Country.class, toId(id));
+  }
+
+  public static Currency currency(String code) {
+    return referenceData().findByCode(Currency.class, code);
+  }
+
+  /** Resolve a {@code |} separated list of tax ids. */
+  public static List<Tax> taxes(String ids) {
+    final List<Long> taxIds = new ArrayList<>();
+    if (StringUtils.notBlank(ids)) {
+      for (String id : ids.split("\\|")) {
+        taxIds.add(toId(id));
+      }
+    }
+    return referenceData().find(Tax.class, taxIds);
+  }
+
+  private static Long toId(Object value) {
+    return value == null || StringUtils.isBlank(value.toString())
+        ? null
+        : Long.valueOf(value.toString().trim());
+  }
+
+  private static ReferenceDataService referenceData() {
+    return Beans.get(ReferenceDataService.class);
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo;
+
+import com.axelor.app.AppSettings;
+import com.axelor.auth.AuditableRunner;
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.db.BatchRun;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.data.Listener;
+import com.axelor.data.csv.CSVConfig;
+import com.axelor.data.csv.CSVImporter;
+import com.axelor.data.csv.CSVInput;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import com.axelor.db.Query;
+import com.axelor.inject.Beans;
+import com.google.common.io.CountingInputStream;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs the inputs of a CSV import config one after the other, by chunks of rows, with checkpoints.
+ *
+ * <p>Each chunk is copied to a temporary directory, next to links to the other files of the data
+ * directory, and imported by its own {@link CSVImporter}. The last row committed is saved in the
+ * {@link BatchCheckpoint} of the input by the transactions of the importer, see {@link
+ * ChunkCheckpoint}, so that a failure never leaves rows committed past their checkpoint. When an
+ * import fails or is {@link #stop() stopped}, its input is recorded as {@code FAILED} or {@code
+ * STOPPED}, and the next run skips the inputs already done and resumes the current one after its
+ * last checkpoint, without importing a row twice.
+ *
+ * <p>The chunks of all the inputs share one {@link ImportRun}, where a chunk directory stands for
+ * the data directory, so that the pipelines of the callbacks read the original files once for all
+ * the chunks. The chunks run in the {@link ImportBatchMode} if enabled. Each input run is recorded
+ * as a {@link BatchRun} and its live progress is published to the {@link ImportProgressService}.
+ */
+public class ResumableImporter {
+
+  private static final String PREFIX = "import:";
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Path configFile;
+
+  private final CSVConfig config;
+
+  private final Path dataDir;
+
+  private final int chunkSize;
+
+  private volatile boolean stopped;
+
+  public ResumableImporter(String configFile, String dataDir) {
+    this(configFile, dataDir, AppSettings.get().getInt("data.import.chunk-size", 1000));
+  }
+
+  public ResumableImporter(String configFile, String dataDir, int chunkSize) {
+    this.configFile = Paths.get(configFile);
+    this.config = CSVConfig.parse(new File(configFile));
+    this.dataDir = Paths.get(dataDir);
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /** Stop the import after the current chunk, the next run resumes from there. */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Run the import, resuming the previous run if it didn't complete.
+   *
+   * @return whether all the inputs are done, false if stopped
+   */
+  public boolean run() {
+    stopped = false;
+    final List<CSVInput> inputs = config.getInputs();
+    final List<String> names = new ArrayList<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      names.add(PREFIX + inputs.get(i).getFileName() + "#" + i);
+    }
+    final boolean resumed = inTransaction(() -> prepareCheckpoints(names));
+
+    try (ImportRun importRun = ImportRun.open()) {
+      for (int i = 0; i < inputs.size() && !stopped; i++) {
+        final String name = names.get(i);
+        final BatchCheckpoint checkpoint = inTransaction(() -> findCheckpoint(name));
+        if (checkpoint.getStatus() != BatchStatus.DONE) {
+          run(name, i, inputs.get(i), value(checkpoint.getLastKey()), resumed);
+        }
+      }
+    }
+    return !stopped;
+  }
+
+  private void run(String name, int index, CSVInput input, long lastRow, boolean resumed) {
+    final Path file = dataDir.resolve(input.getFileName());
+    final Long runId = inTransaction(() -> startRun(name, resumed)).getId();
+    final ErrorCounter errors = new ErrorCounter();
+    final long start = System.nanoTime();
+    long rows = 0;
+    long chunks = 0;
+    long maxChunkNanos = 0;
+    ImportProgressService.Progress progress = null;
+    BatchStatus status = BatchStatus.FAILED;
+    Exception failure = null;
+    Path chunkConfig = null;
+
+    try (CountingInputStream bytes = new CountingInputStream(Files.newInputStream(file));
+        CSVReader reader =
+            new CSVReaderBuilder(new InputStreamReader(bytes, StandardCharsets.UTF_8))
+                .withCSVParser(new CSVParserBuilder().withSeparator(input.getSeparator()).build())
+                .build()) {
+      chunkConfig = Files.createTempFile("import-chunk", ".xml");
+      final String callable = writeChunkConfig(index, chunkConfig);
+      final CSVConfig chunkInputs = CSVConfig.parse(chunkConfig.toFile());
+      final String[] columns = reader.readNext();
+      final String[] header = columns == null ? null : append(columns, ChunkCheckpoint.ROW);
+      // skip the rows committed by the previous runs
+      long skipped = 0;
+      while (skipped < lastRow && reader.readNext() != null) {
+        skipped++;
+      }
+      progress =
+          Beans.get(ImportProgressService.class)
+              .start(name, Files.size(file), lastRow, bytes.getCount());
+
+      while (!stopped) {
+        final List<String[]> chunk = new ArrayList<>(chunkSize);
+        String[] values;
+        while (chunk.size() < chunkSize && (values = reader.readNext()) != null) {
+          chunk.add(values);
+        }
+        if (chunk.isEmpty()) {
+          status = BatchStatus.DONE;
+          break;
+        }
+
+        final long chunkStart = System.nanoTime();
+        final long before = errors.count.get();
+        final long committed = lastRow + rows + chunk.size();
+        final long first = committed - chunk.size() + 1;
+        for (int row = 0; row < chunk.size(); row++) {
+          chunk.set(row, append(chunk.get(row), String.valueOf(first + row)));
+        }
+        try (ChunkCheckpoint checkpoint = ChunkCheckpoint.open(name, callable)) {
+          importChunk(chunkInputs, header, chunk, errors);
+        }
+        // the rows after the last commit of the importer were skipped or failed
+        inTransaction(() -> checkpoint(name, committed, errors.count.get() - before));
+        rows += chunk.size();
+        chunks++;
+        maxChunkNanos = Math.max(maxChunkNanos, System.nanoTime() - chunkStart);
+        progress.chunk(chunk.size(), errors.count.get() - before, bytes.getCount());
+      }
+      if (stopped) {
+        status = BatchStatus.STOPPED;
+      }
+    } catch (IOException
+        | CsvValidationException
+        | ReflectiveOperationException
+        | RuntimeException e) {
+      failure = e;
+    } finally {
+      if (chunkConfig != null) {
+        chunkConfig.toFile().delete();
+      }
+    }
+
+    final BatchStatus endStatus = status;
+    final long[] metrics = {rows, errors.count.get(), chunks, maxChunkNanos};
+    final Exception error = failure;
+    inTransaction(
+        () -> {
+          findCheckpoint(name).setStatus(endStatus);
+          return endRun(runId, endStatus, metrics, System.nanoTime() - start, error);
+        });
+    if (progress != null) {
+      progress.end(endStatus);
+    }
+
+    log.info("Import {} {}: {} rows, {} errors", name, endStatus, rows, errors.count.get());
+
+    if (failure != null) {
+      throw failure instanceof RuntimeException
+          ? (RuntimeException) failure
+          : new IllegalStateException(failure);
+    }
+  }
+
+  private void importChunk(
+      CSVConfig single, String[] header, List<String[]> rows, ErrorCounter errors) {
+    final CSVInput input = single.getInputs().get(0);
+    final ImportRun importRun = ImportRun.current();
+    Path dir = null;
+    try {
+      dir = Files.createTempDirectory("import-chunk");
+      link(dir, input.getFileName());
+      // the callbacks read ahead in the original file, across the chunks
+      importRun.alias(dir, dataDir);
+      importRun.input(dir.resolve(input.getFileName()));
+      try (Writer out =
+              Files.newBufferedWriter(dir.resolve(input.getFileName()), StandardCharsets.UTF_8);
+          CSVWriter writer =
+              new CSVWriter(
+                  out,
+                  input.getSeparator(),
+                  CSVWriter.DEFAULT_QUOTE_CHARACTER,
+                  CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+                  CSVWriter.DEFAULT_LINE_END)) {
+        writer.writeNext(header);
+        writer.writeAll(rows);
+      }
+
+      final CSVImporter importer = new CSVImporter(single, dir.toString());
+      importer.addListener(errors);
+      Beans.get(AuditableRunner.class).run(() -> ImportBatchMode.run(importer));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      importRun.input(null);
+      if (dir != null) {
+        importRun.unalias(dir);
+        delete(dir);
+      }
+    }
+  }
+
+  /**
+   * Write the config of the chunks of an input: the adapters and the input alone, with the {@link
+   * ChunkCheckpoint} as callback.
+   *
+   * @return the original callback of the input, may be empty
+   */
+  private String writeChunkConfig(int index, Path target) throws IOException {
+    try {
+      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      final Element root =
+          factory.newDocumentBuilder().parse(configFile.toFile()).getDocumentElement();
+      final Document chunk = factory.newDocumentBuilder().newDocument();
+      final Node chunkRoot = chunk.appendChild(chunk.importNode(root, false));
+      String callable = "";
+      int inputs = 0;
+      for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (!(node instanceof Element)) {
+          continue;
+        }
+        if ("adapter".equals(node.getLocalName())) {
+          chunkRoot.appendChild(chunk.importNode(node, true));
+        } else if ("input".equals(node.getLocalName()) && inputs++ == index) {
+          final Element input = (Element) chunk.importNode(node, true);
+          callable = input.getAttribute("call");
+          input.setAttribute("call", ChunkCheckpoint.CALL);
+          chunkRoot.appendChild(input);
+        }
+      }
+      TransformerFactory.newInstance()
+          .newTransformer()
+          .transform(new DOMSource(chunk), new StreamResult(target.toFile()));
+      return callable;
+    } catch (ParserConfigurationException | SAXException | TransformerException e) {
+      throw new IOException("Cannot write the chunk config of " + configFile, e);
+    }
+  }
+
+  private static String[] append(String[] values, String value) {
+    final String[] result = Arrays.copyOf(values, values.length + 1);
+    result[values.length] = value;
+    return result;
+  }
+
+  private void delete(Path dir) {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    } catch (IOException e) {
+      log.warn("Cannot delete {}: {}", dir, e.getMessage());
+    }
+  }
+
+  /** Link the other files of the data directory, such as images, for the import callbacks. */
+  private void link(Path dir, String fileName) throws IOException {
+    try (Stream<Path> files = Files.list(dataDir)) {
+      for (Path source : (Iterable<Path>) files::iterator) {
+        if (source.getFileName().toString().equals(fileName)) {
+          continue;
+        }
+        try {
+          Files.createSymbolicLink(dir.resolve(source.getFileName()), source.toRealPath());
+        } catch (UnsupportedOperationException | IOException e) {
+          log.debug("Cannot link {}: {}", source, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Create the checkpoints of a fresh run, or keep those of an unfinished one.
+   *
+   * @return whether the previous run is resumed
+   */
+  private boolean prepareCheckpoints(List<String> names) {
+    final List<BatchCheckpoint> checkpoints =
+        Query.of(BatchCheckpoint.class)
+            .filter("self.jobName IN :names")
+            .bind("names", names)
+            .fetch();
+    final boolean resume =
+        checkpoints.size() == names.size()
+            && checkpoints.stream().anyMatch(it -> it.getStatus() != BatchStatus.DONE);
+    if (resume) {
+      return true;
+    }
+
+    checkpoints.forEach(JPA::remove);
+    JPA.em().flush();
+    for (String name : names) {
+      final BatchCheckpoint checkpoint = new BatchCheckpoint();
+      checkpoint.setJobName(name);
+      checkpoint.setPartitionIndex(0);
+      checkpoint.setPartitionCount(1);
+      checkpoint.setLastKey(0L);
+      checkpoint.setItems(0L);
+      checkpoint.setFailures(0L);
+      checkpoint.setStatus(BatchStatus.RUNNING);
+      JPA.save(checkpoint);
+    }
+    return false;
+  }
+
+  private BatchCheckpoint findCheckpoint(String name) {
+    final BatchCheckpoint checkpoint =
+        Query.of(BatchCheckpoint.class)
+            .filter("self.jobName = :name AND self.partitionIndex = 0")
+            .bind("name", name)
+            .fetchOne();
+    // moved by the chunk transactions, see ChunkCheckpoint
+    JPA.em().refresh(checkpoint);
+    return checkpoint;
+  }
+
+  private Void checkpoint(String name, long rows, long failures) {
+    final BatchCheckpoint checkpoint = findCheckpoint(name);
+    checkpoint.setStatus(BatchStatus.RUNNING);
+    if (rows > value(checkpoint.getLastKey())) {
+      checkpoint.setItems(value(checkpoint.getItems()) + rows - value(checkpoint.getLastKey()));
+      checkpoint.setLastKey(rows);
+    }
+    checkpoint.setFailures(value(checkpoint.getFailures()) + failures);
+    return null;
+  }
+
+  private BatchRun startRun(String name, boolean resumed) {
+    final BatchRun run = new BatchRun();
+    run.setJobName(name);
+    run.setStartedOn(LocalDateTime.now());
+    run.setStatus(BatchStatus.RUNNING);
+    run.setResumed(resumed);
+    run.setPartitionCount(1);
+    return JPA.save(run);
+  }
+
+  /** End a run, the metrics are the rows, errors, chunks and longest chunk nanos. */
+  private Void endRun(
+      Long runId, BatchStatus status, long[] metrics, long elapsedNanos, Exception failure) {
+    final BatchRun run = JPA.em().find(BatchRun.class, runId);
+    run.setEndedOn(LocalDateTime.now());
+    run.setStatus(status);
+    run.setItems(metrics[0]);
+    run.setFailures(metrics[1]);
+    run.setChunks(metrics[2]);
+    run.setItemsPerSecond(
+        elapsedNanos == 0
+            ? BigDecimal.ZERO
+            : BigDecimal.valueOf(metrics[0] * 1_000_000_000.0 / elapsedNanos)
+                .setScale(2, RoundingMode.HALF_UP));
+    run.setAvgChunkMillis(metrics[2] == 0 ? 0L : elapsedNanos / metrics[2] / 1_000_000);
+    run.setMaxChunkMillis(metrics[3] / 1_000_000);
+    if (failure != null) {
+      run.setMessage(failure.toString());
+    }
+    return null;
+  }
+
+  private static <T> T inTransaction(Supplier<T> task) {
+    final List<T> result = new ArrayList<>(1);
+    JPA.runInTransaction(() -> result.add(task.get()));
+    return result.get(0);
+  }
+
+  private static long value(Long value) {
+    return value == null ? 0L : value;
+  }
+
+  /** Counts the rows the importer failed to import. */
+  private static final class ErrorCounter implements Listener {
+
+    private final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void imported(Model bean) {}
+
+    @Override
+    public void imported(Integer total, Integer success) {}
+
+    @Override
+    public void handle(Model bean, Exception e) {
+      count.incrementAndGet();
+    }
+  }
+}
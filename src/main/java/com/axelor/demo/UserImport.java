@@ -21,9 +21,6 @@ package com.axelor.demo;
 import com.axelor.auth.AuthService;
 import com.axelor.auth.db.User;
 import com.axelor.inject.Beans;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -34,14 +31,27 @@ public class UserImport {
   public Object importUser(Object bean, Map context) {
     User user = (User) bean;
 
-    Beans.get(AuthService.class).encrypt(user);
-
     final Path path = (Path) context.get("__path__");
 
+    PasswordHasher hasher = null;
+    try {
+      hasher = ImportUtils.passwords(ImportUtils.input());
+    } catch (Exception e) {
+      // hash in this thread
+    }
+    if (hasher != null && user.getPassword() != null && !user.getPassword().isEmpty()) {
+      user.setPassword(hasher.take(user.getCode(), user.getPassword()));
+    } else {
+      Beans.get(AuthService.class).encrypt(user);
+    }
+
     try {
-      final Path image = ImportUtils.findByFileName(path.resolve(USER_IMAGES_DIR), user.getCode());
-      if (image != null && image.toFile().exists()) {
-        user.setImage(readFileToBytes(image));
+      final Path images = path.resolve(USER_IMAGES_DIR);
+      final Path image = ImportUtils.index(images).find(user.getCode());
+      if (image != null) {
+        final ImagePipeline pipeline =
+            ImportUtils.images(ImportUtils.input(), images, row -> row.get("code"));
+        user.setImage(pipeline == null ? ImagePipeline.read(image) : pipeline.take(image));
       }
     } catch (Exception e) {
       // ignore
@@ -49,17 +59,4 @@ public class UserImport {
 
     return user;
   }
-
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  private byte[] readFileToBytes(Path path) throws IOException {
-
-    File file = path.toFile();
-    byte[] bytes = new byte[(int) file.length()];
-
-    try (FileInputStream fis = new FileInputStream(file)) {
-      fis.read(bytes);
-    }
-
-    return bytes;
-  }
 }
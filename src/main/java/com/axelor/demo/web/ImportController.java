@@ -0,0 +1,123 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.demo.web;
+
+import com.axelor.app.AppSettings;
+import com.axelor.auth.AuthUtils;
+import com.axelor.common.StringUtils;
+import com.axelor.demo.DataImportService;
+import com.axelor.demo.ImportProgressService;
+import com.axelor.demo.ImportProgressService.Progress;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.axelor.rpc.ActionRequest;
+import com.axelor.rpc.ActionResponse;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ImportController {
+
+  /** The live progress of the resumable imports, for the dashboard. */
+  public void progress(ActionRequest request, ActionResponse response) {
+    final List<Map<String, Object>> data = new ArrayList<>();
+    for (Progress progress : Beans.get(ImportProgressService.class).list()) {
+      final Map<String, Object> row = new HashMap<>();
+      row.put("name", progress.getName());
+      row.put("status", progress.getStatus().getValue());
+      row.put("rows", progress.getRows());
+      row.put("errors", progress.getErrors());
+      row.put("rowsPerSecond", decimal(progress.getRowsPerSecond()));
+      row.put("percent", decimal(progress.getDone() * 100));
+      row.put("eta", progress.getEta() < 0 ? null : progress.getEta());
+      data.add(row);
+    }
+    response.setData(data);
+  }
+
+  /**
+   * Start a resumable import of {@code data.import.dir}, for the administrators. An unfinished
+   * import is resumed after its last checkpoint.
+   */
+  public void start(ActionRequest request, ActionResponse response) {
+    if (!canImport(response)) {
+      return;
+    }
+    started(
+        response,
+        Beans.get(DataImportService.class)
+            .start(
+                AppSettings.get().get("data.import.config"),
+                AppSettings.get().get("data.import.dir")));
+  }
+
+  /** Stop the running resumable import after its current chunk, for the administrators. */
+  public void stop(ActionRequest request, ActionResponse response) {
+    if (!AuthUtils.isAdmin(AuthUtils.getUser())) {
+      response.setError(I18n.get("Only administrators can run the data imports."));
+      return;
+    }
+    if (Beans.get(DataImportService.class).stop()) {
+      response.setNotify(I18n.get("The data import stops after the current chunk."));
+    } else {
+      response.setError(I18n.get("No resumable data import is running."));
+    }
+  }
+
+  /** Start a parallel import of {@code data.import.dir}, for the administrators. */
+  public void parallel(ActionRequest request, ActionResponse response) {
+    if (!canImport(response)) {
+      return;
+    }
+    started(
+        response,
+        Beans.get(DataImportService.class)
+            .startParallel(
+                AppSettings.get().get("data.import.config"),
+                AppSettings.get().get("data.import.dir")));
+  }
+
+  private void started(ActionResponse response, boolean started) {
+    if (started) {
+      response.setNotify(I18n.get("Data import started."));
+    } else {
+      response.setError(I18n.get("A data import is already running."));
+    }
+  }
+
+  private boolean canImport(ActionResponse response) {
+    if (!AuthUtils.isAdmin(AuthUtils.getUser())) {
+      response.setError(I18n.get("Only administrators can run the data imports."));
+      return false;
+    }
+    if (StringUtils.isBlank(AppSettings.get().get("data.import.config"))
+        || StringUtils.isBlank(AppSettings.get().get("data.import.dir"))) {
+      response.setError(I18n.get("Set data.import.config and data.import.dir to run the imports."));
+      return false;
+    }
+    return true;
+  }
+
+  private static BigDecimal decimal(double value) {
+    return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+  }
+}
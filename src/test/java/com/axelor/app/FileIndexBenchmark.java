@@ -0,0 +1,83 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.axelor.demo.FileIndex;
+import com.axelor.demo.ImportUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the image lookups of an import of n records in a folder of n images, walking the
+ * folder for every record or using a {@link FileIndex}.
+ *
+ * <p>Run with {@code -Dbenchmark=true}. The walks are measured on a sample of the records and
+ * extrapolated, a full run over 100k files would take hours.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FileIndexBenchmark {
+
+  private static final int WALK_SAMPLE = 200;
+
+  @TempDir Path root;
+
+  @Test
+  public void benchmark10k() throws IOException {
+    run(10_000);
+  }
+
+  @Test
+  public void benchmark100k() throws IOException {
+    run(100_000);
+  }
+
+  private void run(int n) throws IOException {
+    final Path dir = root.resolve("images-" + n);
+    Files.createDirectories(dir);
+    for (int i = 0; i < n; i++) {
+      Files.createFile(dir.resolve(String.format("image-%06d.png", i)));
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < WALK_SAMPLE; i++) {
+      ImportUtils.findByFileName(dir, String.format("image-%06d", i * (n / WALK_SAMPLE)));
+    }
+    final double walk = (System.nanoTime() - start) / 1e6 * n / WALK_SAMPLE;
+
+    start = System.nanoTime();
+    final FileIndex index = FileIndex.of(dir);
+    final double build = (System.nanoTime() - start) / 1e6;
+    for (int i = 0; i < n; i++) {
+      assertEquals(
+          String.format("image-%06d.png", i),
+          index.find(String.format("image-%06d", i)).getFileName().toString());
+    }
+    final double indexed = (System.nanoTime() - start) / 1e6;
+
+    System.out.printf(
+        "%d files, %d lookups: walk %.0f ms (extrapolated), index %.0f ms (%.0f ms to build)%n",
+        n, n, walk, indexed, build);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.axelor.demo.FileIndex;
+import com.axelor.demo.ImportRun;
+import com.axelor.demo.ImportUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileIndexTest {
+
+  @TempDir Path root;
+
+  @Test
+  public void testFind() throws IOException {
+    final Random random = new Random(29);
+    for (int i = 0; i < 500; i++) {
+      final Path dir = root.resolve("dir" + random.nextInt(5)).resolve("sub" + random.nextInt(3));
+      Files.createDirectories(dir);
+      final String ext = random.nextBoolean() ? ".png" : ".jpg";
+      final Path file = dir.resolve("file-" + random.nextInt(300) + ext);
+      if (!Files.exists(file)) {
+        Files.createFile(file);
+      }
+    }
+
+    final FileIndex index = FileIndex.of(root);
+    for (int i = 0; i < 300; i++) {
+      final String prefix = "file-" + i;
+      assertEquals(ImportUtils.findByFileName(root, prefix), index.find(prefix));
+    }
+    assertEquals(ImportUtils.findByFileName(root, "dir"), index.find("dir"));
+    assertEquals(ImportUtils.findByFileName(root, "f"), index.find("f"));
+    assertEquals(root, index.find(""));
+    assertNull(index.find("missing"));
+    assertEquals(0, FileIndex.of(root.resolve("missing")).size());
+  }
+
+  @Test
+  public void testRun() throws IOException {
+    Files.createDirectories(root.resolve("images"));
+    try (ImportRun run = ImportRun.open()) {
+      final FileIndex index = ImportUtils.index(root.resolve("images"));
+      assertSame(index, ImportUtils.index(root.resolve("images")));
+      assertSame(run, ImportRun.current());
+    }
+    assertNull(ImportRun.current());
+    final Path images = root.resolve("images");
+    assertNotSame(ImportUtils.index(images), ImportUtils.index(images));
+  }
+}
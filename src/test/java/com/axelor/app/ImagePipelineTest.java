@@ -0,0 +1,97 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.axelor.demo.ImagePipeline;
+import com.axelor.demo.ImportRun;
+import com.axelor.demo.ImportUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImagePipelineTest {
+
+  @TempDir Path root;
+
+  @Test
+  public void testTake() throws IOException {
+    final Random random = new Random(31);
+    final List<Path> images = new ArrayList<>();
+    final List<byte[]> contents = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      // a few files large enough to be mapped
+      final byte[] bytes = new byte[i % 50 == 0 ? (2 << 20) + i : random.nextInt(20_000)];
+      random.nextBytes(bytes);
+      final Path image = root.resolve("image-" + i + ".png");
+      Files.write(image, bytes);
+      images.add(i % 7 == 3 ? null : image);
+      contents.add(bytes);
+    }
+
+    // a budget of a few images, so that the feeder waits for the rows
+    try (ImagePipeline pipeline = new ImagePipeline(images, 100_000)) {
+      for (int i = 0; i < images.size(); i++) {
+        if (i % 11 == 5) {
+          // a skipped row
+          continue;
+        }
+        final Path image = root.resolve("image-" + i + ".png");
+        assertArrayEquals(contents.get(i), pipeline.take(image));
+      }
+    }
+  }
+
+  @Test
+  public void testRun() throws IOException {
+    final Path images = Files.createDirectories(root.resolve("images"));
+    final byte[] bytes = {1, 2, 3};
+    Files.write(images.resolve("b.png"), bytes);
+    final Path csv = root.resolve("rows.csv");
+    Files.write(csv, Arrays.asList("code", "a", "b"), StandardCharsets.UTF_8);
+
+    try (ImportRun run = ImportRun.open()) {
+      // no input recorded, the images are read by the import thread
+      assertNull(ImportUtils.images(ImportUtils.input(), images, row -> row.get("code")));
+      run.input(csv);
+      final ImagePipeline pipeline =
+          ImportUtils.images(ImportUtils.input(), images, row -> row.get("code"));
+      assertSame(pipeline, ImportUtils.images(csv, images, row -> row.get("code")));
+
+      // a chunk of a resumable import gets the pipeline of the original file
+      final Path chunk = Files.createDirectories(root.resolve("chunk"));
+      Files.copy(csv, chunk.resolve("rows.csv"));
+      run.alias(chunk, root);
+      assertSame(pipeline, ImportUtils.images(chunk.resolve("rows.csv"), images, row -> null));
+      assertArrayEquals(bytes, pipeline.take(images.resolve("b.png")));
+    }
+    assertNull(ImportUtils.input());
+    assertNull(ImportUtils.images(csv, images, row -> row.get("code")));
+  }
+}
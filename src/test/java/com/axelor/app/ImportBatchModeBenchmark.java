@@ -0,0 +1,117 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import com.axelor.contact.db.Address;
+import com.axelor.contact.db.Contact;
+import com.axelor.db.JPA;
+import com.axelor.demo.ImportBatchMode;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Compares the import of contacts with an address each, row by row or in {@link ImportBatchMode},
+ * by time and number of JDBC statements prepared.
+ *
+ * <p>Run with {@code -Dbenchmark=true}. The contact and address inserts are interleaved, they are
+ * only batched together when {@code hibernate.order_inserts} is set: run it again with the setting
+ * commented out of {@code axelor-config.properties} to measure the ordering.
+ */
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ImportBatchModeBenchmark {
+
+  private static final int ROWS = 5000;
+
+  private static final int BATCH_SIZE = 500;
+
+  @Test
+  public void benchmark() {
+    final Statistics statistics =
+        JPA.em().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    statistics.setStatisticsEnabled(true);
+
+    // warm up
+    run("warm", 100, null);
+
+    statistics.clear();
+    long start = System.nanoTime();
+    run("inline", ROWS, null);
+    final double inline = (System.nanoTime() - start) / 1e6;
+    final long inlineStatements = statistics.getPrepareStatementCount();
+
+    final ImportBatchMode batchMode = new ImportBatchMode(BATCH_SIZE);
+    statistics.clear();
+    start = System.nanoTime();
+    batchMode.begin();
+    try {
+      run("batch", ROWS, batchMode);
+    } finally {
+      batchMode.end();
+    }
+    final double batched = (System.nanoTime() - start) / 1e6;
+    final long batchedStatements = statistics.getPrepareStatementCount();
+
+    System.out.printf(
+        "%d contacts: row by row %.0f ms, %d statements, batches of %d %.0f ms, %d statements"
+            + " (x%.1f)%n",
+        ROWS,
+        inline,
+        inlineStatements,
+        BATCH_SIZE,
+        batched,
+        batchedStatements,
+        inline / batched);
+
+    JPA.runInTransaction(
+        () -> {
+          JPA.em()
+              .createQuery("DELETE FROM Address self WHERE self.street LIKE 'Benchmark %'")
+              .executeUpdate();
+          JPA.em()
+              .createQuery("DELETE FROM Contact self WHERE self.lastName LIKE 'Benchmark %'")
+              .executeUpdate();
+        });
+  }
+
+  private void run(String name, int rows, ImportBatchMode batchMode) {
+    JPA.runInTransaction(
+        () -> {
+          for (int i = 0; i < rows; i++) {
+            final Contact contact = new Contact(name + i, "Benchmark " + name);
+            JPA.save(contact);
+            final Address address = new Address();
+            address.setStreet("Benchmark " + i);
+            address.setCity("Paris");
+            address.setContact(contact);
+            JPA.save(address);
+            if (batchMode != null) {
+              batchMode.imported(contact);
+            }
+          }
+        });
+    JPA.clear();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.contact.db.Circle;
+import com.axelor.db.JPA;
+import com.axelor.demo.ImportBatchMode;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class ImportBatchModeTest {
+
+  @Test
+  public void testBatches() {
+    final Session session = JPA.em().unwrap(Session.class);
+    final CacheMode cacheMode = session.getCacheMode();
+    final ImportBatchMode batchMode = new ImportBatchMode(2);
+    final List<Circle> circles = new ArrayList<>();
+
+    batchMode.begin();
+    try {
+      assertEquals(2, (int) session.getJdbcBatchSize());
+      assertEquals(CacheMode.IGNORE, session.getCacheMode());
+      JPA.runInTransaction(
+          () -> {
+            for (int i = 0; i < 3; i++) {
+              final Circle circle = new Circle();
+              circle.setCode("batch_" + i);
+              circle.setName("Batch " + i);
+              circles.add(JPA.save(circle));
+              batchMode.imported(circle);
+            }
+            // the first batch is flushed and cleared, the last row is still managed
+            assertFalse(JPA.em().contains(circles.get(0)));
+            assertTrue(JPA.em().contains(circles.get(2)));
+          });
+    } finally {
+      batchMode.end();
+    }
+
+    assertEquals(3, batchMode.getRows());
+    assertEquals(cacheMode, session.getCacheMode());
+    final String jpql = "SELECT COUNT(self) FROM Circle self WHERE self.code LIKE 'batch_%'";
+    assertEquals(3L, (long) JPA.em().createQuery(jpql, Long.class).getSingleResult());
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the binding expressions of the project task and order inputs, evaluated per row as
+ * before and after they were moved to {@link com.axelor.demo.DateImport}.
+ *
+ * <p>Run with {@code -Dbenchmark=true}. Like the import, each expression is compiled once and a
+ * script is run per row, so only the evaluation is measured, without the database.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ImportBindsBenchmark {
+
+  private static final int ROWS = 200_000;
+
+  private static final String SHIFT =
+      "java.time.LocalDateTime.parse(%1$s)?.plus(_baseDate.until(_currentDate))";
+
+  private static final String SHIFT_IF = "_baseDate && _currentDate && %1$s";
+
+  private final GroovyShell shell = new GroovyShell();
+
+  @Test
+  public void benchmarkTask() {
+    final Map<String, String> row = new HashMap<>();
+    row.put("_createDate", "2021-05-01T00:00:00");
+    row.put("_startDate", "2021-09-01T00:00:00");
+    row.put("_endDate", "2021-09-07T00:00:00");
+    row.put("_plannedStartDate", "2021-09-02T00:00:00");
+    row.put("_deadlineDate", "2021-09-07");
+
+    final Map<String, String> before = new LinkedHashMap<>();
+    before.put("_baseDate", "java.time.LocalDate.of(2021, 1, 1)");
+    before.put("_currentDate", "java.time.LocalDate.now()");
+    final Map<String, String> after = new LinkedHashMap<>();
+    for (String field : new String[] {"plannedStartDate", "createDate", "startDate", "endDate"}) {
+      before.put(
+          field, String.format(SHIFT, "_" + field) + "|" + String.format(SHIFT_IF, "_" + field));
+      after.put(field, "com.axelor.demo.DateImport.shift(_" + field + ")|_" + field);
+    }
+    before.put(
+        "deadlineDate",
+        "java.time.LocalDate.parse(_deadlineDate)?.plus(_baseDate.until(_currentDate))|"
+            + String.format(SHIFT_IF, "_deadlineDate"));
+    after.put("deadlineDate", "com.axelor.demo.DateImport.shiftDate(_deadlineDate)|_deadlineDate");
+
+    run("12_project_task.csv", row, before, after);
+  }
+
+  @Test
+  public void benchmarkOrder() {
+    final Map<String, String> row = new HashMap<>();
+    row.put("_orderDateGap", "-5");
+    row.put("_confirmDateGap", "-2");
+
+    final Map<String, String> before = new LinkedHashMap<>();
+    before.put(
+        "orderDate",
+        "com.axelor.common.StringUtils.notEmpty(_orderDateGap) ? "
+            + "java.time.LocalDate.now().plusDays(Long.valueOf(_orderDateGap)) : "
+            + "java.time.LocalDate.now()");
+    before.put(
+        "confirmDate",
+        "com.axelor.common.StringUtils.notEmpty(_confirmDateGap) ? "
+            + "java.time.LocalDate.now().plusDays(Long.valueOf(_confirmDateGap)) : null");
+    final Map<String, String> after = new LinkedHashMap<>();
+    after.put("orderDate", "com.axelor.demo.DateImport.today(_orderDateGap)");
+    after.put("confirmDate", "com.axelor.demo.DateImport.today(_confirmDateGap)|_confirmDateGap");
+
+    run("9_order.csv", row, before, after);
+  }
+
+  private void run(
+      String input,
+      Map<String, String> row,
+      Map<String, String> before,
+      Map<String, String> after) {
+    final double old = rowsPerSecond(row, compile(before));
+    final double now = rowsPerSecond(row, compile(after));
+    System.out.printf(
+        "%s, %d rows: before %.0f rows/s, after %.0f rows/s (x%.1f)%n",
+        input, ROWS, old, now, now / old);
+  }
+
+  /** Compile the {@code eval|if} expressions by target, as the import caches them. */
+  private Map<String, Class<? extends Script>[]> compile(Map<String, String> binds) {
+    final Map<String, Class<? extends Script>[]> scripts = new LinkedHashMap<>();
+    binds.forEach(
+        (to, expressions) -> {
+          final String[] parts = expressions.split("\\|", 2);
+          @SuppressWarnings("unchecked")
+          final Class<? extends Script>[] compiled = new Class[parts.length];
+          for (int i = 0; i < parts.length; i++) {
+            compiled[i] = shell.parse(parts[i]).getClass();
+          }
+          scripts.put(to, compiled);
+        });
+    return scripts;
+  }
+
+  private double rowsPerSecond(
+      Map<String, String> row, Map<String, Class<? extends Script>[]> scripts) {
+    final List<Object> sink = new ArrayList<>();
+    // warm up, then measure
+    for (int pass = 0; pass < 2; pass++) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < ROWS; i++) {
+        final Binding binding = new Binding(new HashMap<>(row));
+        for (Map.Entry<String, Class<? extends Script>[]> entry : scripts.entrySet()) {
+          final Class<? extends Script>[] compiled = entry.getValue();
+          if (compiled.length > 1 && !isTrue(eval(compiled[1], binding))) {
+            continue;
+          }
+          binding.setVariable(entry.getKey(), eval(compiled[0], binding));
+        }
+        sink.add(binding.getVariable(scripts.keySet().iterator().next()));
+      }
+      if (pass == 1) {
+        return ROWS / ((System.nanoTime() - start) / 1e9);
+      }
+      sink.clear();
+    }
+    return 0;
+  }
+
+  private Object eval(Class<? extends Script> script, Binding binding) {
+    return InvokerHelper.createScript(script, binding).run();
+  }
+
+  private boolean isTrue(Object value) {
+    return value != null && !Boolean.FALSE.equals(value) && !"".equals(value);
+  }
+}
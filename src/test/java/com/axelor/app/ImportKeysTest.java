@@ -0,0 +1,98 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.axelor.contact.db.Circle;
+import com.axelor.db.JPA;
+import com.axelor.demo.ImportKeys;
+import com.axelor.demo.ImportRun;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class ImportKeysTest {
+
+  @Test
+  public void testLookups() {
+    try (ImportRun run = ImportRun.open()) {
+      final Circle first = create("keys_1");
+      final Circle second = create("keys_2");
+
+      assertEquals(first.getId(), ImportKeys.id(Circle.class, first.getId().toString()).getId());
+      assertEquals(second.getId(), ImportKeys.code(Circle.class, "keys_2").getId());
+      assertNull(ImportKeys.code(Circle.class, ""));
+
+      // served by the preload
+      assertArrayEquals(new long[] {1, 1}, ImportKeys.metrics(Circle.class, "id"));
+
+      // inserted after the preload, queried once
+      final Circle third = create("keys_3");
+      final String ids = first.getId() + "|" + third.getId();
+      final List<Circle> circles = ImportKeys.ids(Circle.class, ids);
+      assertEquals(2, circles.size());
+      assertEquals(third.getId(), circles.get(1).getId());
+      assertEquals(third.getId(), ImportKeys.id(Circle.class, third.getId()).getId());
+      assertArrayEquals(new long[] {3, 2}, ImportKeys.metrics(Circle.class, "id"));
+    }
+
+    // dropped with the run, and queried without a run
+    assertArrayEquals(new long[] {0, 0}, ImportKeys.metrics(Circle.class, "id"));
+    assertEquals("keys_2", ImportKeys.code(Circle.class, "keys_2").getCode());
+  }
+
+  @Test
+  public void testRollback() {
+    try (ImportRun run = ImportRun.open()) {
+      final Long[] id = new Long[1];
+      assertThrows(
+          RuntimeException.class,
+          () ->
+              JPA.runInTransaction(
+                  () -> {
+                    final Circle circle = new Circle();
+                    circle.setCode("keys_rollback");
+                    circle.setName("keys_rollback");
+                    id[0] = JPA.save(circle).getId();
+                    assertEquals(id[0], ImportKeys.id(Circle.class, id[0]).getId());
+                    throw new IllegalStateException("rollback");
+                  }));
+
+      // the id of the rolled back record is not kept
+      assertArrayEquals(new long[] {0, 0}, ImportKeys.metrics(Circle.class, "id"));
+      assertNull(ImportKeys.id(Circle.class, id[0]));
+    }
+  }
+
+  private Circle create(String code) {
+    final Circle circle = new Circle();
+    circle.setCode(code);
+    circle.setName(code);
+    JPA.runInTransaction(() -> JPA.save(circle));
+    return circle;
+  }
+}
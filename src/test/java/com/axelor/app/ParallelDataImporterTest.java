@@ -0,0 +1,132 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.axelor.data.csv.CSVInput;
+import com.axelor.db.JPA;
+import com.axelor.demo.DataImportService;
+import com.axelor.demo.ParallelDataImporter;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class ParallelDataImporterTest {
+
+  @TempDir Path root;
+
+  private final ParallelDataImporter importer =
+      new ParallelDataImporter(
+          "src/main/resources/data-demo/input-config.xml", "src/main/resources/data-demo/input");
+
+  @Test
+  public void testDependencies() {
+    final List<Set<Integer>> dependencies = importer.getDependencies();
+
+    assertTrue(dependencies.get(indexOf("1_circle.csv", 0)).isEmpty());
+    assertTrue(dependencies.get(indexOf("3_country.csv", 0)).isEmpty());
+
+    final Set<Integer> contact = dependencies.get(indexOf("5_contact.csv", 0));
+    assertTrue(contact.contains(indexOf("1_circle.csv", 0)));
+    assertTrue(contact.contains(indexOf("2_company.csv", 0)));
+    assertTrue(contact.contains(indexOf("3_country.csv", 0)));
+    assertTrue(contact.contains(indexOf("4_title.csv", 0)));
+
+    final Set<Integer> lines = dependencies.get(indexOf("10_order_line.csv", 0));
+    assertTrue(lines.contains(indexOf("7_product.csv", 0)));
+    assertTrue(lines.contains(indexOf("8_tax.csv", 0)));
+    assertFalse(dependencies.get(indexOf("8_tax.csv", 0)).contains(indexOf("7_product.csv", 0)));
+
+    // the validation of the orders runs after their lines
+    final int validate = indexOf("9_order.csv", indexOf("9_order.csv", 0) + 1);
+    assertTrue(dependencies.get(validate).contains(indexOf("10_order_line.csv", 0)));
+
+    final Set<Integer> tasks = dependencies.get(indexOf("12_project_task.csv", 0));
+    assertTrue(tasks.contains(indexOf("11_project.csv", 0)));
+    assertTrue(tasks.contains(indexOf("user.csv", 0)));
+    assertFalse(tasks.contains(indexOf("5_contact.csv", 0)));
+  }
+
+  @Test
+  public void testRun() throws Exception {
+    final Path config = root.resolve("config.xml");
+    Files.write(
+        config,
+        ("<csv-inputs xmlns=\"http://axelor.com/xml/ns/data-import\">"
+                + "<input file=\"circles.csv\" type=\"com.axelor.contact.db.Circle\""
+                + " search=\"self.code = :code\">"
+                + "<bind column=\"code\" to=\"code\"/><bind column=\"name\" to=\"name\"/>"
+                + "</input>"
+                + "<input file=\"titles.csv\" type=\"com.axelor.contact.db.Title\""
+                + " search=\"self.code = :code\">"
+                + "<bind column=\"code\" to=\"code\"/><bind column=\"name\" to=\"name\"/>"
+                + "</input></csv-inputs>")
+            .getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        root.resolve("circles.csv"),
+        Arrays.asList("code,name", "parallel_1,Parallel 1", "parallel_2,Parallel 2"),
+        StandardCharsets.UTF_8);
+    Files.write(
+        root.resolve("titles.csv"),
+        Arrays.asList("code,name", "parallel_t,Parallel title"),
+        StandardCharsets.UTF_8);
+
+    // started as from the data import menu, the inputs are independent
+    final DataImportService service = Beans.get(DataImportService.class);
+    assertTrue(service.startParallel(config.toString(), root.toString()));
+    for (int i = 0; i < 600 && service.isRunning(); i++) {
+      Thread.sleep(100);
+    }
+    assertFalse(service.isRunning());
+
+    assertEquals(2, count("Circle"));
+    assertEquals(1, count("Title"));
+  }
+
+  private long count(String entity) {
+    final String jpql =
+        "SELECT COUNT(self) FROM " + entity + " self WHERE self.code LIKE 'parallel_%'";
+    return JPA.em().createQuery(jpql, Long.class).getSingleResult();
+  }
+
+  private int indexOf(String fileName, int from) {
+    final List<CSVInput> inputs = importer.getInputs();
+    for (int i = from; i < inputs.size(); i++) {
+      if (fileName.equals(inputs.get(i).getFileName())) {
+        return i;
+      }
+    }
+    return fail("No input for " + fileName);
+  }
+}
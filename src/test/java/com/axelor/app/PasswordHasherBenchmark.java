@@ -0,0 +1,76 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.auth.AuthService;
+import com.axelor.demo.PasswordHasher;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Compares the password hashing of a user import, by the import thread or by a {@link
+ * PasswordHasher} on one thread per core.
+ *
+ * <p>Run with {@code -Dbenchmark=true}, the gain depends on the number of cores of the machine.
+ */
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class PasswordHasherBenchmark {
+
+  private static final int USERS = 200;
+
+  @Test
+  public void benchmark() {
+    final AuthService authService = Beans.get(AuthService.class);
+    final List<String[]> users = new ArrayList<>();
+    for (int i = 0; i < USERS; i++) {
+      users.add(new String[] {"user" + i, "secret" + i});
+    }
+    // warm up
+    authService.encrypt("secret");
+
+    long start = System.nanoTime();
+    for (String[] user : users) {
+      authService.encrypt(user[1]);
+    }
+    final double inline = (System.nanoTime() - start) / 1e6;
+
+    final int threads = Runtime.getRuntime().availableProcessors();
+    start = System.nanoTime();
+    try (PasswordHasher hasher = new PasswordHasher(authService, users, threads)) {
+      for (String[] user : users) {
+        assertTrue(hasher.take(user[0], user[1]).length() > 0);
+      }
+    }
+    final double pooled = (System.nanoTime() - start) / 1e6;
+
+    System.out.printf(
+        "%d users: import thread %.0f ms, hasher on %d threads %.0f ms (x%.1f)%n",
+        USERS, inline, threads, pooled, inline / pooled);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.auth.AuthService;
+import com.axelor.demo.PasswordHasher;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class PasswordHasherTest {
+
+  @Test
+  public void testTake() {
+    final AuthService authService = Beans.get(AuthService.class);
+    final List<String[]> users = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      users.add(new String[] {"user" + i, i % 9 == 4 ? "" : "secret" + i});
+    }
+
+    try (PasswordHasher hasher = new PasswordHasher(authService, users, 4)) {
+      for (int i = 0; i < users.size(); i++) {
+        if (i % 13 == 7) {
+          // a skipped row
+          continue;
+        }
+        // a password changed by the bindings is hashed again
+        final String password = i == 20 ? "changed" : "secret" + i;
+        final String hash = hasher.take("user" + i, password);
+        assertTrue(authService.match(password, hash));
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.contact.service.ReferenceDataService;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.demo.ReferenceImport;
+import com.axelor.inject.Beans;
+import com.axelor.sale.db.Currency;
+import com.axelor.sale.db.Tax;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class ReferenceImportTest {
+
+  @AfterEach
+  public void tearDown() {
+    JPA.runInTransaction(
+        () -> {
+          Query.of(Tax.class).filter("self.code LIKE 'ref_%'").delete();
+          Query.of(Currency.class).filter("self.code = 'REF'").delete();
+        });
+  }
+
+  @Test
+  public void testLookups() {
+    final Currency currency = new Currency();
+    currency.setCode("REF");
+    currency.setName("Reference currency");
+    currency.setSymbol("R");
+    final Tax first = tax("ref_1");
+    final Tax second = tax("ref_2");
+    JPA.runInTransaction(
+        () -> {
+          JPA.save(currency);
+          JPA.save(first);
+          JPA.save(second);
+        });
+
+    // the sale module adds its types to the reference data
+    assertTrue(Beans.get(ReferenceDataService.class).isReference(Currency.class));
+    // created after the load, found by a query which reloads the codes
+    assertEquals(currency.getId(), ReferenceImport.currency("REF").getId());
+    assertNull(ReferenceImport.currency("REF?"));
+
+    final List<Tax> taxes =
+        ReferenceImport.taxes(second.getId() + "| " + first.getId() + "|" + Long.MAX_VALUE);
+    assertEquals(
+        List.of(second.getId(), first.getId()),
+        taxes.stream().map(Tax::getId).collect(Collectors.toList()));
+    assertEquals(0, ReferenceImport.taxes("").size());
+    assertNull(ReferenceImport.title(" "));
+    assertNull(ReferenceImport.country(null));
+  }
+
+  private Tax tax(String code) {
+    final Tax tax = new Tax();
+    tax.setCode(code);
+    tax.setName("Reference " + code);
+    tax.setRate(BigDecimal.ZERO);
+    return tax;
+  }
+}
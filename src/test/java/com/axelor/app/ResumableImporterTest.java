@@ -0,0 +1,192 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2005-2022 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.axelor.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.axelor.batch.db.BatchCheckpoint;
+import com.axelor.batch.db.BatchStatus;
+import com.axelor.contact.db.Circle;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.demo.ImportProgressService;
+import com.axelor.demo.ImportProgressService.Progress;
+import com.axelor.demo.ResumableImporter;
+import com.axelor.inject.Beans;
+import com.axelor.test.GuiceExtension;
+import com.axelor.test.GuiceModules;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+@ExtendWith(GuiceExtension.class)
+@GuiceModules({MyModule.class})
+public class ResumableImporterTest {
+
+  private static final String NAME = "import:resume.csv#0";
+
+  private static ResumableImporter running;
+
+  private static int stopAt = -1;
+
+  private static int killAt = -1;
+
+  private static int imported;
+
+  @TempDir Path root;
+
+  /** Import callback, stops the running import, or kills it, at a given row. */
+  public Object importCircle(Object bean, Map<String, Object> context) {
+    if (++imported == stopAt) {
+      running.stop();
+    }
+    if (imported == killAt) {
+      throw new Killed();
+    }
+    return bean;
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    final Path config = write("resume");
+    imported = 0;
+
+    // stopped in the second chunk, which still commits
+    running = new ResumableImporter(config.toString(), root.toString(), 10);
+    stopAt = 12;
+    assertFalse(running.run());
+    assertEquals(20, count("resume"));
+    assertEquals(20L, (long) checkpoint(NAME).getLastKey());
+
+    Progress progress = Beans.get(ImportProgressService.class).get(NAME);
+    assertEquals(20, progress.getRows());
+    assertEquals(BatchStatus.STOPPED, progress.getStatus());
+    assertEquals(BatchStatus.STOPPED, checkpoint(NAME).getStatus());
+
+    // a new importer, as after a restart, resumes after the checkpoint
+    running = new ResumableImporter(config.toString(), root.toString(), 10);
+    stopAt = -1;
+    imported = 0;
+    assertTrue(running.run());
+    assertEquals(5, imported);
+    assertEquals(25, count("resume"));
+    assertEquals(BatchStatus.DONE, checkpoint(NAME).getStatus());
+    assertEquals(25L, (long) checkpoint(NAME).getItems());
+
+    progress = Beans.get(ImportProgressService.class).get(NAME);
+    assertEquals(25, progress.getRows());
+    assertEquals(0, progress.getErrors());
+    assertEquals(1.0, progress.getDone());
+    assertEquals(
+        "Resume, 24",
+        Query.of(Circle.class).filter("self.code = 'resume_24'").fetchOne().getName());
+  }
+
+  @Test
+  public void testKilled() throws IOException {
+    final Path config = write("killed");
+    final String name = "import:killed.csv#0";
+
+    // killed in the second chunk, after the commits of the importer, if any
+    running = new ResumableImporter(config.toString(), root.toString(), 10);
+    imported = 0;
+    killAt = 15;
+    assertThrows(Killed.class, running::run);
+    // the uncommitted work dies with the process
+    if (JPA.em().getTransaction().isActive()) {
+      JPA.em().getTransaction().rollback();
+    }
+    final long lastKey = checkpoint(name).getLastKey();
+    assertTrue(lastKey >= 10);
+    assertEquals(lastKey, count("killed"));
+
+    // a restart imports the rows after the checkpoint, once
+    running = new ResumableImporter(config.toString(), root.toString(), 10);
+    killAt = -1;
+    imported = 0;
+    assertTrue(running.run());
+    assertEquals(25 - lastKey, imported);
+    assertEquals(25, count("killed"));
+    assertEquals(
+        25L,
+        (long)
+            JPA.em()
+                .createQuery(
+                    "SELECT COUNT(DISTINCT self.code) FROM Circle self "
+                        + "WHERE self.code LIKE 'killed_%'",
+                    Long.class)
+                .getSingleResult());
+    assertEquals(BatchStatus.DONE, checkpoint(name).getStatus());
+    assertEquals(0L, (long) checkpoint(name).getFailures());
+  }
+
+  /** Write a config and 25 rows of circles, coded after the given prefix. */
+  private Path write(String prefix) throws IOException {
+    final Path config = root.resolve("config.xml");
+    Files.write(
+        config,
+        ("<csv-inputs xmlns=\"http://axelor.com/xml/ns/data-import\">"
+                + "<input file=\""
+                + prefix
+                + ".csv\" type=\"com.axelor.contact.db.Circle\""
+                + " call=\"com.axelor.app.ResumableImporterTest:importCircle\">"
+                + "<bind column=\"code\" to=\"code\"/><bind column=\"name\" to=\"name\"/>"
+                + "</input></csv-inputs>")
+            .getBytes(StandardCharsets.UTF_8));
+    final List<String> lines = new ArrayList<>();
+    lines.add("code,name");
+    for (int i = 0; i < 25; i++) {
+      lines.add(String.format("%s_%02d,\"Resume, %d\"", prefix, i, i));
+    }
+    Files.write(root.resolve(prefix + ".csv"), lines, StandardCharsets.UTF_8);
+    return config;
+  }
+
+  private long count(String prefix) {
+    final String jpql = "SELECT COUNT(self) FROM Circle self WHERE self.code LIKE :code";
+    return JPA.em()
+        .createQuery(jpql, Long.class)
+        .setParameter("code", prefix + "_%")
+        .getSingleResult();
+  }
+
+  private BatchCheckpoint checkpoint(String name) {
+    JPA.em().clear();
+    return Query.of(BatchCheckpoint.class)
+        .filter("self.jobName = :name")
+        .bind("name", name)
+        .fetchOne();
+  }
+
+  /** Stands for the death of the process, which no code of the import handles. */
+  private static final class Killed extends Error {
+
+    private static final long serialVersionUID = 1L;
+  }
+}